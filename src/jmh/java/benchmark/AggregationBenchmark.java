@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import controller.AggregationEngine;
+import controller.AnnualSpendReport;
+import controller.SqliteLedgerSource;
+import controller.TransactionHelper;
+import controller.TransactionsDBPool;
+
+/**
+ * Measures how the annual spending report scales with the threads of the aggregation, reading
+ * a copy of a seeded ledger through a pool with a reader per thread. Compare the throughput of
+ * each number of threads with 'gradle jmh -PjmhInclude=AggregationBenchmark'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AggregationBenchmark {
+
+	@Param({"100000", "1000000"})
+	public int rows;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private File file;
+	private TransactionsDBPool pool;
+	private SqliteLedgerSource source;
+	private AggregationEngine engine;
+	private int firstYear;
+	private int lastYear;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		TransactionHelper.prepare();
+		this.file = BenchmarkLedger.copyOf(this.rows);
+		this.pool = new TransactionsDBPool(this.file, this.threads,
+				TransactionsDBPool.DEFAULT_WAIT_MILLIS);
+		this.source = new SqliteLedgerSource(this.pool);
+		this.engine = new AggregationEngine(this.threads);
+
+		this.firstYear = BenchmarkLedger.FIRST_DAY.getYear();
+		this.lastYear = BenchmarkLedger.FIRST_DAY.plusDays(BenchmarkLedger.DAYS - 1).getYear();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		this.pool.close();
+		this.file.delete();
+	}
+
+	/** Every user's spending, in chunks of rowids. */
+	@Benchmark
+	public long everyUser() throws SQLException {
+		return AnnualSpendReport.compute(this.engine, this.source, null, this.firstYear,
+				this.lastYear).getTotalSpendCents();
+	}
+
+	/** The benchmark user's spending, in chunks of days. */
+	@Benchmark
+	public long oneUser() throws SQLException {
+		return AnnualSpendReport.compute(this.engine, this.source, BenchmarkLedger.USERNAME,
+				this.firstYear, this.lastYear).getTotalSpendCents();
+	}
+}
@@ -0,0 +1,58 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import model.BCrypt;
+
+/**
+ * Measures how many passwords BCrypt hashes and checks a second. The cheapest cost shows the
+ * fixed work of each hash (parsing, key setup and encoding) next to the rounds, the default cost
+ * shows what a log in pays. Run it on the commit before and after a change to BCrypt to compare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BCryptBenchmark {
+
+	private static final String PASSWORD = "correct horse battery staple";
+
+	@Param({"4", "10"})
+	public int logRounds;
+
+	private String salt;
+	private String hash;
+
+	@Setup
+	public void setUp() {
+		this.salt = BCrypt.gensalt(this.logRounds);
+		this.hash = BCrypt.hashpw(PASSWORD, this.salt);
+	}
+
+	@Benchmark
+	public String hashpw() {
+		return BCrypt.hashpw(PASSWORD, this.salt);
+	}
+
+	@Benchmark
+	public boolean checkpw() {
+		return BCrypt.checkpw(PASSWORD, this.hash);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public boolean checkpwConcurrent() {
+		// Every thread has its own key schedule, so checks on many threads should not slow
+		// each other down beyond the cores they share.
+		return BCrypt.checkpw(PASSWORD, this.hash);
+	}
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import controller.LedgerGenerator;
+import controller.LedgerGenerator.LedgerGeneratorBuilder;
+import controller.TransactionsDB;
+
+/**
+ * Creates the SQLite databases the benchmarks run against with the LedgerGenerator. A database
+ * of a given size always holds the same transactions, so results can be compared between runs.
+ * Seeding a large ledger takes a while, so each size is built once in the temp folder and
+ * copied for every trial.
+ */
+final class BenchmarkLedger {
+
+	// Seed of the generator, changing it invalidates the cached databases.
+	private static final long SEED = 20181017L;
+
+	/** The user who owns every seeded transaction. */
+	static final String USERNAME = generator(0).getUsername(0);
+
+	/** The first day of the seeded transactions. */
+	static final LocalDate FIRST_DAY = generator(0).getFirstDay();
+
+	/** The number of days the seeded transactions are spread over. */
+	static final int DAYS = generator(0).getDays();
+
+	private BenchmarkLedger() {
+	}
+
+	/**
+	 * Copies the seeded database of a given size to a new temp file, seeding it first if it
+	 * has not been built yet.
+	 * @param rows is about how many transactions are in the database.
+	 * @return The copy, which the caller should delete when done.
+	 * @throws IOException if the database could not be copied.
+	 * @throws SQLException if the database could not be seeded.
+	 */
+	static File copyOf(int rows) throws IOException, SQLException {
+		File copy = File.createTempFile("tt-bench-", ".db");
+		Files.copy(seeded(rows).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy;
+	}
+
+	/**
+	 * @param rows is about how many transactions are in the database.
+	 * @return The seeded database of the given size, built if it does not exist.
+	 * @throws IOException if the database could not be moved into place.
+	 * @throws SQLException if the database could not be seeded.
+	 */
+	static synchronized File seeded(int rows) throws IOException, SQLException {
+		File dir = new File(System.getProperty("java.io.tmpdir"));
+		File file = new File(dir, "tt-bench-" + rows + "-" + SEED + ".db");
+		if (file.isFile()) {
+			return file;
+		}
+
+		// Build under another name so that an interrupted seed is never reused.
+		File partial = new File(dir, file.getName() + ".partial");
+		Files.deleteIfExists(partial.toPath());
+
+		TransactionsDB db = new TransactionsDB();
+		db.open(partial);
+		try {
+			seed(db, rows);
+		} finally {
+			db.close();
+		}
+
+		Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		return file;
+	}
+
+	/**
+	 * Generates the ledger of the benchmark user into an empty database.
+	 * @param db is the open database.
+	 * @param rows is about how many transactions to add.
+	 * @throws SQLException if they could not be added.
+	 */
+	private static void seed(TransactionsDB db, int rows) throws SQLException {
+		generator(rows).generate(db, null);
+	}
+
+	/**
+	 * @param rows is about how many transactions to generate.
+	 * @return The generator of a ledger where a single user owns every transaction.
+	 */
+	private static LedgerGenerator generator(int rows) {
+		LedgerGeneratorBuilder builder = new LedgerGeneratorBuilder();
+		builder.setSeed(SEED);
+		builder.setUsers(1);
+		builder.setUsernamePrefix("bench");
+		builder.setTransactions(rows);
+		return builder.build();
+	}
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares decoding a transaction's day the way it was stored before (ISO text parsed with
+ * LocalDate.parse) against how it is stored now (an epoch day integer).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EpochDayBenchmark {
+
+	// Number of distinct days decoded per invocation.
+	private static final int DAYS = 1024;
+
+	private final String[] text = new String[DAYS];
+	private final long[] epochDays = new long[DAYS];
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		long first = LocalDate.of(2010, 1, 1).toEpochDay();
+		for (int i = 0; i < DAYS; i++) {
+			LocalDate day = LocalDate.ofEpochDay(first + random.nextInt(365 * 10));
+			this.text[i] = day.toString();
+			this.epochDays[i] = day.toEpochDay();
+		}
+	}
+
+	@Benchmark
+	public void parseText(Blackhole bh) {
+		for (int i = 0; i < DAYS; i++) {
+			bh.consume(LocalDate.parse(this.text[i]));
+		}
+	}
+
+	@Benchmark
+	public void ofEpochDay(Blackhole bh) {
+		for (int i = 0; i < DAYS; i++) {
+			bh.consume(LocalDate.ofEpochDay(this.epochDays[i]));
+		}
+	}
+
+	@Benchmark
+	public void compareText(Blackhole bh) {
+		// The old 'day >= ...' filters compared text.
+		String from = this.text[0];
+		for (int i = 0; i < DAYS; i++) {
+			bh.consume(this.text[i].compareTo(from) >= 0);
+		}
+	}
+
+	@Benchmark
+	public void compareEpochDay(Blackhole bh) {
+		long from = this.epochDays[0];
+		for (int i = 0; i < DAYS; i++) {
+			bh.consume(this.epochDays[i] >= from);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+
+/**
+ * Measures filling in a TransactionBuilder and building the transaction, which is done for
+ * every row read from or written to the database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransactionBuilderBenchmark {
+
+	private final LocalDate day = LocalDate.of(2018, 10, 17);
+	private final long epochDay = this.day.toEpochDay();
+	private int amount = 1;
+
+	@Benchmark
+	public Transaction build() {
+		TransactionBuilder trans = new TransactionBuilder(false);
+		trans.setAmountInCents(this.amount++);
+		trans.setDescription("Grocer");
+		trans.setDate(this.day);
+		trans.setCategory("Groceries");
+		trans.setMemo("");
+		return trans.build();
+	}
+
+	@Benchmark
+	public Transaction buildFromRow() {
+		// As TransactionsDB does when reading a transaction.
+		TransactionBuilder trans = new TransactionBuilder(this.amount > 0);
+		trans.setAmountInCents(this.amount++);
+		trans.setDescription("Grocer");
+		trans.setEpochDay(this.epochDay);
+		trans.setCategory("Groceries");
+		trans.setMemo("");
+		return trans.build();
+	}
+}
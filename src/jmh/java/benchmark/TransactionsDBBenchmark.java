@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import controller.HistoryCursor;
+import controller.HistoryQuery;
+import controller.HistoryQuery.Attribute;
+import controller.HistoryQuery.HistoryQueryBuilder;
+import controller.TransactionHelper;
+import controller.TransactionsDB;
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+
+/**
+ * Measures the database operations behind the menu options against a copy of a seeded ledger,
+ * so every benchmark sees the same data at each size. Run one at a time with
+ * 'gradle jmh -PjmhInclude=TransactionsDBBenchmark.history'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionsDBBenchmark {
+
+	@Param({"10000", "1000000", "10000000"})
+	public int rows;
+
+	private File file;
+	private TransactionsDB db;
+	private HistoryQuery byDate;
+	private HistoryQuery monthOfGroceries;
+
+	// Makes every added transaction unique.
+	private int added;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		TransactionHelper.prepare();
+		this.file = BenchmarkLedger.copyOf(this.rows);
+		this.db = new TransactionsDB();
+		this.db.open(this.file);
+
+		this.byDate = new HistoryQueryBuilder(BenchmarkLedger.USERNAME).build();
+
+		// A typical search, one category over the last month of the ledger.
+		HistoryQueryBuilder builder = new HistoryQueryBuilder(BenchmarkLedger.USERNAME);
+		long last = BenchmarkLedger.FIRST_DAY.toEpochDay() + BenchmarkLedger.DAYS - 1;
+		builder.addRange(Attribute.DATE, last - 30, last);
+		builder.addEquals(Attribute.CATEGORY, "Groceries");
+		builder.addOrderBy(Attribute.PRICE);
+		this.monthOfGroceries = builder.build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		this.db.close();
+		this.file.delete();
+	}
+
+	@Benchmark
+	public void addExpense() throws SQLException {
+		TransactionBuilder trans = new TransactionBuilder(false);
+		trans.setAmountInCents(1 + this.added % 10_000);
+		trans.setDescription("Bench " + this.added++);
+		trans.setDate(BenchmarkLedger.FIRST_DAY);
+		trans.setCategory("Groceries");
+		trans.setMemo("");
+		this.db.addExpense(trans.build(), BenchmarkLedger.USERNAME);
+	}
+
+	@Benchmark
+	public long updateBalance() throws SQLException {
+		return this.db.updateBalance(BenchmarkLedger.USERNAME, 1);
+	}
+
+	@Benchmark
+	public String[] getCategories() {
+		return this.db.getCategories();
+	}
+
+	@Benchmark
+	public List<Transaction> historyFirstPage() {
+		return this.db.streamHistory(this.byDate, HistoryCursor.DEFAULT_PAGE_SIZE).nextPage();
+	}
+
+	@Benchmark
+	public void historySearch(Blackhole bh) {
+		HistoryCursor cursor = this.db.streamHistory(this.monthOfGroceries, 1000);
+		while (cursor.hasNext()) {
+			bh.consume(cursor.nextPage());
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package controller;
+
+import java.sql.SQLException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregates the transactions of a LedgerSource in parallel. The source splits the keys of the
+ * transactions into chunks, the chunks are split in halves on a ForkJoinPool until each task
+ * has one, every chunk is read into an accumulator of its own, and the accumulators are merged
+ * in pairs on the way back up, so threads never share an accumulator and never wait on each
+ * other except to merge.
+ * @author L. James Davidson
+ */
+public class AggregationEngine {
+
+	/**
+	 * How transactions are combined into a result.
+	 * @param <A> is the type of the accumulators, which are also the result.
+	 */
+	public interface Aggregation<A> {
+
+		/** @return A new accumulator, which holds no transactions. */
+		A newAccumulator();
+
+		/**
+		 * Adds a transaction to an accumulator.
+		 * @param acc is the accumulator, which only the calling thread uses.
+		 * @param belongsTo is the user the transaction belongs to.
+		 * @param category is the category of the transaction.
+		 * @param epochDay is the day of the transaction.
+		 * @param cents is the amount of the transaction.
+		 */
+		void accumulate(A acc, String belongsTo, String category, long epochDay, long cents);
+
+		/**
+		 * Merges two accumulators, either of which may be returned after adding the other to it.
+		 * @param left is the accumulator of the lower keys.
+		 * @param right is the accumulator of the higher keys.
+		 * @return The accumulator of both.
+		 */
+		A merge(A left, A right);
+	}
+
+	/** The default number of threads, one per core. */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	// Chunks per thread, so threads which finish early can take chunks from slower threads.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static final LatencyHistogram AGGREGATE_TIMER =
+			MetricsRegistry.getDefault().timer("aggregation.aggregate");
+
+	private final int parallelism;
+
+	// AF:
+	// Aggregates with up to parallelism threads at once.
+
+	// RI: parallelism > 0
+
+	/** Creates an engine with a thread per core. */
+	public AggregationEngine() {
+		this(DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param parallelism is the most threads an aggregation uses.
+	 * @throws IllegalArgumentException if parallelism is not positive.
+	 */
+	public AggregationEngine(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("There must be at least one thread.");
+		}
+		this.parallelism = parallelism;
+		this.checkRep();
+	}
+
+	/**
+	 * Aggregates the transactions of a user, or of every user, in a range of days. The pool
+	 * is made for the aggregation, with no more threads than the source can scan chunks at
+	 * once, so chunks run one after another on each thread rather than waiting for the source.
+	 * @param source is where the transactions are read from.
+	 * @param username is the user, or null for every user of the source.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @param aggregation combines the transactions.
+	 * @return The accumulator of every transaction.
+	 * @throws SQLException if the transactions could not be read.
+	 */
+	public <A> A aggregate(LedgerSource source, String username, long fromDay, long toDay,
+			Aggregation<A> aggregation) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			int threads = Math.min(this.parallelism, source.getMaxParallelism());
+			long[] bounds = source.getChunkBounds(username, fromDay, toDay,
+					threads * CHUNKS_PER_THREAD);
+			if (bounds == null) {
+				return aggregation.newAccumulator();
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				return pool.invoke(new Chunk<A>(source, username, fromDay, toDay, bounds, 0,
+						bounds.length - 1, aggregation));
+			} catch (ChunkFailure e) {
+				throw e.error;
+			} finally {
+				pool.shutdown();
+			}
+		} finally {
+			AGGREGATE_TIMER.recordSince(start);
+		}
+	}
+
+	/** @return The most threads an aggregation uses. */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	@Override
+	/** @return the string representation of this engine. */
+	public String toString() {
+		return "Aggregation engine of " + this.parallelism + " threads";
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.parallelism > 0) : "There must be at least one thread.";
+	}
+
+	/**
+	 * Aggregates a range of chunks, splitting it in halves until it is a single chunk.
+	 * @param <A> is the type of the accumulators.
+	 */
+	private static final class Chunk<A> extends RecursiveTask<A> {
+		private static final long serialVersionUID = 1L;
+
+		private final LedgerSource source;
+		private final String username;
+		private final long fromDay;
+		private final long toDay;
+		private final long[] bounds;
+		private final int fromChunk;
+		private final int toChunk;
+		private final Aggregation<A> aggregation;
+
+		/**
+		 * @param source is where the transactions are read from.
+		 * @param username is the user, or null for every user.
+		 * @param fromDay is the first epoch day of the range.
+		 * @param toDay is the last epoch day of the range.
+		 * @param bounds are the first key of each chunk followed by one past the last key.
+		 * @param fromChunk is the index of the first chunk of the task.
+		 * @param toChunk is one past the index of the last chunk of the task.
+		 * @param aggregation combines the transactions.
+		 */
+		private Chunk(LedgerSource source, String username, long fromDay, long toDay,
+				long[] bounds, int fromChunk, int toChunk, Aggregation<A> aggregation) {
+			this.source = source;
+			this.username = username;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+			this.bounds = bounds;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.aggregation = aggregation;
+		}
+
+		@Override
+		protected A compute() {
+			if (this.toChunk - this.fromChunk == 1) {
+				A acc = this.aggregation.newAccumulator();
+				try {
+					this.source.scan(this.username, this.fromDay, this.toDay,
+							this.bounds[this.fromChunk], this.bounds[this.toChunk] - 1,
+							(belongsTo, category, epochDay, cents) -> 
+							this.aggregation.accumulate(acc, belongsTo, category, epochDay, cents));
+				} catch (SQLException e) {
+					throw new ChunkFailure(e);
+				}
+				return acc;
+			}
+
+			int mid = (this.fromChunk + this.toChunk) >>> 1;
+			Chunk<A> left = new Chunk<A>(this.source, this.username, this.fromDay, this.toDay,
+					this.bounds, this.fromChunk, mid, this.aggregation);
+			Chunk<A> right = new Chunk<A>(this.source, this.username, this.fromDay, this.toDay,
+					this.bounds, mid, this.toChunk, this.aggregation);
+			left.fork();
+			A rightAcc = right.compute();
+			return this.aggregation.merge(left.join(), rightAcc);
+		}
+	}
+
+	/** Carries the error of a chunk which could not be read out of the pool. */
+	private static final class ChunkFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final SQLException error;
+
+		/** @param error is the error of the chunk. */
+		private ChunkFailure(SQLException error) {
+			super(error);
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package controller;
+
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import controller.AggregationEngine.Aggregation;
+
+/**
+ * How much each user spent in each category in each of a range of years, as run at the end of
+ * the year. Spending is the sum of the expenses, so deposits are left out. The report is
+ * aggregated by an AggregationEngine, so the same report comes from a database or a snapshot.
+ * @author L. James Davidson
+ */
+public final class AnnualSpendReport {
+
+	/** The spending of a user in a category in a year. */
+	public static final class Row {
+		private final String username;
+		private final String category;
+		private final int year;
+		private final long spendCents;
+		private final long count;
+
+		/**
+		 * @param username is the user.
+		 * @param category is the category.
+		 * @param year is the year.
+		 * @param spendCents is the sum of the expenses, as a positive amount.
+		 * @param count is the number of expenses.
+		 */
+		Row(String username, String category, int year, long spendCents, long count) {
+			this.username = username;
+			this.category = category;
+			this.year = year;
+			this.spendCents = spendCents;
+			this.count = count;
+		}
+
+		/** @return The user. */
+		public String getUsername() {
+			return this.username;
+		}
+
+		/** @return The category. */
+		public String getCategory() {
+			return this.category;
+		}
+
+		/** @return The year. */
+		public int getYear() {
+			return this.year;
+		}
+
+		/** @return The sum of the expenses in cents, as a positive amount. */
+		public long getSpendCents() {
+			return this.spendCents;
+		}
+
+		/** @return The number of expenses. */
+		public long getCount() {
+			return this.count;
+		}
+	}
+
+	private static final int CENTS_IN_A_DOLLAR = 100;
+
+	private final int firstYear;
+	private final int lastYear;
+	private final List<Row> rows;
+
+	// AF:
+	// The spending of every user in every category in the years firstYear to lastYear, with
+	// one entry of rows per user, category and year with expenses, in that order.
+
+	// RI: firstYear <= lastYear, rows != null, every row's year is in range and has expenses
+
+	/**
+	 * @param firstYear is the first year of the report.
+	 * @param lastYear is the last year of the report.
+	 * @param rows are the rows in order of user, category and year.
+	 */
+	private AnnualSpendReport(int firstYear, int lastYear, List<Row> rows) {
+		this.firstYear = firstYear;
+		this.lastYear = lastYear;
+		this.rows = Collections.unmodifiableList(rows);
+		this.checkRep();
+	}
+
+	/**
+	 * Computes the spending of a user, or of every user, in a range of years.
+	 * @param engine aggregates the transactions.
+	 * @param source is where the transactions are read from.
+	 * @param username is the user, or null for every user of the source.
+	 * @param firstYear is the first year of the report.
+	 * @param lastYear is the last year of the report.
+	 * @return The report.
+	 * @throws IllegalArgumentException if firstYear is after lastYear.
+	 * @throws SQLException if the transactions could not be read.
+	 */
+	public static AnnualSpendReport compute(AggregationEngine engine, LedgerSource source,
+			String username, int firstYear, int lastYear) throws SQLException {
+		if (firstYear > lastYear) {
+			throw new IllegalArgumentException("The first year must not be after the last.");
+		}
+
+		long[] yearStarts = new long[lastYear - firstYear + 2];
+		for (int i = 0; i < yearStarts.length; i++) {
+			yearStarts[i] = LocalDate.of(firstYear + i, 1, 1).toEpochDay();
+		}
+		Map<String, Map<String, long[]>> totals = engine.aggregate(source, username,
+				yearStarts[0], yearStarts[yearStarts.length - 1] - 1, new Spend(yearStarts));
+
+		// Users and categories are put in order of name.
+		List<Row> rows = new ArrayList<Row>();
+		for (Map.Entry<String, Map<String, long[]>> user : new TreeMap<String, Map<String, 
+				long[]>>(totals).entrySet()) {
+			for (Map.Entry<String, long[]> category : new TreeMap<String, long[]>(
+					user.getValue()).entrySet()) {
+				long[] years = category.getValue();
+				for (int i = 0; i < years.length / 2; i++) {
+					if (years[2 * i + 1] > 0) {
+						rows.add(new Row(user.getKey(), category.getKey(), firstYear + i,
+								years[2 * i], years[2 * i + 1]));
+					}
+				}
+			}
+		}
+		return new AnnualSpendReport(firstYear, lastYear, rows);
+	}
+
+	/** @return The first year of the report. */
+	public int getFirstYear() {
+		return this.firstYear;
+	}
+
+	/** @return The last year of the report. */
+	public int getLastYear() {
+		return this.lastYear;
+	}
+
+	/** @return The rows of each user, category and year with expenses, in that order. */
+	public List<Row> getRows() {
+		return this.rows;
+	}
+
+	/** @return The sum of every expense in the report in cents, as a positive amount. */
+	public long getTotalSpendCents() {
+		long total = 0;
+		for (Row row : this.rows) {
+			total += row.getSpendCents();
+		}
+		return total;
+	}
+
+	@Override
+	/** @return the report as a table with a row per user, category and year. */
+	public String toString() {
+		int userLen = "User".length();
+		int categoryLen = "Category".length();
+		for (Row row : this.rows) {
+			userLen = Math.max(userLen, row.getUsername().length());
+			categoryLen = Math.max(categoryLen, row.getCategory().length());
+		}
+
+		DecimalFormat df = new DecimalFormat("0.00");
+		String line = "%-" + userLen + "s %-" + categoryLen + "s %4s %14s %8s%n";
+		StringBuilder table = new StringBuilder();
+		table.append(String.format(line, "User", "Category", "Year", "Spent", "Count"));
+		for (Row row : this.rows) {
+			table.append(String.format(line, row.getUsername(), row.getCategory(), row.getYear(),
+					df.format((double) row.getSpendCents() / CENTS_IN_A_DOLLAR), row.getCount()));
+		}
+		return table.toString();
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.firstYear <= this.lastYear) : "The first year must not be after the last.";
+		assert (this.rows != null) : "The rows must be non-null.";
+		for (Row row : this.rows) {
+			assert (row.getYear() >= this.firstYear && row.getYear() <= this.lastYear) 
+					: "Every row must be in the report's years.";
+			assert (row.getCount() > 0) : "Every row must have expenses.";
+		}
+	}
+
+	/**
+	 * Sums expenses by user, category and year. An accumulator maps each user and category to
+	 * the spending and number of expenses of each year, one after the other, so adding an
+	 * expense allocates nothing once its user and category have been seen.
+	 */
+	private static final class Spend implements Aggregation<Map<String, Map<String, long[]>>> {
+		private final long[] yearStarts;
+
+		/** @param yearStarts are the first epoch days of each year and the year after the last. */
+		private Spend(long[] yearStarts) {
+			this.yearStarts = yearStarts;
+		}
+
+		@Override
+		public Map<String, Map<String, long[]>> newAccumulator() {
+			return new HashMap<String, Map<String, long[]>>();
+		}
+
+		@Override
+		public void accumulate(Map<String, Map<String, long[]>> acc, String belongsTo,
+				String category, long epochDay, long cents) {
+			if (cents >= 0) {
+				return;
+			}
+
+			// There are few years, so the year is found by walking their starts.
+			int year = 0;
+			while (epochDay >= this.yearStarts[year + 1]) {
+				year++;
+			}
+			long[] years = acc.computeIfAbsent(belongsTo, key -> new HashMap<String, long[]>())
+					.computeIfAbsent(category, key -> new long[2 * (this.yearStarts.length - 1)]);
+			years[2 * year] -= cents;
+			years[2 * year + 1]++;
+		}
+
+		@Override
+		public Map<String, Map<String, long[]>> merge(Map<String, Map<String, long[]>> left,
+				Map<String, Map<String, long[]>> right) {
+			for (Map.Entry<String, Map<String, long[]>> user : right.entrySet()) {
+				Map<String, long[]> into = left.putIfAbsent(user.getKey(), user.getValue());
+				if (into == null) {
+					continue;
+				}
+				for (Map.Entry<String, long[]> category : user.getValue().entrySet()) {
+					long[] years = into.putIfAbsent(category.getKey(), category.getValue());
+					if (years != null) {
+						for (int i = 0; i < years.length; i++) {
+							years[i] += category.getValue()[i];
+						}
+					}
+				}
+			}
+			return left;
+		}
+	}
+}
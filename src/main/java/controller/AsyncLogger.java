@@ -0,0 +1,423 @@
+package controller;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log entries to a file on a background thread. Logging only puts the entry in a
+ * fixed size ring buffer, which takes no lock, so the thread which logs never waits on the
+ * disk. The background thread takes every entry in the buffer at once, formats them and writes
+ * them with a single write. When the file grows past its size limit it is renamed to file.1,
+ * older files move up to file.2 and so on, and a new file is started.
+ *
+ * If the buffer is full the entry is dropped rather than blocking the caller, and how many
+ * were dropped is written to the log with the next batch.
+ * @author L. James Davidson
+ */
+public class AsyncLogger implements AutoCloseable {
+
+	/** How serious a log entry is. */
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR
+	}
+
+	/** The default number of entries the buffer holds, a power of two. */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/** The default size a log file may grow to before it is rotated. */
+	public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+	/** The default number of rotated files kept besides the current one. */
+	public static final int DEFAULT_MAX_FILES = 3;
+
+	// How long the writer sleeps when the buffer is empty.
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	// The most entries formatted into one write.
+	private static final int MAX_BATCH = 1024;
+
+	private final File file;
+	private final long maxBytes;
+	private final int maxFiles;
+	private final Level threshold;
+
+	// The ring buffer.
+	private final Entry[] entries;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+	private volatile long written;
+
+	private final Thread writer;
+	private volatile boolean running = true;
+	private OutputStream out;
+	private long fileBytes;
+
+	// Metrics.
+	private final LongAdder dropped = new LongAdder();
+	private long droppedReported;
+	private final AtomicLong batches = new AtomicLong();
+
+	// AF:
+	// The entries logged but not yet written are entries[i & mask] for head <= i < tail, in
+	// the order they were logged. Entry i is ready to be read once sequences[i & mask] is i + 1
+	// and its slot is free for entry i + capacity once sequences[i & mask] is i + capacity.
+	// Entries before written have been written to file.
+
+	// RI: entries.length is a power of two, mask = entries.length - 1,
+	//     written <= head <= tail <= head + entries.length, maxBytes > 0, maxFiles >= 0
+
+	/**
+	 * Creates a logger with the default capacity and rotation which logs INFO and above.
+	 * @param file is the file to log to, created when the first entry is written.
+	 */
+	public AsyncLogger(File file) {
+		this(file, DEFAULT_CAPACITY, DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES, Level.INFO);
+	}
+
+	/**
+	 * Creates a logger and starts its writer thread.
+	 * @param file is the file to log to, created when the first entry is written.
+	 * @param capacity is about how many entries may wait to be written, rounded up to a power
+	 * 		of two.
+	 * @param maxBytes is the size a log file may grow to before it is rotated.
+	 * @param maxFiles is the number of rotated files kept besides the current one.
+	 * @param threshold is the least serious level which is logged.
+	 * @throws IllegalArgumentException if capacity or maxBytes is not positive or maxFiles is
+	 * 		negative.
+	 */
+	public AsyncLogger(File file, int capacity, long maxBytes, int maxFiles, Level threshold) {
+		if (capacity <= 0 || maxBytes <= 0 || maxFiles < 0) {
+			throw new IllegalArgumentException("The capacity and size limit must be positive.");
+		}
+
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+		this.threshold = threshold;
+
+		int size = Integer.highestOneBit(Math.max(1, capacity * 2 - 1));
+		this.entries = new Entry[size];
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+
+		this.writer = new Thread(this::drain, "AsyncLogger");
+		this.writer.setDaemon(true);
+		this.writer.start();
+
+		this.checkRep();
+	}
+
+	/**
+	 * @param level is a level.
+	 * @return True if entries of the level are logged, so callers can skip building them.
+	 */
+	public boolean isEnabled(Level level) {
+		return level.compareTo(this.threshold) >= 0;
+	}
+
+	/**
+	 * Logs an entry. This never blocks, the entry is written later by the writer thread.
+	 * @param level is how serious the entry is.
+	 * @param message is the message.
+	 * @param thrown is the exception to log the stack trace of or null.
+	 * @return False if the entry was dropped because the buffer was full or the logger closed.
+	 */
+	public boolean log(Level level, String message, Throwable thrown) {
+		if (!this.isEnabled(level)) {
+			return true;
+		}
+		if (!this.running) {
+			this.dropped.increment();
+			return false;
+		}
+
+		// Claim the next slot, unless the writer has not emptied it yet.
+		long pos;
+		int index;
+		do {
+			pos = this.tail.get();
+			index = (int) pos & this.mask;
+			long sequence = this.sequences.get(index);
+			if (sequence < pos) {
+				this.dropped.increment();
+				return false;
+			}
+			if (sequence > pos) {
+				// Another thread claimed the slot first.
+				continue;
+			}
+			if (this.tail.compareAndSet(pos, pos + 1)) {
+				break;
+			}
+		} while (true);
+
+		this.entries[index] = new Entry(level, message, thrown);
+		this.sequences.lazySet(index, pos + 1);
+		return true;
+	}
+
+	/**
+	 * Logs a message at DEBUG.
+	 * @param message is the message.
+	 */
+	public void debug(String message) {
+		this.log(Level.DEBUG, message, null);
+	}
+
+	/**
+	 * Logs a message at INFO.
+	 * @param message is the message.
+	 */
+	public void info(String message) {
+		this.log(Level.INFO, message, null);
+	}
+
+	/**
+	 * Logs a message at WARN.
+	 * @param message is the message.
+	 */
+	public void warn(String message) {
+		this.log(Level.WARN, message, null);
+	}
+
+	/**
+	 * Logs an exception at ERROR.
+	 * @param message is the message.
+	 * @param thrown is the exception or null.
+	 */
+	public void error(String message, Throwable thrown) {
+		this.log(Level.ERROR, message, thrown);
+	}
+
+	/**
+	 * Waits until every entry logged before the call has been written to the file.
+	 * @param timeoutMillis is the longest to wait.
+	 * @return True if the entries were written in time.
+	 */
+	public boolean flush(long timeoutMillis) {
+		long target = this.tail.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (this.written < target && this.writer.isAlive()) {
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			LockSupport.unpark(this.writer);
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+		return this.written >= target;
+	}
+
+	/** Writes the entries logged so far and stops the writer thread. */
+	@Override
+	public void close() {
+		this.running = false;
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Takes entries from the buffer and writes them in batches until the logger is closed. */
+	private void drain() {
+		StringBuilder batch = new StringBuilder();
+
+		while (this.running || this.head < this.tail.get()) {
+			this.take(batch);
+			if (batch.length() == 0) {
+				LockSupport.parkNanos(this, IDLE_NANOS);
+				continue;
+			}
+
+			this.write(batch);
+			batch.setLength(0);
+			this.written = this.head;
+		}
+		this.closeFile();
+	}
+
+	/**
+	 * Takes the ready entries from the buffer and formats them, after a warning if entries
+	 * were dropped since the last batch.
+	 * @param batch is the text to append the entries to.
+	 */
+	private void take(StringBuilder batch) {
+		long dropped = this.dropped.sum();
+		if (dropped > this.droppedReported) {
+			format(batch, new Entry(Level.WARN, (dropped - this.droppedReported)
+					+ " log entries were dropped because the log buffer was full.", null));
+			this.droppedReported = dropped;
+		}
+
+		int count = 0;
+		long pos = this.head;
+		while (count < MAX_BATCH) {
+			int index = (int) pos & this.mask;
+			if (this.sequences.get(index) != pos + 1) {
+				break;
+			}
+
+			Entry entry = this.entries[index];
+			this.entries[index] = null;
+			this.sequences.lazySet(index, pos + this.entries.length);
+			format(batch, entry);
+			pos++;
+			count++;
+		}
+		this.head = pos;
+	}
+
+	/**
+	 * Writes a batch to the file, rotating the file first if it is full.
+	 * @param batch is the formatted entries.
+	 */
+	private void write(StringBuilder batch) {
+		byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+
+		try {
+			if (this.out != null && this.fileBytes + bytes.length > this.maxBytes) {
+				this.closeFile();
+				this.rotate();
+			}
+			if (this.out == null) {
+				this.out = new FileOutputStream(this.file, true);
+				this.fileBytes = this.file.length();
+			}
+
+			this.out.write(bytes);
+			this.out.flush();
+			this.fileBytes += bytes.length;
+			this.batches.incrementAndGet();
+		} catch (IOException e) {
+			// There is nowhere else to log to.
+			System.err.println("Could not write to log file " + this.file + ": "
+					+ e.getMessage());
+			this.closeFile();
+		}
+	}
+
+	/** Renames file to file.1, file.1 to file.2 and so on, deleting the oldest. */
+	private void rotate() {
+		if (this.maxFiles == 0) {
+			this.file.delete();
+			return;
+		}
+
+		new File(this.file.getPath() + "." + this.maxFiles).delete();
+		for (int i = this.maxFiles - 1; i >= 1; i--) {
+			new File(this.file.getPath() + "." + i).renameTo(
+					new File(this.file.getPath() + "." + (i + 1)));
+		}
+		this.file.renameTo(new File(this.file.getPath() + ".1"));
+	}
+
+	/** Closes the current file, if it is open. */
+	private void closeFile() {
+		if (this.out != null) {
+			try {
+				this.out.close();
+			} catch (IOException e) {
+				// The file is abandoned either way.
+			}
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Appends an entry in the log's format.
+	 * @param batch is the text to append to.
+	 * @param entry is the entry.
+	 */
+	private static void format(StringBuilder batch, Entry entry) {
+		LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.millis),
+				ZoneId.systemDefault());
+		batch.append("!ENTRY ").append(entry.level).append(' ').append(time.toLocalDate())
+				.append(' ').append(time.toLocalTime()).append(" [").append(entry.thread)
+				.append("]\n");
+		batch.append("!MESSAGE ").append(entry.message).append('\n');
+
+		if (entry.thrown != null) {
+			StringWriter trace = new StringWriter();
+			entry.thrown.printStackTrace(new PrintWriter(trace));
+			batch.append("!STACK TRACE\n").append(trace);
+		}
+		batch.append('\n');
+	}
+
+	/** @return The number of entries dropped because the buffer was full. */
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+	/** @return The number of entries written to the file. */
+	public long getWritten() {
+		return this.written;
+	}
+
+	/** @return The number of writes made to the file. */
+	public long getBatches() {
+		return this.batches.get();
+	}
+
+	/** @return The number of entries waiting to be written. */
+	public int getQueued() {
+		return (int) (this.tail.get() - this.head);
+	}
+
+	@Override
+	/** @return the string representation of this logger's metrics. */
+	public String toString() {
+		return String.format("%s: %d written in %d writes, %d queued, %d dropped", this.file,
+				this.getWritten(), this.getBatches(), this.getQueued(), this.getDropped());
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (Integer.bitCount(this.entries.length) == 1) : "The capacity must be a power of "
+				+ "two.";
+		assert (this.mask == this.entries.length - 1) : "The mask must select a slot.";
+		assert (this.maxBytes > 0 && this.maxFiles >= 0) : "The rotation must be valid.";
+	}
+
+	/** A log entry, captured when it is logged and formatted when it is written. */
+	private static final class Entry {
+		private final Level level;
+		private final long millis = System.currentTimeMillis();
+		private final String thread = Thread.currentThread().getName();
+		private final String message;
+		private final Throwable thrown;
+
+		/**
+		 * @param level is how serious the entry is.
+		 * @param message is the message.
+		 * @param thrown is the exception or null.
+		 */
+		private Entry(Level level, String message, Throwable thrown) {
+			this.level = level;
+			this.message = message;
+			this.thrown = thrown;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package controller;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A user's balance on every day, for answering what their balance was on a date or how much
+ * it changed between two dates without summing their transactions. The amount of each day is
+ * held in a Fenwick tree (binary indexed tree) over the epoch days the user has transactions
+ * on, so the sum of every day up to a day, and with it the balance on that day, takes
+ * O(log n) steps, as does adding a transaction.
+ *
+ * The balance before the first day is the user's current balance minus every transaction, so
+ * that the balance on the last day is the balance stored with the user.
+ * @author L. James Davidson
+ */
+public class BalanceHistory {
+
+	// Reads the amount of each day of a user's transactions.
+	private static final String SELECT_DAYS = "SELECT day, SUM(price_in_cents) FROM Transactions "
+			+ "WHERE belongsTo = ? GROUP BY day ORDER BY day";
+
+	// Reads a user's current balance.
+	private static final String SELECT_BALANCE = "SELECT balance_in_cents FROM Users "
+			+ "WHERE username = ?";
+
+	// The fewest days a history covers, so adding the first transactions does not regrow it.
+	private static final int MIN_DAYS = 366;
+
+	private final String username;
+	private final long opening;
+	private long firstDay;
+	private long[] days;
+	private long[] tree;
+
+	// AF:
+	// The balance of username at the end of epoch day d is opening plus the sum of days[i]
+	// for 0 <= i <= d - firstDay, where days[i] is the amount of the transactions on epoch day
+	// firstDay + i. tree is the Fenwick tree of days: tree[i] holds the sum of days[j] for
+	// i - (i & -i) <= j < i, for 1 <= i <= days.length.
+
+	// RI: username != null, tree.length == days.length + 1, days.length >= 1
+
+	/**
+	 * Creates a history with no transactions.
+	 * @param username is the user whose balance it holds.
+	 * @param opening is the balance before any transaction in cents.
+	 * @param firstDay is the first epoch day the history covers until it grows.
+	 */
+	BalanceHistory(String username, long opening, long firstDay) {
+		this.username = username;
+		this.opening = opening;
+		this.firstDay = firstDay;
+		this.days = new long[MIN_DAYS];
+		this.tree = new long[MIN_DAYS + 1];
+		this.checkRep();
+	}
+
+	/**
+	 * Reads a user's balance history, summing their transactions by day in SQLite.
+	 * @param stmtCache holds the statements of the connection to read with.
+	 * @param username is the user.
+	 * @return The history or null if there is no such user.
+	 * @throws SQLException if the transactions could not be read.
+	 */
+	static BalanceHistory load(StatementCache stmtCache, String username) throws SQLException {
+		PreparedStatement balance = stmtCache.prepare(SELECT_BALANCE);
+		balance.setString(1, username);
+		long current;
+		try (ResultSet result = balance.executeQuery()) {
+			if (!result.next()) {
+				return null;
+			}
+			current = result.getLong(1);
+		}
+
+		PreparedStatement query = stmtCache.prepare(SELECT_DAYS);
+		query.setString(1, username);
+		long total = 0;
+		long first = 0;
+		long last = -1;
+		long[] byDay = new long[0];
+		try (ResultSet results = query.executeQuery()) {
+			while (results.next()) {
+				long day = results.getLong(1);
+				if (last < first) {
+					first = day;
+				}
+				last = day;
+
+				int i = (int) (day - first);
+				if (i >= byDay.length) {
+					byDay = Arrays.copyOf(byDay, Math.max(i + 1, byDay.length * 2));
+				}
+				byDay[i] = results.getLong(2);
+				total += byDay[i];
+			}
+		}
+
+		// A user without transactions is most likely to add them from today on.
+		BalanceHistory history = new BalanceHistory(username, current - total,
+				last >= first ? first : LocalDate.now().toEpochDay());
+		if (last >= first) {
+			history.rebuild(first, Arrays.copyOf(byDay, (int) (last - first + 1)));
+		}
+		return history;
+	}
+
+	/**
+	 * Adds a transaction to the history.
+	 * @param epochDay is the day of the transaction.
+	 * @param cents is the amount of the transaction.
+	 */
+	synchronized void add(long epochDay, long cents) {
+		if (epochDay < this.firstDay || epochDay >= this.firstDay + this.days.length) {
+			this.grow(epochDay);
+		}
+
+		int i = (int) (epochDay - this.firstDay);
+		this.days[i] += cents;
+		for (int node = i + 1; node < this.tree.length; node += node & -node) {
+			this.tree[node] += cents;
+		}
+	}
+
+	/**
+	 * Makes the history cover a day, at least doubling the days it covers.
+	 * @param epochDay is the day.
+	 */
+	private void grow(long epochDay) {
+		long first = Math.min(this.firstDay, epochDay);
+		long last = Math.max(this.firstDay + this.days.length - 1, epochDay);
+		long length = Math.max(last - first + 1, 2L * this.days.length);
+		if (length > Integer.MAX_VALUE - 1) {
+			throw new IllegalArgumentException("A balance history cannot span " + length
+					+ " days.");
+		}
+
+		// Room is left on the side the history grew towards.
+		if (epochDay < this.firstDay) {
+			first = last - length + 1;
+		}
+		long[] grown = new long[(int) length];
+		System.arraycopy(this.days, 0, grown, (int) (this.firstDay - first), this.days.length);
+		this.rebuild(first, grown);
+	}
+
+	/**
+	 * Replaces the days of the history and builds their Fenwick tree in O(n).
+	 * @param first is the epoch day of days[0].
+	 * @param byDay is the amount of each day, which the history keeps.
+	 */
+	private void rebuild(long first, long[] byDay) {
+		if (byDay.length < MIN_DAYS) {
+			byDay = Arrays.copyOf(byDay, MIN_DAYS);
+		}
+		this.firstDay = first;
+		this.days = byDay;
+		this.tree = new long[byDay.length + 1];
+		for (int node = 1; node < this.tree.length; node++) {
+			this.tree[node] += byDay[node - 1];
+			int parent = node + (node & -node);
+			if (parent < this.tree.length) {
+				this.tree[parent] += this.tree[node];
+			}
+		}
+		this.checkRep();
+	}
+
+	/**
+	 * @param epochDay is a day.
+	 * @return The sum of the transactions on and before the day in cents.
+	 */
+	private long sumThrough(long epochDay) {
+		if (epochDay < this.firstDay) {
+			return 0;
+		}
+		// Clamped before subtracting, which overflows for far days when firstDay is negative.
+		long lastDay = this.firstDay + this.days.length - 1;
+		int node = (int) (Math.min(epochDay, lastDay) - this.firstDay + 1);
+		long sum = 0;
+		for (; node > 0; node -= node & -node) {
+			sum += this.tree[node];
+		}
+		return sum;
+	}
+
+	/**
+	 * @param epochDay is a day.
+	 * @return The user's balance at the end of the day in cents.
+	 */
+	public synchronized long getBalanceOn(long epochDay) {
+		return this.opening + this.sumThrough(epochDay);
+	}
+
+	/**
+	 * @param fromDay is the first epoch day of a range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The change of the user's balance over the days of the range in cents, which is 0
+	 * 		if the range is empty.
+	 */
+	public synchronized long getBalanceChange(long fromDay, long toDay) {
+		if (fromDay > toDay) {
+			return 0;
+		}
+		return this.sumThrough(toDay) - (fromDay == Long.MIN_VALUE ? 0
+				: this.sumThrough(fromDay - 1));
+	}
+
+	/** @return The user whose balance the history holds. */
+	public String getUsername() {
+		return this.username;
+	}
+
+	@Override
+	/** @return the string representation of this history. */
+	public synchronized String toString() {
+		return String.format("%s: %d days from epoch day %d, opening balance %d cents",
+				this.username, this.days.length, this.firstDay, this.opening);
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.username != null) : "The username must be non-null.";
+		assert (this.days.length >= 1) : "The history must cover a day.";
+		assert (this.tree.length == this.days.length + 1) : "The tree must cover every day.";
+	}
+}
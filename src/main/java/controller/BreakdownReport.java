@@ -0,0 +1,328 @@
+package controller;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The totals, counts and averages of a user's transactions in a range of days, grouped by
+ * category, month, week or description. A report is computed where the transactions are: by
+ * a GROUP BY query which SQLite answers from the Transactions indexes, so only one row per
+ * group comes back, or from the user's LedgerSnapshot when one is loaded, without any query.
+ * @author L. James Davidson
+ */
+public final class BreakdownReport {
+
+	/** The ways transactions can be grouped in a report. */
+	public enum Grouping {
+		// Transactions without a category are grouped the way MonthlyTotals and snapshots are.
+		CATEGORY("Category", "COALESCE(category, '" + StatementParser.DEFAULT_CATEGORY + "')"),
+		// Adding the Julian day of 1970-01-01 turns an epoch day into a date SQLite understands.
+		MONTH("Month", "strftime('%Y-%m', day + 2440587.5)"),
+		// Epoch day 0 was a Thursday, so this is the Monday starting the week of the day.
+		WEEK("Week of", "day - ((day + 3) % 7 + 7) % 7"),
+		DESCRIPTION("Description", "description");
+
+		private final String heading;
+		private final String sql;
+
+		/**
+		 * @param heading is the heading of the groups' column in a printed report.
+		 * @param key is the SQL expression which every transaction of a group has in common.
+		 */
+		Grouping(String heading, String key) {
+			this.heading = heading;
+			this.sql = "SELECT " + key + " AS grp, SUM(price_in_cents), COUNT(*) "
+					+ "FROM Transactions WHERE belongsTo = ? AND day BETWEEN ? AND ? "
+					+ "GROUP BY grp ORDER BY grp";
+		}
+
+		/** @return The heading of the groups' column in a printed report. */
+		public String getHeading() {
+			return this.heading;
+		}
+
+		/**
+		 * @return The query of this grouping, whose parameters are the username and the first
+		 * 		and last epoch days of the range.
+		 */
+		String getSql() {
+			return this.sql;
+		}
+	}
+
+	/** The transactions of a report which have the same value of its grouping. */
+	public static final class Group {
+		private final String label;
+		private final long totalCents;
+		private final long count;
+
+		/**
+		 * @param label is the value the transactions of the group have in common.
+		 * @param totalCents is the sum of the amounts of the transactions.
+		 * @param count is the number of transactions.
+		 */
+		Group(String label, long totalCents, long count) {
+			this.label = label;
+			this.totalCents = totalCents;
+			this.count = count;
+		}
+
+		/** @return The value the transactions of the group have in common. */
+		public String getLabel() {
+			return this.label;
+		}
+
+		/** @return The sum of the amounts of the transactions in cents. */
+		public long getTotalCents() {
+			return this.totalCents;
+		}
+
+		/** @return The number of transactions. */
+		public long getCount() {
+			return this.count;
+		}
+
+		/** @return The average amount of the transactions in cents. */
+		public double getAverageCents() {
+			return this.count == 0 ? 0 : (double) this.totalCents / this.count;
+		}
+	}
+
+	private static final int CENTS_IN_A_DOLLAR = 100;
+
+	private final String username;
+	private final Grouping grouping;
+	private final long fromDay;
+	private final long toDay;
+	private final List<Group> groups;
+	private final boolean fromSnapshot;
+
+	// AF:
+	// The transactions of username from epoch day fromDay to toDay grouped by grouping, with
+	// one entry of groups per group in order of label. fromSnapshot is true if the groups were
+	// computed from a LedgerSnapshot instead of by SQLite.
+
+	// RI: username, grouping and groups != null, no group of groups is empty
+
+	/**
+	 * Creates a report of groups which have already been computed.
+	 * @param username is the user whose transactions were grouped.
+	 * @param grouping is how the transactions were grouped.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @param groups are the groups in order of label.
+	 * @param fromSnapshot is true if the groups were computed from a LedgerSnapshot.
+	 */
+	private BreakdownReport(String username, Grouping grouping, long fromDay, long toDay,
+			List<Group> groups, boolean fromSnapshot) {
+		this.username = username;
+		this.grouping = grouping;
+		this.fromDay = fromDay;
+		this.toDay = toDay;
+		this.groups = Collections.unmodifiableList(groups);
+		this.fromSnapshot = fromSnapshot;
+		this.checkRep();
+	}
+
+	/**
+	 * Creates a report from the results of the query of a grouping.
+	 * @param username is the user whose transactions were grouped.
+	 * @param grouping is how the transactions were grouped.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @param results holds the results of grouping.getSql().
+	 * @return The report.
+	 * @throws SQLException if the results could not be read.
+	 */
+	static BreakdownReport fromResults(String username, Grouping grouping, long fromDay,
+			long toDay, ResultSet results) throws SQLException {
+		List<Group> groups = new ArrayList<Group>();
+		while (results.next()) {
+			String label = grouping == Grouping.WEEK
+					? LocalDate.ofEpochDay(results.getLong(1)).toString() : results.getString(1);
+			groups.add(new Group(label, results.getLong(2), results.getLong(3)));
+		}
+		return new BreakdownReport(username, grouping, fromDay, toDay, groups, false);
+	}
+
+	/**
+	 * Creates a report from a snapshot of the user's ledger.
+	 * @param snapshot is the snapshot.
+	 * @param grouping is how the transactions are grouped.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The report.
+	 */
+	static BreakdownReport fromSnapshot(LedgerSnapshot snapshot, Grouping grouping, long fromDay,
+			long toDay) {
+		List<Group> groups;
+		synchronized (snapshot) {
+			switch (grouping) {
+				case CATEGORY:
+					groups = byId(snapshot.sumByCategory(fromDay, toDay),
+							snapshot.countByCategory(fromDay, toDay), snapshot, true);
+					break;
+				case DESCRIPTION:
+					groups = byId(snapshot.sumByDescription(fromDay, toDay),
+							snapshot.countByDescription(fromDay, toDay), snapshot, false);
+					break;
+				default:
+					groups = byPeriod(snapshot, grouping, fromDay, toDay);
+					break;
+			}
+		}
+		return new BreakdownReport(snapshot.getUsername(), grouping, fromDay, toDay, groups,
+				true);
+	}
+
+	/**
+	 * Makes the groups of a snapshot's categories or descriptions.
+	 * @param sums holds the sum of each category or description by id.
+	 * @param counts holds the count of each category or description by id.
+	 * @param snapshot is the snapshot the ids are from.
+	 * @param categories is true for categories and false for descriptions.
+	 * @return The groups which have transactions in order of label.
+	 */
+	private static List<Group> byId(long[] sums, int[] counts, LedgerSnapshot snapshot,
+			boolean categories) {
+		List<Group> groups = new ArrayList<Group>();
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] > 0) {
+				String label = categories ? snapshot.getCategory(id) : snapshot.getDescription(id);
+				groups.add(new Group(label, sums[id], counts[id]));
+			}
+		}
+
+		// Ids are in the order the values were first seen, not in order of label.
+		groups.sort((a, b) -> a.getLabel().compareTo(b.getLabel()));
+		return groups;
+	}
+
+	/**
+	 * Makes the groups of a snapshot's months or weeks. The rows are in order of day, so each
+	 * period is a run of rows found with a binary search.
+	 * @param snapshot is the snapshot.
+	 * @param grouping is MONTH or WEEK.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The periods which have transactions in order.
+	 */
+	private static List<Group> byPeriod(LedgerSnapshot snapshot, Grouping grouping,
+			long fromDay, long toDay) {
+		List<Group> groups = new ArrayList<Group>();
+		int row = snapshot.firstRowOnOrAfter(fromDay);
+		int end = snapshot.firstRowAfter(toDay);
+		while (row < end) {
+			LocalDate day = LocalDate.ofEpochDay(snapshot.getEpochDay(row));
+			String label;
+			long nextPeriod;
+			if (grouping == Grouping.MONTH) {
+				label = YearMonth.from(day).toString();
+				nextPeriod = day.withDayOfMonth(1).plusMonths(1).toEpochDay();
+			} else {
+				LocalDate monday = day.minusDays(Math.floorMod(day.toEpochDay() + 3, 7));
+				label = monday.toString();
+				nextPeriod = monday.plusDays(7).toEpochDay();
+			}
+
+			// The period ends at the range's end if that comes first.
+			long lastDay = Math.min(nextPeriod - 1, toDay);
+			int count = snapshot.count(day.toEpochDay(), lastDay);
+			groups.add(new Group(label, snapshot.sumCents(day.toEpochDay(), lastDay), count));
+			row += count;
+		}
+		return groups;
+	}
+
+	/** @return The user whose transactions were grouped. */
+	public String getUsername() {
+		return this.username;
+	}
+
+	/** @return How the transactions were grouped. */
+	public Grouping getGrouping() {
+		return this.grouping;
+	}
+
+	/** @return The first epoch day of the range. */
+	public long getFromDay() {
+		return this.fromDay;
+	}
+
+	/** @return The last epoch day of the range. */
+	public long getToDay() {
+		return this.toDay;
+	}
+
+	/** @return The groups which have transactions in order of label. */
+	public List<Group> getGroups() {
+		return this.groups;
+	}
+
+	/** @return True if the report was computed from a LedgerSnapshot instead of by SQLite. */
+	public boolean isFromSnapshot() {
+		return this.fromSnapshot;
+	}
+
+	/** @return The sum of the amounts of every transaction in the report in cents. */
+	public long getTotalCents() {
+		long total = 0;
+		for (Group group : this.groups) {
+			total += group.getTotalCents();
+		}
+		return total;
+	}
+
+	/** @return The number of transactions in the report. */
+	public long getCount() {
+		long count = 0;
+		for (Group group : this.groups) {
+			count += group.getCount();
+		}
+		return count;
+	}
+
+	@Override
+	/** @return the report as a table with a row per group and a row of totals. */
+	public String toString() {
+		int labelLen = Math.max(this.grouping.getHeading().length(), "Total".length());
+		for (Group group : this.groups) {
+			labelLen = Math.max(labelLen, group.getLabel().length());
+		}
+
+		DecimalFormat df = new DecimalFormat("0.00");
+		String row = "%-" + labelLen + "s %14s %8s %12s%n";
+		StringBuilder table = new StringBuilder();
+		table.append(String.format(row, this.grouping.getHeading(), "Total", "Count", "Average"));
+		for (Group group : this.groups) {
+			table.append(String.format(row, group.getLabel(),
+					df.format((double) group.getTotalCents() / CENTS_IN_A_DOLLAR),
+					group.getCount(), df.format(group.getAverageCents() / CENTS_IN_A_DOLLAR)));
+		}
+
+		long count = this.getCount();
+		table.append(String.format(row, "Total",
+				df.format((double) this.getTotalCents() / CENTS_IN_A_DOLLAR), count,
+				df.format(count == 0 ? 0 : (double) this.getTotalCents() / count
+						/ CENTS_IN_A_DOLLAR)));
+		return table.toString();
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.username != null) : "The username must be non-null.";
+		assert (this.grouping != null) : "The grouping must be non-null.";
+		assert (this.groups != null) : "The groups must be non-null.";
+		for (Group group : this.groups) {
+			assert (group.getCount() > 0) : "Every group must have transactions.";
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package controller;
+
+/**
+ * Holds the outcome of a bulk insert of transactions into the database.
+ * @author L. James Davidson
+ */
+public final class BulkInsertResult {
+
+	private static final double NANOS_IN_A_SECOND = 1_000_000_000.0;
+
+	private final long rows;
+	private final long duplicates;
+	private final int batches;
+	private final long elapsedNanos;
+	private final long balanceInCents;
+
+	/**
+	 * Creates an immutable bulk insert result.
+	 * @param rows is the number of transactions which were inserted.
+	 * @param duplicates is the number of transactions skipped since they were already stored.
+	 * @param batches is the number of committed batches the rows were inserted in.
+	 * @param elapsedNanos is how long the insert took in nanoseconds.
+	 * @param balanceInCents is the user's balance after the last committed batch.
+	 */
+	public BulkInsertResult(long rows, long duplicates, int batches, long elapsedNanos, 
+			long balanceInCents) {
+		this.rows = rows;
+		this.duplicates = duplicates;
+		this.batches = batches;
+		this.elapsedNanos = elapsedNanos;
+		this.balanceInCents = balanceInCents;
+	}
+
+	/** @return The number of transactions which were inserted. */
+	public long getRows() {
+		return this.rows;
+	}
+
+	/** @return The number of transactions skipped because they were already stored. */
+	public long getDuplicates() {
+		return this.duplicates;
+	}
+
+	/** @return The number of committed batches. */
+	public int getBatches() {
+		return this.batches;
+	}
+
+	/** @return How long the insert took in nanoseconds. */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	/** @return The user's balance in cents after the insert. */
+	public long getBalanceInCents() {
+		return this.balanceInCents;
+	}
+
+	/** @return The insert throughput in rows per second. */
+	public double getRowsPerSecond() {
+		if (this.elapsedNanos <= 0) {
+			return 0;
+		}
+		return this.rows * NANOS_IN_A_SECOND / this.elapsedNanos;
+	}
+
+	@Override
+	/** @return the string representation of this result. */
+	public String toString() {
+		return String.format("%d rows in %d batches, %.2f s (%.0f rows/sec)", this.rows,
+				this.batches, this.elapsedNanos / NANOS_IN_A_SECOND, this.getRowsPerSecond());
+	}
+}
@@ -0,0 +1,122 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Holds the transaction categories in memory so that listing and validating categories does not
+ * query the database. Lookups ignore case and take constant time. The categories are kept as an
+ * immutable snapshot which is replaced whenever a category is added, so the registry can be read
+ * from any thread without locking. Every change moves the registry on to a new generation, and 
+ * categories read from the database are only loaded if no change happened while they were read, 
+ * so a connection which read before another added a category cannot drop the new category.
+ * @author L. James Davidson
+ */
+public class CategoryRegistry {
+
+	// The current categories or null if they have not been loaded or were invalidated.
+	private volatile Snapshot snapshot;
+
+	// The number of changes made to the registry, only changed while holding its lock.
+	private volatile long generation;
+
+	/** @return True if the categories have been loaded since the last invalidation. */
+	public boolean isLoaded() {
+		return this.snapshot != null;
+	}
+
+	/**
+	 * @return The generation of the registry, to be read before reading the categories from 
+	 * 		the database and given to load().
+	 */
+	public long getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * Replaces the categories in this registry, unless a category was added or the registry 
+	 * was invalidated since they were read.
+	 * @param categories are the category names as stored in the database.
+	 * @param generation is the generation of the registry before the categories were read.
+	 * @return True if the categories were loaded, false if they may be out of date.
+	 */
+	public synchronized boolean load(String[] categories, long generation) {
+		if (generation != this.generation) {
+			return false;
+		}
+		this.snapshot = new Snapshot(categories.clone());
+		return true;
+	}
+
+	/**
+	 * Adds a category to this registry. Only moves the generation on if the registry is not 
+	 * loaded, since the category will be read from the database with the rest when it is.
+	 * @param category is the name of the new category as stored in the database.
+	 */
+	public synchronized void add(String category) {
+		this.generation++;
+		Snapshot current = this.snapshot;
+		if (current == null || current.byFoldedName.containsKey(fold(category))) {
+			return;
+		}
+
+		String[] names = Arrays.copyOf(current.names, current.names.length + 1);
+		names[names.length - 1] = category;
+		this.snapshot = new Snapshot(names);
+	}
+
+	/** Forgets the categories so that they are reloaded from the database on next use. */
+	public synchronized void invalidate() {
+		this.generation++;
+		this.snapshot = null;
+	}
+
+	/**
+	 * @return A copy of the categories in the order they were loaded and added, or null if the
+	 * 		registry is not loaded.
+	 */
+	public String[] getCategories() {
+		Snapshot current = this.snapshot;
+		return current == null ? null : current.names.clone();
+	}
+
+	/**
+	 * Finds a category ignoring case.
+	 * @param category is the category name to look for.
+	 * @return The category with the casing stored in the database, or null if there is no such
+	 * 		category or the registry is not loaded.
+	 */
+	public String lookup(String category) {
+		Snapshot current = this.snapshot;
+		if (current == null || category == null) {
+			return null;
+		}
+		return current.byFoldedName.get(fold(category));
+	}
+
+	/**
+	 * @param category is a category name.
+	 * @return The case folded form of the name used as the lookup key.
+	 */
+	private static String fold(String category) {
+		return category.toLowerCase(Locale.ROOT);
+	}
+
+	/** An immutable set of categories. */
+	private static final class Snapshot {
+
+		private final String[] names;
+		private final Map<String, String> byFoldedName;
+
+		/** @param names are the category names, which must not be modified afterwards. */
+		Snapshot(String[] names) {
+			this.names = names;
+			this.byFoldedName = new HashMap<String, String>(names.length * 2);
+			for (String name : names) {
+				this.byFoldedName.put(fold(name), name);
+			}
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package controller;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import model.Transaction.TransactionBuilder;
+
+/**
+ * Streams the transactions out of a CSV bank statement. The first record must be a header naming
+ * the columns. A date, a description, and either an amount column or debit and credit columns are
+ * required, category and memo columns are optional. Quoted fields may contain commas, quotes
+ * written as "", and line breaks. A row with a field longer than MAX_FIELD_CHARS, or a quote
+ * which is never closed, is rejected without buffering the rest of the statement.
+ * @author L. James Davidson
+ */
+public class CsvStatementParser implements StatementParser {
+
+	// Header names which are recognized for each column.
+	private static final String[] DATE_HEADERS = {"date", "posted date", "transaction date",
+			"posting date"};
+	private static final String[] DESCRIPTION_HEADERS = {"description", "payee", "name",
+			"merchant"};
+	private static final String[] AMOUNT_HEADERS = {"amount", "amount in dollars"};
+	private static final String[] DEBIT_HEADERS = {"debit", "withdrawal", "withdrawals"};
+	private static final String[] CREDIT_HEADERS = {"credit", "deposit", "deposits"};
+	private static final String[] CATEGORY_HEADERS = {"category"};
+	private static final String[] MEMO_HEADERS = {"memo", "notes", "note"};
+
+	// Date formats used by banks, tried in order until one matches.
+	private static final DateTimeFormatter[] DATE_FORMATS = {
+			DateTimeFormatter.ISO_LOCAL_DATE,
+			DateTimeFormatter.ofPattern("M/d/yyyy"),
+			DateTimeFormatter.ofPattern("M/d/yy"),
+			DateTimeFormatter.BASIC_ISO_DATE };
+
+	private static final int NO_COLUMN = -1;
+
+	/**
+	 * The most characters a field may have. The widest column of a transaction holds 30, and
+	 * the importer cuts longer descriptions and memos to fit, so only an unclosed quote or a
+	 * corrupt file reaches this.
+	 */
+	public static final int MAX_FIELD_CHARS = 256;
+
+	// Source of the statement, read one character at a time through its own buffer.
+	private final Reader in;
+	private final char[] buf = new char[8192];
+	private int bufPos;
+	private int bufLen;
+
+	// Line of the statement currently being read and the line the current record started on.
+	private long line = 1;
+	private long recordLine = 1;
+
+	// Why the current record is malformed, or null if it is not.
+	private String recordError;
+
+	// Reused between records to avoid allocating per row.
+	private final List<String> fields = new ArrayList<String>();
+	private final StringBuilder field = new StringBuilder();
+
+	// Column indexes found in the header.
+	private final int dateCol;
+	private final int descriptionCol;
+	private final int amountCol;
+	private final int debitCol;
+	private final int creditCol;
+	private final int categoryCol;
+	private final int memoCol;
+
+	// The last date format which matched, tried first for the next row.
+	private DateTimeFormatter dateFormat = DATE_FORMATS[0];
+
+	/**
+	 * Creates a parser and reads the header of the statement.
+	 * @param in is the reader of the CSV statement, closed when this parser is closed.
+	 * @throws IOException if the statement could not be read.
+	 * @throws ParseException if the statement has no header or is missing required columns.
+	 */
+	public CsvStatementParser(Reader in) throws IOException, ParseException {
+		this.in = in;
+
+		if (!this.readRecord()) {
+			throw new ParseException("The statement is empty.", 0);
+		} else if (this.recordError != null) {
+			throw new ParseException("The statement header " + this.recordError, 0);
+		}
+
+		// Normalize header names so that the columns can be found in any case.
+		List<String> header = new ArrayList<String>(this.fields.size());
+		for (String name : this.fields) {
+			String normalized = name.trim().toLowerCase(Locale.ROOT);
+			// Drop a byte order mark at the start of the file.
+			if (normalized.startsWith("\uFEFF")) {
+				normalized = normalized.substring(1);
+			}
+			header.add(normalized);
+		}
+
+		this.dateCol = findColumn(header, DATE_HEADERS);
+		this.descriptionCol = findColumn(header, DESCRIPTION_HEADERS);
+		this.amountCol = findColumn(header, AMOUNT_HEADERS);
+		this.debitCol = findColumn(header, DEBIT_HEADERS);
+		this.creditCol = findColumn(header, CREDIT_HEADERS);
+		this.categoryCol = findColumn(header, CATEGORY_HEADERS);
+		this.memoCol = findColumn(header, MEMO_HEADERS);
+
+		if (this.dateCol == NO_COLUMN || this.descriptionCol == NO_COLUMN) {
+			throw new ParseException("The statement header must have a date and a description "
+					+ "column.", 0);
+		}
+		if (this.amountCol == NO_COLUMN
+				&& (this.debitCol == NO_COLUMN || this.creditCol == NO_COLUMN)) {
+			throw new ParseException("The statement header must have an amount column or both "
+					+ "debit and credit columns.", 0);
+		}
+	}
+
+	@Override
+	public TransactionBuilder next() throws IOException, ParseException {
+		// Skip blank lines.
+		do {
+			if (!this.readRecord()) {
+				return null;
+			}
+		} while (this.recordError == null && this.fields.size() == 1
+				&& this.fields.get(0).trim().isEmpty());
+
+		if (this.recordError != null) {
+			throw new ParseException("Line " + this.recordLine + ": the row " + this.recordError,
+					(int) this.recordLine);
+		}
+
+		int amount;
+		try {
+			if (this.amountCol != NO_COLUMN) {
+				amount = StatementParser.parseCents(this.get(this.amountCol));
+			} else {
+				// Debits are withdrawals whatever sign the bank wrote them with.
+				String debit = this.get(this.debitCol).trim();
+				String credit = this.get(this.creditCol).trim();
+				amount = debit.isEmpty() ? Math.abs(StatementParser.parseCents(credit))
+						: -Math.abs(StatementParser.parseCents(debit));
+			}
+		} catch (NumberFormatException e) {
+			throw new ParseException("Line " + this.recordLine + ": " + e.getMessage(),
+					(int) this.recordLine);
+		}
+
+		TransactionBuilder builder = StatementParser.newBuilder(amount);
+		builder.setDescription(this.get(this.descriptionCol).trim());
+		builder.setDate(this.parseDate(this.get(this.dateCol).trim()));
+		builder.setMemo(this.memoCol == NO_COLUMN ? "" : this.get(this.memoCol).trim());
+
+		String category = this.categoryCol == NO_COLUMN ? "" : this.get(this.categoryCol).trim();
+		if (category.isEmpty()) {
+			category = builder.isADeposit() ? DEPOSIT_CATEGORY : DEFAULT_CATEGORY;
+		}
+		builder.setCategory(category);
+
+		return builder;
+	}
+
+	@Override
+	public long getLine() {
+		return this.recordLine;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	/**
+	 * Gets a field of the current record.
+	 * @param col is the index of the field.
+	 * @return The field, or the empty string if the record is too short.
+	 */
+	private String get(int col) {
+		return col < this.fields.size() ? this.fields.get(col) : "";
+	}
+
+	/**
+	 * Parses a date in any of the supported formats.
+	 * @param date is the date text.
+	 * @return The parsed date.
+	 * @throws ParseException if the date matches none of the supported formats.
+	 */
+	private LocalDate parseDate(String date) throws ParseException {
+		try {
+			return LocalDate.parse(date, this.dateFormat);
+		} catch (DateTimeParseException e) {
+			// Fall through to trying every format.
+		}
+
+		for (DateTimeFormatter format : DATE_FORMATS) {
+			try {
+				LocalDate parsed = LocalDate.parse(date, format);
+				this.dateFormat = format;
+				return parsed;
+			} catch (DateTimeParseException e) {
+				// Try the next format.
+			}
+		}
+		throw new ParseException("Line " + this.recordLine + ": invalid date '" + date + "'.",
+				(int) this.recordLine);
+	}
+
+	/**
+	 * Reads the next record of the statement into fields. Characters of a field past
+	 * MAX_FIELD_CHARS are read but not kept, and recordError says why a record is malformed.
+	 * @return False if the end of the statement was reached before any record was read.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private boolean readRecord() throws IOException {
+		this.recordLine = this.line;
+		this.recordError = null;
+		this.fields.clear();
+		this.field.setLength(0);
+		boolean inQuotes = false;
+		boolean readAny = false;
+
+		while (true) {
+			int c = this.read();
+			if (c < 0) {
+				if (!readAny) {
+					return false;
+				}
+				if (inQuotes) {
+					this.recordError = "has a quote which is never closed.";
+				}
+				this.fields.add(this.field.toString());
+				return true;
+			}
+			readAny = true;
+
+			if (inQuotes) {
+				if (c == '"') {
+					// A doubled quote is an escaped quote, otherwise the quoted section ends.
+					if (this.peek() == '"') {
+						this.read();
+						this.append('"');
+					} else {
+						inQuotes = false;
+					}
+				} else {
+					if (c == '\n') {
+						this.line++;
+					}
+					this.append((char) c);
+				}
+			} else if (c == '"') {
+				inQuotes = true;
+			} else if (c == ',') {
+				this.fields.add(this.field.toString());
+				this.field.setLength(0);
+			} else if (c == '\r' || c == '\n') {
+				if (c == '\r' && this.peek() == '\n') {
+					this.read();
+				}
+				this.line++;
+				this.fields.add(this.field.toString());
+				return true;
+			} else {
+				this.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Adds a character to the field being read, unless the field is already as long as a field
+	 * may be, when the record is marked malformed instead. The rest of the record is still read
+	 * so that the next record starts in the right place.
+	 * @param c is the character.
+	 */
+	private void append(char c) {
+		if (this.field.length() < MAX_FIELD_CHARS) {
+			this.field.append(c);
+		} else if (this.recordError == null) {
+			this.recordError = "has a field longer than " + MAX_FIELD_CHARS
+					+ " characters, or a quote which is not closed.";
+		}
+	}
+
+	/**
+	 * @return The next character of the statement or -1 at the end of the statement.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private int read() throws IOException {
+		if (this.bufPos == this.bufLen && !this.fill()) {
+			return -1;
+		}
+		return this.buf[this.bufPos++];
+	}
+
+	/**
+	 * @return The next character of the statement without consuming it or -1 at the end.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private int peek() throws IOException {
+		if (this.bufPos == this.bufLen && !this.fill()) {
+			return -1;
+		}
+		return this.buf[this.bufPos];
+	}
+
+	/**
+	 * Refills the buffer from the reader.
+	 * @return False if the end of the statement was reached.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = this.in.read(this.buf, 0, this.buf.length);
+		} while (n == 0);
+
+		if (n < 0) {
+			return false;
+		}
+		this.bufPos = 0;
+		this.bufLen = n;
+		return true;
+	}
+
+	/**
+	 * Finds the first header which matches one of the given names.
+	 * @param header are the normalized header names.
+	 * @param names are the names accepted for the column.
+	 * @return The index of the column or NO_COLUMN if there is none.
+	 */
+	private static int findColumn(List<String> header, String[] names) {
+		for (String name : names) {
+			int index = header.indexOf(name);
+			if (index >= 0) {
+				return index;
+			}
+		}
+		return NO_COLUMN;
+	}
+}
@@ -0,0 +1,130 @@
+package controller;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import model.Transaction;
+
+/**
+ * Reads a user's transaction history a page at a time. Each page is selected with its own
+ * query which continues after the last row of the previous page, so only one page is held in
+ * memory and no result set is left open between pages. Transactions added while paging are
+ * included if they sort after the current position.
+ * @author L. James Davidson
+ */
+public class HistoryCursor {
+
+	/** The default number of transactions in a page. */
+	public static final int DEFAULT_PAGE_SIZE = 25;
+
+	private final TransactionsDB db;
+	private final HistoryQuery query;
+	private final int pageSize;
+
+	// The sort keys and rowid of the last row read, or null before the first page.
+	private Object[] lastKey;
+	private boolean hasNext;
+	private long rowsRead;
+
+	// AF:
+	// Reads the rows of query from db in pages of at most pageSize rows. The next page starts
+	// after lastKey. hasNext is false once a page came back short or could not be read.
+
+	// RI: db, query != null, pageSize > 0, rowsRead >= 0
+
+	/**
+	 * Creates a cursor positioned before the first transaction of a query.
+	 * @param db is the database holding the transactions.
+	 * @param query is the history query to read.
+	 * @param pageSize is the most transactions returned by each page.
+	 * @throws IllegalArgumentException if pageSize is not positive.
+	 */
+	HistoryCursor(TransactionsDB db, HistoryQuery query, int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("The page size must be positive.");
+		}
+
+		this.db = db;
+		this.query = query;
+		this.pageSize = pageSize;
+		this.hasNext = true;
+
+		this.checkRep();
+	}
+
+	/** @return True if there may be more transactions to read. */
+	public boolean hasNext() {
+		return this.hasNext;
+	}
+
+	/** @return The number of transactions read so far. */
+	public long getRowsRead() {
+		return this.rowsRead;
+	}
+
+	/** @return The most transactions returned by each page. */
+	public int getPageSize() {
+		return this.pageSize;
+	}
+
+	/**
+	 * Reads the next page of transactions.
+	 * @return The next transactions in order, which is empty once the history has been read,
+	 * 		or null if the page could not be read.
+	 */
+	public List<Transaction> nextPage() {
+		if (!this.hasNext) {
+			return Collections.emptyList();
+		}
+
+		List<Transaction> page = new ArrayList<Transaction>(this.pageSize);
+		List<HistoryQuery.Attribute> orderBy = this.query.getOrderBy();
+
+		long start = System.nanoTime();
+		String sql = this.query.getPageSql(this.lastKey == null);
+		try {
+			PreparedStatement stmt = this.db.getStatementCache().prepare(sql);
+			// Ask for one extra row to know whether there is another page without a query.
+			this.query.bindPage(stmt, this.lastKey, this.pageSize + 1);
+			stmt.setFetchSize(this.pageSize + 1);
+
+			Object[] key = this.lastKey;
+			try (ResultSet results = stmt.executeQuery()) {
+				while (page.size() < this.pageSize && results.next()) {
+					page.add(TransactionsDB.readTransaction(results));
+
+					key = new Object[orderBy.size() + 1];
+					for (int i = 0; i < orderBy.size(); i++) {
+						key[i] = results.getObject(HistoryQuery.SORT_KEY_PREFIX + i);
+					}
+					key[orderBy.size()] = results.getLong("rowid");
+				}
+				this.hasNext = page.size() == this.pageSize && results.next();
+			}
+			this.db.recordQuery(stmt, sql, start, page.size());
+
+			this.lastKey = key;
+			this.rowsRead += page.size();
+			return page;
+
+		} catch (SQLException e) {
+			this.hasNext = false;
+			TransactionHelper.printErrorToLog(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.db != null) : "The database must be non-null.";
+		assert (this.query != null) : "The query must be non-null.";
+		assert (this.pageSize > 0) : "The page size must be positive.";
+		assert (this.rowsRead >= 0) : "The rows read must not be negative.";
+	}
+}
@@ -0,0 +1,367 @@
+package controller;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parameterized query of a user's transaction history. The SQL text of a query only depends on
+ * its shape, which attributes it orders and filters by and how many filters each has, while the
+ * filter values are bound as parameters. Queries of the same shape therefore share one cached
+ * prepared statement, and user input never becomes part of the SQL. A query can also be read a
+ * page at a time, continuing after the last row of the previous page (keyset pagination), so
+ * that reading a page costs the same however deep into the history it is.
+ * @author L. James Davidson
+ */
+public final class HistoryQuery {
+
+	/**
+	 * Attributes of a transaction which the history can be ordered and filtered by. The 
+	 * description, date and price are always written, but a transaction may have no category 
+	 * or memo. A row value holding a NULL compares as NULL, so pages are ordered by a sort key 
+	 * which reads a missing category or memo the way TransactionsDB reads it, and a filter on 
+	 * the value read in place of NULL also matches the rows where it is missing.
+	 */
+	public enum Attribute {
+		DESCRIPTION("description", null),
+		DATE("day", null),
+		PRICE("price_in_cents", null),
+		CATEGORY("category", StatementParser.DEFAULT_CATEGORY),
+		MEMO("memo", "");
+
+		private final String column;
+		private final String missing;
+		private final String sortKey;
+
+		/**
+		 * @param column is the name of the attribute's column in the Transactions table.
+		 * @param missing is the value read in place of NULL, or null if the column is never NULL.
+		 */
+		Attribute(String column, String missing) {
+			this.column = column;
+			this.missing = missing;
+			this.sortKey = missing == null ? column : "IFNULL(" + column + ", '" + missing + "')";
+		}
+
+		/** @return The name of this attribute's column in the Transactions table. */
+		public String getColumn() {
+			return this.column;
+		}
+
+		/** @return The SQL expression this attribute is ordered by, which is never NULL. */
+		public String getSortKey() {
+			return this.sortKey;
+		}
+
+		/**
+		 * @return The value read in place of NULL, or null if the column is never NULL.
+		 */
+		public String getMissing() {
+			return this.missing;
+		}
+	}
+
+	/** The prefix of the names the page queries select each sort key as, followed by its index. */
+	public static final String SORT_KEY_PREFIX = "sort_key_";
+
+	/** The columns selected by every history query, in order. */
+	public static final String SELECTED_COLUMNS =
+			"description, price_in_cents, day, category, memo";
+
+	private final String username;
+	private final List<Attribute> orderBy;
+	private final String sql;
+	private final String firstPageSql;
+	private final String nextPageSql;
+	private final Object[] params;
+
+	// AF:
+	// Selects the transactions of username which match at least one filter of every filtered
+	// attribute, ordered by the attributes in orderBy. sql holds a '?' for each of params.
+	// The page queries also order by rowid, which makes the order total, and select the
+	// rowid and sort keys. nextPageSql continues after the row whose sort keys and rowid are 
+	// bound after params.
+
+	// RI: username != null, orderBy is non-empty and has no duplicates, sql, firstPageSql and
+	// nextPageSql != null, params[0] == username
+
+	/**
+	 * Creates an immutable history query using the builder object.
+	 * @param builder is a HistoryQueryBuilder holding the ordering and filters of the query.
+	 */
+	private HistoryQuery(HistoryQueryBuilder builder) {
+		this.username = builder.username;
+		this.orderBy = Collections.unmodifiableList(new ArrayList<Attribute>(builder.orderBy));
+
+		List<Object> values = new ArrayList<Object>();
+		values.add(builder.username);
+
+		StringBuilder stmt = new StringBuilder("SELECT ").append(SELECTED_COLUMNS)
+				.append(" FROM Transactions WHERE belongsTo = ?");
+
+		// Filters are written in attribute order so the text only depends on the query's shape.
+		for (Map.Entry<Attribute, List<Filter>> entry : builder.filters.entrySet()) {
+			String column = entry.getKey().getColumn();
+			List<Filter> filters = entry.getValue();
+
+			// 'or' the filters which have the same attribute together, equalities before ranges.
+			stmt.append(" AND (");
+			boolean first = true;
+			for (Filter filter : filters) {
+				if (!filter.isRange()) {
+					stmt.append(first ? "" : " OR ");
+					values.add(filter.lower);
+					// Compared with the column as written so that its index can still be used.
+					String missing = entry.getKey().getMissing();
+					if (missing == null) {
+						stmt.append(column).append(" = ?");
+					} else {
+						stmt.append("(").append(column).append(" = ? OR (? = '").append(missing)
+								.append("' AND ").append(column).append(" IS NULL))");
+						values.add(filter.lower);
+					}
+					first = false;
+				}
+			}
+			for (Filter filter : filters) {
+				if (filter.isRange()) {
+					stmt.append(first ? "" : " OR ").append(column).append(" BETWEEN ? AND ?");
+					values.add(filter.lower);
+					values.add(filter.upper);
+					first = false;
+				}
+			}
+			stmt.append(")");
+		}
+
+		StringBuilder columns = new StringBuilder();
+		StringBuilder keys = new StringBuilder();
+		for (int i = 0; i < this.orderBy.size(); i++) {
+			String sortKey = this.orderBy.get(i).getSortKey();
+			columns.append(i > 0 ? ", " : "").append(sortKey);
+			keys.append(", ").append(sortKey).append(" AS ").append(SORT_KEY_PREFIX).append(i);
+		}
+
+		String where = stmt.substring(stmt.indexOf(" FROM "));
+		this.sql = stmt.append(" ORDER BY ").append(columns).toString();
+
+		// The rowid breaks ties between rows with the same ordering values.
+		String pageOrder = " ORDER BY " + columns + ", rowid LIMIT ?";
+		StringBuilder keyset = new StringBuilder(" AND (").append(columns).append(", rowid) > (");
+		for (int i = 0; i <= this.orderBy.size(); i++) {
+			keyset.append(i > 0 ? ", ?" : "?");
+		}
+		keyset.append(")");
+
+		String select = "SELECT " + SELECTED_COLUMNS + ", rowid" + keys;
+		this.firstPageSql = select + where + pageOrder;
+		this.nextPageSql = select + where + keyset + pageOrder;
+		this.params = values.toArray();
+
+		this.checkRep();
+	}
+
+	/** @return The user whose transactions this query selects. */
+	public String getUsername() {
+		return this.username;
+	}
+
+	/** @return The attributes the transactions are ordered by, most significant first. */
+	public List<Attribute> getOrderBy() {
+		return this.orderBy;
+	}
+
+	/** @return The SQL of this query with a '?' in place of every filter value. */
+	public String getSql() {
+		return this.sql;
+	}
+
+	/**
+	 * @param first is true for the first page of the query and false for the pages after it.
+	 * @return The SQL which selects a page of this query with HistoryQuery.SELECTED_COLUMNS, 
+	 * 		the rowid and the sort key of each ordering attribute named SORT_KEY_PREFIX and its 
+	 * 		index, with a '?' in place of every filter value, the sort keys and rowid of the 
+	 * 		last row of the previous page and the page size.
+	 */
+	public String getPageSql(boolean first) {
+		return first ? this.firstPageSql : this.nextPageSql;
+	}
+
+	/** @return The number of parameters in the SQL of this query. */
+	public int getParameterCount() {
+		return this.params.length;
+	}
+
+	/**
+	 * Binds the values of this query to a statement prepared from getSql().
+	 * @param stmt is the statement whose parameters will be set.
+	 * @throws SQLException if a parameter could not be set.
+	 */
+	public void bind(PreparedStatement stmt) throws SQLException {
+		for (int i = 0; i < this.params.length; i++) {
+			stmt.setObject(i + 1, this.params[i]);
+		}
+	}
+
+	/**
+	 * Binds the values of this query to a statement prepared from getPageSql().
+	 * @param stmt is the statement whose parameters will be set.
+	 * @param after are the sort keys and rowid of the last row of the previous page, or 
+	 * 		null for the first page.
+	 * @param limit is the most rows the page will hold.
+	 * @throws SQLException if a parameter could not be set.
+	 */
+	public void bindPage(PreparedStatement stmt, Object[] after, int limit) throws SQLException {
+		this.bind(stmt);
+		int index = this.params.length + 1;
+		if (after != null) {
+			for (Object value : after) {
+				stmt.setObject(index++, value);
+			}
+		}
+		stmt.setInt(index, limit);
+	}
+
+	@Override
+	/** @return the string representation of this query. */
+	public String toString() {
+		return this.sql;
+	}
+
+	/**
+	 * A builder object for HistoryQuery.
+	 * @author L. James Davidson
+	 */
+	public static class HistoryQueryBuilder {
+
+		private final String username;
+		private final List<Attribute> orderBy = new ArrayList<Attribute>();
+		private final Map<Attribute, List<Filter>> filters =
+				new EnumMap<Attribute, List<Filter>>(Attribute.class);
+
+		/**
+		 * Creates a builder of a query over a user's transactions.
+		 * @param username is the user whose transactions will be queried.
+		 * @throws IllegalArgumentException if username is null.
+		 */
+		public HistoryQueryBuilder(String username) {
+			if (username == null) {
+				throw new IllegalArgumentException("The username must be non-null.");
+			}
+
+			this.username = username;
+		}
+
+		/**
+		 * Orders the transactions by an attribute after any attributes already added. Adding an
+		 * attribute twice has no further effect.
+		 * @param attribute is the attribute to order by.
+		 */
+		public void addOrderBy(Attribute attribute) {
+			if (!this.orderBy.contains(attribute)) {
+				this.orderBy.add(attribute);
+			}
+		}
+
+		/** @return The number of attributes the transactions will be ordered by. */
+		public int getOrderByCount() {
+			return this.orderBy.size();
+		}
+
+		/**
+		 * Only includes transactions whose attribute equals a value, or matches another filter
+		 * on the same attribute. A transaction without a category or memo equals the value it 
+		 * is read as.
+		 * @param attribute is the attribute being filtered.
+		 * @param value is the value the attribute must equal. Dates are given as epoch days and
+		 * 		prices in cents.
+		 * @throws IllegalArgumentException if value is null.
+		 */
+		public void addEquals(Attribute attribute, Object value) {
+			if (value == null) {
+				throw new IllegalArgumentException("The filter value must be non-null.");
+			}
+
+			this.getFilters(attribute).add(new Filter(value, null));
+		}
+
+		/**
+		 * Only includes transactions whose attribute is within an inclusive range, or matches
+		 * another filter on the same attribute.
+		 * @param attribute is the attribute being filtered, which should be DATE or PRICE.
+		 * @param lower is the smallest value included. Dates are given as epoch days and prices
+		 * 		in cents.
+		 * @param upper is the largest value included.
+		 * @throws IllegalArgumentException if lower is greater than upper.
+		 */
+		public void addRange(Attribute attribute, long lower, long upper) {
+			if (lower > upper) {
+				throw new IllegalArgumentException("The lower bound must not be above the upper "
+						+ "bound.");
+			}
+
+			this.getFilters(attribute).add(new Filter(lower, upper));
+		}
+
+		/**
+		 * Builds a query from the ordering and filters of this builder. If no ordering was added
+		 * the transactions are ordered by date.
+		 * @return The history query.
+		 */
+		public HistoryQuery build() {
+			if (this.orderBy.isEmpty()) {
+				this.orderBy.add(Attribute.DATE);
+			}
+			return new HistoryQuery(this);
+		}
+
+		/**
+		 * @param attribute is a filtered attribute.
+		 * @return The list of filters on the attribute, created if there were none.
+		 */
+		private List<Filter> getFilters(Attribute attribute) {
+			List<Filter> list = this.filters.get(attribute);
+			if (list == null) {
+				list = new ArrayList<Filter>();
+				this.filters.put(attribute, list);
+			}
+			return list;
+		}
+	}
+
+	/** A single filter on an attribute, either an equality or an inclusive range. */
+	private static final class Filter {
+
+		private final Object lower;
+		private final Object upper;
+
+		/**
+		 * @param lower is the value to equal or the lower bound of a range.
+		 * @param upper is the upper bound of a range or null for an equality.
+		 */
+		Filter(Object lower, Object upper) {
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		/** @return True if this filter is a range. */
+		boolean isRange() {
+			return this.upper != null;
+		}
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.username != null) : "The username must be non-null.";
+		assert (!this.orderBy.isEmpty()) : "The query must be ordered.";
+		assert (this.params[0] == this.username) : "The first parameter must be the username.";
+		assert (this.firstPageSql != null && this.nextPageSql != null) : "The page queries must "
+				+ "be non-null.";
+	}
+}
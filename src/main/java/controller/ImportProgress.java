@@ -0,0 +1,121 @@
+package controller;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of how far a statement import has progressed. The final snapshot of an import is
+ * also its result.
+ * @author L. James Davidson
+ */
+public final class ImportProgress {
+
+	private static final double NANOS_IN_A_SECOND = 1_000_000_000.0;
+	private static final double PERCENT = 100.0;
+
+	private final long bytesRead;
+	private final long totalBytes;
+	private final long parsed;
+	private final long rejected;
+	private final long written;
+	private final long duplicates;
+	private final long elapsedNanos;
+	private final boolean done;
+	private final List<String> rejections;
+
+	/**
+	 * Creates an immutable progress snapshot.
+	 * @param bytesRead is the number of bytes of the statement read so far.
+	 * @param totalBytes is the size of the statement in bytes or -1 if it is unknown.
+	 * @param parsed is the number of transactions parsed so far.
+	 * @param rejected is the number of rows which failed to parse or validate.
+	 * @param written is the number of transactions added to the database.
+	 * @param duplicates is the number of transactions skipped since they were already stored.
+	 * @param elapsedNanos is how long the import has been running in nanoseconds.
+	 * @param done determines if the import has finished.
+	 * @param rejections are the reasons for the first few rejected rows.
+	 */
+	public ImportProgress(long bytesRead, long totalBytes, long parsed, long rejected,
+			long written, long duplicates, long elapsedNanos, boolean done,
+			List<String> rejections) {
+		this.bytesRead = bytesRead;
+		this.totalBytes = totalBytes;
+		this.parsed = parsed;
+		this.rejected = rejected;
+		this.written = written;
+		this.duplicates = duplicates;
+		this.elapsedNanos = elapsedNanos;
+		this.done = done;
+		this.rejections = Collections.unmodifiableList(rejections);
+	}
+
+	/** @return The number of bytes of the statement read so far. */
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	/** @return The size of the statement in bytes or -1 if it is unknown. */
+	public long getTotalBytes() {
+		return this.totalBytes;
+	}
+
+	/** @return The number of transactions parsed so far. */
+	public long getParsed() {
+		return this.parsed;
+	}
+
+	/** @return The number of rows which failed to parse or validate. */
+	public long getRejected() {
+		return this.rejected;
+	}
+
+	/** @return The number of transactions added to the database. */
+	public long getWritten() {
+		return this.written;
+	}
+
+	/** @return The number of transactions skipped because they were already stored. */
+	public long getDuplicates() {
+		return this.duplicates;
+	}
+
+	/** @return How long the import has been running in nanoseconds. */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	/** @return True if the import has finished. */
+	public boolean isDone() {
+		return this.done;
+	}
+
+	/** @return The reasons for the first few rejected rows. */
+	public List<String> getRejections() {
+		return this.rejections;
+	}
+
+	/** @return The percentage of the statement read so far or -1 if its size is unknown. */
+	public double getPercentRead() {
+		if (this.totalBytes <= 0) {
+			return -1;
+		}
+		return Math.min(PERCENT, this.bytesRead * PERCENT / this.totalBytes);
+	}
+
+	/** @return The number of transactions written to the database per second. */
+	public double getRowsPerSecond() {
+		if (this.elapsedNanos <= 0) {
+			return 0;
+		}
+		return this.written * NANOS_IN_A_SECOND / this.elapsedNanos;
+	}
+
+	@Override
+	/** @return the string representation of this progress. */
+	public String toString() {
+		String read = this.getPercentRead() < 0 ? ""
+				: String.format("%5.1f%% read, ", this.getPercentRead());
+		return String.format("%s%d added, %d duplicates, %d rejected (%.0f rows/sec)", read,
+				this.written, this.duplicates, this.rejected, this.getRowsPerSecond());
+	}
+}
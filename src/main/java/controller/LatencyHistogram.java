@@ -0,0 +1,154 @@
+package controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long an operation took in buckets whose width grows with the value, so that it
+ * can record anything from nanoseconds to hours in a fixed amount of memory while keeping
+ * every recorded value within about 6% of its bucket. Each power of two is split into
+ * SUB_BUCKETS equal buckets, the same scheme HdrHistogram uses. Recording only increments
+ * counters, so any number of threads can record at once without locking.
+ * @author L. James Davidson
+ */
+public class LatencyHistogram {
+
+	// The number of bits of a value, after its highest bit, which pick its bucket.
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// Enough buckets for every non-negative long.
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	// AF:
+	// counts[i] is the number of values recorded which fall into bucket i. Values below
+	// SUB_BUCKETS have a bucket each; bucket (s + 1) * SUB_BUCKETS + k holds the values v with
+	// v >>> s == SUB_BUCKETS + k. count, total and max summarize every value recorded.
+
+	// RI: name != null
+
+	/**
+	 * Creates an empty histogram.
+	 * @param name is the name of the operation whose latency is recorded.
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+		this.checkRep();
+	}
+
+	/**
+	 * Records how long the operation took once.
+	 * @param nanos is the time it took in nanoseconds, negative times are recorded as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		this.counts.getAndIncrement(bucketOf(value));
+		this.count.increment();
+		this.total.add(value);
+		if (value > this.max.get()) {
+			this.max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * Records the time since the operation started.
+	 * @param startNanos is the System.nanoTime() when the operation started.
+	 */
+	public void recordSince(long startNanos) {
+		this.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @param value is a non-negative value.
+	 * @return The bucket the value falls into.
+	 */
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @param bucket is a bucket.
+	 * @return The largest value which falls into the bucket.
+	 */
+	static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Finds the value which a percentage of the recorded values are at or below. Since values
+	 * are counted in buckets, the answer is the top of the bucket the value fell into, but
+	 * never more than the largest value recorded.
+	 * @param percentile is the percentage, from 0 to 100.
+	 * @return The value in nanoseconds or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long recorded = this.getCount();
+		if (recorded == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * recorded));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), this.getMax());
+			}
+		}
+
+		// Values recorded while the buckets were being read.
+		return this.getMax();
+	}
+
+	/** @return The name of the operation. */
+	public String getName() {
+		return this.name;
+	}
+
+	/** @return The number of values recorded. */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/** @return The mean of the values recorded in nanoseconds or 0 if there are none. */
+	public long getMean() {
+		long recorded = this.getCount();
+		return recorded == 0 ? 0 : this.total.sum() / recorded;
+	}
+
+	/** @return The largest value recorded in nanoseconds. */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	@Override
+	/** @return the string representation of this histogram. */
+	public String toString() {
+		return String.format("%-28s %10d %10.1f %10.1f %10.1f %10.1f %12.1f", this.name,
+				this.getCount(), this.getMean() / 1e3, this.getPercentile(50) / 1e3,
+				this.getPercentile(90) / 1e3, this.getPercentile(99) / 1e3, this.getMax() / 1e3);
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.name != null) : "The name must be non-null.";
+	}
+}
@@ -0,0 +1,556 @@
+package controller;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+import model.BCrypt;
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+import model.User;
+
+/**
+ * Fills a database with made up users and transactions for load and scale testing. The ledger
+ * looks like real spending: a few merchants get most of the visits, every user has a paycheck,
+ * rent, utilities and subscriptions, and spending rises on weekends and in the holiday season.
+ * Users are just as uneven, some spend far more often than others. The same seed and settings
+ * always generate the same ledger.
+ *
+ * Every generated user has the password PASSWORD.
+ * @author L. James Davidson
+ */
+public class LedgerGenerator {
+
+	/** The password of every generated user. */
+	public static final String PASSWORD = "password";
+
+	/** The categories used by generated transactions besides the built in ones. */
+	public static final String[] CATEGORIES = {"Groceries", "Dining", "Transport", "Shopping",
+			"Entertainment", "Utilities", "Housing", "Health", "Travel", "Subscriptions"};
+
+	// Merchants from most to least popular with their category index and median price in cents.
+	private static final String[] MERCHANTS = {"Grocer", "Coffee Shop", "Gas Station",
+			"Restaurant", "Online Store", "Pharmacy", "Fast Food", "Bus Pass", "Bookstore",
+			"Cinema", "Hardware", "Department Store", "Taxi", "Bakery", "Electronics", "Clinic",
+			"Concert Hall", "Airline", "Hotel", "Florist", "Pet Store", "Car Wash", "Museum",
+			"Dentist"};
+	private static final int[] MERCHANT_CATEGORIES = {0, 1, 2, 1, 3, 7, 1, 2, 3, 4, 3, 3, 2, 1,
+			3, 7, 4, 8, 8, 3, 3, 2, 4, 7};
+	private static final int[] MERCHANT_MEDIANS = {6000, 450, 4000, 3500, 2500, 1500, 900,
+			2500, 1800, 1400, 3000, 6000, 1800, 700, 15000, 8000, 7500, 35000, 20000, 4000, 3500,
+			1200, 1500, 12000};
+
+	// Exponent of the Zipf distribution of merchant visits.
+	private static final double MERCHANT_SKEW = 1.1;
+
+	// Spending of each month relative to an average month, the holidays are busiest.
+	private static final double[] MONTH_FACTORS = {0.85, 0.85, 0.95, 1.0, 1.0, 1.05, 1.1, 1.05,
+			0.95, 1.0, 1.15, 1.4};
+
+	// Spending on weekends relative to week days.
+	private static final double WEEKEND_FACTOR = 1.3;
+
+	// Average of the month and weekend factors over a year, which the daily rate is divided by.
+	private static final double AVERAGE_FACTOR = averageFactor();
+
+	private static final String[] SUBSCRIPTIONS = {"Streaming", "Music", "Phone", "Gym",
+			"Cloud Storage"};
+	private static final int[] SUBSCRIPTION_PRICES = {1299, 999, 4500, 3500, 299};
+
+	// The recurring descriptions come after the merchants when telling descriptions apart.
+	private static final String PAYCHECK = "Paycheck";
+	private static final String RENT = "Rent";
+	private static final String UTILITY = "Power Co";
+	private static final int PAYCHECK_ID = MERCHANTS.length;
+	private static final int RENT_ID = PAYCHECK_ID + 1;
+	private static final int UTILITY_ID = RENT_ID + 1;
+	private static final int SUBSCRIPTION_ID = UTILITY_ID + 1;
+
+	// Salt of the shared password hash, fixed so that the hash is the same for every run.
+	private static final String SALT = "$2a$10$LedgerGeneratorSalt123";
+
+	private static final String DEPOSIT = "Deposit";
+	private static final String NO_MEMO = "";
+
+	private final long seed;
+	private final int users;
+	private final long transactions;
+	private final LocalDate firstDay;
+	private final int days;
+	private final String usernamePrefix;
+
+	// Cumulative probabilities of visiting each merchant.
+	private final double[] merchantCdf;
+
+	// AF:
+	// Generates about transactions transactions spread over users users named usernamePrefix
+	// followed by their number, dated over days days from firstDay.
+
+	// RI: users > 0, transactions >= 0, days > 0, firstDay, usernamePrefix != null
+
+	/**
+	 * Creates an immutable generator using the builder object.
+	 * @param builder is a LedgerGeneratorBuilder holding the settings of the generator.
+	 */
+	private LedgerGenerator(LedgerGeneratorBuilder builder) {
+		this.seed = builder.seed;
+		this.users = builder.users;
+		this.transactions = builder.transactions;
+		this.firstDay = builder.firstDay;
+		this.days = builder.days;
+		this.usernamePrefix = builder.usernamePrefix;
+
+		this.merchantCdf = new double[MERCHANTS.length];
+		double total = 0;
+		for (int i = 0; i < MERCHANTS.length; i++) {
+			total += 1 / Math.pow(i + 1, MERCHANT_SKEW);
+			this.merchantCdf[i] = total;
+		}
+		for (int i = 0; i < MERCHANTS.length; i++) {
+			this.merchantCdf[i] /= total;
+		}
+
+		this.checkRep();
+	}
+
+	/**
+	 * @param index is the number of a generated user, starting at 0.
+	 * @return The username of the user.
+	 */
+	public String getUsername(int index) {
+		return String.format("%s%07d", this.usernamePrefix, index + 1);
+	}
+
+	/** @return The first day of the generated transactions. */
+	public LocalDate getFirstDay() {
+		return this.firstDay;
+	}
+
+	/** @return The number of days the generated transactions are spread over. */
+	public int getDays() {
+		return this.days;
+	}
+
+	/**
+	 * Writes the generated users, categories and transactions to a database. Transactions are
+	 * written in batches, one user at a time. Users which already exist are skipped so that a
+	 * generator can be rerun on the same database.
+	 * @param db is the open database to fill.
+	 * @param progress is told the number of transactions written after each user, may be null.
+	 * @return The number of transactions written.
+	 * @throws SQLException if the database could not be written, transactions of users which
+	 * 		were completed are kept.
+	 */
+	public long generate(TransactionsDB db, LongConsumer progress) throws SQLException {
+		for (String category : CATEGORIES) {
+			if (db.isACategory(category) == null && !db.addCategory(category)) {
+				throw new SQLException("Could not add the category " + category);
+			}
+		}
+
+		// Hashing is slow on purpose, so every user shares one hash.
+		String hash = BCrypt.hashpw(PASSWORD, SALT);
+		long[] targets = this.getUserTargets();
+		long written = 0;
+
+		for (int i = 0; i < this.users; i++) {
+			String username = this.getUsername(i);
+			if (db.isUsernameTaken(username)) {
+				continue;
+			}
+			if (!db.addNewUser(new User(username, "Generated User " + (i + 1), 0, hash))) {
+				throw new SQLException("Could not add the user " + username);
+			}
+
+			// Every user gets their own stream so a user's ledger does not depend on the others.
+			Random random = new Random(this.seed * 1_000_003L + i);
+			UserLedger ledger = new UserLedger(random, targets[i]);
+			written += db.addExpenses(() -> ledger, username, TransactionsDB.DEFAULT_BATCH_SIZE,
+					false).getRows();
+
+			if (progress != null) {
+				progress.accept(written);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Splits the transactions between the users. How busy a user is follows a log-normal
+	 * distribution, so a few users have many more transactions than most.
+	 * @return The number of transactions each user should have.
+	 */
+	private long[] getUserTargets() {
+		Random random = new Random(this.seed);
+		double[] weights = new double[this.users];
+		double total = 0;
+		for (int i = 0; i < this.users; i++) {
+			weights[i] = Math.exp(0.75 * random.nextGaussian());
+			total += weights[i];
+		}
+
+		long[] targets = new long[this.users];
+		for (int i = 0; i < this.users; i++) {
+			targets[i] = Math.round(this.transactions * weights[i] / total);
+		}
+		return targets;
+	}
+
+	/** @return The average of the month and weekend factors over a year. */
+	private static double averageFactor() {
+		double months = 0;
+		for (double factor : MONTH_FACTORS) {
+			months += factor;
+		}
+		return months / MONTH_FACTORS.length * (5 + 2 * WEEKEND_FACTOR) / 7;
+	}
+
+	/**
+	 * Picks a merchant so that popular merchants are visited far more often than the rest.
+	 * @param random is the generator of the user's ledger.
+	 * @return The index of the merchant.
+	 */
+	private int nextMerchant(Random random) {
+		double p = random.nextDouble();
+		int lo = 0;
+		int hi = this.merchantCdf.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.merchantCdf[mid] < p) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Generates one user's transactions a day at a time, so that a ledger of any size can be
+	 * written without holding it in memory. Transactions of the same day never share both
+	 * their description and price, since they would be duplicates in the database.
+	 */
+	private final class UserLedger implements Iterator<Transaction> {
+
+		private final Random random;
+
+		// Expected discretionary transactions on an average day.
+		private final double dailyRate;
+
+		// The user's recurring payments.
+		private final int paycheck;
+		private final int payday;
+		private final int rent;
+		private final int utility;
+		private final int[] subscriptions;
+		private final int[] subscriptionDays;
+
+		// The transactions of the current day which have not been returned.
+		private final ArrayDeque<Transaction> pending = new ArrayDeque<Transaction>();
+
+		// Descriptions and prices used on the current day.
+		private final Set<Long> usedToday = new HashSet<Long>();
+
+		private int dayIndex;
+
+		/**
+		 * Creates the ledger of a user.
+		 * @param random is the generator of the user's ledger.
+		 * @param target is about how many transactions the ledger will have.
+		 */
+		UserLedger(Random random, long target) {
+			this.random = random;
+
+			this.paycheck = 150_000 + random.nextInt(450_000);
+			this.payday = random.nextInt(14);
+			this.rent = 60_000 + random.nextInt(190_000);
+			this.utility = 5_000 + random.nextInt(10_000);
+
+			int count = 1 + random.nextInt(3);
+			this.subscriptions = new int[count];
+			this.subscriptionDays = new int[count];
+			for (int i = 0; i < count; i++) {
+				this.subscriptions[i] = random.nextInt(SUBSCRIPTIONS.length);
+				this.subscriptionDays[i] = 1 + random.nextInt(28);
+			}
+
+			// What is left after the recurring payments is spread over the days.
+			double months = days / 30.44;
+			double recurring = days / 14.0 + months * (2 + count);
+			this.dailyRate = Math.max(0, target - recurring) / days / AVERAGE_FACTOR;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (this.pending.isEmpty() && this.dayIndex < days) {
+				this.generateDay(this.dayIndex++);
+			}
+			return !this.pending.isEmpty();
+		}
+
+		@Override
+		public Transaction next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.pending.poll();
+		}
+
+		/**
+		 * Generates the transactions of a day.
+		 * @param index is the number of the day counting from the first day.
+		 */
+		private void generateDay(int index) {
+			LocalDate day = firstDay.plusDays(index);
+			this.usedToday.clear();
+
+			// Recurring payments.
+			if (index % 14 == this.payday) {
+				this.add(day, PAYCHECK_ID, PAYCHECK, this.paycheck, DEPOSIT, true);
+			}
+			if (day.getDayOfMonth() == 1) {
+				this.add(day, RENT_ID, RENT, this.rent, CATEGORIES[6], false);
+			}
+			if (day.getDayOfMonth() == 15) {
+				// Heating and cooling cost more in winter and summer.
+				double season = 1 + 0.4 * Math.abs(Math.cos(Math.PI * (day.getMonthValue() - 1)
+						/ 6.0));
+				this.add(day, UTILITY_ID, UTILITY, (int) (this.utility * season), CATEGORIES[5],
+						false);
+			}
+			for (int i = 0; i < this.subscriptions.length; i++) {
+				if (day.getDayOfMonth() == this.subscriptionDays[i]) {
+					int sub = this.subscriptions[i];
+					this.add(day, SUBSCRIPTION_ID + sub, SUBSCRIPTIONS[sub],
+							SUBSCRIPTION_PRICES[sub], CATEGORIES[9], false);
+				}
+			}
+
+			// Discretionary spending.
+			double rate = this.dailyRate * MONTH_FACTORS[day.getMonthValue() - 1];
+			if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				rate *= WEEKEND_FACTOR;
+			}
+			int count = this.nextCount(rate);
+			for (int i = 0; i < count; i++) {
+				int merchant = nextMerchant(this.random);
+				double price = MERCHANT_MEDIANS[merchant] * Math.exp(0.6 * this.random.nextGaussian());
+				this.add(day, merchant, MERCHANTS[merchant], (int) Math.max(1, Math.min(price,
+						Integer.MAX_VALUE / 2)), CATEGORIES[MERCHANT_CATEGORIES[merchant]], false);
+			}
+		}
+
+		/**
+		 * Picks how many transactions happen on a day from a Poisson distribution.
+		 * @param rate is the expected number of transactions.
+		 * @return The number of transactions.
+		 */
+		private int nextCount(double rate) {
+			if (rate > 30) {
+				// Close enough to normal, and exp(-rate) would underflow for large rates.
+				return (int) Math.max(0, Math.round(rate + Math.sqrt(rate)
+						* this.random.nextGaussian()));
+			}
+
+			double limit = Math.exp(-rate);
+			double product = this.random.nextDouble();
+			int count = 0;
+			while (product > limit) {
+				product *= this.random.nextDouble();
+				count++;
+			}
+			return count;
+		}
+
+		/**
+		 * Adds a transaction to the current day, raising its price by a cent at a time until
+		 * no other transaction of the day has the same description and price.
+		 */
+		private void add(LocalDate day, int descriptionId, String description, int cents,
+				String category, boolean isDeposit) {
+			while (!this.usedToday.add(((long) descriptionId << 32) | cents)) {
+				cents++;
+			}
+
+			TransactionBuilder trans = new TransactionBuilder(isDeposit);
+			trans.setAmountInCents(cents);
+			trans.setDescription(description);
+			trans.setDate(day);
+			trans.setCategory(category);
+			trans.setMemo(NO_MEMO);
+			this.pending.add(trans.build());
+		}
+	}
+
+	/**
+	 * Fills the Transaction Tracker database, or the one given, with a generated ledger.
+	 * Settings are given as name=value arguments: users, transactions, seed, days and db.
+	 * @param args are the settings of the generator.
+	 * @throws SQLException if the database could not be opened or written.
+	 */
+	public static void main(String[] args) throws SQLException {
+		LedgerGeneratorBuilder builder = new LedgerGeneratorBuilder();
+		File database = null;
+
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 0) {
+				throw new IllegalArgumentException("Expected name=value but was " + arg);
+			}
+			String name = arg.substring(0, split);
+			String value = arg.substring(split + 1);
+
+			switch (name) {
+				case "users":
+					builder.setUsers(Integer.parseInt(value));
+					break;
+				case "transactions":
+					builder.setTransactions(Long.parseLong(value));
+					break;
+				case "seed":
+					builder.setSeed(Long.parseLong(value));
+					break;
+				case "days":
+					builder.setDays(Integer.parseInt(value));
+					break;
+				case "db":
+					database = new File(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown setting " + name);
+			}
+		}
+
+		TransactionHelper.prepare();
+		TransactionsDB db = new TransactionsDB();
+		if (database == null) {
+			db.open();
+		} else {
+			db.open(database);
+		}
+
+		try {
+			long start = System.nanoTime();
+			long written = builder.build().generate(db,
+					rows -> System.out.print("\r" + rows + " transactions written"));
+			double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+			System.out.printf("%n%d transactions written in %.1f s (%.0f rows/s)%n", written,
+					seconds, written / seconds);
+		} finally {
+			db.close();
+		}
+	}
+
+	/**
+	 * A builder object for LedgerGenerator.
+	 * @author L. James Davidson
+	 */
+	public static class LedgerGeneratorBuilder {
+
+		private long seed = 1;
+		private int users = 10;
+		private long transactions = 100_000;
+		private LocalDate firstDay = LocalDate.of(2010, 1, 1);
+		private int days = 365 * 10;
+		private String usernamePrefix = "gen";
+
+		/**
+		 * Sets the seed of the generator, the same seed always generates the same ledger.
+		 * @param seed is the seed of the generator.
+		 */
+		public void setSeed(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * Sets the number of generated users.
+		 * @param users is the number of users.
+		 * @throws IllegalArgumentException if users is not positive.
+		 */
+		public void setUsers(int users) {
+			if (users <= 0) {
+				throw new IllegalArgumentException("There must be at least one user.");
+			}
+
+			this.users = users;
+		}
+
+		/**
+		 * Sets about how many transactions will be generated across all users.
+		 * @param transactions is the number of transactions.
+		 * @throws IllegalArgumentException if transactions is negative.
+		 */
+		public void setTransactions(long transactions) {
+			if (transactions < 0) {
+				throw new IllegalArgumentException("The number of transactions must not be "
+						+ "negative.");
+			}
+
+			this.transactions = transactions;
+		}
+
+		/**
+		 * Sets the first day of the generated transactions.
+		 * @param firstDay is the first day.
+		 * @throws IllegalArgumentException if firstDay is null.
+		 */
+		public void setFirstDay(LocalDate firstDay) {
+			if (firstDay == null) {
+				throw new IllegalArgumentException("The first day must be non-null.");
+			}
+
+			this.firstDay = firstDay;
+		}
+
+		/**
+		 * Sets the number of days the transactions are spread over.
+		 * @param days is the number of days.
+		 * @throws IllegalArgumentException if days is not positive.
+		 */
+		public void setDays(int days) {
+			if (days <= 0) {
+				throw new IllegalArgumentException("There must be at least one day.");
+			}
+
+			this.days = days;
+		}
+
+		/**
+		 * Sets the start of the generated usernames, which are followed by the user's number.
+		 * @param usernamePrefix is the start of the usernames, at most 23 characters.
+		 * @throws IllegalArgumentException if usernamePrefix is null or too long.
+		 */
+		public void setUsernamePrefix(String usernamePrefix) {
+			if (usernamePrefix == null || usernamePrefix.length() > 23) {
+				throw new IllegalArgumentException("The username prefix must be non-null and at "
+						+ "most 23 characters.");
+			}
+
+			this.usernamePrefix = usernamePrefix;
+		}
+
+		/** @return A generator with the settings of this builder. */
+		public LedgerGenerator build() {
+			return new LedgerGenerator(this);
+		}
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.users > 0) : "There must be at least one user.";
+		assert (this.transactions >= 0) : "The number of transactions must not be negative.";
+		assert (this.days > 0) : "There must be at least one day.";
+		assert (this.firstDay != null) : "The first day must be non-null.";
+		assert (this.usernamePrefix != null) : "The username prefix must be non-null.";
+	}
+}
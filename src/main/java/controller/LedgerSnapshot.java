@@ -0,0 +1,499 @@
+package controller;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+
+/**
+ * An in-memory copy of one user's transactions stored by column, for answering many questions
+ * about a ledger without going back to the database. Days and amounts are primitive arrays,
+ * categories and descriptions are stored once each in a dictionary and referred to by id, and
+ * memos are kept as UTF-8 bytes which are only turned into strings when asked for. Rows are
+ * kept in order of their day, so a range of days is found with a binary search and totals over
+ * it are a loop over two arrays.
+ *
+ * A snapshot is loaded with TransactionsDB.getSnapshot(), which keeps it up to date with the
+ * transactions that connection adds to the user from then on.
+ * @author L. James Davidson
+ */
+public class LedgerSnapshot {
+
+	// Reads every transaction of a user in the order of the snapshot. A transaction without a 
+	// category is given the default one, as in MonthlyTotals and the report queries.
+	private static final String SELECT_LEDGER = "SELECT day, price_in_cents, COALESCE(category, '"
+			+ StatementParser.DEFAULT_CATEGORY + "'), description, memo FROM Transactions "
+			+ "WHERE belongsTo = ? ORDER BY day";
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final String username;
+
+	// The columns, of which the first size entries are used.
+	private int size;
+	private int[] days = new int[INITIAL_CAPACITY];
+	private long[] cents = new long[INITIAL_CAPACITY];
+	private int[] categoryIds = new int[INITIAL_CAPACITY];
+	private int[] descriptionIds = new int[INITIAL_CAPACITY];
+	private int[] memoStarts = new int[INITIAL_CAPACITY];
+	private int[] memoLengths = new int[INITIAL_CAPACITY];
+
+	// The encoded memos of every row, one after another.
+	private byte[] memoBytes = new byte[INITIAL_CAPACITY * 8];
+	private int memoUsed;
+
+	private final Dictionary categories = new Dictionary();
+	private final Dictionary descriptions = new Dictionary();
+
+	// AF:
+	// Row i is the transaction of username on epoch day days[i] of cents[i] cents with the
+	// category categories.get(categoryIds[i]), the description descriptions.get(
+	// descriptionIds[i]) and the memo encoded in memoBytes[memoStarts[i]...+memoLengths[i]],
+	// or no memo if memoLengths[i] is -1, for 0 <= i < size.
+
+	// RI: username != null, 0 <= size <= days.length, every column has the same length,
+	//     days[0...size-1] is sorted, 0 <= memoUsed <= memoBytes.length
+
+	/**
+	 * Creates an empty snapshot.
+	 * @param username is the user whose transactions the snapshot holds.
+	 */
+	LedgerSnapshot(String username) {
+		this.username = username;
+		this.checkRep();
+	}
+
+	/**
+	 * Reads every transaction of a user into a new snapshot.
+	 * @param stmtCache holds the statements of the connection to read with.
+	 * @param username is the user.
+	 * @return The snapshot.
+	 * @throws SQLException if the transactions could not be read.
+	 */
+	static LedgerSnapshot load(StatementCache stmtCache, String username) throws SQLException {
+		LedgerSnapshot snapshot = new LedgerSnapshot(username);
+		PreparedStatement query = stmtCache.prepare(SELECT_LEDGER);
+		query.setString(1, username);
+
+		try (ResultSet results = query.executeQuery()) {
+			while (results.next()) {
+				// Rows come back in order of day, so each one is appended.
+				snapshot.insert(snapshot.size, (int) results.getLong(1), results.getInt(2),
+						results.getString(3), results.getString(4), results.getString(5));
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Adds a transaction to the snapshot, after any others on the same day.
+	 * @param trans is the transaction, which has been committed to the database.
+	 */
+	synchronized void append(Transaction trans) {
+		int day = (int) trans.getEpochDay();
+
+		// Transactions are almost always added in order of day, otherwise they are inserted.
+		int row = this.size;
+		if (row > 0 && this.days[row - 1] > day) {
+			row = this.firstRowAfter(day);
+		}
+		this.insert(row, day, trans.getAmountInCents(), trans.getCategory(),
+				trans.getDescription(), trans.getMemo());
+		this.checkRep();
+	}
+
+	/**
+	 * Puts a row into the columns.
+	 * @param row is where the row goes, rows from there on move up by one.
+	 * @param day is the epoch day of the transaction.
+	 * @param amount is the amount in cents.
+	 * @param category is the category.
+	 * @param description is the description.
+	 * @param memo is the memo or null.
+	 */
+	private void insert(int row, int day, long amount, String category, String description,
+			String memo) {
+		if (this.size == this.days.length) {
+			int capacity = this.days.length * 2;
+			this.days = Arrays.copyOf(this.days, capacity);
+			this.cents = Arrays.copyOf(this.cents, capacity);
+			this.categoryIds = Arrays.copyOf(this.categoryIds, capacity);
+			this.descriptionIds = Arrays.copyOf(this.descriptionIds, capacity);
+			this.memoStarts = Arrays.copyOf(this.memoStarts, capacity);
+			this.memoLengths = Arrays.copyOf(this.memoLengths, capacity);
+		}
+
+		if (row < this.size) {
+			int moved = this.size - row;
+			System.arraycopy(this.days, row, this.days, row + 1, moved);
+			System.arraycopy(this.cents, row, this.cents, row + 1, moved);
+			System.arraycopy(this.categoryIds, row, this.categoryIds, row + 1, moved);
+			System.arraycopy(this.descriptionIds, row, this.descriptionIds, row + 1, moved);
+			System.arraycopy(this.memoStarts, row, this.memoStarts, row + 1, moved);
+			System.arraycopy(this.memoLengths, row, this.memoLengths, row + 1, moved);
+		}
+
+		this.days[row] = day;
+		this.cents[row] = amount;
+		this.categoryIds[row] = this.categories.idOf(category);
+		this.descriptionIds[row] = this.descriptions.idOf(description);
+		this.memoStarts[row] = this.memoUsed;
+		this.memoLengths[row] = memo == null ? -1 : this.addMemo(memo);
+		this.size++;
+	}
+
+	/**
+	 * Appends a memo to the memo bytes.
+	 * @param memo is the memo.
+	 * @return The number of bytes of the encoded memo.
+	 */
+	private int addMemo(String memo) {
+		byte[] encoded = memo.getBytes(StandardCharsets.UTF_8);
+		if (this.memoUsed + encoded.length > this.memoBytes.length) {
+			this.memoBytes = Arrays.copyOf(this.memoBytes, Math.max(this.memoBytes.length * 2,
+					this.memoUsed + encoded.length));
+		}
+		System.arraycopy(encoded, 0, this.memoBytes, this.memoUsed, encoded.length);
+		this.memoUsed += encoded.length;
+		return encoded.length;
+	}
+
+	/**
+	 * @param epochDay is a day.
+	 * @return The first row whose day is on or after the day, or size() if there is none.
+	 */
+	public synchronized int firstRowOnOrAfter(long epochDay) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.days[mid] < epochDay) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param epochDay is a day.
+	 * @return The first row whose day is after the day, or size() if there is none.
+	 */
+	public synchronized int firstRowAfter(long epochDay) {
+		return epochDay == Long.MAX_VALUE ? this.size : this.firstRowOnOrAfter(epochDay + 1);
+	}
+
+	/**
+	 * Sums the amounts of the transactions in a range of days.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The sum in cents.
+	 */
+	public synchronized long sumCents(long fromDay, long toDay) {
+		long sum = 0;
+		for (int i = this.firstRowOnOrAfter(fromDay), end = this.firstRowAfter(toDay); i < end;
+				i++) {
+			sum += this.cents[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Counts the transactions in a range of days.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The number of transactions.
+	 */
+	public synchronized int count(long fromDay, long toDay) {
+		return Math.max(0, this.firstRowAfter(toDay) - this.firstRowOnOrAfter(fromDay));
+	}
+
+	/**
+	 * Sums the amounts of the transactions in a range of days by category.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The sum in cents of each category, indexed by category id.
+	 */
+	public synchronized long[] sumByCategory(long fromDay, long toDay) {
+		long[] sums = new long[this.categories.size()];
+		for (int i = this.firstRowOnOrAfter(fromDay), end = this.firstRowAfter(toDay); i < end;
+				i++) {
+			sums[this.categoryIds[i]] += this.cents[i];
+		}
+		return sums;
+	}
+
+	/**
+	 * Counts the transactions in a range of days by category.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The number of transactions of each category, indexed by category id.
+	 */
+	public synchronized int[] countByCategory(long fromDay, long toDay) {
+		int[] counts = new int[this.categories.size()];
+		for (int i = this.firstRowOnOrAfter(fromDay), end = this.firstRowAfter(toDay); i < end;
+				i++) {
+			counts[this.categoryIds[i]]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Sums the amounts of the transactions in a range of days by description.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The sum in cents of each description, indexed by description id.
+	 */
+	public synchronized long[] sumByDescription(long fromDay, long toDay) {
+		long[] sums = new long[this.descriptions.size()];
+		for (int i = this.firstRowOnOrAfter(fromDay), end = this.firstRowAfter(toDay); i < end;
+				i++) {
+			sums[this.descriptionIds[i]] += this.cents[i];
+		}
+		return sums;
+	}
+
+	/**
+	 * Counts the transactions in a range of days by description.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The number of transactions of each description, indexed by description id.
+	 */
+	public synchronized int[] countByDescription(long fromDay, long toDay) {
+		int[] counts = new int[this.descriptions.size()];
+		for (int i = this.firstRowOnOrAfter(fromDay), end = this.firstRowAfter(toDay); i < end;
+				i++) {
+			counts[this.descriptionIds[i]]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Finds the transactions of a category in a range of days.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @param category is the category or null for every category.
+	 * @return The rows of the transactions in order of day.
+	 */
+	public synchronized int[] rowsOf(long fromDay, long toDay, String category) {
+		int start = this.firstRowOnOrAfter(fromDay);
+		int end = Math.max(start, this.firstRowAfter(toDay));
+		int categoryId = category == null ? -1 : this.categories.find(category);
+		if (category != null && categoryId < 0) {
+			return new int[0];
+		}
+
+		int[] rows = new int[end - start];
+		int found = 0;
+		for (int i = start; i < end; i++) {
+			if (categoryId < 0 || this.categoryIds[i] == categoryId) {
+				rows[found++] = i;
+			}
+		}
+		return found == rows.length ? rows : Arrays.copyOf(rows, found);
+	}
+
+	/** @return The user whose transactions the snapshot holds. */
+	public String getUsername() {
+		return this.username;
+	}
+
+	/** @return The number of transactions in the snapshot. */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param row is a row.
+	 * @return The epoch day of the row's transaction.
+	 */
+	public synchronized int getEpochDay(int row) {
+		this.checkRow(row);
+		return this.days[row];
+	}
+
+	/**
+	 * @param row is a row.
+	 * @return The amount of the row's transaction in cents.
+	 */
+	public synchronized long getCents(int row) {
+		this.checkRow(row);
+		return this.cents[row];
+	}
+
+	/**
+	 * @param row is a row.
+	 * @return The id of the category of the row's transaction.
+	 */
+	public synchronized int getCategoryId(int row) {
+		this.checkRow(row);
+		return this.categoryIds[row];
+	}
+
+	/**
+	 * @param row is a row.
+	 * @return The id of the description of the row's transaction.
+	 */
+	public synchronized int getDescriptionId(int row) {
+		this.checkRow(row);
+		return this.descriptionIds[row];
+	}
+
+	/**
+	 * Decodes the memo of a row.
+	 * @param row is a row.
+	 * @return The memo of the row's transaction or null if it has none.
+	 */
+	public synchronized String getMemo(int row) {
+		this.checkRow(row);
+		if (this.memoLengths[row] < 0) {
+			return null;
+		}
+		return new String(this.memoBytes, this.memoStarts[row], this.memoLengths[row],
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Builds the transaction of a row.
+	 * @param row is a row.
+	 * @return The transaction.
+	 */
+	public synchronized Transaction getTransaction(int row) {
+		this.checkRow(row);
+		TransactionBuilder trans = new TransactionBuilder(this.cents[row] > 0);
+		trans.setAmountInCents((int) this.cents[row]);
+		trans.setDescription(this.descriptions.get(this.descriptionIds[row]));
+		trans.setEpochDay(this.days[row]);
+		trans.setCategory(this.categories.get(this.categoryIds[row]));
+		trans.setMemo(this.memoLengths[row] < 0 ? "" : this.getMemo(row));
+		return trans.build();
+	}
+
+	/**
+	 * Copies a range of the days, amounts and category ids of the rows, which can then be read
+	 * by many threads at once without holding the snapshot's lock.
+	 * @param fromRow is the first row copied.
+	 * @param toRow is one past the last row copied.
+	 * @param daysOut holds the epoch days of the rows once copied.
+	 * @param centsOut holds the amounts of the rows once copied.
+	 * @param categoryIdsOut holds the category ids of the rows once copied.
+	 */
+	synchronized void copyRows(int fromRow, int toRow, int[] daysOut, long[] centsOut,
+			int[] categoryIdsOut) {
+		if (fromRow < 0 || toRow > this.size || fromRow > toRow) {
+			throw new IndexOutOfBoundsException("Rows " + fromRow + " to " + toRow
+					+ " are not in a snapshot of " + this.size + " rows.");
+		}
+		System.arraycopy(this.days, fromRow, daysOut, 0, toRow - fromRow);
+		System.arraycopy(this.cents, fromRow, centsOut, 0, toRow - fromRow);
+		System.arraycopy(this.categoryIds, fromRow, categoryIdsOut, 0, toRow - fromRow);
+	}
+
+	/** @return The number of distinct categories in the snapshot. */
+	public synchronized int getCategoryCount() {
+		return this.categories.size();
+	}
+
+	/**
+	 * @param id is a category id.
+	 * @return The name of the category.
+	 */
+	public synchronized String getCategory(int id) {
+		return this.categories.get(id);
+	}
+
+	/** @return The number of distinct descriptions in the snapshot. */
+	public synchronized int getDescriptionCount() {
+		return this.descriptions.size();
+	}
+
+	/**
+	 * @param id is a description id.
+	 * @return The description.
+	 */
+	public synchronized String getDescription(int id) {
+		return this.descriptions.get(id);
+	}
+
+	/**
+	 * @param row is a row.
+	 * @throws IndexOutOfBoundsException if there is no such row.
+	 */
+	private void checkRow(int row) {
+		if (row < 0 || row >= this.size) {
+			throw new IndexOutOfBoundsException("No row " + row + " in a snapshot of "
+					+ this.size + " rows.");
+		}
+	}
+
+	@Override
+	/** @return the string representation of this snapshot. */
+	public synchronized String toString() {
+		return String.format("%s: %d transactions, %d categories, %d descriptions, %d memo bytes",
+				this.username, this.size, this.categories.size(), this.descriptions.size(),
+				this.memoUsed);
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.username != null) : "The username must be non-null.";
+		assert (this.size >= 0 && this.size <= this.days.length) : "The size must fit.";
+		assert (this.memoUsed >= 0 && this.memoUsed <= this.memoBytes.length)
+				: "The memo bytes must fit.";
+		assert (this.size == 0 || this.days[this.size - 1] >= this.days[0])
+				: "The rows must be in order of day.";
+	}
+
+	/** Gives each distinct string an id, in the order they are first seen. */
+	private static final class Dictionary {
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+
+		/**
+		 * @param value is a string.
+		 * @return The id of the string, which is given one if it is new.
+		 */
+		private int idOf(String value) {
+			Integer id = this.ids.get(value);
+			if (id == null) {
+				id = this.values.size();
+				this.ids.put(value, id);
+				this.values.add(value);
+			}
+			return id;
+		}
+
+		/**
+		 * @param value is a string.
+		 * @return The id of the string or -1 if it has none.
+		 */
+		private int find(String value) {
+			Integer id = this.ids.get(value);
+			return id == null ? -1 : id;
+		}
+
+		/**
+		 * @param id is an id.
+		 * @return The string with the id.
+		 */
+		private String get(int id) {
+			return this.values.get(id);
+		}
+
+		/** @return The number of strings with ids. */
+		private int size() {
+			return this.values.size();
+		}
+	}
+}
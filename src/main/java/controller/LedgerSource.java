@@ -0,0 +1,87 @@
+package controller;
+
+import java.sql.SQLException;
+
+/**
+ * Transactions which an AggregationEngine can read in chunks from several threads at once.
+ * Every transaction of a source has a key, and a chunk is a range of keys, so chunks which do
+ * not overlap never read the same transaction. What a key is depends on the source: an epoch
+ * day, a rowid or a row of a snapshot.
+ * @author L. James Davidson
+ */
+public interface LedgerSource {
+
+	/**
+	 * Receives the transactions of a chunk one at a time.
+	 */
+	@FunctionalInterface
+	interface RowSink {
+
+		/**
+		 * Receives a transaction.
+		 * @param belongsTo is the user the transaction belongs to.
+		 * @param category is the category of the transaction, "N/A" if it has none.
+		 * @param epochDay is the day of the transaction.
+		 * @param cents is the amount of the transaction, negative for an expense.
+		 */
+		void accept(String belongsTo, String category, long epochDay, long cents);
+	}
+
+	/**
+	 * Finds the keys of the transactions of a user, or of every user, in a range of days.
+	 * @param username is the user, or null for every user of the source.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The first and last keys, or null if there are no such transactions. Keys
+	 * 		between them may belong to other transactions or to none.
+	 * @throws SQLException if the keys could not be read.
+	 */
+	long[] getKeyRange(String username, long fromDay, long toDay) throws SQLException;
+
+	/**
+	 * Splits the keys of the transactions of a user, or of every user, in a range of days into 
+	 * chunks. By default the keys from the first to the last are split into chunks of equal 
+	 * width, which holds about as many transactions in each chunk when the keys are dense.
+	 * @param username is the user, or null for every user of the source.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @param chunks is the most chunks wanted, which is positive.
+	 * @return The first key of each chunk in increasing order followed by one past the last key 
+	 * 		of the last chunk, or null if there are no such transactions.
+	 * @throws SQLException if the keys could not be read.
+	 */
+	default long[] getChunkBounds(String username, long fromDay, long toDay, int chunks)
+			throws SQLException {
+		long[] keys = this.getKeyRange(username, fromDay, toDay);
+		if (keys == null) {
+			return null;
+		}
+
+		long width = keys[1] - keys[0] + 1;
+		long chunkWidth = (width + Math.min(width, chunks) - 1) / Math.min(width, chunks);
+		int count = (int) ((width + chunkWidth - 1) / chunkWidth);
+		long[] bounds = new long[count + 1];
+		for (int i = 0; i < count; i++) {
+			bounds[i] = keys[0] + i * chunkWidth;
+		}
+		bounds[count] = keys[1] + 1;
+		return bounds;
+	}
+
+	/**
+	 * Passes every transaction of a user, or of every user, in a range of days and a range of
+	 * keys to a sink. May be called by several threads at once.
+	 * @param username is the user, or null for every user of the source.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @param fromKey is the first key of the chunk.
+	 * @param toKey is the last key of the chunk.
+	 * @param sink receives the transactions.
+	 * @throws SQLException if the transactions could not be read.
+	 */
+	void scan(String username, long fromDay, long toDay, long fromKey, long toKey,
+			RowSink sink) throws SQLException;
+
+	/** @return The most chunks which can be scanned at once. */
+	int getMaxParallelism();
+}
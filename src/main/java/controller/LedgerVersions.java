@@ -0,0 +1,40 @@
+package controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the committed changes to each user's transactions, so that connections which cache a
+ * user's ledger can tell when another connection of the same database has changed it. The
+ * connections of a TransactionsDBPool share one, which the writer moves on after each commit
+ * and readers compare with the version their caches were read at. Can be used from any thread.
+ * @author L. James Davidson
+ */
+final class LedgerVersions {
+
+	private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<String, Long>();
+
+	// AF:
+	// The version of a user's transactions is versions.get(username), or 0 if it is absent.
+
+	// RI: every value of versions is positive
+
+	/**
+	 * @param username is a user.
+	 * @return The version of the user's transactions.
+	 */
+	long get(String username) {
+		Long version = this.versions.get(username);
+		return version == null ? 0 : version;
+	}
+
+	/**
+	 * Moves a user's transactions on to a new version, once a change to them has committed.
+	 * @param username is the user whose transactions changed.
+	 * @return The new version.
+	 */
+	long bump(String username) {
+		long version = this.versions.merge(username, 1L, Long::sum);
+		assert (version > 0) : "Every version must be positive.";
+		return version;
+	}
+}
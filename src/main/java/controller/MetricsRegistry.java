@@ -0,0 +1,104 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the latency histograms and counters of the program by name. Code looks up the
+ * histograms and counters it records to once, usually into a static field, so recording
+ * costs no more than the increments themselves.
+ * @author L. James Davidson
+ */
+public class MetricsRegistry {
+
+	// The registry of the whole program.
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	private final ConcurrentMap<String, LatencyHistogram> timers =
+			new ConcurrentSkipListMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, LongAdder> counters =
+			new ConcurrentSkipListMap<String, LongAdder>();
+
+	// AF:
+	// timers maps the name of each operation to the histogram of its latencies, counters maps
+	// the name of each counter to its count. Both are sorted by name so reports are stable.
+
+	// RI: timers != null, counters != null
+
+	/** Creates an empty registry. */
+	public MetricsRegistry() {
+		this.checkRep();
+	}
+
+	/** @return The registry of the whole program. */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets the latency histogram of an operation, creating it the first time.
+	 * @param name is the name of the operation.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram timer(String name) {
+		return this.timers.computeIfAbsent(name, LatencyHistogram::new);
+	}
+
+	/**
+	 * Gets a counter, creating it the first time.
+	 * @param name is the name of the counter.
+	 * @return The counter.
+	 */
+	public LongAdder counter(String name) {
+		return this.counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	/**
+	 * Formats every histogram which recorded something and every counter as a table.
+	 * @return The report.
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-28s %10s %10s %10s %10s %10s %12s%n", "operation (us)",
+				"count", "mean", "p50", "p90", "p99", "max"));
+		for (LatencyHistogram timer : this.timers.values()) {
+			if (timer.getCount() > 0) {
+				report.append(timer).append(System.lineSeparator());
+			}
+		}
+
+		report.append(System.lineSeparator());
+		for (Map.Entry<String, LongAdder> counter : this.counters.entrySet()) {
+			report.append(String.format("%-28s %10d%n", counter.getKey(),
+					counter.getValue().sum()));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Writes the report to a file, headed by the time it was taken.
+	 * @param file is the file to write, replacing what it held.
+	 * @throws IOException if the file could not be written.
+	 */
+	public void dump(File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			out.println("!METRICS " + LocalDateTime.now());
+			out.print(this.report());
+		}
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.timers != null) : "The timers must be non-null.";
+		assert (this.counters != null) : "The counters must be non-null.";
+	}
+}
@@ -0,0 +1,219 @@
+package controller;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Changes to a user's rows of the MonthlyTotals table, which holds the sum and count of their
+ * transactions by month and category. Inserting a batch of transactions adds each of them
+ * here, and the changes are then written with one upsert per month and category, in the same
+ * DB transaction as the inserts, so the totals never disagree with the transactions.
+ * @author L. James Davidson
+ */
+final class MonthlyTotals {
+
+	/** The month of an epoch day in SQL, as the year * 100 + the month. */
+	static final String MONTH_OF_DAY = "CAST(strftime('%Y%m', day + 2440587.5) AS INTEGER)";
+
+	// Adds to the sum and count of a user's month and category.
+	private static final String UPSERT = "INSERT INTO MonthlyTotals VALUES (?, ?, ?, ?, ?) "
+			+ "ON CONFLICT (belongsTo, month, category) DO UPDATE SET "
+			+ "sum_cents = sum_cents + excluded.sum_cents, count = count + excluded.count";
+
+	// The totals as they should be, computed from the transactions.
+	private static final String ACTUAL_TOTALS = "SELECT belongsTo, " + MONTH_OF_DAY
+			+ " AS month, COALESCE(category, '" + StatementParser.DEFAULT_CATEGORY + "') "
+			+ "AS category, SUM(price_in_cents) AS sum_cents, COUNT(*) AS count "
+			+ "FROM Transactions WHERE belongsTo IS NOT NULL GROUP BY 1, 2, 3";
+
+	// Replace every total with the totals computed from the transactions.
+	static final String DELETE_ALL = "DELETE FROM MonthlyTotals";
+	static final String REBUILD = "INSERT INTO MonthlyTotals " + ACTUAL_TOTALS;
+
+	/**
+	 * Finds every total which differs from the transactions. Each row is the user, month and
+	 * category, then the sum and count of the transactions, then the sum and count of the
+	 * total, where a missing total or missing transactions read as 0.
+	 */
+	static final String CHECK = "WITH actual AS (" + ACTUAL_TOTALS + ") "
+			+ "SELECT a.belongsTo, a.month, a.category, a.sum_cents, a.count, "
+			+ "IFNULL(m.sum_cents, 0), IFNULL(m.count, 0) FROM actual a "
+			+ "LEFT JOIN MonthlyTotals m ON m.belongsTo = a.belongsTo AND m.month = a.month "
+			+ "AND m.category = a.category "
+			+ "WHERE m.count IS NULL OR m.sum_cents <> a.sum_cents OR m.count <> a.count "
+			+ "UNION ALL "
+			+ "SELECT m.belongsTo, m.month, m.category, 0, 0, m.sum_cents, m.count "
+			+ "FROM MonthlyTotals m "
+			+ "LEFT JOIN actual a ON m.belongsTo = a.belongsTo AND m.month = a.month "
+			+ "AND m.category = a.category WHERE a.count IS NULL "
+			+ "ORDER BY 1, 2, 3";
+
+	/**
+	 * The query of a user's totals by month over a range of months, whose parameters are the
+	 * username and the first and last months. Months are labelled like BreakdownReport's.
+	 */
+	static final String BY_MONTH = "SELECT printf('%04d-%02d', month / 100, month % 100), "
+			+ "SUM(sum_cents), SUM(count) FROM MonthlyTotals "
+			+ "WHERE belongsTo = ? AND month BETWEEN ? AND ? GROUP BY month ORDER BY month";
+
+	/** The query of a user's totals by category over a range of months, like BY_MONTH. */
+	static final String BY_CATEGORY = "SELECT category, SUM(sum_cents), SUM(count) "
+			+ "FROM MonthlyTotals WHERE belongsTo = ? AND month BETWEEN ? AND ? "
+			+ "GROUP BY category ORDER BY category";
+
+	private final String username;
+	private final Map<Key, long[]> changes = new HashMap<Key, long[]>();
+
+	// AF:
+	// changes maps each month and category of username to the amount in cents and the
+	// number of transactions which will be added to its total.
+
+	// RI: username != null, every value of changes has a length of 2
+
+	/**
+	 * Creates an empty set of changes.
+	 * @param username is the user whose totals are changed.
+	 */
+	MonthlyTotals(String username) {
+		this.username = username;
+		this.checkRep();
+	}
+
+	/**
+	 * @param epochDay is a day.
+	 * @return The month of the day as the year * 100 + the month, the same as MONTH_OF_DAY.
+	 */
+	static int monthOf(long epochDay) {
+		LocalDate date = LocalDate.ofEpochDay(epochDay);
+		return date.getYear() * 100 + date.getMonthValue();
+	}
+
+	/**
+	 * Finds the months of a range of days, if the range is made of whole months, so that
+	 * totals over it can be read from the MonthlyTotals table.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The first and last months of the range, or null if it starts or ends part way
+	 * 		through a month. A range with no first or last day starts or ends at any month.
+	 */
+	static int[] monthsOf(long fromDay, long toDay) {
+		int[] months = {Integer.MIN_VALUE, Integer.MAX_VALUE};
+		if (fromDay > LocalDate.MIN.toEpochDay()) {
+			if (fromDay > LocalDate.MAX.toEpochDay()
+					|| LocalDate.ofEpochDay(fromDay).getDayOfMonth() != 1) {
+				return null;
+			}
+			months[0] = monthOf(fromDay);
+		}
+		if (toDay < LocalDate.MAX.toEpochDay()) {
+			if (toDay < LocalDate.MIN.toEpochDay()
+					|| LocalDate.ofEpochDay(toDay + 1).getDayOfMonth() != 1) {
+				return null;
+			}
+			months[1] = monthOf(toDay);
+		}
+		return months;
+	}
+
+	/**
+	 * Adds a transaction which was inserted to the changes.
+	 * @param epochDay is the day of the transaction.
+	 * @param category is the category of the transaction.
+	 * @param cents is the amount of the transaction.
+	 */
+	void add(long epochDay, String category, long cents) {
+		long[] change = this.changes.computeIfAbsent(new Key(monthOf(epochDay), category),
+				key -> new long[2]);
+		change[0] += cents;
+		change[1]++;
+	}
+
+	/**
+	 * Writes the changes to the MonthlyTotals table and clears them. Must be called in the DB
+	 * transaction which inserted the transactions.
+	 * @param stmtCache holds the statements of the connection which inserted them.
+	 * @throws SQLException if the totals could not be updated.
+	 */
+	void write(StatementCache stmtCache) throws SQLException {
+		if (this.changes.isEmpty()) {
+			return;
+		}
+
+		PreparedStatement upsert = stmtCache.prepare(UPSERT);
+		for (Map.Entry<Key, long[]> change : this.changes.entrySet()) {
+			upsert.setString(1, this.username);
+			upsert.setInt(2, change.getKey().month);
+			upsert.setString(3, change.getKey().category);
+			upsert.setLong(4, change.getValue()[0]);
+			upsert.setLong(5, change.getValue()[1]);
+			upsert.addBatch();
+		}
+		try {
+			upsert.executeBatch();
+		} finally {
+			this.changes.clear();
+		}
+	}
+
+	/**
+	 * Writes the total of a single transaction to the MonthlyTotals table.
+	 * @param stmtCache holds the statements of the connection which inserted it.
+	 * @param username is the user the transaction belongs to.
+	 * @param epochDay is the day of the transaction.
+	 * @param category is the category of the transaction.
+	 * @param cents is the amount of the transaction.
+	 * @throws SQLException if the total could not be updated.
+	 */
+	static void write(StatementCache stmtCache, String username, long epochDay, String category,
+			long cents) throws SQLException {
+		PreparedStatement upsert = stmtCache.prepare(UPSERT);
+		upsert.setString(1, username);
+		upsert.setInt(2, monthOf(epochDay));
+		upsert.setString(3, category);
+		upsert.setLong(4, cents);
+		upsert.setLong(5, 1);
+		upsert.executeUpdate();
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.username != null) : "The username must be non-null.";
+		for (long[] change : this.changes.values()) {
+			assert (change.length == 2) : "Every change must have a sum and a count.";
+		}
+	}
+
+	/** A month and category of the changes. */
+	private static final class Key {
+		private final int month;
+		private final String category;
+
+		/**
+		 * @param month is the year * 100 + the month.
+		 * @param category is the category.
+		 */
+		private Key(int month, String category) {
+			this.month = month;
+			this.category = category;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.month == other.month && this.category.equals(other.category);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * this.month + this.category.hashCode();
+		}
+	}
+}
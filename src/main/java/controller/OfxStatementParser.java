@@ -0,0 +1,229 @@
+package controller;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+import model.Transaction.TransactionBuilder;
+
+/**
+ * Streams the transactions out of an OFX or QFX bank statement. Both the SGML form (OFX 1.x, where
+ * leaf elements have no closing tags) and the XML form (OFX 2.x) are understood. Only the
+ * STMTTRN aggregates are read, everything else in the statement is skipped.
+ * @author L. James Davidson
+ */
+public class OfxStatementParser implements StatementParser {
+
+	// Characters in a date, the time and time zone which may follow are ignored.
+	private static final int CHARS_IN_OFX_DATE = 8;
+
+	// Source of the statement, read one character at a time through its own buffer.
+	private final Reader in;
+	private final char[] buf = new char[8192];
+	private int bufPos;
+	private int bufLen;
+
+	// Line of the statement currently being read.
+	private long line = 1;
+
+	// Reused between tags to avoid allocating per element.
+	private final StringBuilder text = new StringBuilder();
+
+	// Values of the transaction currently being read.
+	private String amount;
+	private String posted;
+	private String name;
+	private String payee;
+	private String memo;
+
+	/**
+	 * Creates a parser for an OFX or QFX statement.
+	 * @param in is the reader of the statement, closed when this parser is closed.
+	 */
+	public OfxStatementParser(Reader in) {
+		this.in = in;
+	}
+
+	@Override
+	public TransactionBuilder next() throws IOException, ParseException {
+		boolean inTransaction = false;
+		String tag;
+
+		while ((tag = this.readTag()) != null) {
+			if (tag.equals("STMTTRN")) {
+				inTransaction = true;
+				this.amount = null;
+				this.posted = null;
+				this.name = null;
+				this.payee = null;
+				this.memo = null;
+
+			} else if (tag.equals("/STMTTRN") && inTransaction) {
+				return this.build();
+
+			} else if (inTransaction) {
+				switch (tag) {
+					case "TRNAMT":
+						this.amount = this.readValue();
+						break;
+					case "DTPOSTED":
+						this.posted = this.readValue();
+						break;
+					case "NAME":
+						this.name = this.readValue();
+						break;
+					case "PAYEE":
+						this.payee = this.readValue();
+						break;
+					case "MEMO":
+						this.memo = this.readValue();
+						break;
+					default:
+						// Other elements of a transaction are not stored.
+				}
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public long getLine() {
+		return this.line;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	/**
+	 * Builds a transaction from the values of the STMTTRN aggregate which was just read.
+	 * @return A TransactionBuilder holding the transaction.
+	 * @throws ParseException if the amount or date is missing or malformed.
+	 */
+	private TransactionBuilder build() throws ParseException {
+		if (this.amount == null || this.posted == null) {
+			throw new ParseException("Line " + this.line + ": transaction is missing its amount "
+					+ "or date.", (int) this.line);
+		}
+
+		TransactionBuilder builder;
+		LocalDate date;
+		try {
+			builder = StatementParser.newBuilder(StatementParser.parseCents(this.amount));
+			String day = this.posted.length() > CHARS_IN_OFX_DATE
+					? this.posted.substring(0, CHARS_IN_OFX_DATE) : this.posted;
+			date = LocalDate.of(Integer.parseInt(day.substring(0, 4)),
+					Integer.parseInt(day.substring(4, 6)), Integer.parseInt(day.substring(6, 8)));
+		} catch (NumberFormatException | DateTimeException | IndexOutOfBoundsException e) {
+			throw new ParseException("Line " + this.line + ": " + e.getMessage(), (int) this.line);
+		}
+
+		// NAME is the usual description, older statements only have a PAYEE aggregate.
+		String description = this.name != null ? this.name : this.payee;
+		builder.setDescription(description == null ? "" : description);
+		builder.setDate(date);
+		builder.setMemo(this.memo == null ? "" : this.memo);
+		builder.setCategory(builder.isADeposit() ? DEPOSIT_CATEGORY : DEFAULT_CATEGORY);
+		return builder;
+	}
+
+	/**
+	 * Skips to the next tag of the statement.
+	 * @return The upper case name of the tag, closing tags starting with '/', or null at the
+	 * 		end of the statement.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private String readTag() throws IOException {
+		int c;
+		do {
+			c = this.read();
+			if (c < 0) {
+				return null;
+			}
+		} while (c != '<');
+
+		this.text.setLength(0);
+		while ((c = this.read()) >= 0 && c != '>') {
+			this.text.append((char) c);
+		}
+
+		// Attributes are never used by OFX but XML declarations may have them.
+		int space = this.text.indexOf(" ");
+		if (space >= 0) {
+			this.text.setLength(space);
+		}
+		return this.text.toString().toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Reads the value of an element up to the next tag without consuming the tag.
+	 * @return The trimmed value with character entities decoded.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private String readValue() throws IOException {
+		this.text.setLength(0);
+		int c;
+		while ((c = this.peek()) >= 0 && c != '<') {
+			this.read();
+			this.text.append((char) c);
+		}
+
+		String value = this.text.toString().trim();
+		if (value.indexOf('&') >= 0) {
+			value = value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+					.replace("&apos;", "'").replace("&nbsp;", " ").replace("&amp;", "&");
+		}
+		return value;
+	}
+
+	/**
+	 * @return The next character of the statement or -1 at the end of the statement.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private int read() throws IOException {
+		if (this.bufPos == this.bufLen && !this.fill()) {
+			return -1;
+		}
+
+		char c = this.buf[this.bufPos++];
+		if (c == '\n') {
+			this.line++;
+		}
+		return c;
+	}
+
+	/**
+	 * @return The next character of the statement without consuming it or -1 at the end.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private int peek() throws IOException {
+		if (this.bufPos == this.bufLen && !this.fill()) {
+			return -1;
+		}
+		return this.buf[this.bufPos];
+	}
+
+	/**
+	 * Refills the buffer from the reader.
+	 * @return False if the end of the statement was reached.
+	 * @throws IOException if the statement could not be read.
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = this.in.read(this.buf, 0, this.buf.length);
+		} while (n == 0);
+
+		if (n < 0) {
+			return false;
+		}
+		this.bufPos = 0;
+		this.bufLen = n;
+		return true;
+	}
+}
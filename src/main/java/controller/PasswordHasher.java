@@ -0,0 +1,336 @@
+package controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import model.BCrypt;
+
+/**
+ * Hashes and checks passwords with BCrypt on a small pool of threads of its own. BCrypt is
+ * slow on purpose, so running it on the threads which serve requests would leave them unable
+ * to serve anything else under load. The pool has a thread per core and a bounded queue, and
+ * work submitted when the queue is full fails at once instead of waiting.
+ *
+ * New hashes are made with the hasher's cost. calibrated() picks the cost by timing BCrypt on
+ * the host, so hashes get stronger as hardware gets faster, and needsRehash() tells callers
+ * which stored hashes were made with a lower cost and should be replaced at the next login.
+ * @author L. James Davidson
+ */
+public class PasswordHasher implements AutoCloseable {
+
+	/** The default number of hashes which may wait for a thread. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	/** The cost new hashes are made with unless the hasher is calibrated. */
+	public static final int DEFAULT_LOG_ROUNDS = 10;
+
+	/** The most BCrypt allows. */
+	public static final int MAX_LOG_ROUNDS = 30;
+
+	/** The default time a hash should take when calibrating. */
+	public static final long DEFAULT_TARGET_MILLIS = 100;
+
+	/** The system property which sets the time a hash should take when calibrating. */
+	public static final String TARGET_MILLIS_PROPERTY = "bcrypt.targetMillis";
+
+	// The cost which is timed when calibrating, cheap enough to time a few times.
+	private static final int CALIBRATION_LOG_ROUNDS = 6;
+	private static final int CALIBRATION_RUNS = 5;
+
+	// Latencies of hashes and checks of every hasher, queueing included.
+	private static final LatencyHistogram HASH_TIMER =
+			MetricsRegistry.getDefault().timer("bcrypt.hash");
+	private static final LatencyHistogram CHECK_TIMER =
+			MetricsRegistry.getDefault().timer("bcrypt.check");
+
+	private final ThreadPoolExecutor executor;
+	private final int logRounds;
+
+	// Metrics.
+	private final LongAdder hashes = new LongAdder();
+	private final LongAdder hashNanos = new LongAdder();
+	private final AtomicLong maxHashNanos = new AtomicLong();
+	private final LongAdder queueNanos = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	// AF:
+	// Runs BCrypt on executor, whose threads and queue bound the work in progress. New
+	// hashes take 2^logRounds rounds.
+
+	// RI: executor != null, DEFAULT_LOG_ROUNDS <= logRounds <= MAX_LOG_ROUNDS
+
+	/** Creates a hasher with a thread per core, the default queue capacity and cost. */
+	public PasswordHasher() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY,
+				DEFAULT_LOG_ROUNDS);
+	}
+
+	/**
+	 * Creates a hasher.
+	 * @param threads is the number of threads which hash at once.
+	 * @param queueCapacity is the most hashes which may wait for a thread.
+	 * @param logRounds is the cost of new hashes, the log2 of their number of rounds.
+	 * @throws IllegalArgumentException if threads or queueCapacity is not positive or
+	 * 		logRounds is out of range.
+	 */
+	public PasswordHasher(int threads, int queueCapacity, int logRounds) {
+		if (threads <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("The threads and queue capacity must be "
+					+ "positive.");
+		}
+		if (logRounds < DEFAULT_LOG_ROUNDS || logRounds > MAX_LOG_ROUNDS) {
+			throw new IllegalArgumentException("The cost must be from " + DEFAULT_LOG_ROUNDS
+					+ " to " + MAX_LOG_ROUNDS + ".");
+		}
+		this.logRounds = logRounds;
+
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), task -> {
+					Thread thread = new Thread(task, "PasswordHasher-"
+							+ count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
+
+		this.checkRep();
+	}
+
+	/**
+	 * Creates a hasher with a thread per core and the default queue capacity, whose cost is
+	 * calibrated so a hash takes about the time set by the bcrypt.targetMillis system property.
+	 * @return The hasher.
+	 */
+	public static PasswordHasher calibrated() {
+		long targetMillis = Long.getLong(TARGET_MILLIS_PROPERTY, DEFAULT_TARGET_MILLIS);
+		return new PasswordHasher(Runtime.getRuntime().availableProcessors(),
+				DEFAULT_QUEUE_CAPACITY, calibrate(TimeUnit.MILLISECONDS.toNanos(targetMillis)));
+	}
+
+	/**
+	 * Times BCrypt on this host and picks the highest cost whose hash takes at most the target.
+	 * Each round costs the same, so a hash of cost n + 1 takes twice as long as one of cost n,
+	 * and timing a cheap cost is enough to estimate every other.
+	 * @param targetNanos is the time a hash should take.
+	 * @return The cost, never less than DEFAULT_LOG_ROUNDS so calibrating on a slow host does
+	 * 		not weaken new hashes.
+	 */
+	public static int calibrate(long targetNanos) {
+		BCrypt bcrypt = new BCrypt();
+		byte[] password = "calibration".getBytes(StandardCharsets.UTF_8);
+		byte[] salt = new byte[16];
+
+		// The first runs are slow until the JIT compiles the key schedule, keep the fastest.
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < CALIBRATION_RUNS; i++) {
+			long start = System.nanoTime();
+			bcrypt.crypt_raw(password, salt, CALIBRATION_LOG_ROUNDS, new int[6]);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		int logRounds = CALIBRATION_LOG_ROUNDS;
+		long estimate = best;
+		while (logRounds < MAX_LOG_ROUNDS && estimate * 2 <= targetNanos) {
+			logRounds++;
+			estimate *= 2;
+		}
+		return Math.max(DEFAULT_LOG_ROUNDS, logRounds);
+	}
+
+	/**
+	 * Hashes a password with a new random salt of the hasher's cost.
+	 * @param password is the plain text password.
+	 * @return A future of the hash, which fails with a RejectedExecutionException if the
+	 * 		hasher is saturated.
+	 */
+	public CompletableFuture<String> hash(String password) {
+		return this.submit(HASH_TIMER, () -> BCrypt.hashpw(password,
+				BCrypt.gensalt(this.logRounds)));
+	}
+
+	/**
+	 * Checks if a stored hash was made with a lower cost than the hasher's, in which case it
+	 * should be replaced by a new hash of the password once the password has been checked.
+	 * @param hash is the hash the password was stored as.
+	 * @return True if the hash is weaker than new hashes.
+	 */
+	public boolean needsRehash(String hash) {
+		try {
+			return BCrypt.getLogRounds(hash) < this.logRounds;
+		} catch (IllegalArgumentException e) {
+			// Not a BCrypt hash, which checking will reject anyway.
+			return false;
+		}
+	}
+
+	/**
+	 * Checks a password against a hash.
+	 * @param password is the plain text password.
+	 * @param hash is the hash the password was stored as.
+	 * @return A future of true if the password matches, which fails with a
+	 * 		RejectedExecutionException if the hasher is saturated.
+	 */
+	public CompletableFuture<Boolean> check(String password, String hash) {
+		return this.submit(CHECK_TIMER, () -> BCrypt.checkpw(password, hash));
+	}
+
+	/**
+	 * Hashes a password like hash() and waits for it, for callers with nothing else to do.
+	 * @param password is the plain text password.
+	 * @return The hash.
+	 * @throws RejectedExecutionException if the hasher is saturated.
+	 */
+	public String hashNow(String password) {
+		return join(this.hash(password));
+	}
+
+	/**
+	 * Checks a password like check() and waits for it, for callers with nothing else to do.
+	 * @param password is the plain text password.
+	 * @param hash is the hash the password was stored as.
+	 * @return True if the password matches.
+	 * @throws RejectedExecutionException if the hasher is saturated.
+	 */
+	public boolean checkNow(String password, String hash) {
+		return join(this.check(password, hash));
+	}
+
+	/**
+	 * Waits for a future of the hasher, rethrowing the exception it failed with.
+	 * @param future is the future.
+	 * @return The result of the future.
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs BCrypt work on the hasher's threads, timing it.
+	 * @param timer is the histogram the time from submitting to finishing is recorded in.
+	 * @param work is the work.
+	 * @return A future of the result of the work.
+	 */
+	private <T> CompletableFuture<T> submit(LatencyHistogram timer, Supplier<T> work) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		long queued = System.nanoTime();
+
+		try {
+			this.executor.execute(() -> {
+				long start = System.nanoTime();
+				this.queueNanos.add(start - queued);
+				T value = null;
+				RuntimeException failure = null;
+				try {
+					value = work.get();
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+
+				// Recorded before the future completes, so callers which waited see the metrics.
+				long took = System.nanoTime() - start;
+				this.hashes.increment();
+				this.hashNanos.add(took);
+				this.maxHashNanos.accumulateAndGet(took, Math::max);
+				timer.recordSince(queued);
+
+				if (failure == null) {
+					result.complete(value);
+				} else {
+					result.completeExceptionally(failure);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.rejected.increment();
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/** @return The cost of new hashes, the log2 of their number of rounds. */
+	public int getLogRounds() {
+		return this.logRounds;
+	}
+
+	/** @return The number of threads which hash at once. */
+	public int getThreads() {
+		return this.executor.getMaximumPoolSize();
+	}
+
+	/** @return The number of hashes waiting for a thread. */
+	public int getQueueDepth() {
+		return this.executor.getQueue().size();
+	}
+
+	/** @return The number of hashes running right now. */
+	public int getActive() {
+		return this.executor.getActiveCount();
+	}
+
+	/** @return The number of hashes and checks which have finished. */
+	public long getHashes() {
+		return this.hashes.sum();
+	}
+
+	/** @return The average time a hash or check took in nanoseconds. */
+	public long getAverageHashNanos() {
+		long count = this.hashes.sum();
+		return count == 0 ? 0 : this.hashNanos.sum() / count;
+	}
+
+	/** @return The longest a hash or check took in nanoseconds. */
+	public long getMaxHashNanos() {
+		return this.maxHashNanos.get();
+	}
+
+	/** @return The average time a hash or check waited for a thread in nanoseconds. */
+	public long getAverageQueueNanos() {
+		long count = this.hashes.sum();
+		return count == 0 ? 0 : this.queueNanos.sum() / count;
+	}
+
+	/** @return The number of hashes and checks turned away because the hasher was saturated. */
+	public long getRejected() {
+		return this.rejected.sum();
+	}
+
+	@Override
+	/** @return the string representation of this hasher's metrics. */
+	public String toString() {
+		return String.format("cost %d, %d threads, %d active, %d queued, %d done (avg %.1f ms, "
+				+ "max %.1f ms, avg queued %.1f ms), %d rejected", this.getLogRounds(),
+				this.getThreads(), this.getActive(), this.getQueueDepth(), this.getHashes(),
+				this.getAverageHashNanos() / 1e6, this.getMaxHashNanos() / 1e6,
+				this.getAverageQueueNanos() / 1e6, this.getRejected());
+	}
+
+	/** Stops the hasher's threads once the queued work is done. */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.executor != null) : "The executor must be non-null.";
+		assert (this.logRounds >= DEFAULT_LOG_ROUNDS && this.logRounds <= MAX_LOG_ROUNDS)
+				: "The cost must be in range.";
+	}
+}
@@ -0,0 +1,285 @@
+package controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Brings a Transaction Tracker database up to the current schema. Migrations are numbered SQL
+ * scripts which are applied in order, each in its own DB transaction, and recorded with a
+ * checksum in the schema_version table. A migration which was changed after it was applied is
+ * reported as an error instead of silently diverging from the databases it already ran on.
+ * @author L. James Davidson
+ */
+public class SchemaMigrator {
+
+	/** The migrations of the schema in the order they are applied. */
+	private static final Migration[] MIGRATIONS = {
+			new Migration(1, "baseline", "V1__baseline.sql"),
+			new Migration(2, "transaction indexes", "V2__transaction_indexes.sql"),
+			new Migration(3, "epoch day dates", "V3__epoch_day.sql"),
+			new Migration(4, "monthly totals", "V4__monthly_totals.sql") };
+
+	// Folder on the class path holding the migration scripts.
+	private static final String MIGRATIONS_FOLDER = "/migrations/";
+
+	// Table which records the applied migrations.
+	private static final String CREATE_VERSION_TABLE =
+			"CREATE TABLE IF NOT EXISTS schema_version (\n"
+			+ "version         INTEGER PRIMARY KEY,\n"
+			+ "description     VARCHAR(50) NOT NULL,\n"
+			+ "checksum        INTEGER     NOT NULL,\n"
+			+ "installed_on    TEXT        NOT NULL,\n"
+			+ "execution_ms    INTEGER     NOT NULL\n"
+			+ ")";
+
+	// The connection to the database being migrated.
+	private final Connection conn;
+
+	/**
+	 * Creates a migrator for a database.
+	 * @param conn is the connection to the database, which must not be in a DB transaction.
+	 */
+	public SchemaMigrator(Connection conn) {
+		this.conn = conn;
+	}
+
+	/**
+	 * Applies every migration which has not been applied yet. If any were applied, the query
+	 * planner statistics are refreshed with ANALYZE so that new indexes are used.
+	 * @return The number of migrations which were applied.
+	 * @throws SQLException if a migration failed, in which case it was rolled back, or if an
+	 * 		applied migration no longer matches its checksum.
+	 */
+	public int migrate() throws SQLException {
+		try (Statement stmt = this.conn.createStatement()) {
+			stmt.execute(CREATE_VERSION_TABLE);
+		}
+
+		Map<Integer, Long> applied = this.getAppliedChecksums();
+		int count = 0;
+
+		for (Migration migration : MIGRATIONS) {
+			String script = migration.load();
+			long checksum = checksum(script);
+			Long appliedChecksum = applied.get(migration.version);
+
+			if (appliedChecksum == null) {
+				this.apply(migration, script, checksum);
+				count++;
+			} else if (appliedChecksum != checksum) {
+				throw new SQLException("Migration V" + migration.version + " ("
+						+ migration.description + ") was changed after it was applied.");
+			}
+		}
+
+		if (count > 0) {
+			try (Statement stmt = this.conn.createStatement()) {
+				stmt.execute("ANALYZE");
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The version of the newest applied migration or 0 if none have been applied.
+	 * @throws SQLException if the schema_version table could not be read.
+	 */
+	public int getCurrentVersion() throws SQLException {
+		try (Statement stmt = this.conn.createStatement()) {
+			// A database which was never migrated has no schema_version table.
+			try (ResultSet table = stmt.executeQuery("SELECT 1 FROM sqlite_master "
+					+ "WHERE type = 'table' AND name = 'schema_version'")) {
+				if (!table.next()) {
+					return 0;
+				}
+			}
+			try (ResultSet result = stmt.executeQuery("SELECT max(version) FROM schema_version")) {
+				return result.next() ? result.getInt(1) : 0;
+			}
+		}
+	}
+
+	/**
+	 * @return The checksums of the applied migrations by version.
+	 * @throws SQLException if the schema_version table could not be read.
+	 */
+	private Map<Integer, Long> getAppliedChecksums() throws SQLException {
+		Map<Integer, Long> applied = new HashMap<Integer, Long>();
+		try (Statement stmt = this.conn.createStatement();
+				ResultSet result = stmt.executeQuery(
+						"SELECT version, checksum FROM schema_version")) {
+			while (result.next()) {
+				applied.put(result.getInt(1), result.getLong(2));
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * Applies a migration and records it in one DB transaction.
+	 * @param migration is the migration being applied.
+	 * @param script is the SQL of the migration.
+	 * @param checksum is the checksum of script.
+	 * @throws SQLException if the migration failed, in which case it was rolled back.
+	 */
+	private void apply(Migration migration, String script, long checksum) throws SQLException {
+		long start = System.nanoTime();
+
+		try (Statement stmt = this.conn.createStatement()) {
+			stmt.execute("BEGIN TRANSACTION;");
+			try {
+				for (String sql : splitStatements(script)) {
+					stmt.execute(sql);
+				}
+
+				try (PreparedStatement record = this.conn.prepareStatement(
+						"INSERT INTO schema_version VALUES (?, ?, ?, ?, ?)")) {
+					record.setInt(1, migration.version);
+					record.setString(2, migration.description);
+					record.setLong(3, checksum);
+					record.setString(4, LocalDateTime.now().toString());
+					record.setLong(5, (System.nanoTime() - start) / 1_000_000);
+					record.execute();
+				}
+
+				stmt.execute("COMMIT");
+
+			} catch (SQLException e) {
+				try {
+					stmt.execute("ROLLBACK;");
+				} catch (SQLException e1) {
+					e.addSuppressed(e1);
+				}
+				throw new SQLException("Migration V" + migration.version + " ("
+						+ migration.description + ") failed: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Splits a script into its statements. Comments are removed and statements end with a
+	 * semicolon which is not inside a quoted string or identifier.
+	 * @param script is the SQL script.
+	 * @return The non-empty statements of the script in order.
+	 */
+	static List<String> splitStatements(String script) {
+		List<String> statements = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		char quote = 0;
+
+		for (int i = 0; i < script.length(); i++) {
+			char c = script.charAt(i);
+			char next = i + 1 < script.length() ? script.charAt(i + 1) : 0;
+
+			if (quote != 0) {
+				current.append(c);
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+				current.append(c);
+			} else if (c == '-' && next == '-') {
+				// Skip to the end of the line comment.
+				while (i < script.length() && script.charAt(i) != '\n') {
+					i++;
+				}
+				current.append('\n');
+			} else if (c == '/' && next == '*') {
+				// Skip to the end of the block comment.
+				int end = script.indexOf("*/", i + 2);
+				i = end < 0 ? script.length() : end + 1;
+				current.append(' ');
+			} else if (c == ';') {
+				addStatement(statements, current);
+			} else {
+				current.append(c);
+			}
+		}
+		addStatement(statements, current);
+
+		return statements;
+	}
+
+	/**
+	 * Adds a statement to the list if it is not blank and clears it.
+	 * @param statements is the list of statements.
+	 * @param current holds the statement.
+	 */
+	private static void addStatement(List<String> statements, StringBuilder current) {
+		String sql = current.toString().trim();
+		if (!sql.isEmpty()) {
+			statements.add(sql);
+		}
+		current.setLength(0);
+	}
+
+	/**
+	 * Computes the checksum of a script, ignoring differences in line endings.
+	 * @param script is the SQL script.
+	 * @return The CRC32 checksum of the script.
+	 */
+	private static long checksum(String script) {
+		CRC32 crc = new CRC32();
+		crc.update(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+	/** A numbered SQL script which changes the schema. */
+	private static class Migration {
+
+		private final int version;
+		private final String description;
+		private final String resource;
+
+		/**
+		 * Creates a migration.
+		 * @param version is the number of the migration, migrations are applied in this order.
+		 * @param description is a short description of the migration.
+		 * @param resource is the file name of the script in the migrations folder.
+		 */
+		Migration(int version, String description, String resource) {
+			this.version = version;
+			this.description = description;
+			this.resource = resource;
+		}
+
+		/**
+		 * Reads the script of this migration from the class path.
+		 * @return The SQL script.
+		 * @throws SQLException if the script could not be found or read.
+		 */
+		String load() throws SQLException {
+			try (InputStream in = SchemaMigrator.class.getResourceAsStream(
+					MIGRATIONS_FOLDER + this.resource)) {
+				if (in == null) {
+					throw new SQLException("Missing migration script " + this.resource);
+				}
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buf = new byte[4096];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					out.write(buf, 0, n);
+				}
+				return new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+			} catch (IOException e) {
+				throw new SQLException("Could not read migration script " + this.resource, e);
+			}
+		}
+	}
+}
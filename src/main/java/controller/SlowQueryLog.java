@@ -0,0 +1,223 @@
+package controller;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import controller.AsyncLogger.Level;
+
+/**
+ * Writes queries which took longer than a threshold to their own log file. A query is logged
+ * by its shape, the SQL with any literal values replaced by '?', along with how many
+ * parameters it had, how long it took and how many rows it returned. The first time a shape
+ * is slow its plan is read with EXPLAIN QUERY PLAN and logged with it, marking any step which
+ * scans the whole Transactions table, since those are what make a query slow as a ledger grows.
+ * @author L. James Davidson
+ */
+public class SlowQueryLog {
+
+	/** The default time a query may take before it is logged. */
+	public static final long DEFAULT_THRESHOLD_MILLIS = 100;
+
+	/** The system property which sets the time a query may take before it is logged. */
+	public static final String THRESHOLD_PROPERTY = "db.slowQueryMillis";
+
+	/** The most shapes whose plans are remembered, after which plans are not read any more. */
+	public static final int MAX_EXPLAINED_SHAPES = 1024;
+
+	// Literal values in SQL, which are replaced to find its shape.
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile(
+			"(?<![\\w.])\\d+(?:\\.\\d+)?(?![\\w.])");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	// A step of a plan which reads every row of the Transactions table. A scan through an index 
+	// still reads every row, only in the index's order, so it is marked too. SEARCH steps use an 
+	// index to read some of the rows and are not.
+	private static final Pattern FULL_SCAN = Pattern.compile(
+			"^SCAN (?:TABLE )?Transactions\\b");
+
+	// The slow query log of the whole program.
+	private static final SlowQueryLog DEFAULT = new SlowQueryLog(new AsyncLogger(
+			new File(TransactionHelper.FILEPATH, "slow-query.log")),
+			TimeUnit.MILLISECONDS.toNanos(Long.getLong(THRESHOLD_PROPERTY,
+					DEFAULT_THRESHOLD_MILLIS)));
+
+	static {
+		// Write what is still in the log's buffer when the program exits.
+		Runtime.getRuntime().addShutdownHook(new Thread(DEFAULT.logger::close,
+				"SlowQueryLog-close"));
+	}
+
+	private final AsyncLogger logger;
+	private volatile long thresholdNanos;
+	private final Set<String> explained = ConcurrentHashMap.newKeySet();
+
+	// Metrics.
+	private final LongAdder slowQueries = new LongAdder();
+	private final LongAdder fullScans = new LongAdder();
+
+	// AF:
+	// Logs queries which took at least thresholdNanos to logger. explained holds the shapes
+	// whose plans have been logged.
+
+	// RI: logger != null, thresholdNanos >= 0
+
+	/**
+	 * Creates a slow query log.
+	 * @param logger is the logger the slow queries are written to.
+	 * @param thresholdNanos is the time a query may take before it is logged.
+	 * @throws IllegalArgumentException if thresholdNanos is negative.
+	 */
+	public SlowQueryLog(AsyncLogger logger, long thresholdNanos) {
+		this.logger = logger;
+		this.setThresholdNanos(thresholdNanos);
+	}
+
+	/** @return The slow query log of the whole program. */
+	public static SlowQueryLog getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param nanos is how long a query took.
+	 * @return True if the query was slow enough to log.
+	 */
+	public boolean isSlow(long nanos) {
+		return nanos >= this.thresholdNanos;
+	}
+
+	/**
+	 * Logs a query if it was slow, with its plan the first time its shape is slow.
+	 * @param conn is the connection the query ran on, which its plan is read with.
+	 * @param sql is the SQL of the query.
+	 * @param bindCount is the number of parameters of the query.
+	 * @param nanos is how long the query took.
+	 * @param rows is the number of rows the query returned or -1 if they were not counted.
+	 */
+	public void record(Connection conn, String sql, int bindCount, long nanos, long rows) {
+		if (!this.isSlow(nanos)) {
+			return;
+		}
+		this.slowQueries.increment();
+
+		String shape = shapeOf(sql);
+		StringBuilder entry = new StringBuilder();
+		entry.append(String.format("%.1f ms, %d binds, %s rows: %s", nanos / 1e6, bindCount,
+				rows < 0 ? "unknown" : Long.toString(rows), shape));
+
+		// Only the first slow query of each shape has its plan read.
+		if (this.explained.size() < MAX_EXPLAINED_SHAPES && this.explained.add(shape)) {
+			entry.append("\nQUERY PLAN");
+			for (String step : explain(conn, sql, bindCount)) {
+				entry.append("\n  ").append(step);
+				if (isFullScan(step)) {
+					entry.append("  <-- full scan of Transactions");
+					this.fullScans.increment();
+				}
+			}
+		}
+
+		this.logger.log(Level.WARN, entry.toString(), null);
+	}
+
+	/**
+	 * Reads the plan SQLite uses for a query. Parameters are bound to NULL, which SQLite's
+	 * planner does not look at.
+	 * @param conn is the connection to read the plan with.
+	 * @param sql is the SQL of the query.
+	 * @param bindCount is the number of parameters of the query.
+	 * @return The steps of the plan, or a note of why it could not be read.
+	 */
+	static List<String> explain(Connection conn, String sql, int bindCount) {
+		List<String> steps = new ArrayList<String>();
+		try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+			for (int i = 1; i <= bindCount; i++) {
+				stmt.setNull(i, Types.NULL);
+			}
+			try (ResultSet plan = stmt.executeQuery()) {
+				while (plan.next()) {
+					steps.add(plan.getString("detail"));
+				}
+			}
+		} catch (SQLException e) {
+			steps.add("(could not be read: " + e.getMessage() + ")");
+		}
+		return steps;
+	}
+
+	/**
+	 * @param step is the detail of a step of a query plan.
+	 * @return True if the step reads every row of the Transactions table, with or without an 
+	 * 		index.
+	 */
+	static boolean isFullScan(String step) {
+		return FULL_SCAN.matcher(step).find();
+	}
+
+	/**
+	 * Finds the shape of a query, so queries which differ only in their values are logged as
+	 * one.
+	 * @param sql is the SQL of the query.
+	 * @return The SQL with literal strings and numbers replaced by '?' and whitespace collapsed.
+	 */
+	static String shapeOf(String sql) {
+		String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+		shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+		return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+	}
+
+	/** @return The time a query may take before it is logged. */
+	public long getThresholdNanos() {
+		return this.thresholdNanos;
+	}
+
+	/**
+	 * Changes the time a query may take before it is logged.
+	 * @param thresholdNanos is the new threshold.
+	 * @throws IllegalArgumentException if thresholdNanos is negative.
+	 */
+	public void setThresholdNanos(long thresholdNanos) {
+		if (thresholdNanos < 0) {
+			throw new IllegalArgumentException("The threshold must not be negative.");
+		}
+		this.thresholdNanos = thresholdNanos;
+		this.checkRep();
+	}
+
+	/** @return The number of slow queries logged. */
+	public long getSlowQueries() {
+		return this.slowQueries.sum();
+	}
+
+	/** @return The number of full scans of Transactions found in the plans logged. */
+	public long getFullScans() {
+		return this.fullScans.sum();
+	}
+
+	@Override
+	/** @return the string representation of this log's metrics. */
+	public String toString() {
+		return String.format("threshold %.1f ms, %d slow queries, %d shapes explained, "
+				+ "%d full scans", this.thresholdNanos / 1e6, this.getSlowQueries(),
+				this.explained.size(), this.getFullScans());
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.logger != null) : "The logger must be non-null.";
+		assert (this.thresholdNanos >= 0) : "The threshold must not be negative.";
+	}
+}
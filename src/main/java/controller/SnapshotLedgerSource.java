@@ -0,0 +1,103 @@
+package controller;
+
+/**
+ * The transactions of a LedgerSnapshot as they were when the source was made. The columns an
+ * aggregation reads are copied once, so chunks are scanned in parallel without the snapshot's
+ * lock, and a chunk is a range of rows, which are in order of day.
+ * @author L. James Davidson
+ */
+public class SnapshotLedgerSource implements LedgerSource {
+
+	private final String username;
+	private final int[] days;
+	private final long[] cents;
+	private final int[] categoryIds;
+	private final String[] categories;
+
+	// AF:
+	// Row i is the transaction of username on epoch day days[i] of cents[i] cents with the
+	// category categories[categoryIds[i]], for 0 <= i < days.length.
+
+	// RI: username != null, every column has the same length, days is sorted, every category
+	//     id is an index of categories
+
+	/**
+	 * Copies the rows of a snapshot.
+	 * @param snapshot is the snapshot.
+	 */
+	public SnapshotLedgerSource(LedgerSnapshot snapshot) {
+		this.username = snapshot.getUsername();
+		synchronized (snapshot) {
+			int size = snapshot.size();
+			this.days = new int[size];
+			this.cents = new long[size];
+			this.categoryIds = new int[size];
+			snapshot.copyRows(0, size, this.days, this.cents, this.categoryIds);
+
+			this.categories = new String[snapshot.getCategoryCount()];
+			for (int id = 0; id < this.categories.length; id++) {
+				String category = snapshot.getCategory(id);
+				this.categories[id] = category == null ? "N/A" : category;
+			}
+		}
+		this.checkRep();
+	}
+
+	@Override
+	public long[] getKeyRange(String username, long fromDay, long toDay) {
+		if (username != null && !username.equals(this.username)) {
+			return null;
+		}
+		int first = this.firstRowOnOrAfter(fromDay);
+		int end = toDay == Long.MAX_VALUE ? this.days.length : this.firstRowOnOrAfter(toDay + 1);
+		return first < end ? new long[] {first, end - 1} : null;
+	}
+
+	@Override
+	public void scan(String username, long fromDay, long toDay, long fromKey, long toKey,
+			RowSink sink) {
+		if (username != null && !username.equals(this.username)) {
+			return;
+		}
+		int end = (int) Math.min(toKey, this.days.length - 1);
+		for (int row = (int) Math.max(fromKey, 0); row <= end; row++) {
+			if (this.days[row] >= fromDay && this.days[row] <= toDay) {
+				sink.accept(this.username, this.categories[this.categoryIds[row]], this.days[row],
+						this.cents[row]);
+			}
+		}
+	}
+
+	@Override
+	public int getMaxParallelism() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @param epochDay is a day.
+	 * @return The first row on or after the day, or the number of rows if there is none.
+	 */
+	private int firstRowOnOrAfter(long epochDay) {
+		int low = 0;
+		int high = this.days.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.days[mid] < epochDay) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.username != null) : "The username must be non-null.";
+		assert (this.cents.length == this.days.length
+				&& this.categoryIds.length == this.days.length) : "The columns must be the same "
+						+ "length.";
+	}
+}
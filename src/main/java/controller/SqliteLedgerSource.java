@@ -0,0 +1,185 @@
+package controller;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The transactions of a database, read through the reader connections of a pool so that
+ * chunks are scanned in parallel. The transactions of one user are split by epoch day, which
+ * SQLite finds with the (belongsTo, day) index, and those of every user by rowid, which it
+ * finds without an index, so no chunk scans the whole table. Rowids are split into chunks of
+ * the same number of rows, since deleted rows leave gaps in them. No more chunks are scanned at
+ * once than the pool has readers, so chunks queue behind one another instead of timing out.
+ * @author L. James Davidson
+ */
+public class SqliteLedgerSource implements LedgerSource {
+
+	// Find the keys of a user's transactions and of the whole table.
+	private static final String USER_DAYS = "SELECT MIN(day), MAX(day) FROM Transactions "
+			+ "WHERE belongsTo = ? AND day BETWEEN ? AND ?";
+	// MIN and MAX are read separately, since together SQLite scans an index for them.
+	private static final String ALL_ROWIDS = "SELECT (SELECT MIN(rowid) FROM Transactions), "
+			+ "(SELECT MAX(rowid) FROM Transactions)";
+	// SQLite counts the rows of the smallest index rather than reading the table.
+	private static final String COUNT_ALL = "SELECT COUNT(*) FROM Transactions";
+	// Steps over the rowids of a chunk to the first rowid of the next one, without reading 
+	// any column of the rows.
+	private static final String NEXT_BOUND = "SELECT rowid FROM Transactions WHERE rowid >= ? "
+			+ "ORDER BY rowid LIMIT 1 OFFSET ?";
+
+	// Read the transactions of a chunk.
+	private static final String SCAN_USER = "SELECT belongsTo, COALESCE(category, 'N/A'), day, "
+			+ "price_in_cents FROM Transactions WHERE belongsTo = ? AND day BETWEEN ? AND ?";
+	private static final String SCAN_ALL = "SELECT belongsTo, COALESCE(category, 'N/A'), day, "
+			+ "price_in_cents FROM Transactions WHERE rowid BETWEEN ? AND ? "
+			+ "AND day BETWEEN ? AND ? AND belongsTo IS NOT NULL";
+
+	private static final LongAdder ROWS_READ = MetricsRegistry.getDefault().counter("db.rowsRead");
+
+	private final TransactionsDBPool pool;
+	// Held by each task of this source while it reads, one permit per reader of the pool.
+	private final Semaphore running;
+
+	/**
+	 * @param pool is the pool whose readers read the transactions. Each chunk being scanned 
+	 * 		holds a reader, so other reads may wait while an aggregation runs.
+	 */
+	public SqliteLedgerSource(TransactionsDBPool pool) {
+		this.pool = pool;
+		this.running = new Semaphore(pool.getReaderCount(), true);
+	}
+
+	@Override
+	public long[] getKeyRange(String username, long fromDay, long toDay) throws SQLException {
+		return this.read(db -> {
+			PreparedStatement stmt;
+			if (username != null) {
+				stmt = db.getStatementCache().prepare(USER_DAYS);
+				stmt.setString(1, username);
+				stmt.setLong(2, fromDay);
+				stmt.setLong(3, toDay);
+			} else {
+				stmt = db.getStatementCache().prepare(ALL_ROWIDS);
+			}
+			try (ResultSet result = stmt.executeQuery()) {
+				if (!result.next()) {
+					return null;
+				}
+				long first = result.getLong(1);
+				// Both are null when there are no transactions.
+				if (result.wasNull()) {
+					return null;
+				}
+				return new long[] {first, result.getLong(2)};
+			}
+		});
+	}
+
+	@Override
+	public long[] getChunkBounds(String username, long fromDay, long toDay, int chunks)
+			throws SQLException {
+		// A user's days are split evenly, as their transactions are spread over them.
+		if (username != null) {
+			return LedgerSource.super.getChunkBounds(username, fromDay, toDay, chunks);
+		}
+		long[] keys = this.getKeyRange(null, fromDay, toDay);
+		if (keys == null) {
+			return null;
+		}
+
+		return this.read(db -> {
+			long rows;
+			try (ResultSet result = db.getStatementCache().prepare(COUNT_ALL).executeQuery()) {
+				rows = result.next() ? result.getLong(1) : 0;
+			}
+			long rowsPerChunk = Math.max(1, (rows + chunks - 1) / chunks);
+
+			List<Long> bounds = new ArrayList<Long>(chunks + 1);
+			bounds.add(keys[0]);
+			PreparedStatement next = db.getStatementCache().prepare(NEXT_BOUND);
+			while (bounds.size() < chunks) {
+				next.setLong(1, bounds.get(bounds.size() - 1));
+				next.setLong(2, rowsPerChunk);
+				try (ResultSet result = next.executeQuery()) {
+					if (!result.next()) {
+						break;
+					}
+					bounds.add(result.getLong(1));
+				}
+			}
+
+			long[] chunkBounds = new long[bounds.size() + 1];
+			for (int i = 0; i < bounds.size(); i++) {
+				chunkBounds[i] = bounds.get(i);
+			}
+			chunkBounds[bounds.size()] = keys[1] + 1;
+			return chunkBounds;
+		});
+	}
+
+	@Override
+	public void scan(String username, long fromDay, long toDay, long fromKey, long toKey,
+			RowSink sink) throws SQLException {
+		this.read(db -> {
+			PreparedStatement stmt;
+			if (username != null) {
+				// The keys are days, so the chunk is the intersection of both ranges.
+				stmt = db.getStatementCache().prepare(SCAN_USER);
+				stmt.setString(1, username);
+				stmt.setLong(2, Math.max(fromDay, fromKey));
+				stmt.setLong(3, Math.min(toDay, toKey));
+			} else {
+				stmt = db.getStatementCache().prepare(SCAN_ALL);
+				stmt.setLong(1, fromKey);
+				stmt.setLong(2, toKey);
+				stmt.setLong(3, fromDay);
+				stmt.setLong(4, toDay);
+			}
+
+			long rows = 0;
+			try (ResultSet results = stmt.executeQuery()) {
+				while (results.next()) {
+					sink.accept(results.getString(1), results.getString(2), results.getLong(3),
+							results.getLong(4));
+					rows++;
+				}
+			} finally {
+				ROWS_READ.add(rows);
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public int getMaxParallelism() {
+		return this.pool.getReaderCount();
+	}
+
+	/**
+	 * Runs a task with a reader of the pool, first waiting until fewer tasks of this source than 
+	 * the pool has readers are running. Tasks beyond that wait here for one another to finish 
+	 * rather than for the pool's reader wait time, which a long scan could outlast.
+	 * @param task is the task, which must only read.
+	 * @return The result of the task.
+	 * @throws SQLException if the task failed, no reader was free in time or the thread was 
+	 * 		interrupted.
+	 */
+	private <T> T read(TransactionsDBPool.DatabaseTask<T> task) throws SQLException {
+		try {
+			this.running.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a reader connection.", e);
+		}
+		try {
+			return this.pool.read(task);
+		} finally {
+			this.running.release();
+		}
+	}
+}
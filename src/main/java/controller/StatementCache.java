@@ -0,0 +1,255 @@
+package controller;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of prepared statements for a single database connection. Statements are keyed
+ * by their SQL text so that identical SQL is only compiled by SQLite once. When the cache is full
+ * the least recently used statement is closed and evicted. A statement which is checked out, 
+ * because a result set or batch of it is still open, is evicted without being closed, and is 
+ * only closed once it is released.
+ *
+ * This cache is not thread safe, it must only be used by the thread which owns its connection.
+ * @author L. James Davidson
+ */
+public class StatementCache {
+
+	/** The default number of statements held by a cache. */
+	public static final int DEFAULT_CAPACITY = 32;
+
+	// The connection which the cached statements belong to.
+	private final Connection conn;
+
+	// The maximum number of statements which will be held at once.
+	private final int capacity;
+
+	// Cached statements in least to most recently used order.
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	
+	// The number of times each checked out statement has been checked out and not released.
+	private final Map<PreparedStatement, Integer> checkedOut = 
+			new IdentityHashMap<PreparedStatement, Integer>();
+	
+	// Checked out statements which were evicted, and are closed once they are released.
+	private final List<PreparedStatement> evictedInUse = new ArrayList<PreparedStatement>();
+
+	// Number of requests which were served by a cached statement.
+	private long hits;
+
+	// Number of requests which required a statement to be prepared.
+	private long misses;
+
+	// Number of statements which were closed to make room for others.
+	private long evictions;
+
+	// AF:
+	// statements holds at most capacity open statements for conn, the eldest entry being the
+	// least recently used statement. The statements of checkedOut are in use and must not be 
+	// closed, those of evictedInUse are no longer cached.
+
+	// RI: conn != null, capacity > 0, statements.size() <= capacity, every statement of 
+	//     evictedInUse is a key of checkedOut
+
+	/**
+	 * Creates an empty statement cache.
+	 * @param conn is the connection which statements will be prepared on.
+	 * @param capacity is the maximum number of statements which will be cached.
+	 * @throws IllegalArgumentException if conn is null or capacity is not positive.
+	 */
+	public StatementCache(Connection conn, int capacity) {
+		if (conn == null) {
+			throw new IllegalArgumentException("The connection must be non-null.");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity of a statement cache must be "
+					+ "positive.");
+		}
+
+		this.conn = conn;
+		this.capacity = capacity;
+
+		// Access ordered so that the eldest entry is always the least recently used.
+		this.statements = new LinkedHashMap<String, PreparedStatement>(capacity * 4 / 3 + 1,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= StatementCache.this.capacity) {
+					return false;
+				}
+
+				StatementCache.this.evictions++;
+				if (StatementCache.this.checkedOut.containsKey(eldest.getValue())) {
+					StatementCache.this.evictedInUse.add(eldest.getValue());
+				} else {
+					closeQuietly(eldest.getValue());
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Gets a prepared statement for the given SQL, preparing it only if it is not already cached.
+	 * The parameters of the returned statement are cleared.
+	 * @param sql is the SQL text of the statement.
+	 * @return An open prepared statement for sql.
+	 * @throws SQLException if the statement could not be prepared.
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement stmt = this.statements.get(sql);
+
+		if (stmt != null && !stmt.isClosed()) {
+			this.hits++;
+			stmt.clearParameters();
+			return stmt;
+		}
+
+		this.misses++;
+		stmt = this.conn.prepareStatement(sql);
+		this.statements.put(sql, stmt);
+		return stmt;
+	}
+
+	/**
+	 * Gets a prepared statement like prepare, and keeps it open until it is released even if it 
+	 * is evicted in the meantime. Used when a result set or batch of the statement stays open 
+	 * while other statements are prepared.
+	 * @param sql is the SQL text of the statement.
+	 * @return An open prepared statement for sql, which must be passed to release once its 
+	 * 		result set or batch is finished.
+	 * @throws SQLException if the statement could not be prepared.
+	 */
+	public PreparedStatement checkOut(String sql) throws SQLException {
+		PreparedStatement stmt = this.prepare(sql);
+		this.checkedOut.merge(stmt, 1, Integer::sum);
+		return stmt;
+	}
+
+	/**
+	 * Releases a statement which was checked out, closing it if it was evicted while it was in 
+	 * use and nothing else has it checked out.
+	 * @param stmt is the statement, which was returned by checkOut.
+	 */
+	public void release(PreparedStatement stmt) {
+		Integer count = this.checkedOut.get(stmt);
+		if (count == null) {
+			return;
+		} else if (count > 1) {
+			this.checkedOut.put(stmt, count - 1);
+			return;
+		}
+
+		this.checkedOut.remove(stmt);
+		if (this.evictedInUse.remove(stmt)) {
+			closeQuietly(stmt);
+		}
+	}
+
+	/**
+	 * Closes and removes the cached statement for the given SQL if there is one. A checked out 
+	 * statement is only closed once it is released.
+	 * @param sql is the SQL text of the statement.
+	 */
+	public void invalidate(String sql) {
+		PreparedStatement stmt = this.statements.remove(sql);
+		if (stmt != null && this.checkedOut.containsKey(stmt)) {
+			this.evictedInUse.add(stmt);
+		} else {
+			closeQuietly(stmt);
+		}
+	}
+
+	/**
+	 * Closes every cached statement and empties this cache.
+	 * @throws SQLException if any statement could not be closed, after attempting to close all
+	 * 		of them.
+	 */
+	public void close() throws SQLException {
+		// Nothing can use the statements once the cache is closed.
+		for (PreparedStatement stmt : this.evictedInUse) {
+			closeQuietly(stmt);
+		}
+		this.evictedInUse.clear();
+		this.checkedOut.clear();
+		
+		SQLException first = null;
+		Iterator<PreparedStatement> it = this.statements.values().iterator();
+		while (it.hasNext()) {
+			try {
+				it.next().close();
+			} catch (SQLException e) {
+				if (first == null) {
+					first = e;
+				}
+			}
+			it.remove();
+		}
+
+		if (first != null) {
+			throw first;
+		}
+	}
+
+	/** @return The number of statements currently held by this cache. */
+	public int size() {
+		return this.statements.size();
+	}
+
+	/** @return The number of distinct statements which are checked out. */
+	public int getCheckedOut() {
+		return this.checkedOut.size();
+	}
+
+	/** @return The maximum number of statements held by this cache. */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/** @return The number of requests served by an already prepared statement. */
+	public long getHits() {
+		return this.hits;
+	}
+
+	/** @return The number of requests which had to prepare a new statement. */
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/** @return The number of statements closed to make room in this cache. */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	@Override
+	/** @return the string representation of this cache's counters. */
+	public String toString() {
+		return "StatementCache[size=" + this.size() + "/" + this.capacity + ", hits=" + this.hits
+				+ ", misses=" + this.misses + ", evictions=" + this.evictions + "]";
+	}
+
+	/**
+	 * Closes a statement ignoring any errors, since an evicted statement is of no further use.
+	 * @param stmt is the statement to close, may be null.
+	 */
+	private static void closeQuietly(PreparedStatement stmt) {
+		if (stmt == null) {
+			return;
+		}
+
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			// Nothing more can be done with a statement that failed to close.
+		}
+	}
+}
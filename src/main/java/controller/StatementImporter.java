@@ -0,0 +1,534 @@
+package controller;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+
+/**
+ * Imports bank statements into a user's transactions. The statement is streamed through a staged
+ * pipeline: a parser thread reads rows into TransactionBuilders and validates them, then hands
+ * them in chunks through a bounded queue to the calling thread, which writes them to the
+ * database in batches. A full queue blocks the parser, so an import of any size runs in constant
+ * memory. Batches are written through a Writer, so each can be queued for a shared connection 
+ * on its own while the statement is still being parsed.
+ * @author L. James Davidson
+ */
+public class StatementImporter {
+
+	/** The file formats which can be imported. */
+	public enum Format {
+		CSV, OFX;
+
+		/**
+		 * Determines the format of a statement from its file name.
+		 * @param fileName is the name of the statement file.
+		 * @return The format of the statement.
+		 * @throws IllegalArgumentException if the extension is not .csv, .ofx or .qfx.
+		 */
+		public static Format fromFileName(String fileName) {
+			String name = fileName.toLowerCase(Locale.ROOT);
+			if (name.endsWith(".csv")) {
+				return CSV;
+			} else if (name.endsWith(".ofx") || name.endsWith(".qfx")) {
+				return OFX;
+			}
+			throw new IllegalArgumentException("Statements must be .csv, .ofx or .qfx files.");
+		}
+
+		/**
+		 * Creates a parser of this format.
+		 * @param in is the reader of the statement.
+		 * @return A parser reading from in.
+		 * @throws IOException if the statement could not be read.
+		 * @throws ParseException if the statement's header is invalid.
+		 */
+		public StatementParser open(Reader in) throws IOException, ParseException {
+			return this == CSV ? new CsvStatementParser(in) : new OfxStatementParser(in);
+		}
+	}
+
+	/** The default number of chunks which may wait between the parser and the writer. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	// Number of transactions handed from the parser to the writer at once.
+	private static final int CHUNK_SIZE = 256;
+
+	// Constants regarding the restrictions from the SQLite database tables.
+	private static final int MAX_DESCR_CHARS = 30;
+	private static final int MAX_MEMO_CHARS = 20;
+
+	// Number of rejected rows whose reason is kept for the user.
+	private static final int MAX_REPORTED_REJECTIONS = 10;
+
+	// Minimum time between progress reports.
+	private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+	// Marks the end of the statement in the queue.
+	private static final List<Transaction> END_OF_STATEMENT = new ArrayList<Transaction>(0);
+
+	/** Where an import reads its categories from and writes its batches to. */
+	public interface Writer {
+
+		/**
+		 * Loads the categories which transactions are validated against.
+		 * @return The loaded categories.
+		 * @throws SQLException if the categories could not be loaded.
+		 */
+		CategoryRegistry loadCategories() throws SQLException;
+
+		/**
+		 * Writes a batch of transactions, skipping ones which are already stored.
+		 * @param batch are the transactions, which must not be kept after this returns.
+		 * @param username is the user the transactions are added to.
+		 * @param batchSize is the number of transactions per committed DB transaction.
+		 * @return The number of transactions written and skipped.
+		 * @throws SQLException if the batch could not be written.
+		 */
+		BulkInsertResult write(List<Transaction> batch, String username, int batchSize)
+				throws SQLException;
+	}
+
+	// Where the transactions are written to.
+	private final Writer writer;
+
+	// Number of transactions per committed batch.
+	private final int batchSize;
+
+	// Number of chunks which may wait in the queue.
+	private final int queueCapacity;
+
+	/**
+	 * Creates an importer using the default batch size and queue capacity.
+	 * @param db is the database the transactions will be written to.
+	 */
+	public StatementImporter(TransactionsDB db) {
+		this(db, TransactionsDB.DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates an importer using the default batch size and queue capacity.
+	 * @param writer is where the transactions will be written to.
+	 */
+	public StatementImporter(Writer writer) {
+		this(writer, TransactionsDB.DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates an importer.
+	 * @param db is the database the transactions will be written to.
+	 * @param batchSize is the number of transactions per committed batch.
+	 * @param queueCapacity is the number of chunks of parsed transactions which may wait to be
+	 * 		written before the parser is blocked.
+	 * @throws IllegalArgumentException if batchSize or queueCapacity is not positive.
+	 */
+	public StatementImporter(TransactionsDB db, int batchSize, int queueCapacity) {
+		this(new DirectWriter(db), batchSize, queueCapacity);
+	}
+
+	/**
+	 * Creates an importer.
+	 * @param writer is where the transactions will be written to.
+	 * @param batchSize is the number of transactions per committed batch.
+	 * @param queueCapacity is the number of chunks of parsed transactions which may wait to be
+	 * 		written before the parser is blocked.
+	 * @throws IllegalArgumentException if batchSize or queueCapacity is not positive.
+	 */
+	public StatementImporter(Writer writer, int batchSize, int queueCapacity) {
+		if (batchSize <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("The batch size and queue capacity must be "
+					+ "positive.");
+		}
+
+		this.writer = writer;
+		this.batchSize = batchSize;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Imports a statement file, determining its format from the file name.
+	 * @param file is the statement to import.
+	 * @param username is the user the transactions will be added to.
+	 * @param listener is given a progress snapshot every so often and when the import finishes,
+	 * 		may be null.
+	 * @return The final progress of the import.
+	 * @throws IOException if the file could not be read.
+	 * @throws ParseException if the statement's header is invalid.
+	 * @throws SQLException if the transactions could not be written. Batches written before the
+	 * 		failure remain in the database.
+	 * @throws IllegalArgumentException if the file is not a supported format.
+	 */
+	public ImportProgress importFile(File file, String username,
+			Consumer<ImportProgress> listener) throws IOException, ParseException, SQLException {
+		Format format = Format.fromFileName(file.getName());
+		CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+		Reader reader = new InputStreamReader(counter, StandardCharsets.UTF_8);
+
+		try (StatementParser parser = format.open(reader)) {
+			return new Pipeline(parser, counter, file.length(), username, listener).execute();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Imports a statement from an already opened parser.
+	 * @param parser reads the statement, it is not closed by this method.
+	 * @param username is the user the transactions will be added to.
+	 * @param listener is given a progress snapshot every so often and when the import finishes,
+	 * 		may be null.
+	 * @return The final progress of the import.
+	 * @throws IOException if the statement could not be read.
+	 * @throws SQLException if the transactions could not be written. Batches written before the
+	 * 		failure remain in the database.
+	 */
+	public ImportProgress importStatement(StatementParser parser, String username,
+			Consumer<ImportProgress> listener) throws IOException, SQLException {
+		return new Pipeline(parser, null, -1, username, listener).execute();
+	}
+
+	/** The state of a single import. */
+	private class Pipeline implements Runnable {
+
+		private final StatementParser parser;
+		private final CountingInputStream counter;
+		private final long totalBytes;
+		private final String username;
+		private final Consumer<ImportProgress> listener;
+
+		// Categories the transactions are validated against, loaded before parsing starts.
+		private CategoryRegistry categories;
+
+		// Chunks of validated transactions waiting to be written.
+		private final BlockingQueue<List<Transaction>> queue =
+				new ArrayBlockingQueue<List<Transaction>>(StatementImporter.this.queueCapacity);
+
+		// Updated by the parser thread and read by the writer.
+		private final AtomicLong parsed = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+		private final List<String> rejections = new ArrayList<String>();
+		private volatile Exception failure;
+		private volatile boolean cancelled;
+
+		// Updated by the writer only.
+		private long written;
+		private long duplicates;
+		private final long start = System.nanoTime();
+		private long lastReport = start;
+
+		/**
+		 * Prepares an import.
+		 * @param parser reads the statement.
+		 * @param counter counts the bytes read from the statement, may be null.
+		 * @param totalBytes is the size of the statement or -1 if it is unknown.
+		 * @param username is the user the transactions will be added to.
+		 * @param listener is given progress snapshots, may be null.
+		 */
+		Pipeline(StatementParser parser, CountingInputStream counter, long totalBytes,
+				String username, Consumer<ImportProgress> listener) {
+			this.parser = parser;
+			this.counter = counter;
+			this.totalBytes = totalBytes;
+			this.username = username;
+			this.listener = listener;
+		}
+
+		/**
+		 * Runs the import, parsing on a new thread and writing on the calling thread.
+		 * @return The final progress of the import.
+		 * @throws IOException if the statement could not be read.
+		 * @throws SQLException if the transactions could not be written.
+		 */
+		ImportProgress execute() throws IOException, SQLException {
+			// Load the categories before parsing so only this thread touches the database.
+			this.categories = StatementImporter.this.writer.loadCategories();
+
+			Thread parserThread = new Thread(this, "statement-parser");
+			parserThread.setDaemon(true);
+			parserThread.start();
+
+			try {
+				this.write();
+			} catch (SQLException | InterruptedIOException | RuntimeException e) {
+				// Stop the parser since nothing will drain the queue anymore.
+				this.cancelled = true;
+				parserThread.interrupt();
+				joinUninterruptibly(parserThread);
+				throw e;
+			}
+
+			joinUninterruptibly(parserThread);
+			Exception e = this.failure;
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			} else if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+
+			ImportProgress done = this.progress(true);
+			if (this.listener != null) {
+				this.listener.accept(done);
+			}
+			return done;
+		}
+
+		/** Parses and validates the statement, feeding the queue until the statement ends. */
+		@Override
+		public void run() {
+			List<Transaction> chunk = new ArrayList<Transaction>(CHUNK_SIZE);
+			try {
+				while (!this.cancelled) {
+					TransactionBuilder builder;
+					try {
+						builder = this.parser.next();
+					} catch (ParseException e) {
+						this.reject(e.getMessage());
+						continue;
+					}
+					if (builder == null) {
+						break;
+					}
+
+					Transaction trans = this.validate(builder);
+					if (trans == null) {
+						continue;
+					}
+					this.parsed.incrementAndGet();
+
+					chunk.add(trans);
+					if (chunk.size() == CHUNK_SIZE) {
+						// Blocks while the writer is behind.
+						this.queue.put(chunk);
+						chunk = new ArrayList<Transaction>(CHUNK_SIZE);
+					}
+				}
+
+				if (!chunk.isEmpty()) {
+					this.queue.put(chunk);
+				}
+
+			} catch (IOException | RuntimeException e) {
+				this.failure = e;
+			} catch (InterruptedException e) {
+				// The writer gave up, nothing will read the queue.
+				return;
+			}
+
+			try {
+				this.queue.put(END_OF_STATEMENT);
+			} catch (InterruptedException e) {
+				// The writer gave up, nothing will read the queue.
+			}
+		}
+
+		/**
+		 * Validates a parsed transaction against the database's restrictions.
+		 * @param builder holds the parsed transaction.
+		 * @return The transaction with its category in the database's casing, or null if it was
+		 * 		rejected.
+		 */
+		private Transaction validate(TransactionBuilder builder) {
+			String category = this.categories.lookup(builder.getCategory());
+			if (category == null) {
+				this.reject("Line " + this.parser.getLine() + ": unknown category '"
+						+ builder.getCategory() + "'.");
+				return null;
+			}
+			if (builder.getDescription().isEmpty()) {
+				this.reject("Line " + this.parser.getLine() + ": missing description.");
+				return null;
+			}
+
+			builder.setCategory(category);
+			if (builder.getDescription().length() > MAX_DESCR_CHARS) {
+				builder.setDescription(builder.getDescription().substring(0, MAX_DESCR_CHARS));
+			}
+			if (builder.getMemo().length() > MAX_MEMO_CHARS) {
+				builder.setMemo(builder.getMemo().substring(0, MAX_MEMO_CHARS));
+			}
+			return builder.build();
+		}
+
+		/**
+		 * Records a rejected row.
+		 * @param reason is why the row was rejected.
+		 */
+		private void reject(String reason) {
+			this.rejected.incrementAndGet();
+			synchronized (this.rejections) {
+				if (this.rejections.size() < MAX_REPORTED_REJECTIONS) {
+					this.rejections.add(reason);
+				}
+			}
+		}
+
+		/**
+		 * Drains the queue into the database in batches until the end of the statement.
+		 * @throws SQLException if a batch could not be written.
+		 * @throws InterruptedIOException if this thread was interrupted.
+		 */
+		private void write() throws SQLException, InterruptedIOException {
+			int batchSize = StatementImporter.this.batchSize;
+			List<Transaction> batch = new ArrayList<Transaction>(batchSize + CHUNK_SIZE);
+
+			while (true) {
+				List<Transaction> chunk;
+				try {
+					chunk = this.queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("The import was interrupted.");
+				}
+				if (chunk == END_OF_STATEMENT) {
+					break;
+				}
+
+				batch.addAll(chunk);
+				if (batch.size() >= batchSize) {
+					this.flush(batch);
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				this.flush(batch);
+			}
+		}
+
+		/**
+		 * Writes a batch of transactions and reports progress if it is time to.
+		 * @param batch are the transactions to write, cleared once written.
+		 * @throws SQLException if the batch could not be written.
+		 */
+		private void flush(List<Transaction> batch) throws SQLException {
+			BulkInsertResult result = StatementImporter.this.writer.write(batch, this.username,
+					StatementImporter.this.batchSize);
+			this.written += result.getRows();
+			this.duplicates += result.getDuplicates();
+			batch.clear();
+
+			long now = System.nanoTime();
+			if (this.listener != null && now - this.lastReport >= PROGRESS_INTERVAL_NANOS) {
+				this.lastReport = now;
+				this.listener.accept(this.progress(false));
+			}
+		}
+
+		/**
+		 * Takes a snapshot of this import's progress.
+		 * @param done determines if the import has finished.
+		 * @return The progress snapshot.
+		 */
+		private ImportProgress progress(boolean done) {
+			List<String> reasons;
+			synchronized (this.rejections) {
+				reasons = new ArrayList<String>(this.rejections);
+			}
+			long bytesRead = this.counter == null ? -1 : this.counter.getCount();
+			return new ImportProgress(bytesRead, this.totalBytes, this.parsed.get(),
+					this.rejected.get(), this.written, this.duplicates,
+					System.nanoTime() - this.start, done, reasons);
+		}
+	}
+
+	/** Writes to a connection which only the importing thread uses. */
+	private static class DirectWriter implements Writer {
+		private final TransactionsDB db;
+
+		/** @param db is the database the transactions are written to. */
+		DirectWriter(TransactionsDB db) {
+			this.db = db;
+		}
+
+		@Override
+		public CategoryRegistry loadCategories() throws SQLException {
+			if (this.db.getCategories() == null) {
+				throw new SQLException("Could not load the categories.");
+			}
+			return this.db.getCategoryRegistry();
+		}
+
+		@Override
+		public BulkInsertResult write(List<Transaction> batch, String username, int batchSize)
+				throws SQLException {
+			return this.db.addExpenses(batch, username, batchSize, true);
+		}
+	}
+
+	/**
+	 * Waits for a thread to finish, preserving this thread's interrupt status.
+	 * @param thread is the thread to wait for.
+	 */
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Counts the bytes read through it so that progress can be reported. */
+	private static class CountingInputStream extends FilterInputStream {
+
+		// Written by the parser thread and read by the writer.
+		private volatile long count;
+
+		/** @param in is the stream being counted. */
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		/** @return The number of bytes read so far. */
+		long getCount() {
+			return this.count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				this.count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				this.count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			this.count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.ParseException;
+
+import model.Transaction.TransactionBuilder;
+
+/**
+ * Reads the transactions of a bank statement one at a time so that statements of any size can be
+ * imported without being loaded into memory.
+ * @author L. James Davidson
+ */
+public interface StatementParser extends Closeable {
+
+	/** Category given to withdrawals which the statement does not categorize. */
+	String DEFAULT_CATEGORY = "N/A";
+
+	/** Category given to deposits which the statement does not categorize. */
+	String DEPOSIT_CATEGORY = "Deposit";
+
+	/**
+	 * Reads the next transaction of the statement. A row which fails to parse is skipped, so
+	 * calling next again continues with the following row.
+	 * @return A TransactionBuilder holding the description, amount, date, category and memo of
+	 * 		the next transaction, or null if the end of the statement was reached.
+	 * @throws IOException if the statement could not be read.
+	 * @throws ParseException if the next row of the statement is malformed.
+	 */
+	TransactionBuilder next() throws IOException, ParseException;
+
+	/** @return The line of the statement which is currently being read. */
+	long getLine();
+
+	/**
+	 * Parses a monetary amount such as "-1,234.5", "$12.34" or "(12.34)" into cents exactly.
+	 * @param amount is the amount to parse.
+	 * @return The amount in cents, negative amounts being withdrawals.
+	 * @throws NumberFormatException if amount is not a valid amount or does not fit in an int.
+	 */
+	static int parseCents(String amount) {
+		long cents = 0;
+		boolean negative = false;
+		boolean inParens = false;
+		int decimals = -1;
+		boolean sawDigit = false;
+
+		for (int i = 0; i < amount.length(); i++) {
+			char c = amount.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (decimals >= 2) {
+					throw new NumberFormatException("Too many decimal places: " + amount);
+				}
+				cents = cents * 10 + (c - '0');
+				if (decimals >= 0) {
+					decimals++;
+				}
+				sawDigit = true;
+				if (cents > Integer.MAX_VALUE) {
+					throw new NumberFormatException("Amount is too large: " + amount);
+				}
+			} else if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else if (c == '-' && !sawDigit) {
+				negative = true;
+			} else if (c == '(' && !sawDigit) {
+				inParens = true;
+			} else if (c == ')' && inParens) {
+				negative = true;
+			} else if (c != ',' && c != '$' && c != '+' && c != ' ') {
+				throw new NumberFormatException("Invalid amount: " + amount);
+			}
+		}
+
+		if (!sawDigit) {
+			throw new NumberFormatException("Invalid amount: " + amount);
+		}
+
+		// Scale to cents when fewer than two decimal places were given.
+		for (int i = Math.max(decimals, 0); i < 2; i++) {
+			cents *= 10;
+		}
+		if (cents > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Amount is too large: " + amount);
+		}
+		return (int) (negative ? -cents : cents);
+	}
+
+	/**
+	 * Creates a TransactionBuilder whose type is determined by the sign of its amount.
+	 * @param amountInCents is the signed amount of the transaction.
+	 * @return A TransactionBuilder with its amount set.
+	 */
+	static TransactionBuilder newBuilder(int amountInCents) {
+		TransactionBuilder builder = new TransactionBuilder(amountInCents > 0);
+		builder.setAmountInCents(amountInCents);
+		return builder;
+	}
+}
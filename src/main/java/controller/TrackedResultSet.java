@@ -0,0 +1,111 @@
+package controller;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.LongConsumer;
+
+/**
+ * A result set handed to code outside TransactionsDB, which tells TransactionsDB when it is 
+ * finished with: once it has been read to the end or closed, whichever comes first. Every 
+ * other call goes straight to the result set it wraps until it is closed. The SQLite driver 
+ * reuses one result set per statement, so once closed the wrapper never touches it again, as 
+ * it may by then hold the rows of the statement's next execution.
+ * @author L. James Davidson
+ */
+final class TrackedResultSet implements InvocationHandler {
+
+	private final ResultSet results;
+	private final LongConsumer onFinish;
+	private long rows;
+	private boolean finished;
+	private boolean closed;
+
+	// AF:
+	// Wraps results, of which rows rows have been read, until closed is true. onFinish has been 
+	// told the number of rows read if finished is true.
+
+	// RI: results, onFinish != null, rows >= 0, finished if closed
+
+	/**
+	 * @param results is the result set.
+	 * @param onFinish is told the number of rows read once the result set is finished with.
+	 */
+	private TrackedResultSet(ResultSet results, LongConsumer onFinish) {
+		this.results = results;
+		this.onFinish = onFinish;
+		this.checkRep();
+	}
+
+	/**
+	 * Wraps a result set.
+	 * @param results is the result set.
+	 * @param onFinish is told the number of rows read once the result set has been read to the 
+	 * 		end or closed. It is told only once.
+	 * @return The wrapped result set.
+	 */
+	static ResultSet wrap(ResultSet results, LongConsumer onFinish) {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+				new Class<?>[] {ResultSet.class}, new TrackedResultSet(results, onFinish));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (this.closed) {
+			switch (method.getName()) {
+				case "close":
+					return null;
+				case "isClosed":
+					return true;
+				default:
+					throw new SQLException("The result set is closed.");
+			}
+		}
+
+		try {
+			switch (method.getName()) {
+				case "next":
+					boolean hasRow = this.results.next();
+					if (hasRow) {
+						this.rows++;
+					} else {
+						this.finish();
+					}
+					return hasRow;
+				case "close":
+					this.closed = true;
+					try {
+						this.results.close();
+					} finally {
+						this.finish();
+					}
+					return null;
+				default:
+					return method.invoke(this.results, args);
+			}
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/** Tells onFinish the number of rows read, unless it has already been told. */
+	private void finish() {
+		if (!this.finished) {
+			this.finished = true;
+			this.onFinish.accept(this.rows);
+		}
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.results != null) : "The result set must be non-null.";
+		assert (this.onFinish != null) : "The listener must be non-null.";
+		assert (this.rows >= 0) : "The rows read must not be negative.";
+		assert (this.finished || !this.closed) : "A closed result set must be finished.";
+	}
+}
@@ -1,13 +1,11 @@
 package controller;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
 import java.time.LocalDate;
-import java.time.LocalTime;
 import java.util.Scanner;
 
+import controller.AsyncLogger.Level;
+
 /**
  * This helper class contains static methods used to manipulate information in the 
  * Transaction Tracker program.
@@ -19,19 +17,55 @@ public class TransactionHelper {
 	protected static final String FILEPATH = (new File("")).getAbsolutePath();
 	
 	// Log file
-	private static File LOG = new File(FILEPATH + "\\.log");
+	private static final File LOG = new File(FILEPATH, ".log");
+	
+	// The system property which sets the least serious level which is logged.
+	private static final String LEVEL_PROPERTY = "log.level";
 	
-	// Log file writer
-	private static PrintWriter pw;
+	// Writes the log file in the background.
+	private static final AsyncLogger LOGGER = new AsyncLogger(LOG, AsyncLogger.DEFAULT_CAPACITY,
+			AsyncLogger.DEFAULT_MAX_BYTES, AsyncLogger.DEFAULT_MAX_FILES,
+			levelOf(System.getProperty(LEVEL_PROPERTY)));
 	
 	/** Prepares the log file for any errors which might occur. */
 	public static void prepare() {
-		try {
-			pw = new PrintWriter(new FileWriter(LOG, true), true);
-		} catch (IOException e) {
+		if (LOG.exists() ? !LOG.canWrite() : !LOG.getAbsoluteFile().getParentFile().canWrite()) {
 			System.out.println("Could not set up connection to log file.");
 			System.exit(1);
 		}
+		
+		// Write what is still in the log's buffer when the program exits.
+		Runtime.getRuntime().addShutdownHook(new Thread(LOGGER::close, "AsyncLogger-close"));
+	}
+	
+	/**
+	 * Writes everything logged so far to the log file, then exits the program. Used instead of
+	 * System.exit so an error logged just before is not lost.
+	 * @param status is the exit status.
+	 */
+	public static void exit(int status) {
+		LOGGER.close();
+		System.exit(status);
+	}
+	
+	/**
+	 * @param name is the name of a level, may be null.
+	 * @return The level, or INFO if name is null or not a level.
+	 */
+	static Level levelOf(String name) {
+		if (name != null) {
+			for (Level level : Level.values()) {
+				if (level.name().equalsIgnoreCase(name.trim())) {
+					return level;
+				}
+			}
+		}
+		return Level.INFO;
+	}
+	
+	/** @return The logger which writes the log file. */
+	public static AsyncLogger getLogger() {
+		return LOGGER;
 	}
 	
     /**
@@ -130,20 +164,11 @@ public class TransactionHelper {
      * @param e is the exception.
      */
     public static void printErrorToLog(Exception e) {
-		// Get the local date and time.
-		LocalDate currDate = LocalDate.now();
-		LocalTime currTime = LocalTime.now();
-		
-		// Write to log file the error information.
-		pw.println("!SESSION " + currDate + " " + currTime);
-		pw.println("!MESSAGE " + e.getMessage());
-		pw.println("!STACK TRACE");
-		e.printStackTrace(pw);
-		pw.println();
-		pw.close();
+		// Hand the error to the logger, which writes it to the log file in the background.
+		LOGGER.error(e.getMessage(), e);
 		
 		// Alert user to error.
-		System.out.println("Something went wrong, please see log file at " + FILEPATH + "\\.log.");
+		System.out.println("Something went wrong, please see log file at " + LOG + ".");
     }
     
 	
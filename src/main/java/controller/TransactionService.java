@@ -0,0 +1,276 @@
+package controller;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import controller.TransactionsDBPool.DatabaseTask;
+import model.Transaction;
+import model.User;
+
+/**
+ * Changes users' transactions and balances on behalf of many sessions at once. Operations on
+ * the same user are linearized by a lock per user, and a sequence of writes run inside 
+ * runLocked(), such as an import of several chunks, is never interleaved with another 
+ * operation on that user. The locks do not make writes concurrent: every write still runs on 
+ * the pool's single writer thread, in the order it was submitted, so writes of users on 
+ * different locks queue behind each other there. Users are mapped onto a fixed number of locks (lock striping), so 
+ * two users can occasionally share a lock.
+ *
+ * Waiting for a lock and waiting for the writer are measured separately. A lock is held while 
+ * its task waits for the writer, so lock waits include the writer queueing of the task ahead.
+ * @author L. James Davidson
+ */
+public class TransactionService {
+
+	/**
+	 * Work which makes several writes as one user, each with runAsUser().
+	 * @param <T> is the type of the result of the work.
+	 */
+	@FunctionalInterface
+	public interface UserOperation<T> {
+
+		/**
+		 * Does the work.
+		 * @return The result of the work.
+		 * @throws IOException if the work could not read its input.
+		 * @throws SQLException if a write failed.
+		 */
+		T run() throws IOException, SQLException;
+	}
+
+	/** The default number of locks users are spread over. */
+	public static final int DEFAULT_STRIPES = 64;
+
+	private final TransactionsDBPool pool;
+	private final ReentrantLock[] locks;
+
+	// Contention metrics.
+	private final LongAdder acquisitions = new LongAdder();
+	private final LongAdder contended = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder writerWaitNanos = new LongAdder();
+	private final AtomicLong maxWriterWaitNanos = new AtomicLong();
+
+	// AF:
+	// Runs the operations of a user while holding locks[stripe(username)], on the connections
+	// of pool.
+
+	// RI: pool != null, locks.length is a power of two
+
+	/**
+	 * Creates a service over a pool of connections.
+	 * @param pool is the pool the operations run on.
+	 * @param stripes is about how many locks users are spread over, rounded up to a power of
+	 * 		two.
+	 * @throws IllegalArgumentException if stripes is not positive.
+	 */
+	public TransactionService(TransactionsDBPool pool, int stripes) {
+		if (stripes <= 0) {
+			throw new IllegalArgumentException("There must be at least one lock.");
+		}
+
+		this.pool = pool;
+		this.locks = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripes * 2 - 1))];
+		for (int i = 0; i < this.locks.length; i++) {
+			this.locks[i] = new ReentrantLock();
+		}
+
+		this.checkRep();
+	}
+
+	/**
+	 * Adds a transaction to a user and changes their balance by its amount.
+	 * @param trans is the transaction.
+	 * @param username is the user who the transaction will be added to.
+	 * @return The user's new balance in cents.
+	 * @throws SQLException if the transaction could not be added, in which case nothing changed.
+	 */
+	public long addTransaction(Transaction trans, String username) throws SQLException {
+		return this.runAsUser(username, db -> db.recordTransaction(trans, username));
+	}
+
+	/**
+	 * Adds many transactions to a user in batches, skipping ones which are already stored.
+	 * @param expenses are the transactions.
+	 * @param username is the user who the transactions will be added to.
+	 * @return The number of transactions added and the user's new balance.
+	 * @throws SQLException if a batch could not be added, batches before it are kept.
+	 */
+	public BulkInsertResult addTransactions(Iterable<Transaction> expenses, String username)
+			throws SQLException {
+		return this.runAsUser(username, db -> db.addExpenses(expenses, username,
+				TransactionsDB.DEFAULT_BATCH_SIZE, true));
+	}
+
+	/**
+	 * Reads a user's account. Reads do not take the user's lock since a reader always sees a
+	 * committed state.
+	 * @param username is the user.
+	 * @return The user or null if there is no such user.
+	 * @throws SQLException if no reader was free in time.
+	 */
+	public User getUser(String username) throws SQLException {
+		return this.pool.read(db -> db.logIn(username));
+	}
+
+	/**
+	 * Runs a write task while holding a user's lock, so it is linearized with every other
+	 * operation on the user by this service.
+	 * @param username is the user the task works on.
+	 * @param task is the task, which runs on the pool's writer.
+	 * @return The result of the task.
+	 * @throws SQLException if the task failed or the thread was interrupted while waiting.
+	 */
+	public <T> T runAsUser(String username, DatabaseTask<T> task) throws SQLException {
+		ReentrantLock lock = this.lockFor(username);
+		this.acquire(lock);
+		try {
+			return this.write(task);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Runs an operation on the calling thread while holding a user's lock, so the writes it 
+	 * makes with runAsUser() are not interleaved with any other operation on the user. Only the 
+	 * writes themselves run on the pool's writer, so writes of other users run between them, 
+	 * though users which share the lock wait for the whole operation.
+	 * @param username is the user the operation works on.
+	 * @param operation is the operation.
+	 * @return The result of the operation.
+	 * @throws IOException if the operation could not read its input.
+	 * @throws SQLException if a write failed or the thread was interrupted while waiting.
+	 */
+	public <T> T runLocked(String username, UserOperation<T> operation)
+			throws IOException, SQLException {
+		ReentrantLock lock = this.lockFor(username);
+		this.acquire(lock);
+		try {
+			return operation.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Runs a task on the pool's writer, recording how long it was queued before it ran.
+	 * @param task is the task.
+	 * @return The result of the task.
+	 * @throws SQLException if the task failed or the thread was interrupted while waiting.
+	 */
+	private <T> T write(DatabaseTask<T> task) throws SQLException {
+		long queued = System.nanoTime();
+		return this.pool.write(db -> {
+			long waited = System.nanoTime() - queued;
+			this.writes.increment();
+			this.writerWaitNanos.add(waited);
+			this.maxWriterWaitNanos.accumulateAndGet(waited, Math::max);
+			return task.run(db);
+		});
+	}
+
+	/**
+	 * @param username is a user.
+	 * @return The lock of the user.
+	 */
+	private ReentrantLock lockFor(String username) {
+		// Spread the hash so that usernames which differ only at the end use different locks.
+		int hash = username.hashCode();
+		hash ^= hash >>> 16;
+		return this.locks[hash & (this.locks.length - 1)];
+	}
+
+	/**
+	 * Takes a lock, recording how long it took if it was already held.
+	 * @param lock is the lock to take.
+	 * @throws SQLException if the thread was interrupted while waiting.
+	 */
+	private void acquire(ReentrantLock lock) throws SQLException {
+		this.acquisitions.increment();
+		if (lock.tryLock()) {
+			return;
+		}
+
+		this.contended.increment();
+		long start = System.nanoTime();
+		try {
+			lock.lockInterruptibly();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a user's lock.", e);
+		} finally {
+			long waited = System.nanoTime() - start;
+			this.waitNanos.add(waited);
+			this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+		}
+	}
+
+	/** @return The number of locks users are spread over. */
+	public int getStripes() {
+		return this.locks.length;
+	}
+
+	/** @return The number of times a user's lock was taken. */
+	public long getAcquisitions() {
+		return this.acquisitions.sum();
+	}
+
+	/** @return The number of times a user's lock was already held and had to be waited for. */
+	public long getContended() {
+		return this.contended.sum();
+	}
+
+	/** @return The total nanoseconds spent waiting for users' locks. */
+	public long getWaitNanos() {
+		return this.waitNanos.sum();
+	}
+
+	/** @return The longest wait for a user's lock in nanoseconds. */
+	public long getMaxWaitNanos() {
+		return this.maxWaitNanos.get();
+	}
+
+	/** @return The number of tasks this service ran on the pool's writer. */
+	public long getWrites() {
+		return this.writes.sum();
+	}
+
+	/** @return The total nanoseconds tasks were queued for the writer, with a lock held. */
+	public long getWriterWaitNanos() {
+		return this.writerWaitNanos.sum();
+	}
+
+	/** @return The longest a task was queued for the writer in nanoseconds. */
+	public long getMaxWriterWaitNanos() {
+		return this.maxWriterWaitNanos.get();
+	}
+
+	@Override
+	/** @return the string representation of this service's lock metrics. */
+	public String toString() {
+		long taken = this.getAcquisitions();
+		return String.format("%d locks, %d taken, %d contended (%.1f%%), %.1f ms waited, "
+				+ "%.1f ms max; %d writes, %.1f ms queued for the writer, %.1f ms max", 
+				this.getStripes(), taken, this.getContended(),
+				taken == 0 ? 0.0 : 100.0 * this.getContended() / taken,
+				this.getWaitNanos() / 1e6, TimeUnit.NANOSECONDS.toMicros(this.getMaxWaitNanos())
+				/ 1e3, this.getWrites(), this.getWriterWaitNanos() / 1e6, 
+				TimeUnit.NANOSECONDS.toMicros(this.getMaxWriterWaitNanos()) / 1e3);
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (this.pool != null) : "The pool must be non-null.";
+		assert (Integer.bitCount(this.locks.length) == 1) : "The number of locks must be a "
+				+ "power of two.";
+	}
+}
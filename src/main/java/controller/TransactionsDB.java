@@ -1,10 +1,21 @@
 package controller;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import model.Transaction;
 import model.User;
@@ -14,37 +25,212 @@ import model.User;
  * breakdown expenses via date, price, categories, and more.
  */
 public class TransactionsDB {
+	
+	/** The default number of transactions inserted per committed batch by addExpenses. */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	
+	// Inserts a single transaction.
+	private static final String INSERT_TRANSACTION = "INSERT INTO Transactions VALUES (?, ?, ?, ? , ?, ?)";
+	
+	// Inserts a single transaction unless an identical one already exists.
+	private static final String INSERT_TRANSACTION_IF_NEW = 
+			"INSERT OR IGNORE INTO Transactions VALUES (?, ?, ?, ? , ?, ?)";
+	
+	// Atomically adds to a user's balance, with and without reading the new balance back.
+	private static final String ADD_TO_BALANCE = 
+			"UPDATE Users SET balance_in_cents = balance_in_cents + ? WHERE username = ?";
+	private static final String ADD_TO_BALANCE_RETURNING = ADD_TO_BALANCE 
+			+ " RETURNING balance_in_cents";
+	
+	// Reads a user's balance.
+	private static final String SELECT_BALANCE = 
+			"SELECT balance_in_cents FROM Users WHERE username = ?";
+	
+	// Latencies of the operations of every connection, and the rows they read and wrote.
+	private static final LatencyHistogram LOG_IN_TIMER = timer("logIn");
+	private static final LatencyHistogram ADD_EXPENSE_TIMER = timer("addExpense");
+	private static final LatencyHistogram ADD_EXPENSES_TIMER = timer("addExpenses");
+	private static final LatencyHistogram RECORD_TIMER = timer("recordTransaction");
+	private static final LatencyHistogram UPDATE_BALANCE_TIMER = timer("updateBalance");
+	private static final LatencyHistogram GET_CATEGORIES_TIMER = timer("getCategories");
+	private static final LatencyHistogram HISTORY_QUERY_TIMER = timer("executeHistoryQuery");
+	private static final LatencyHistogram QUERY_TIMER = timer("executeQuery");
+	private static final LatencyHistogram BREAKDOWN_TIMER = timer("getBreakdown");
+	private static final LatencyHistogram BALANCE_HISTORY_TIMER = timer("loadBalanceHistory");
+	private static final LongAdder ROWS_READ = MetricsRegistry.getDefault().counter("db.rowsRead");
+	private static final LongAdder ROWS_WRITTEN = 
+			MetricsRegistry.getDefault().counter("db.rowsWritten");
 
 	/** Holds the connection to the database. */
 	private Connection conn;
 	
+	/** The SQLite file of the database, once it is open. */
+	private File database;
+	
 	// Statements which will be used for beginning, rolling back, and committing DB transactions.
 	private PreparedStatement beginTxnStmt;
 	private PreparedStatement commitTxnStmt;
 	private PreparedStatement abortTxnStmt;
+	
+	/** Holds the prepared statements which are reused between calls. */
+	private StatementCache stmtCache;
+	
+	// The maximum number of statements held by the statement cache.
+	private final int stmtCacheCapacity;
+	
+	// The result set handed out for each checked out query statement which has not been read 
+	// to the end or closed. Executing the statement again finishes it.
+	private final Map<PreparedStatement, ResultSet> openResults = 
+			new IdentityHashMap<PreparedStatement, ResultSet>();
+	
+	/** Holds the categories so they are only read from the database once. */
+	private final CategoryRegistry categories;
+	
+	/** Counts the committed changes to each user's transactions, shared by a pool's connections. */
+	private final LedgerVersions versions;
+	
+	/** Holds the ledger snapshots loaded through this connection by username. */
+	private final Map<String, LedgerSnapshot> snapshots = new HashMap<String, LedgerSnapshot>();
+	
+	/** Holds the balance histories loaded through this connection by username. */
+	private final Map<String, BalanceHistory> balanceHistories = 
+			new HashMap<String, BalanceHistory>();
+	
+	// Transactions added to users with snapshots or balance histories by the DB transaction in 
+	// progress, which are only added to them once it commits.
+	private final List<Map.Entry<String, Transaction>> uncommitted = 
+			new ArrayList<Map.Entry<String, Transaction>>();
+	private boolean inTransaction;
+	
+	// Users whose snapshots or balance histories were read inside the DB transaction in 
+	// progress, and so hold rows which a rollback would remove.
+	private final List<String> loadedInTransaction = new ArrayList<String>();
+	
+	// Users whose transactions the DB transaction in progress changed, whose versions are moved 
+	// on once it commits.
+	private final Set<String> changedInTransaction = new LinkedHashSet<String>();
+	
+	// The version of each user's transactions which their snapshot and balance history hold.
+	private final Map<String, Long> cachedVersions = new HashMap<String, Long>();
+	
+	/** Creates a database which caches up to StatementCache.DEFAULT_CAPACITY statements. */
+	public TransactionsDB() {
+		this(StatementCache.DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a database which caches up to a given number of prepared statements.
+	 * @param stmtCacheCapacity is the maximum number of statements which will be cached.
+	 * @throws IllegalArgumentException if stmtCacheCapacity is not positive.
+	 */
+	public TransactionsDB(int stmtCacheCapacity) {
+		this(stmtCacheCapacity, new CategoryRegistry(), new LedgerVersions());
+	}
+	
+	/**
+	 * Creates a database which shares its categories and the versions of its users' ledgers 
+	 * with other connections to the same file.
+	 * @param stmtCacheCapacity is the maximum number of statements which will be cached.
+	 * @param categories is the registry of categories shared by the connections.
+	 * @param versions counts the changes to each user's transactions for the connections.
+	 * @throws IllegalArgumentException if stmtCacheCapacity is not positive.
+	 */
+	TransactionsDB(int stmtCacheCapacity, CategoryRegistry categories, LedgerVersions versions) {
+		if (stmtCacheCapacity <= 0) {
+			throw new IllegalArgumentException("The statement cache capacity must be positive.");
+		}
+		
+		this.stmtCacheCapacity = stmtCacheCapacity;
+		this.categories = categories;
+		this.versions = versions;
+	}
+    
+    /** @return The TransactionsTracker database file used by open(). */
+    public static File getDefaultDatabase() {
+    	return new File(TransactionHelper.FILEPATH + "\\data\\TT.db");
+    }
     
     /** Opens a connection with the TransactionsTracker database **/
     public void open() {
+        try {
+        	this.open(getDefaultDatabase());
+		    
+		} catch (SQLException e) {
+			TransactionHelper.printErrorToLog(e);
+			System.out.println("Error establishing connection, please see log file.");
+			TransactionHelper.exit(1);
+		}
+    }
+    
+    /**
+     * Opens a connection with a Transaction Tracker database file, creating it and bringing its 
+     * schema up to date if needed.
+     * @param database is the SQLite file of the database.
+     * @throws SQLException if the connection could not be made or the schema migrated.
+     */
+    public void open(File database) throws SQLException {
         try {
         	Class.forName("org.sqlite.JDBC");
-			conn = DriverManager.getConnection(
-					 "jdbc:sqlite:" + TransactionHelper.FILEPATH + "\\data\\TT.db");
-			
+        } catch (ClassNotFoundException e) {
+        	throw new SQLException("The SQLite JDBC driver is not on the class path.", e);
+        }
+        
+		conn = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+		this.database = database;
+		try {
 			// Set up the transaction start, commit, and roll back statements
 		    beginTxnStmt = this.conn.prepareStatement("BEGIN TRANSACTION;");
 		    commitTxnStmt = this.conn.prepareStatement("COMMIT");
 		    abortTxnStmt = this.conn.prepareStatement("ROLLBACK;");
 		    
-		} catch (SQLException | ClassNotFoundException e) {
-			TransactionHelper.printErrorToLog(e);
-			System.out.println("Error establishing connection, please see log file.");
-			System.exit(1);
+		    // Bring the schema up to date before anything else uses it.
+		    new SchemaMigrator(this.conn).migrate();
+		    
+		    // Every other statement is prepared on first use and then reused.
+		    stmtCache = new StatementCache(this.conn, this.stmtCacheCapacity);
+		    
+		} catch (SQLException e) {
+			try {
+				conn.close();
+			} catch (SQLException e1) {
+				e.addSuppressed(e1);
+			}
+			throw e;
 		}
     }
     
-    /** Closes the connection to the database. */
+    /**
+     * Sets a PRAGMA of the connection to the database.
+     * @param pragma is the name of the PRAGMA.
+     * @param value is the new value of the PRAGMA.
+     * @throws SQLException if the PRAGMA could not be set.
+     */
+    void setPragma(String pragma, String value) throws SQLException {
+    	try (Statement stmt = this.conn.createStatement()) {
+    		stmt.execute("PRAGMA " + pragma + " = " + value);
+    	}
+    }
+    
+    /** Closes the cached statements and the connection to the database. */
     public void close() throws SQLException {
-      conn.close();
+    	try {
+    		stmtCache.close();
+    		beginTxnStmt.close();
+    		commitTxnStmt.close();
+    		abortTxnStmt.close();
+    	} finally {
+    		conn.close();
+    	}
+    }
+    
+    /** @return The SQLite file of this database, or null if it has not been opened. */
+    public File getDatabase() {
+    	return this.database;
+    }
+    
+    /** @return The cache of prepared statements used by this database. */
+    public StatementCache getStatementCache() {
+    	return this.stmtCache;
     }
     
     /** 
@@ -54,6 +240,7 @@ public class TransactionsDB {
 	 */    
     public void beginTransaction() throws SQLException {
         beginTxnStmt.executeUpdate();  
+        this.inTransaction = true;
     }
 
     /**
@@ -63,6 +250,18 @@ public class TransactionsDB {
      */
     public void commitTransaction() throws SQLException {
         commitTxnStmt.executeUpdate(); 
+        this.inTransaction = false;
+        this.loadedInTransaction.clear();
+        
+        // The transactions are now in the database, so they can be seen in the snapshots.
+        for (Map.Entry<String, Transaction> added : this.uncommitted) {
+        	this.applyToCaches(added.getKey(), added.getValue());
+        }
+        this.uncommitted.clear();
+        for (String username : this.changedInTransaction) {
+        	this.committed(username);
+        }
+        this.changedInTransaction.clear();
     }
 
     /**
@@ -71,6 +270,13 @@ public class TransactionsDB {
 	 *  	the abortTxnStmt is closed, or currently participating in a distributed transaction.
      */
     public void rollbackTransaction() throws SQLException {
+    	this.inTransaction = false;
+    	this.uncommitted.clear();
+    	this.changedInTransaction.clear();
+    	for (String username : this.loadedInTransaction) {
+    		this.dropCaches(username);
+    	}
+    	this.loadedInTransaction.clear();
         abortTxnStmt.executeUpdate();
   	}
     
@@ -87,16 +293,15 @@ public class TransactionsDB {
 					   + "WHERE username = ?";
 		
 		try {
-			// Clear parameters and sanitize string.
-			check = this.conn.prepareStatement(sqlStmt);
-			check.clearParameters();
+			// Get the cached statement with cleared parameters.
+			check = this.stmtCache.prepare(sqlStmt);
 			
 			// Fill in parameter and execute query
 			check.setString(1, username);
-			ResultSet users = check.executeQuery();
-			
-			// If there are no values in the result set then this user name is not taken.
-			return users.next();
+			try (ResultSet users = check.executeQuery()) {
+				// If there are no values in the result set then this user name is not taken.
+				return users.next();
+			}
 			
 		} catch (SQLException e) {
 			TransactionHelper.printErrorToLog(e);
@@ -115,14 +320,13 @@ public class TransactionsDB {
 		String sqlStmt = "INSERT INTO Users VALUES (?, ?, ?, ?)";
 		
 		try {
-			// Sanitize string and clear parameters.
-			addUser = this.conn.prepareStatement(sqlStmt);
-			addUser.clearParameters();
+			// Get the cached statement with cleared parameters.
+			addUser = this.stmtCache.prepare(sqlStmt);
 			
 			// Add in parameter info.
 			addUser.setString(1, newUser.getUsername());
 			addUser.setString(2, newUser.getFullName());
-			addUser.setFloat(3, (float) 0.00);
+			addUser.setLong(3, 0);
 			addUser.setString(4, newUser.getPassword());
 			
 			// Execute query
@@ -142,6 +346,7 @@ public class TransactionsDB {
      * 		null if login failed.
      */
     public User logIn(String username) {
+  	  long start = System.nanoTime();
       
   	  // Create query and statement
   	  PreparedStatement logIn;
@@ -150,29 +355,30 @@ public class TransactionsDB {
   			  + "FROM Users\n"
   			  + "WHERE username = ?";
   	  
-  	ResultSet results;
   	  try {
-  	  	  // Prepare the statement and clear parameters
-  	  	  logIn = conn.prepareStatement(sqlStmt);
-  	  	  logIn.clearParameters();
+  	  	  // Get the cached statement with cleared parameters
+  	  	  logIn = this.stmtCache.prepare(sqlStmt);
   	  	  
   	  	  // Set the information in this statement
   	  	  logIn.setString(1, username);
   	  	  
   	  	  // Execute the query
-  	  	  results = logIn.executeQuery();
-  	  	  
-  	  	  // If no results then return null
-  	  	  if (!results.next()) {
-  	  		  return null;
+  	  	  try (ResultSet results = logIn.executeQuery()) {
+  	  		  // If no results then return null
+  	  		  if (!results.next()) {
+  	  			  return null;
+  	  		  }
+  	  		  
+  	  		  ROWS_READ.increment();
+  	  		  return new User(results.getString("username"), results.getString("name"), 
+  	  				  results.getLong("balance_in_cents") / 100.0, results.getString("password"));
   	  	  }
   	  	  
-  	  	  return new User(results.getString("username"), results.getString("name"), 
-  	  			  results.getInt("balance_in_cents") / 100.0, results.getString("password"));
-  	  	  
   	  } catch (SQLException e) {
   		  TransactionHelper.printErrorToLog(e);
   		  return null;
+  	  } finally {
+  		  LOG_IN_TIMER.recordSince(start);
   	  }
     }
     
@@ -183,61 +389,489 @@ public class TransactionsDB {
      * @throws SQLException if there was an error when adding the transaction to the database.
      */
     public void addExpense(Transaction expense, String username) throws SQLException {    	
-    	// Initialize query and statement.
-    	PreparedStatement insert;
-    	String sqlStmt = "INSERT INTO Transactions VALUES (?, ?, ?, ? , ?, ?)";
-    	      	
-    	// Clear parameters
-    	insert = this.conn.prepareStatement(sqlStmt);
-    	insert.clearParameters();
+    	long start = System.nanoTime();
+    	
+    	// The monthly total is updated in the same DB transaction as the insert.
+    	boolean ownTransaction = !this.inTransaction;
+    	if (ownTransaction) {
+    		this.beginTransaction();
+    	}
+    	try {
+    		// Get the cached statement with cleared parameters
+    		PreparedStatement insert = this.stmtCache.prepare(INSERT_TRANSACTION);
+    		
+    		// Insert parameters from Transaction object.
+    		bindExpense(insert, expense, username);
+    		
+    		// Add transaction
+    		insert.execute();
+    		MonthlyTotals.write(this.stmtCache, username, expense.getEpochDay(), 
+    				expense.getCategory(), expense.getAmountInCents());
+    		this.addToSnapshot(username, expense);
+    		
+    		if (ownTransaction) {
+    			this.commitTransaction();
+    		}
+    		ROWS_WRITTEN.increment();
+    		
+    	} catch (SQLException | RuntimeException e) {
+    		if (ownTransaction) {
+    			try {
+    				this.rollbackTransaction();
+    			} catch (SQLException e1) {
+    				e.addSuppressed(e1);
+    			}
+    		}
+    		throw e;
+    	} finally {
+    		ADD_EXPENSE_TIMER.recordSince(start);
+    	}
+    }
+    
+    /**
+     * Adds a transaction to a user and changes their balance by its amount in one DB 
+     * transaction, so either both happen or neither does.
+     * @param expense is the transaction to be added to the database.
+     * @param username is the user who the transaction will be added to.
+     * @return The user's new balance in cents.
+     * @throws SQLException if the transaction could not be added, in which case it was rolled 
+     * 		back.
+     */
+    public long recordTransaction(Transaction expense, String username) throws SQLException {
+    	long start = System.nanoTime();
+    	this.beginTransaction();
+    	try {
+    		this.addExpense(expense, username);
+    		long balance = this.updateBalance(username, expense.getAmountInCents());
+    		this.commitTransaction();
+    		return balance;
+    		
+    	} catch (SQLException | RuntimeException e) {
+    		try {
+    			this.rollbackTransaction();
+    		} catch (SQLException e1) {
+    			e.addSuppressed(e1);
+    		}
+    		throw e;
+    	} finally {
+    		RECORD_TIMER.recordSince(start);
+    	}
+    }
+    
+    /**
+     * Adds many expenses to a specified user using the default batch size.
+     * @see #addExpenses(Iterable, String, int, boolean)
+     */
+    public BulkInsertResult addExpenses(Iterable<Transaction> expenses, String username) 
+    		throws SQLException {
+    	return this.addExpenses(expenses, username, DEFAULT_BATCH_SIZE, false);
+    }
+    
+    /**
+     * Adds many expenses to a specified user. The expenses are inserted with JDBC batches and 
+     * every batchSize rows the batch is executed, the user's balance is updated once by the sum 
+     * of the batch, and the DB transaction is committed. Must not be called while a DB 
+     * transaction is already in progress.
+     * @param expenses are the transactions to be added to the database.
+     * @param username is the user who the transactions will be added to.
+     * @param batchSize is the number of transactions inserted per committed batch.
+     * @param skipDuplicates determines if transactions which are already in the database are
+     * 		skipped instead of failing their batch. Skipped transactions do not change the balance.
+     * @return The number of rows inserted, the time it took, and the user's new balance.
+     * @throws SQLException if a batch could not be added. Only the failed batch is rolled back,
+     * 		batches committed before it remain in the database.
+     * @throws IllegalArgumentException if batchSize is not positive.
+     */
+    public BulkInsertResult addExpenses(Iterable<Transaction> expenses, String username, 
+    		int batchSize, boolean skipDuplicates) throws SQLException {
+    	if (batchSize <= 0) {
+    		throw new IllegalArgumentException("The batch size must be positive.");
+    	}
+    	
+    	long start = System.nanoTime();
+    	// The batch stays open while the balance and totals statements are prepared.
+    	PreparedStatement insert = this.stmtCache.checkOut(
+    			skipDuplicates ? INSERT_TRANSACTION_IF_NEW : INSERT_TRANSACTION);
+    	long rows = 0;
+    	long duplicates = 0;
+    	int batches = 0;
+    	// The balance read back by the last batch which changed it.
+    	Long balance = null;
+    	
+    	// The rows which have not been committed yet.
+    	Transaction[] pending = new Transaction[batchSize];
+    	int numPending = 0;
+    	
+    	this.beginTransaction();
+    	try {
+    		for (Transaction expense : expenses) {
+    			bindExpense(insert, expense, username);
+    			insert.addBatch();
+    			pending[numPending++] = expense;
+    			
+    			if (numPending == batchSize) {
+    				FlushedBatch flushed = this.flushBatch(insert, username, pending, numPending);
+    				this.commitTransaction();
+    				rows += flushed.inserted;
+    				duplicates += numPending - flushed.inserted;
+    				balance = flushed.balance != null ? flushed.balance : balance;
+    				batches++;
+    				numPending = 0;
+    				this.beginTransaction();
+    			}
+    		}
+    		
+    		// Flush the final partially filled batch.
+    		if (numPending > 0) {
+    			FlushedBatch flushed = this.flushBatch(insert, username, pending, numPending);
+    			rows += flushed.inserted;
+    			duplicates += numPending - flushed.inserted;
+    			balance = flushed.balance != null ? flushed.balance : balance;
+    			batches++;
+    		}
+    		
+    		// The balance update of each batch was included in its DB transaction, so the 
+    		// balance only needs to be read if no batch changed it.
+    		if (balance == null) {
+    			balance = this.readBalance(username);
+    		}
+    		this.commitTransaction();
+    		
+    	} catch (SQLException | RuntimeException e) {
+    		insert.clearBatch();
+    		try {
+    			this.rollbackTransaction();
+    		} catch (SQLException e1) {
+    			e.addSuppressed(e1);
+    		}
+    		throw e;
+    	} finally {
+    		this.stmtCache.release(insert);
+    		ADD_EXPENSES_TIMER.recordSince(start);
+    		ROWS_WRITTEN.add(rows);
+    	}
+    	
+    	return new BulkInsertResult(rows, duplicates, batches, System.nanoTime() - start, balance);
+    }
+    
+    /**
+     * Executes a batch of inserts and applies the summed amount of the inserted rows to the 
+     * user's balance and monthly totals.
+     * @param insert is the insert statement holding the batch.
+     * @param username is the user whose transactions are in the batch.
+     * @param batch holds the transactions in the batch in batch order.
+     * @param size is the number of transactions in the batch.
+     * @return The number of rows which were inserted and the user's new balance.
+     * @throws SQLException if the batch or balance update failed.
+     */
+    private FlushedBatch flushBatch(PreparedStatement insert, String username, 
+    		Transaction[] batch, int size) throws SQLException {
+    	int[] counts = insert.executeBatch();
+    	
+    	// Only rows which were actually inserted change the balance and monthly totals.
+    	MonthlyTotals totals = new MonthlyTotals(username);
+    	long delta = 0;
+    	int inserted = 0;
+    	for (int i = 0; i < size; i++) {
+    		if (counts[i] != 0) {
+    			delta += batch[i].getAmountInCents();
+    			inserted++;
+    			totals.add(batch[i].getEpochDay(), batch[i].getCategory(), 
+    					batch[i].getAmountInCents());
+    			this.addToSnapshot(username, batch[i]);
+    		}
+    	}
+    	
+    	totals.write(this.stmtCache);
+    	Long balance = null;
+    	if (delta != 0) {
+    		balance = this.updateBalance(username, delta);
+    	}
+    	return new FlushedBatch(inserted, balance);
+    }
+    
+    /** The outcome of a batch of inserts. */
+    private static final class FlushedBatch {
+    	private final int inserted;
+    	private final Long balance;
+    	
+    	/**
+    	 * @param inserted is the number of rows which were inserted.
+    	 * @param balance is the user's new balance, or null if the batch did not change it.
+    	 */
+    	private FlushedBatch(int inserted, Long balance) {
+    		this.inserted = inserted;
+    		this.balance = balance;
+    	}
+    }
+    
+    /**
+     * Reads a user's balance.
+     * @param username is the user.
+     * @return The balance in cents.
+     * @throws SQLException if the balance could not be read or the user does not exist.
+     */
+    private long readBalance(String username) throws SQLException {
+    	PreparedStatement select = this.stmtCache.prepare(SELECT_BALANCE);
+    	select.setString(1, username);
+    	try (ResultSet result = select.executeQuery()) {
+    		if (!result.next()) {
+    			throw new SQLException("No user with the username '" + username + "'.");
+    		}
+    		return result.getLong(1);
+    	}
+    }
+    
+    /**
+     * Adds a transaction which was inserted to the user's snapshot and balance history, if they 
+     * have them, and moves the version of the user's transactions on. Inside a DB transaction 
+     * this is held until the DB transaction commits.
+     * @param username is the user who the transaction belongs to.
+     * @param expense is the transaction which was inserted.
+     */
+    private void addToSnapshot(String username, Transaction expense) {
+    	boolean cached = this.snapshots.containsKey(username) 
+    			|| this.balanceHistories.containsKey(username);
+    	
+    	if (this.inTransaction) {
+    		this.changedInTransaction.add(username);
+    		if (cached) {
+    			this.uncommitted.add(new SimpleImmutableEntry<String, Transaction>(username, 
+    					expense));
+    		}
+    	} else {
+    		if (cached) {
+    			this.applyToCaches(username, expense);
+    		}
+    		this.committed(username);
+    	}
+    }
+    
+    /**
+     * Moves the version of a user's transactions on after a change to them committed. The 
+     * user's caches on this connection already hold the change, so they move on with it unless 
+     * another connection changed the user since they were read.
+     * @param username is the user whose transactions changed.
+     */
+    private void committed(String username) {
+    	long version = this.versions.bump(username);
+    	Long cached = this.cachedVersions.get(username);
+    	if (cached == null) {
+    		return;
+    	} else if (cached == version - 1) {
+    		this.cachedVersions.put(username, version);
+    	} else {
+    		this.dropCaches(username);
+    	}
+    }
+    
+    /**
+     * Drops a user's snapshot and balance history if another connection has changed the user's 
+     * transactions since they were read.
+     * @param username is the user.
+     */
+    private void dropStaleCaches(String username) {
+    	Long cached = this.cachedVersions.get(username);
+    	if (cached != null && cached != this.versions.get(username)) {
+    		this.dropCaches(username);
+    	}
+    }
+    
+    /**
+     * Drops a user's snapshot and balance history, so they are read again when next wanted.
+     * @param username is the user.
+     */
+    private void dropCaches(String username) {
+    	this.snapshots.remove(username);
+    	this.balanceHistories.remove(username);
+    	this.cachedVersions.remove(username);
+    }
+    
+    /**
+     * Adds a committed transaction to the user's snapshot and balance history, if they have 
+     * them.
+     * @param username is the user who the transaction belongs to.
+     * @param expense is the transaction.
+     */
+    private void applyToCaches(String username, Transaction expense) {
+    	LedgerSnapshot snapshot = this.snapshots.get(username);
+    	if (snapshot != null) {
+    		snapshot.append(expense);
+    	}
+    	BalanceHistory history = this.balanceHistories.get(username);
+    	if (history != null) {
+    		history.add(expense.getEpochDay(), expense.getAmountInCents());
+    	}
+    }
+    
+    /**
+     * Gets the snapshot of a user's ledger, reading it from the database the first time. The 
+     * snapshot is kept up to date with the transactions added to the user through this 
+     * connection. If another connection sharing this one's pool adds to the user, the snapshot 
+     * is read again the next time it is wanted; other connections to the file are not seen.
+     * @param username is the user whose ledger is wanted.
+     * @return The snapshot or null if it could not be read.
+     */
+    public LedgerSnapshot getSnapshot(String username) {
+    	this.dropStaleCaches(username);
+    	LedgerSnapshot snapshot = this.snapshots.get(username);
+    	if (snapshot != null) {
+    		return snapshot;
+    	}
+    	
+    	try {
+    		// Read before the rows, so a change committed in between makes it stale, not lost.
+    		long version = this.versions.get(username);
+    		snapshot = LedgerSnapshot.load(this.stmtCache, username);
+    		ROWS_READ.add(snapshot.size());
+    		this.snapshots.put(username, snapshot);
+    		this.cachedVersions.putIfAbsent(username, version);
+    		if (this.inTransaction) {
+    			this.loadedInTransaction.add(username);
+    		}
+    		return snapshot;
+    	} catch (SQLException e) {
+    		TransactionHelper.printErrorToLog(e);
+    		return null;
+    	}
+    }
+    
+    /**
+     * Stops keeping a user's snapshot up to date and frees it, so the next call to 
+     * getSnapshot() reads it again.
+     * @param username is the user whose snapshot is dropped.
+     */
+    public void dropSnapshot(String username) {
+    	this.snapshots.remove(username);
+    	if (!this.balanceHistories.containsKey(username)) {
+    		this.cachedVersions.remove(username);
+    	}
+    }
+    
+    /**
+     * Gets the balance history of a user, reading it from the database the first time. Like a 
+     * snapshot, it is kept up to date with the transactions added to the user through this 
+     * connection and read again once another connection of its pool adds to the user.
+     * @param username is the user whose balance history is wanted.
+     * @return The balance history or null if there is no such user or it could not be read.
+     */
+    public BalanceHistory getBalanceHistory(String username) {
+    	this.dropStaleCaches(username);
+    	BalanceHistory history = this.balanceHistories.get(username);
+    	if (history != null) {
+    		return history;
+    	}
     	
-    	// Insert parameters from Transaction object.
+    	long start = System.nanoTime();
+    	try {
+    		long version = this.versions.get(username);
+    		history = BalanceHistory.load(this.stmtCache, username);
+    		if (history != null) {
+    			this.balanceHistories.put(username, history);
+    			this.cachedVersions.putIfAbsent(username, version);
+    			if (this.inTransaction) {
+    				this.loadedInTransaction.add(username);
+    			}
+    		}
+    		return history;
+    	} catch (SQLException e) {
+    		TransactionHelper.printErrorToLog(e);
+    		return null;
+    	} finally {
+    		BALANCE_HISTORY_TIMER.recordSince(start);
+    	}
+    }
+    
+    /**
+     * Finds a user's balance at the end of a day.
+     * @param username is the user.
+     * @param epochDay is the day.
+     * @return The balance in cents or null if the user's balance history could not be read.
+     */
+    public Long getBalanceOn(String username, long epochDay) {
+    	BalanceHistory history = this.getBalanceHistory(username);
+    	return history == null ? null : history.getBalanceOn(epochDay);
+    }
+    
+    /**
+     * Finds how much a user's balance changed over a range of days.
+     * @param username is the user.
+     * @param fromDay is the first epoch day of the range.
+     * @param toDay is the last epoch day of the range.
+     * @return The change in cents or null if the user's balance history could not be read.
+     */
+    public Long getBalanceChange(String username, long fromDay, long toDay) {
+    	BalanceHistory history = this.getBalanceHistory(username);
+    	return history == null ? null : history.getBalanceChange(fromDay, toDay);
+    }
+    
+    /**
+     * Sets the parameters of an insert statement from a transaction.
+     * @param insert is the statement whose parameters will be set.
+     * @param expense is the transaction being inserted.
+     * @param username is the user who the transaction belongs to.
+     * @throws SQLException if a parameter could not be set.
+     */
+    private static void bindExpense(PreparedStatement insert, Transaction expense, String username) 
+    		throws SQLException {
     	insert.setString(1, expense.getDescription());
-    	insert.setFloat(2, expense.getAmountInCents());
-    	insert.setString(3, expense.getDate().toString());
+    	insert.setInt(2, expense.getAmountInCents());
+    	insert.setLong(3, expense.getEpochDay());
     	insert.setString(4, expense.getMemo());
     	insert.setString(5, expense.getCategory());
     	insert.setString(6, username);
-    	
-		// Add transaction
-		insert.execute();
     }
     
     /**
-     * Updates a users balance by an amount in the database.
+     * Updates a users balance by an amount in the database. The balance is changed and read 
+     * back by a single statement, so concurrent updates from other connections cannot be lost.
      * @param username is the user whose balance will be updated in the database.
-     * @param amount is the change applied to the user's balance.
-     * @return The new account balance.
-     * @throws SQLException if there was a problem updating the user's balance.
+     * @param amount is the change applied to the user's balance in cents.
+     * @return The new account balance in cents.
+     * @throws SQLException if there was a problem updating the user's balance or the user does 
+     * 		not exist.
      */
-    public Integer updateBalance(String username, int amount) throws SQLException {
-    	// Initialize both SQL statement and the prepared statements.
-    	PreparedStatement check;
-    	String checkStmt = "SELECT balance_in_cents FROM Users WHERE username = ?";
-    	PreparedStatement update;
-    	String updateStmt = "UPDATE Users SET balance_in_cents = ? WHERE username = ?";
+    public long updateBalance(String username, long amount) throws SQLException {
+    	long start = System.nanoTime();
     	
-    	// Get current balance value
-		check = this.conn.prepareStatement(checkStmt);
-		check.clearParameters();
-		check.setString(1, username);
-		ResultSet checkResult = check.executeQuery();
-		
-		// Move the cursor forward
-		checkResult.next();
-		int balance = checkResult.getInt(1);
-		
-		// Calculate new balance
-		balance = balance + amount;
-		
-		// Update user balance
-		update = this.conn.prepareStatement(updateStmt);
-		update.clearParameters();
-		update.setFloat(1, balance);
-		update.setString(2, username);
-		update.execute();
-		
-		return balance;
+    	// Get the cached statement with cleared parameters.
+    	PreparedStatement update = this.stmtCache.prepare(ADD_TO_BALANCE_RETURNING);
+    	update.setLong(1, amount);
+    	update.setString(2, username);
+    	
+    	try (ResultSet result = update.executeQuery()) {
+    		if (!result.next()) {
+    			throw new SQLException("No user with the username '" + username + "'.");
+    		}
+    		ROWS_WRITTEN.increment();
+    		return result.getLong(1);
+    	} finally {
+    		UPDATE_BALANCE_TIMER.recordSince(start);
+    	}
+    }
+    
+    /**
+     * Updates the balances of many users at once. Each user's balance is changed by a single 
+     * atomic statement and all of the statements are sent to the database as one batch.
+     * @param amounts holds the change applied to each user's balance in cents by username. 
+     * 		Callers with many changes for the same user should sum them first.
+     * @throws SQLException if there was a problem updating the balances.
+     */
+    public void updateBalances(Map<String, Long> amounts) throws SQLException {
+    	PreparedStatement update = this.stmtCache.prepare(ADD_TO_BALANCE);
+    	
+    	try {
+    		for (Map.Entry<String, Long> entry : amounts.entrySet()) {
+    			update.setLong(1, entry.getValue());
+    			update.setString(2, entry.getKey());
+    			update.addBatch();
+    		}
+    		update.executeBatch();
+    		ROWS_WRITTEN.add(amounts.size());
+    	} catch (SQLException e) {
+    		update.clearBatch();
+    		throw e;
+    	}
     }
     
     /**
@@ -246,59 +880,59 @@ public class TransactionsDB {
      * 		an exception which prevented the database from being accessed properly.
      */
 	public String[] getCategories() {
-		// Find the number of categories in the DB
+		long start = System.nanoTime();
+		
+		// Categories are only read from the DB the first time or after an invalidation.
+		String[] categories = this.categories.getCategories();
+		if (categories != null) {
+			GET_CATEGORIES_TIMER.recordSince(start);
+			return categories;
+		}
+		
 		PreparedStatement query;
-		String sqlStmt = "SELECT count(*) \n"
+		String sqlStmt = "SELECT catName \n"
 				   + "FROM Categories";
+		// Read first, so a category added by another connection during the query is not lost.
+		long generation = this.categories.getGeneration();
 		
 		try {
-			query = conn.prepareStatement(sqlStmt);
-			ResultSet result = query.executeQuery();
-			
-			// Move cursor to the first row and grab the number of categories.
-			result.next();
-			int rows = result.getInt(1);
-			String[] categories = new String[rows];
-			
-			// Find the categories in the DB.
-			sqlStmt = "SELECT catName \n"
-						   + "FROM Categories";
-			
-			// Execute query
-			query = conn.prepareStatement(sqlStmt);
-			result = query.executeQuery();
-			
-			// Add categories from the result set to the string array.
-			for (int i = 0; i < rows; i++) {
-				// Add next category name to categories
-				// Only 1 column, always getting the string i the first column.
-				result.next();
-				categories[i] = result.getString(1);
+			query = this.stmtCache.prepare(sqlStmt);
+			List<String> names = new ArrayList<String>();
+			try (ResultSet result = query.executeQuery()) {
+				// Only 1 column, always getting the string in the first column.
+				while (result.next()) {
+					names.add(result.getString(1));
+				}
 			}
-
+			
+			categories = names.toArray(new String[names.size()]);
+			this.categories.load(categories, generation);
+			ROWS_READ.add(names.size());
 			return categories;
 			
 		} catch (SQLException e) {
 			TransactionHelper.printErrorToLog(e);
 			return null;
+		} finally {
+			GET_CATEGORIES_TIMER.recordSince(start);
 		}
 	}
 	
 	/**
-<<<<<<< HEAD
 	 * Determines if a string is a category in the provided database.
 	 * @return The category with correct casing if the string parameter matches a transaction 
 	 * category otherwise returns null.
 	 */
     public String isACategory(String category) {
-    	String[] categories = this.getCategories();
-    	
-		for (int i = 0; i < categories.length; i++) {
-			if (categories[i].equalsIgnoreCase(category)) {
-				return categories[i];
-			}
-		}
-		return null;
+    	if (!this.categories.isLoaded() && this.getCategories() == null) {
+    		return null;
+    	}
+    	return this.categories.lookup(category);
+    }
+    
+    /** @return The in memory categories of this database. */
+    public CategoryRegistry getCategoryRegistry() {
+    	return this.categories;
     }
     
     /**
@@ -324,9 +958,8 @@ public class TransactionsDB {
 		String sqlStmt = "UPDATE Users SET name = ? WHERE username = ?";
 		
 		try {
-			// Clear the parameters of the query.
-			update = this.conn.prepareStatement(sqlStmt);
-			update.clearParameters();
+			// Get the cached statement with cleared parameters.
+			update = this.stmtCache.prepare(sqlStmt);
 			
 			// Set parameters
 			update.setString(1, newName);
@@ -354,9 +987,8 @@ public class TransactionsDB {
 		String sqlStmt = "UPDATE Users SET password = ? WHERE username = ?";
 		
 		try {
-			// Clear the parameters of the query.
-			update = this.conn.prepareStatement(sqlStmt);
-			update.clearParameters();
+			// Get the cached statement with cleared parameters.
+			update = this.stmtCache.prepare(sqlStmt);
 			
 			// Set parameters
 			update.setString(1, newPassword);
@@ -371,7 +1003,42 @@ public class TransactionsDB {
 			return false;
 		}
 	}
-	
+
+	/**
+	 * Replaces a user's password hash by a stronger hash of the same password, unless the
+	 * password was changed since the old hash was read.
+	 * @param user is the user whose hash will be replaced, it is updated if the hash is.
+	 * @param oldHash is the hash which was read and checked.
+	 * @param newHash is the new hash of the same password.
+	 * @return True if the hash was replaced.
+	 */
+	public boolean rehashPassword(User user, String oldHash, String newHash) {
+		// Initialize query and statement.
+		PreparedStatement update;
+		String sqlStmt = "UPDATE Users SET password = ? WHERE username = ? AND password = ?";
+
+		try {
+			// Get the cached statement with cleared parameters.
+			update = this.stmtCache.prepare(sqlStmt);
+
+			// Set parameters
+			update.setString(1, newHash);
+			update.setString(2, user.getUsername());
+			update.setString(3, oldHash);
+
+			// Execute update, which changes nothing if the password has changed.
+			if (update.executeUpdate() == 0) {
+				return false;
+			}
+			user.setPassword(newHash);
+			return true;
+
+		} catch (SQLException e) {
+			TransactionHelper.printErrorToLog(e);
+			return false;
+		}
+	}
+
 	/**
 	 * Adds a new category to this DB.
 	 * @param category is the new category.
@@ -383,35 +1050,292 @@ public class TransactionsDB {
 		String sqlStmt = "INSERT INTO Categories VALUES(?)";
 		
 		try {
-			// Clear parameters
-			insert = this.conn.prepareStatement(sqlStmt);
-			insert.clearParameters();
+			// Get the cached statement with cleared parameters
+			insert = this.stmtCache.prepare(sqlStmt);
 			
 			// Set parameter
 			insert.setString(1, category);
 			
 			// Execute insert
 			insert.execute();
+			this.categories.add(category);
 			return true;
 			
 		} catch (SQLException e) {
+			// The DB may have changed in ways the registry does not know about.
+			this.categories.invalidate();
 			TransactionHelper.printErrorToLog(e);
 			return false;
 		}
 	}
 	
 	/**
-	 * Allows a safe way to execute a query on this database by other code.
+	 * Executes a query of a user's transaction history. Queries of the same shape reuse the same 
+	 * cached prepared statement, so the returned result set is closed, and timed with the rows 
+	 * read so far, the next time a query of the same shape is executed. The statement is kept 
+	 * open until the result set is read to the end or closed, even if other queries would evict 
+	 * it from the cache.
+	 * @param query is the history query.
+	 * @return The transactions selected by the query with the columns 
+	 * 		HistoryQuery.SELECTED_COLUMNS, or null if the query could not be executed.
+	 */
+	public ResultSet executeHistoryQuery(HistoryQuery query) {
+		long start = System.nanoTime();
+		PreparedStatement stmt = null;
+		try {
+			stmt = this.checkOutQuery(query.getSql());
+			query.bind(stmt);
+			ResultSet results = stmt.executeQuery();
+			return this.releaseWhenFinished(stmt, query.getSql(), results, start,
+					HISTORY_QUERY_TIMER);
+		} catch (SQLException e) {
+			if (stmt != null) {
+				this.stmtCache.release(stmt);
+			}
+			HISTORY_QUERY_TIMER.recordSince(start);
+			TransactionHelper.printErrorToLog(e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Groups a user's transactions in a range of days and totals each group. If the user's 
+	 * snapshot is loaded the report is computed from it. Otherwise totals by month or category 
+	 * over whole months are read from the MonthlyTotals table, and any other report is grouped 
+	 * by SQLite, so only one row per group is read.
+	 * @param username is the user whose transactions are grouped.
+	 * @param grouping is how the transactions are grouped.
+	 * @param fromDay is the first epoch day of the range.
+	 * @param toDay is the last epoch day of the range.
+	 * @return The report or null if it could not be computed.
+	 */
+	public BreakdownReport getBreakdown(String username, BreakdownReport.Grouping grouping, 
+			long fromDay, long toDay) {
+		long start = System.nanoTime();
+		try {
+			this.dropStaleCaches(username);
+			LedgerSnapshot snapshot = this.snapshots.get(username);
+			if (snapshot != null) {
+				return BreakdownReport.fromSnapshot(snapshot, grouping, fromDay, toDay);
+			}
+			
+			String sql = grouping.getSql();
+			long from = fromDay;
+			long to = toDay;
+			int[] months = MonthlyTotals.monthsOf(fromDay, toDay);
+			if (months != null && (grouping == BreakdownReport.Grouping.MONTH 
+					|| grouping == BreakdownReport.Grouping.CATEGORY)) {
+				sql = grouping == BreakdownReport.Grouping.MONTH 
+						? MonthlyTotals.BY_MONTH : MonthlyTotals.BY_CATEGORY;
+				from = months[0];
+				to = months[1];
+			}
+			
+			PreparedStatement stmt = this.stmtCache.prepare(sql);
+			stmt.setString(1, username);
+			stmt.setLong(2, from);
+			stmt.setLong(3, to);
+			try (ResultSet results = stmt.executeQuery()) {
+				BreakdownReport report = BreakdownReport.fromResults(username, grouping, 
+						fromDay, toDay, results);
+				ROWS_READ.add(report.getGroups().size());
+				this.recordQuery(stmt, sql, start, report.getGroups().size());
+				return report;
+			}
+		} catch (SQLException e) {
+			TransactionHelper.printErrorToLog(e);
+			return null;
+		} finally {
+			BREAKDOWN_TIMER.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Recomputes the MonthlyTotals table from the transactions, replacing what it held. Used to 
+	 * fill it after transactions were written without it or to repair it.
+	 * @return The number of totals written or -1 if they could not be rebuilt.
+	 */
+	public long rebuildMonthlyTotals() {
+		try {
+			this.beginTransaction();
+			try (Statement stmt = this.conn.createStatement()) {
+				stmt.executeUpdate(MonthlyTotals.DELETE_ALL);
+				long rows = stmt.executeUpdate(MonthlyTotals.REBUILD);
+				this.commitTransaction();
+				return rows;
+				
+			} catch (SQLException | RuntimeException e) {
+				try {
+					this.rollbackTransaction();
+				} catch (SQLException e1) {
+					e.addSuppressed(e1);
+				}
+				throw e;
+			}
+		} catch (SQLException e) {
+			TransactionHelper.printErrorToLog(e);
+			return -1;
+		}
+	}
+	
+	/**
+	 * Compares the MonthlyTotals table with totals computed from the transactions.
+	 * @return A line for each total which differs, empty if they all agree, or null if they 
+	 * 		could not be compared.
+	 */
+	public List<String> checkMonthlyTotals() {
+		List<String> differences = new ArrayList<String>();
+		try (Statement stmt = this.conn.createStatement();
+				ResultSet results = stmt.executeQuery(MonthlyTotals.CHECK)) {
+			while (results.next()) {
+				int month = results.getInt(2);
+				differences.add(String.format("%s %04d-%02d %s: transactions total %d cents in "
+						+ "%d, MonthlyTotals has %d cents in %d", results.getString(1), 
+						month / 100, month % 100, results.getString(3), results.getLong(4), 
+						results.getLong(5), results.getLong(6), results.getLong(7)));
+			}
+			return differences;
+		} catch (SQLException e) {
+			TransactionHelper.printErrorToLog(e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Opens a cursor which reads a user's transaction history a page at a time. Only one page 
+	 * is held in memory and each page is found by seeking past the last row of the previous 
+	 * one, so the first page comes back as quickly for a long history as for a short one.
+	 * @param query is the history query.
+	 * @param pageSize is the most transactions returned by each page.
+	 * @return A cursor positioned before the first transaction of the query.
+	 * @throws IllegalArgumentException if pageSize is not positive.
+	 */
+	public HistoryCursor streamHistory(HistoryQuery query, int pageSize) {
+		return new HistoryCursor(this, query, pageSize);
+	}
+	
+	/**
+	 * Reads the transaction at the current row of a history query. A transaction without a 
+	 * category is read as StatementParser.DEFAULT_CATEGORY and one without a memo as ''.
+	 * @param results is positioned at a row with the columns HistoryQuery.SELECTED_COLUMNS.
+	 * @return The transaction of the row.
+	 * @throws SQLException if the row could not be read.
+	 */
+	static Transaction readTransaction(ResultSet results) throws SQLException {
+		ROWS_READ.increment();
+		int price = results.getInt("price_in_cents");
+		Transaction.TransactionBuilder trans = new Transaction.TransactionBuilder(price > 0);
+		
+		trans.setAmountInCents(price);
+		trans.setDescription(results.getString("description"));
+		trans.setEpochDay(results.getLong("day"));
+		String category = results.getString("category");
+		String memo = results.getString("memo");
+		trans.setCategory(category == null ? StatementParser.DEFAULT_CATEGORY : category);
+		trans.setMemo(memo == null ? "" : memo);
+		return trans.build();
+	}
+	
+	/**
+	 * Allows a safe way to execute a query on this database by other code. The statement is
+	 * cached, so the returned result set is closed, and timed with the rows read so far, the 
+	 * next time the same query is executed. The statement is kept open until the result set is 
+	 * read to the end or closed.
 	 * @param query The SQL statement executed.
 	 * @return The result set returned from executing the provided query.
 	 */
 	public ResultSet executeQuery(String query) {
+		long start = System.nanoTime();
+		PreparedStatement stmt = null;
 		try {
-			PreparedStatement stmt = this.conn.prepareStatement(query);
-			return stmt.executeQuery();
+			stmt = this.checkOutQuery(query);
+			ResultSet results = stmt.executeQuery();
+			return this.releaseWhenFinished(stmt, query, results, start, QUERY_TIMER);
 		} catch (SQLException e) {
+			if (stmt != null) {
+				this.stmtCache.release(stmt);
+			}
+			QUERY_TIMER.recordSince(start);
 			TransactionHelper.printErrorToLog(e);
 			return null;
 		}
 	}
+	
+	/**
+	 * Checks out the statement of a query which is about to be executed. Executing it closes 
+	 * the result set it returned last time, so if that was not yet read to the end or closed it 
+	 * is finished now, which releases the checkout it held and times it.
+	 * @param sql is the SQL of the query.
+	 * @return The statement, which must be released if it cannot be executed.
+	 * @throws SQLException if the statement could not be prepared.
+	 */
+	private PreparedStatement checkOutQuery(String sql) throws SQLException {
+		PreparedStatement stmt = this.stmtCache.checkOut(sql);
+		ResultSet previous = this.openResults.remove(stmt);
+		if (previous != null) {
+			try {
+				previous.close();
+			} catch (SQLException e) {
+				// Closed anyway when the statement is executed again.
+			}
+		}
+		return stmt;
+	}
+	
+	/**
+	 * Wraps the result set of a checked out statement, so that once the result set is read to 
+	 * the end or closed the query is timed and logged if slow with the rows read, and the 
+	 * statement is released. SQLite finds rows as they are stepped through, so the time of 
+	 * executeQuery alone leaves out most of the work of a query.
+	 * @param stmt is the statement, which was checked out of the statement cache.
+	 * @param sql is the SQL of the statement.
+	 * @param results is the result set of the statement.
+	 * @param startNanos is the System.nanoTime() when the query started.
+	 * @param timer is the latency histogram of the operation which ran the query.
+	 * @return The wrapped result set.
+	 */
+	private ResultSet releaseWhenFinished(PreparedStatement stmt, String sql, ResultSet results,
+			long startNanos, LatencyHistogram timer) {
+		ResultSet wrapped = TrackedResultSet.wrap(results, rows -> {
+			this.openResults.remove(stmt);
+			timer.recordSince(startNanos);
+			// Logged before the release, which may close an evicted statement.
+			this.recordQuery(stmt, sql, startNanos, rows);
+			this.stmtCache.release(stmt);
+		});
+		this.openResults.put(stmt, wrapped);
+		return wrapped;
+	}
+	
+	/**
+	 * Writes a query run on this connection to the slow query log if it took too long. Only 
+	 * slow queries cost more than reading the clock.
+	 * @param stmt is the statement the query ran with.
+	 * @param sql is the SQL of the statement.
+	 * @param startNanos is the System.nanoTime() when the query started.
+	 * @param rows is the number of rows the query returned or -1 if they were not counted.
+	 */
+	void recordQuery(PreparedStatement stmt, String sql, long startNanos, long rows) {
+		long nanos = System.nanoTime() - startNanos;
+		SlowQueryLog slow = SlowQueryLog.getDefault();
+		if (!slow.isSlow(nanos)) {
+			return;
+		}
+		
+		int bindCount;
+		try {
+			bindCount = stmt.getParameterMetaData().getParameterCount();
+		} catch (SQLException e) {
+			bindCount = -1;
+		}
+		slow.record(this.conn, sql, bindCount, nanos, rows);
+	}
+	
+	/**
+	 * @param operation is the name of an operation of this class.
+	 * @return The latency histogram of the operation in the default registry.
+	 */
+	private static LatencyHistogram timer(String operation) {
+		return MetricsRegistry.getDefault().timer("db." + operation);
+	}
 }
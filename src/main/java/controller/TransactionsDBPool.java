@@ -0,0 +1,453 @@
+package controller;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets many threads use one Transaction Tracker database at once. A TransactionsDB can only be
+ * used by one thread at a time, so the pool holds several: one writer, whose tasks run one
+ * after another on the pool's writer thread, and a number of readers which are lent to one
+ * thread at a time. Every connection uses SQLite's write ahead log (WAL), so readers see the
+ * last committed data without waiting for a write in progress. Readers are opened query only,
+ * so a task given a reader cannot write by mistake. A reader's snapshots and balance histories 
+ * are read again once the writer has added to their user. The writer's queue is bounded, and a 
+ * write waits for room in it as long as a read waits for a reader before it is turned away.
+ * @author L. James Davidson
+ */
+public class TransactionsDBPool implements AutoCloseable {
+
+	/** The default number of reader connections. */
+	public static final int DEFAULT_READERS =
+			Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+	/** The default number of milliseconds to wait for a free reader. */
+	public static final long DEFAULT_WAIT_MILLIS = 5_000;
+
+	/** The default number of write tasks which may wait for the writer. */
+	public static final int DEFAULT_WRITER_QUEUE_CAPACITY = 1024;
+
+	// How long a connection waits on a lock held by another connection before failing.
+	private static final int BUSY_TIMEOUT_MILLIS = 5_000;
+
+	/**
+	 * Work done with a connection of the pool.
+	 * @param <T> is the type of the result of the task.
+	 */
+	@FunctionalInterface
+	public interface DatabaseTask<T> {
+
+		/**
+		 * Does the work of this task.
+		 * @param db is the connection lent to the task, which must not be used after it returns.
+		 * @return The result of the task.
+		 * @throws SQLException if the work could not be done.
+		 */
+		T run(TransactionsDB db) throws SQLException;
+	}
+
+	private final TransactionsDB writer;
+	private final ThreadPoolExecutor writerThread;
+	private final List<TransactionsDB> readers;
+	private final BlockingQueue<TransactionsDB> idleReaders;
+	private final long waitNanos;
+	private final CategoryRegistry categories;
+	private final LedgerVersions versions;
+
+	// Metrics.
+	private final AtomicInteger activeReaders = new AtomicInteger();
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder readerWaits = new LongAdder();
+	private final LongAdder readerWaitNanos = new LongAdder();
+	private final AtomicLong maxReaderWaitNanos = new AtomicLong();
+	private final LongAdder readerTimeouts = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+	private final LongAdder writerWaitNanos = new LongAdder();
+	private final LongAdder writerTimeouts = new LongAdder();
+
+	// AF:
+	// Runs write tasks on writer one at a time in the order they were submitted, waiting up to 
+	// waitNanos for room in writerThread's queue when it is full, and read tasks on a reader 
+	// taken from idleReaders, waiting up to waitNanos when none is idle.
+
+	// RI: readers is non-empty, every reader is either in idleReaders or lent to one task,
+	// waitNanos >= 0
+
+	/**
+	 * Opens a pool of connections to a database file, bringing its schema up to date, whose 
+	 * writer queues up to DEFAULT_WRITER_QUEUE_CAPACITY tasks.
+	 * @param database is the SQLite file of the database.
+	 * @param readerCount is the number of reader connections.
+	 * @param waitMillis is the most milliseconds a read waits for a free reader, and a write for 
+	 * 		room in the writer's queue.
+	 * @throws IllegalArgumentException if readerCount is not positive or waitMillis is negative.
+	 * @throws SQLException if a connection could not be opened, in which case none are left open.
+	 */
+	public TransactionsDBPool(File database, int readerCount, long waitMillis)
+			throws SQLException {
+		this(database, readerCount, DEFAULT_WRITER_QUEUE_CAPACITY, waitMillis);
+	}
+
+	/**
+	 * Opens a pool of connections to a database file, bringing its schema up to date.
+	 * @param database is the SQLite file of the database.
+	 * @param readerCount is the number of reader connections.
+	 * @param writerQueueCapacity is the most write tasks which may wait for the writer.
+	 * @param waitMillis is the most milliseconds a read waits for a free reader, and a write for 
+	 * 		room in the writer's queue.
+	 * @throws IllegalArgumentException if readerCount or writerQueueCapacity is not positive or 
+	 * 		waitMillis is negative.
+	 * @throws SQLException if a connection could not be opened, in which case none are left open.
+	 */
+	public TransactionsDBPool(File database, int readerCount, int writerQueueCapacity, 
+			long waitMillis) throws SQLException {
+		if (readerCount <= 0) {
+			throw new IllegalArgumentException("There must be at least one reader.");
+		} else if (writerQueueCapacity <= 0) {
+			throw new IllegalArgumentException("The writer queue capacity must be positive.");
+		} else if (waitMillis < 0) {
+			throw new IllegalArgumentException("The wait time must not be negative.");
+		}
+
+		this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+		this.categories = new CategoryRegistry();
+		this.versions = new LedgerVersions();
+		this.readers = new ArrayList<TransactionsDB>(readerCount);
+		this.idleReaders = new ArrayBlockingQueue<TransactionsDB>(readerCount);
+
+		// The writer is opened first so that it is the one which migrates the schema.
+		this.writer = open(database, this.categories, this.versions, false);
+		try {
+			for (int i = 0; i < readerCount; i++) {
+				TransactionsDB reader = open(database, this.categories, this.versions, true);
+				this.readers.add(reader);
+				this.idleReaders.add(reader);
+			}
+		} catch (SQLException e) {
+			this.closeConnections(e);
+			throw e;
+		}
+
+		this.writerThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(writerQueueCapacity), task -> {
+					Thread thread = new Thread(task, "TransactionsDB writer");
+					thread.setDaemon(true);
+					return thread;
+				}, this::waitForRoom);
+
+		this.checkRep();
+	}
+
+	/**
+	 * Opens a connection of the pool.
+	 * @param database is the SQLite file of the database.
+	 * @param categories is the registry shared by the connections of the pool.
+	 * @param versions counts the changes the writer makes to each user, so that readers know 
+	 * 		when their snapshots and balance histories are stale.
+	 * @param queryOnly is true if the connection must not write to the database.
+	 * @return The open connection.
+	 * @throws SQLException if the connection could not be opened or configured.
+	 */
+	private static TransactionsDB open(File database, CategoryRegistry categories,
+			LedgerVersions versions, boolean queryOnly) throws SQLException {
+		TransactionsDB db = new TransactionsDB(StatementCache.DEFAULT_CAPACITY, categories,
+				versions);
+		db.open(database);
+		try {
+			db.setPragma("busy_timeout", String.valueOf(BUSY_TIMEOUT_MILLIS));
+			db.setPragma("journal_mode", "WAL");
+			if (queryOnly) {
+				db.setPragma("query_only", "ON");
+			}
+		} catch (SQLException e) {
+			try {
+				db.close();
+			} catch (SQLException e1) {
+				e.addSuppressed(e1);
+			}
+			throw e;
+		}
+		return db;
+	}
+
+	/**
+	 * Runs a task with a reader connection on the calling thread, waiting for a reader to be
+	 * free if they are all in use.
+	 * @param task is the task, which must only read.
+	 * @return The result of the task.
+	 * @throws SQLException if the task failed or no reader was free in time.
+	 */
+	public <T> T read(DatabaseTask<T> task) throws SQLException {
+		TransactionsDB reader = this.borrowReader();
+		this.activeReaders.incrementAndGet();
+		try {
+			return task.run(reader);
+		} finally {
+			this.activeReaders.decrementAndGet();
+			this.reads.increment();
+			this.idleReaders.add(reader);
+		}
+	}
+
+	/**
+	 * Takes an idle reader, waiting up to the pool's wait time for one.
+	 * @return The reader, which must be put back in idleReaders.
+	 * @throws SQLException if no reader was free in time or the thread was interrupted.
+	 */
+	private TransactionsDB borrowReader() throws SQLException {
+		TransactionsDB reader = this.idleReaders.poll();
+		if (reader != null) {
+			return reader;
+		}
+
+		long start = System.nanoTime();
+		try {
+			reader = this.idleReaders.poll(this.waitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a reader connection.", e);
+		} finally {
+			long waited = System.nanoTime() - start;
+			this.readerWaits.increment();
+			this.readerWaitNanos.add(waited);
+			this.maxReaderWaitNanos.accumulateAndGet(waited, Math::max);
+		}
+
+		if (reader == null) {
+			this.readerTimeouts.increment();
+			throw new SQLException("No reader connection was free within "
+					+ TimeUnit.NANOSECONDS.toMillis(this.waitNanos) + " ms.");
+		}
+		return reader;
+	}
+
+	/**
+	 * Queues a task to run with the writer connection. Write tasks run one at a time in the
+	 * order they were submitted.
+	 * @param task is the task.
+	 * @return A future of the result of the task, which completes exceptionally if it failed.
+	 * @throws RejectedExecutionException if the pool is closed, or the writer's queue stayed 
+	 * 		full for the pool's wait time.
+	 */
+	public <T> CompletableFuture<T> submitWrite(DatabaseTask<T> task) {
+		long queued = System.nanoTime();
+		CompletableFuture<T> result = new CompletableFuture<T>();
+
+		this.writerThread.execute(() -> {
+			this.writerWaitNanos.add(System.nanoTime() - queued);
+			T value;
+			try {
+				value = task.run(this.writer);
+			} catch (SQLException | RuntimeException e) {
+				this.writes.increment();
+				result.completeExceptionally(e);
+				return;
+			}
+			// Counted before completing so that a waiting caller sees its own write.
+			this.writes.increment();
+			result.complete(value);
+		});
+		return result;
+	}
+
+	/**
+	 * Queues a write task which found the writer's queue full once there is room, waiting up 
+	 * to the pool's wait time.
+	 * @param task is the write task.
+	 * @param executor is the writer thread.
+	 * @throws RejectedExecutionException if the pool is closed, the queue stayed full or the 
+	 * 		thread was interrupted.
+	 */
+	private void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("The pool is closed.");
+		}
+
+		boolean queued;
+		try {
+			queued = executor.getQueue().offer(task, this.waitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for the writer.", e);
+		}
+		if (!queued) {
+			this.writerTimeouts.increment();
+			throw new RejectedExecutionException("The writer's queue stayed full for "
+					+ TimeUnit.NANOSECONDS.toMillis(this.waitNanos) + " ms.");
+		}
+
+		// The writer may have stopped before the task was queued, when it would never run.
+		if (executor.isShutdown() && executor.remove(task)) {
+			throw new RejectedExecutionException("The pool is closed.");
+		}
+	}
+
+	/**
+	 * Runs a task with the writer connection and waits for it to finish.
+	 * @param task is the task.
+	 * @return The result of the task.
+	 * @throws SQLException if the task failed, the writer's queue stayed full for the pool's 
+	 * 		wait time or the thread was interrupted while waiting.
+	 * @throws RejectedExecutionException if the pool is closed.
+	 */
+	public <T> T write(DatabaseTask<T> task) throws SQLException {
+		CompletableFuture<T> result;
+		try {
+			result = this.submitWrite(task);
+		} catch (RejectedExecutionException e) {
+			if (this.writerThread.isShutdown()) {
+				throw e;
+			}
+			throw new SQLException(e.getMessage(), e);
+		}
+
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a write.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SQLException(cause);
+		}
+	}
+
+	/** @return The categories shared by the connections of this pool. */
+	public CategoryRegistry getCategoryRegistry() {
+		return this.categories;
+	}
+
+	/** @return The number of reader connections. */
+	public int getReaderCount() {
+		return this.readers.size();
+	}
+
+	/** @return The number of readers lent to tasks right now. */
+	public int getActiveReaders() {
+		return this.activeReaders.get();
+	}
+
+	/** @return The number of read tasks which have finished. */
+	public long getReads() {
+		return this.reads.sum();
+	}
+
+	/** @return The number of reads which had to wait for a free reader. */
+	public long getReaderWaits() {
+		return this.readerWaits.sum();
+	}
+
+	/** @return The total nanoseconds reads spent waiting for a free reader. */
+	public long getReaderWaitNanos() {
+		return this.readerWaitNanos.sum();
+	}
+
+	/** @return The longest a read waited for a free reader in nanoseconds. */
+	public long getMaxReaderWaitNanos() {
+		return this.maxReaderWaitNanos.get();
+	}
+
+	/** @return The number of reads which failed since no reader was free in time. */
+	public long getReaderTimeouts() {
+		return this.readerTimeouts.sum();
+	}
+
+	/** @return The number of write tasks waiting for the writer. */
+	public int getWriterQueueDepth() {
+		return this.writerThread.getQueue().size();
+	}
+
+	/** @return The number of write tasks which have finished. */
+	public long getWrites() {
+		return this.writes.sum();
+	}
+
+	/** @return The total nanoseconds write tasks spent queued before they ran. */
+	public long getWriterWaitNanos() {
+		return this.writerWaitNanos.sum();
+	}
+
+	/** @return The number of writes turned away since the writer's queue stayed full. */
+	public long getWriterTimeouts() {
+		return this.writerTimeouts.sum();
+	}
+
+	@Override
+	/** @return the string representation of this pool's metrics. */
+	public String toString() {
+		return String.format("readers %d/%d active, %d reads, %d waited (%.1f ms total, "
+				+ "%.1f ms max), %d timed out; writer %d queued, %d writes (%.1f ms queued), "
+				+ "%d timed out", this.getActiveReaders(), this.getReaderCount(), this.getReads(),
+				this.getReaderWaits(), this.getReaderWaitNanos() / 1e6,
+				this.getMaxReaderWaitNanos() / 1e6, this.getReaderTimeouts(),
+				this.getWriterQueueDepth(), this.getWrites(), this.getWriterWaitNanos() / 1e6,
+				this.getWriterTimeouts());
+	}
+
+	/**
+	 * Finishes the queued writes and closes every connection. Readers still lent to tasks are
+	 * closed under them, so reads should finish before the pool is closed.
+	 * @throws SQLException if a connection could not be closed, the rest are still closed.
+	 */
+	@Override
+	public void close() throws SQLException {
+		this.writerThread.shutdown();
+		try {
+			this.writerThread.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		SQLException error = this.closeConnections(null);
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Closes the writer and every opened reader.
+	 * @param error is an earlier error which close errors are added to, may be null.
+	 * @return The error, or the first close error if error was null.
+	 */
+	private SQLException closeConnections(SQLException error) {
+		List<TransactionsDB> all = new ArrayList<TransactionsDB>(this.readers);
+		all.add(this.writer);
+
+		for (TransactionsDB db : all) {
+			try {
+				db.close();
+			} catch (SQLException e) {
+				if (error == null) {
+					error = e;
+				} else {
+					error.addSuppressed(e);
+				}
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * Ensures that the representation invariant is preserved.
+	 */
+	private void checkRep() {
+		assert (!this.readers.isEmpty()) : "There must be at least one reader.";
+		assert (this.waitNanos >= 0) : "The wait time must not be negative.";
+	}
+}
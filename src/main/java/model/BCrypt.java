@@ -14,8 +14,9 @@
 
 package model;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 /**
  * BCrypt implements OpenBSD-style Blowfish password hashing using
@@ -371,8 +372,25 @@ public class BCrypt {
 	};
 
 	// Expanded Blowfish key
-	private int P[];
-	private int S[];
+	private final int P[] = new int[P_orig.length];
+	private final int S[] = new int[S_orig.length];
+
+	// Working state, reused by every hash made with this instance
+	private final int lr[] = new int[2];
+	private final int cdata[] = new int[bf_crypt_ciphertext.length];
+	private final int keywords[] = new int[P_orig.length];
+	private final int saltwords[] = new int[P_orig.length];
+	private int streamoff;
+
+	// One instance per thread, so that hashpw does not allocate a
+	// key schedule for every hash
+	private static final ThreadLocal<BCrypt> engines =
+	    new ThreadLocal<BCrypt>() {
+		@Override
+		protected BCrypt initialValue() {
+			return new BCrypt();
+		}
+	};
 
 	/**
 	 * Encode a byte array using bcrypt's slightly-modified base64
@@ -381,13 +399,12 @@ public class BCrypt {
 	 *
 	 * @param d	the byte array to encode
 	 * @param len	the number of bytes to encode
-	 * @return	base64-encoded string
+	 * @param rs	the buffer to append the base64-encoded string to
 	 * @exception IllegalArgumentException if the length is invalid
 	 */
-	private static String encode_base64(byte d[], int len)
+	private static void encode_base64(byte d[], int len, StringBuilder rs)
 		throws IllegalArgumentException {
 		int off = 0;
-		StringBuffer rs = new StringBuffer();
 		int c1, c2;
 
 		if (len <= 0 || len > d.length)
@@ -414,7 +431,6 @@ public class BCrypt {
 			rs.append(base64_code[c1 & 0x3f]);
 			rs.append(base64_code[c2 & 0x3f]);
 		}
-		return rs.toString();
 	}
 
 	/**
@@ -440,13 +456,13 @@ public class BCrypt {
 	 */
 	private static byte[] decode_base64(String s, int maxolen)
 		throws IllegalArgumentException {
-		StringBuffer rs = new StringBuffer();
 		int off = 0, slen = s.length(), olen = 0;
 		byte ret[];
 		byte c1, c2, c3, c4, o;
 
 		if (maxolen <= 0)
 			throw new IllegalArgumentException ("Invalid maxolen");
+		ret = new byte[maxolen];
 
 		while (off < slen - 1 && olen < maxolen) {
 			c1 = char64(s.charAt(off++));
@@ -455,7 +471,7 @@ public class BCrypt {
 				break;
 			o = (byte)(c1 << 2);
 			o |= (c2 & 0x30) >> 4;
-			rs.append((char)o);
+			ret[olen] = o;
 			if (++olen >= maxolen || off >= slen)
 				break;
 			c3 = char64(s.charAt(off++));
@@ -463,20 +479,17 @@ public class BCrypt {
 				break;
 			o = (byte)((c2 & 0x0f) << 4);
 			o |= (c3 & 0x3c) >> 2;
-			rs.append((char)o);
+			ret[olen] = o;
 			if (++olen >= maxolen || off >= slen)
 				break;
 			c4 = char64(s.charAt(off++));
 			o = (byte)((c3 & 0x03) << 6);
 			o |= c4;
-			rs.append((char)o);
+			ret[olen] = o;
 			++olen;
 		}
 
-		ret = new byte[olen];
-		for (off = 0; off < olen; off++)
-			ret[off] = (byte)rs.charAt(off);
-		return ret;
+		return olen == maxolen ? ret : Arrays.copyOf(ret, olen);
 	}
 
 	/**
@@ -509,46 +522,62 @@ public class BCrypt {
 	}
 
 	/**
-	 * Cycically extract a word of key material
+	 * Cycically extract a word of key material, starting from
+	 * the current offset into data and leaving it after the word
 	 * @param data	the string to extract the data from
-	 * @param offp	a "pointer" (as a one-entry array) to the
-	 * current offset into data
 	 * @return	the next word of material from data
 	 */
-	private static int streamtoword(byte data[], int offp[]) {
+	private int streamtoword(byte data[]) {
 		int i;
 		int word = 0;
-		int off = offp[0];
+		int off = streamoff;
 
 		for (i = 0; i < 4; i++) {
 			word = (word << 8) | (data[off] & 0xff);
-			off = (off + 1) % data.length;
+			if (++off == data.length)
+				off = 0;
 		}
 
-		offp[0] = off;
+		streamoff = off;
 		return word;
 	}
 
+	/**
+	 * Extract the words of key material which keying XORs into
+	 * the P-array. Keying always starts at the beginning of the
+	 * key, so these are the same every round and are only
+	 * extracted once per hash.
+	 * @param data	the string to extract the data from
+	 * @param words	the array to put the words in
+	 */
+	private void extract_words(byte data[], int words[]) {
+		streamoff = 0;
+		for (int i = 0; i < words.length; i++)
+			words[i] = streamtoword(data);
+	}
+
 	/**
 	 * Initialise the Blowfish key schedule
 	 */
 	private void init_key() {
-		P = (int[])P_orig.clone();
-		S = (int[])S_orig.clone();
+		System.arraycopy(P_orig, 0, P, 0, P.length);
+		System.arraycopy(S_orig, 0, S, 0, S.length);
 	}
 
 	/**
 	 * Key the Blowfish cipher
-	 * @param key	an array containing the key
+	 * @param words	the words of key material, as extracted by
+	 * extract_words
 	 */
-	private void key(byte key[]) {
+	private void key(int words[]) {
 		int i;
-		int koffp[] = { 0 };
-		int lr[] = { 0, 0 };
 		int plen = P.length, slen = S.length;
 
+		lr[0] = 0;
+		lr[1] = 0;
+
 		for (i = 0; i < plen; i++)
-			P[i] = P[i] ^ streamtoword(key, koffp);
+			P[i] = P[i] ^ words[i];
 
 		for (i = 0; i < plen; i += 2) {
 			encipher(lr, 0);
@@ -568,28 +597,31 @@ public class BCrypt {
 	 * Provos and Mazieres in "A Future-Adaptable Password Scheme"
 	 * http://www.openbsd.org/papers/bcrypt-paper.ps
 	 * @param data	salt information
-	 * @param key	password information
+	 * @param words	password information, as extracted by
+	 * extract_words
 	 */
-	private void ekskey(byte data[], byte key[]) {
+	private void ekskey(byte data[], int words[]) {
 		int i;
-		int koffp[] = { 0 }, doffp[] = { 0 };
-		int lr[] = { 0, 0 };
 		int plen = P.length, slen = S.length;
 
+		lr[0] = 0;
+		lr[1] = 0;
+		streamoff = 0;
+
 		for (i = 0; i < plen; i++)
-			P[i] = P[i] ^ streamtoword(key, koffp);
+			P[i] = P[i] ^ words[i];
 
 		for (i = 0; i < plen; i += 2) {
-			lr[0] ^= streamtoword(data, doffp);
-			lr[1] ^= streamtoword(data, doffp);
+			lr[0] ^= streamtoword(data);
+			lr[1] ^= streamtoword(data);
 			encipher(lr, 0);
 			P[i] = lr[0];
 			P[i + 1] = lr[1];
 		}
 
 		for (i = 0; i < slen; i += 2) {
-			lr[0] ^= streamtoword(data, doffp);
-			lr[1] ^= streamtoword(data, doffp);
+			lr[0] ^= streamtoword(data);
+			lr[1] ^= streamtoword(data);
 			encipher(lr, 0);
 			S[i] = lr[0];
 			S[i + 1] = lr[1];
@@ -619,10 +651,12 @@ public class BCrypt {
 			throw new IllegalArgumentException ("Bad salt length");
 
 		init_key();
-		ekskey(salt, password);
+		extract_words(password, keywords);
+		extract_words(salt, saltwords);
+		ekskey(salt, keywords);
 		for (i = 0; i != rounds; i++) {
-			key(password);
-			key(salt);
+			key(keywords);
+			key(saltwords);
 		}
 
 		for (i = 0; i < 64; i++) {
@@ -653,7 +687,7 @@ public class BCrypt {
 		byte passwordb[], saltb[], hashed[];
 		char minor = (char)0;
 		int rounds, off = 0;
-		StringBuffer rs = new StringBuffer();
+		StringBuilder rs = new StringBuilder(60);
 
 		if (salt.charAt(0) != '$' || salt.charAt(1) != '2')
 			throw new IllegalArgumentException ("Invalid salt version");
@@ -672,17 +706,16 @@ public class BCrypt {
 		rounds = Integer.parseInt(salt.substring(off, off + 2));
 
 		real_salt = salt.substring(off + 3, off + 25);
-		try {
-			passwordb = (password + (minor >= 'a' ? "\000" : "")).getBytes("UTF-8");
-		} catch (UnsupportedEncodingException uee) {
-			throw new AssertionError("UTF-8 is not supported");
-		}
+		passwordb = password.getBytes(StandardCharsets.UTF_8);
+		if (minor >= 'a')
+			passwordb = Arrays.copyOf(passwordb, passwordb.length + 1);
 
 		saltb = decode_base64(real_salt, BCRYPT_SALT_LEN);
 
-		B = new BCrypt();
-		hashed = B.crypt_raw(passwordb, saltb, rounds,
-		    (int[])bf_crypt_ciphertext.clone());
+		B = engines.get();
+		System.arraycopy(bf_crypt_ciphertext, 0, B.cdata, 0,
+		    B.cdata.length);
+		hashed = B.crypt_raw(passwordb, saltb, rounds, B.cdata);
 
 		rs.append("$2");
 		if (minor >= 'a')
@@ -696,9 +729,8 @@ public class BCrypt {
 		}
 		rs.append(Integer.toString(rounds));
 		rs.append("$");
-		rs.append(encode_base64(saltb, saltb.length));
-		rs.append(encode_base64(hashed,
-		    bf_crypt_ciphertext.length * 4 - 1));
+		encode_base64(saltb, saltb.length, rs);
+		encode_base64(hashed, bf_crypt_ciphertext.length * 4 - 1, rs);
 		return rs.toString();
 	}
 
@@ -711,7 +743,7 @@ public class BCrypt {
 	 * @return	an encoded salt value
 	 */
 	public static String gensalt(int log_rounds, SecureRandom random) {
-		StringBuffer rs = new StringBuffer();
+		StringBuilder rs = new StringBuilder(29);
 		byte rnd[] = new byte[BCRYPT_SALT_LEN];
 
 		random.nextBytes(rnd);
@@ -725,7 +757,7 @@ public class BCrypt {
 		}
 		rs.append(Integer.toString(log_rounds));
 		rs.append("$");
-		rs.append(encode_base64(rnd, rnd.length));
+		encode_base64(rnd, rnd.length, rs);
 		return rs.toString();
 	}
 
@@ -750,6 +782,35 @@ public class BCrypt {
 		return gensalt(GENSALT_DEFAULT_LOG2_ROUNDS);
 	}
 
+	/**
+	 * Read the log2 of the number of rounds of hashing a salt
+	 * or a hashed password was made with
+	 * @param salt	the salt or hashed password to read
+	 * @return	the log2 of the number of rounds of hashing
+	 */
+	public static int getLogRounds(String salt) {
+		int off;
+
+		if (salt.length() < 7 || salt.charAt(0) != '$' ||
+		    salt.charAt(1) != '2')
+			throw new IllegalArgumentException ("Invalid salt version");
+		if (salt.charAt(2) == '$')
+			off = 3;
+		else {
+			if (salt.charAt(2) != 'a' || salt.charAt(3) != '$')
+				throw new IllegalArgumentException ("Invalid salt revision");
+			off = 4;
+		}
+
+		if (salt.charAt(off + 2) != '$')
+			throw new IllegalArgumentException ("Missing salt rounds");
+		try {
+			return Integer.parseInt(salt.substring(off, off + 2));
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException ("Invalid salt rounds");
+		}
+	}
+
 	/**
 	 * Check that a plaintext password matches a previously hashed
 	 * one
@@ -758,20 +819,12 @@ public class BCrypt {
 	 * @return	true if the passwords match, false otherwise
 	 */
 	public static boolean checkpw(String plaintext, String hashed) {
-		byte hashed_bytes[];
-		byte try_bytes[];
-		try {
-			String try_pw = hashpw(plaintext, hashed);
-			hashed_bytes = hashed.getBytes("UTF-8");
-			try_bytes = try_pw.getBytes("UTF-8");
-		} catch (UnsupportedEncodingException uee) {
-			return false;
-		}
-		if (hashed_bytes.length != try_bytes.length)
+		String try_pw = hashpw(plaintext, hashed);
+		if (hashed.length() != try_pw.length())
 			return false;
-		byte ret = 0;
-		for (int i = 0; i < try_bytes.length; i++)
-			ret |= hashed_bytes[i] ^ try_bytes[i];
+		int ret = 0;
+		for (int i = 0; i < try_pw.length(); i++)
+			ret |= hashed.charAt(i) ^ try_pw.charAt(i);
 		return ret == 0;
 	}
 }
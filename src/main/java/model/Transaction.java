@@ -61,6 +61,14 @@ public class Transaction {
 		return this.date;
 	}
 	
+	/**
+	 * @return The date when this transaction occurred as the number of days since 1970-01-01,
+	 * 		which is how the date is stored in the database.
+	 */
+	public long getEpochDay() {
+		return this.date.toEpochDay();
+	}
+	
 	/**
 	 * @return The category of the this transaction.
 	 */
@@ -161,6 +169,15 @@ public class Transaction {
 			this.date = date;
 		}
 		
+		/**
+		 * Sets the date of this transaction from the way dates are stored in the database.
+		 * @param epochDay is the number of days since 1970-01-01 of the transaction.
+		 * @throws java.time.DateTimeException if epochDay is outside the supported date range.
+		 */
+		public void setEpochDay(long epochDay) {
+			this.date = LocalDate.ofEpochDay(epochDay);
+		}
+		
 		/**
 		 * @return The date of this transaction.
 		 */
@@ -2,8 +2,8 @@ package view;
 
 import java.util.Scanner;
 
+import controller.PasswordHasher;
 import controller.TransactionsDB;
-import model.BCrypt;
 import model.User;
 
 /**
@@ -26,9 +26,10 @@ abstract class CreateNewUser {
 	 * Uses user given information to make a new user object.
 	 * @param input is the scanner to receive user input.
 	 * @param db is the database where the new user will be added to.
+	 * @param hasher hashes the new user's password.
 	 * @return A User object containing the new user information.
 	 */
-	protected static User run(Scanner input, TransactionsDB db) {
+	protected static User run(Scanner input, TransactionsDB db, PasswordHasher hasher) {
 		
 		// Determine the new user's user name
 		String username = setUsername(input, db);
@@ -37,7 +38,7 @@ abstract class CreateNewUser {
 		String fullName = setFullName(input);
 		
 		// Determine the new user's password
-		String password = setPassword(input);
+		String password = setPassword(input, hasher);
 		
 		return new User(username, fullName, STARTING_BALANCE, password);
 	}
@@ -105,9 +106,10 @@ abstract class CreateNewUser {
 	/**
 	 * Asks the user what there would like their password to be.
 	 * @param input is the scanner used to receive user input.
+	 * @param hasher hashes the password.
 	 * @return The user's password.
 	 */
-	protected static String setPassword(Scanner input) {
+	protected static String setPassword(Scanner input, PasswordHasher hasher) {
 		String hashed;
 		while (true) {
 			// Ask user what they want their password to be.
@@ -137,7 +139,7 @@ abstract class CreateNewUser {
 			}
 			
 			// Hash the password using BCrypt
-			hashed = BCrypt.hashpw(password, BCrypt.gensalt());
+			hashed = hasher.hashNow(password);
 			
 			break;
 		}
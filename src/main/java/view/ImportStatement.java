@@ -0,0 +1,110 @@
+package view;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.Scanner;
+
+import controller.ImportProgress;
+import controller.StatementImporter;
+import controller.TransactionHelper;
+import controller.TransactionsDB;
+import model.User;
+
+/**
+ * Helper class of TransactionsTrackerApp. Imports the transactions of a CSV, OFX or QFX bank
+ * statement into the logged in user's account.
+ * @author L. James Davidson
+ */
+abstract class ImportStatement {
+
+	/**
+	 * Asks the user for a statement file and imports it, showing the progress as it goes.
+	 * @param input is the scanner used to read user input.
+	 * @param db is the database the transactions will be added to.
+	 * @param user is the user whose account the transactions will be added to.
+	 * @modifies The balance of user.
+	 */
+	protected static void run(Scanner input, TransactionsDB db, User user) {
+		File file = getFile(input);
+		if (file == null) {
+			return;
+		}
+
+		System.out.println("Importing " + file.getName() + "...");
+		StatementImporter importer = new StatementImporter(db);
+		ImportProgress result;
+
+		try {
+			result = importer.importFile(file, user.getUsername(),
+					progress -> System.out.print("\r" + progress));
+			System.out.println();
+
+		} catch (ParseException e) {
+			System.out.println("\nUnable to read the statement: " + e.getMessage());
+			return;
+
+		} catch (IOException | SQLException e) {
+			System.out.println();
+			TransactionHelper.printErrorToLog(e);
+			System.out.println("The import stopped early, transactions added before the error "
+					+ "were kept.");
+			refreshBalance(db, user);
+			return;
+		}
+
+		// Show why rows were rejected so that the user can fix their statement.
+		for (String reason : result.getRejections()) {
+			System.out.println("Rejected " + reason);
+		}
+		if (result.getRejected() > result.getRejections().size()) {
+			System.out.println("..." + (result.getRejected() - result.getRejections().size())
+					+ " more rows were rejected.");
+		}
+
+		refreshBalance(db, user);
+		System.out.println("Your current balance is $" + user.getUserBalance());
+	}
+
+	/**
+	 * Asks the user for the path of the statement to import.
+	 * @param input is the scanner used to read user input.
+	 * @return The statement file or null if the user gave up.
+	 */
+	private static File getFile(Scanner input) {
+		while (true) {
+			System.out.print('\n' + "What is the path of the .csv, .ofx or .qfx statement?"
+					+ '\n' + "> ");
+			File file = new File(input.nextLine().trim());
+
+			if (!file.isFile()) {
+				System.out.println("No file was found at " + file.getAbsolutePath());
+			} else {
+				try {
+					StatementImporter.Format.fromFileName(file.getName());
+					return file;
+				} catch (IllegalArgumentException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+
+			if (!TransactionHelper.yesNoQuestion(input, "Would you like to try another file?")) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Reloads the user's balance from the database after transactions were added.
+	 * @param db is the database holding the user's balance.
+	 * @param user is the user whose balance will be reloaded.
+	 * @modifies The balance of user.
+	 */
+	private static void refreshBalance(TransactionsDB db, User user) {
+		User dbUser = db.logIn(user.getUsername());
+		if (dbUser != null) {
+			user.setUserBalance(dbUser.getUserBalance());
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package view;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import controller.LedgerGenerator;
+
+/**
+ * Puts load on a running TransactionsTrackerServer and reports the latency of its endpoints.
+ * Each client logs in as one of the users made by the LedgerGenerator, then sends a mix of
+ * balance, history and add transaction requests as fast as it can. Any number of idle
+ * connections can be held open alongside to check that they cost the server little.
+ *
+ * Settings are given as name=value arguments: host, port, clients, requests (per client),
+ * users (how many generated users to spread the clients over), prefix (of the generated
+ * usernames) and idle (connections to hold open).
+ * @author L. James Davidson
+ */
+public class LoadTestClient {
+
+	private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+
+	// The request mix, out of 100.
+	private static final int BALANCE_PERCENT = 40;
+	private static final int HISTORY_PERCENT = 40;
+
+	private final String baseUrl;
+	private final LongAdder failures = new LongAdder();
+
+	/** @param baseUrl is the URL of the server without a trailing slash. */
+	private LoadTestClient(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	/**
+	 * Runs the load test.
+	 * @param args are the settings of the test.
+	 */
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		int port = TransactionsTrackerServer.DEFAULT_PORT;
+		int clients = 32;
+		int requests = 200;
+		int users = 32;
+		String prefix = "gen";
+		int idle = 0;
+
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			String name = split < 0 ? arg : arg.substring(0, split);
+			String value = split < 0 ? "" : arg.substring(split + 1);
+
+			switch (name) {
+				case "host":
+					host = value;
+					break;
+				case "port":
+					port = Integer.parseInt(value);
+					break;
+				case "clients":
+					clients = Integer.parseInt(value);
+					break;
+				case "requests":
+					requests = Integer.parseInt(value);
+					break;
+				case "users":
+					users = Integer.parseInt(value);
+					break;
+				case "prefix":
+					prefix = value;
+					break;
+				case "idle":
+					idle = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown setting " + name);
+			}
+		}
+
+		LedgerGenerator.LedgerGeneratorBuilder names = new LedgerGenerator.LedgerGeneratorBuilder();
+		names.setUsernamePrefix(prefix);
+		LedgerGenerator generator = names.build();
+		LoadTestClient test = new LoadTestClient("http://" + host + ":" + port);
+
+		// Idle connections which never send a request.
+		List<Socket> idleSockets = new ArrayList<Socket>(idle);
+		for (int i = 0; i < idle; i++) {
+			idleSockets.add(new Socket(host, port));
+		}
+		if (idle > 0) {
+			System.out.println("Holding " + idle + " idle connections open.");
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		List<Future<long[]>> results = new ArrayList<Future<long[]>>(clients);
+		long start = System.nanoTime();
+
+		for (int i = 0; i < clients; i++) {
+			String username = generator.getUsername(i % users);
+			int seed = i;
+			int count = requests;
+			results.add(pool.submit(() -> test.runClient(username, count, new Random(seed))));
+		}
+
+		// Merge the latencies of every client.
+		long[] latencies = new long[0];
+		for (Future<long[]> result : results) {
+			long[] client = result.get();
+			int offset = latencies.length;
+			latencies = Arrays.copyOf(latencies, offset + client.length);
+			System.arraycopy(client, 0, latencies, offset, client.length);
+		}
+		double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+		pool.shutdown();
+
+		for (Socket socket : idleSockets) {
+			socket.close();
+		}
+
+		Arrays.sort(latencies);
+		System.out.printf("%d requests in %.1f s (%.0f/s), %d failed%n", latencies.length,
+				seconds, latencies.length / seconds, test.failures.sum());
+		if (latencies.length > 0) {
+			System.out.printf("latency ms: p50 %.2f, p95 %.2f, p99 %.2f, max %.2f%n",
+					percentile(latencies, 50), percentile(latencies, 95),
+					percentile(latencies, 99), latencies[latencies.length - 1] / 1e6);
+		}
+	}
+
+	/**
+	 * Logs in a user and sends a mix of requests.
+	 * @param username is the generated user to log in as.
+	 * @param requests is the number of requests after logging in.
+	 * @param random picks the requests.
+	 * @return The latency of each request in nanoseconds.
+	 */
+	private long[] runClient(String username, int requests, Random random) throws IOException {
+		String body = this.send("POST", "/login", null, "username=" + encode(username)
+				+ "&password=" + encode(LedgerGenerator.PASSWORD));
+		Matcher matcher = body == null ? null : TOKEN.matcher(body);
+		if (matcher == null || !matcher.find()) {
+			throw new IOException("Could not log in as " + username);
+		}
+		String token = matcher.group(1);
+
+		long[] latencies = new long[requests];
+		for (int i = 0; i < requests; i++) {
+			int pick = random.nextInt(100);
+			long start = System.nanoTime();
+
+			if (pick < BALANCE_PERCENT) {
+				this.send("GET", "/balance", token, null);
+			} else if (pick < BALANCE_PERCENT + HISTORY_PERCENT) {
+				this.send("GET", "/history?orderBy=date&limit=25", token, null);
+			} else {
+				this.send("POST", "/transactions", token, "description="
+						+ encode("Load test " + random.nextInt(1_000_000)) + "&amount="
+						+ (1 + random.nextInt(5000)) / 100.0 + "&category=N%2FA");
+			}
+			latencies[i] = System.nanoTime() - start;
+		}
+		return latencies;
+	}
+
+	/**
+	 * Sends a request and reads the whole response.
+	 * @param method is the HTTP method.
+	 * @param path is the path and query of the request.
+	 * @param token is the session token or null.
+	 * @param form is the form encoded body or null.
+	 * @return The body of the response or null if the request failed.
+	 */
+	private String send(String method, String path, String token, String form) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(this.baseUrl + path).openConnection();
+		conn.setRequestMethod(method);
+		if (token != null) {
+			conn.setRequestProperty("Authorization", "Bearer " + token);
+		}
+		if (form != null) {
+			conn.setDoOutput(true);
+			conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			try (OutputStream out = conn.getOutputStream()) {
+				out.write(form.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		int status = conn.getResponseCode();
+		InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (in != null) {
+			// Reading to the end lets the connection be kept alive and reused.
+			try (InputStream stream = in) {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = stream.read(buf)) > 0) {
+					body.write(buf, 0, n);
+				}
+			}
+		}
+
+		if (status != 200) {
+			this.failures.increment();
+			return null;
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param sorted are latencies in nanoseconds in ascending order.
+	 * @param percent is the percentile.
+	 * @return The latency at the percentile in milliseconds.
+	 */
+	private static double percentile(long[] sorted, int percent) {
+		int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	/**
+	 * @param value is a parameter value.
+	 * @return The value URL encoded.
+	 */
+	private static String encode(String value) throws IOException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+}
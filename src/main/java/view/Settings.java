@@ -1,23 +1,48 @@
 package view;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Scanner;
 
+import controller.AggregationEngine;
+import controller.AnnualSpendReport;
+import controller.LedgerGenerator;
+import controller.PasswordHasher;
+import controller.SqliteLedgerSource;
+import controller.LedgerGenerator.LedgerGeneratorBuilder;
+import controller.TransactionHelper;
 import controller.TransactionsDB;
-import model.BCrypt;
+import controller.TransactionsDBPool;
 import model.User;
 
 class Settings {
 
 	// Constants regarding the restrictions from the SQLite database tables.
 	private static final int MAX_CATNAME_CHARS = 30;
+	
+	// Most users which can be generated at once.
+	private static final int MAX_GENERATED_USERS = 1_000_000;
+	
+	// File generated ledgers are written to unless another is given, next to the live database.
+	private static final String GENERATED_DATABASE = "TT-generated.db";
+	
+	private static final double NANOS_IN_A_SECOND = 1_000_000_000.0;
+	
+	// Earliest year which can be reported on.
+	private static final int MIN_REPORT_YEAR = 1970;
 
 	/**
 	 * Allows user to access available settings.
 	 * @param db is the database whose information may be modified.
 	 * @param input the scanner used to read user input.
 	 * @param currentUser is the currently logged in user.
+	 * @param hasher checks and hashes the user's passwords.
 	 */
-	protected static void run(TransactionsDB db, Scanner input, User currentUser) {
+	protected static void run(TransactionsDB db, Scanner input, User currentUser, 
+			PasswordHasher hasher) {
 		printSettingsCommands();
 		
 		// Initializing user response.
@@ -44,7 +69,7 @@ class Settings {
 				
 				case "2":
 					// User preferences
-					userSettings(db, input, currentUser);
+					userSettings(db, input, currentUser, hasher);
 					break;
 					
 				case "back":
@@ -99,6 +124,26 @@ class Settings {
 					// Add a category
 					addCategory(db, input);
 					break;
+					
+				case "2":
+					// Generate a ledger for testing
+					generateLedger(db, input);
+					break;
+					
+				case "3":
+					// Recompute the monthly totals
+					rebuildMonthlyTotals(db);
+					break;
+					
+				case "4":
+					// Compare the monthly totals with the transactions
+					checkMonthlyTotals(db);
+					break;
+					
+				case "5":
+					// Report every user's spending by category and year
+					annualSpendReport(db, input);
+					break;
 				
 				case "back":
 					// Return to settings menu
@@ -118,6 +163,10 @@ class Settings {
 		System.out.println('\n' + "Program settings menu commands are:" + '\n'
 				+ "'0' to get a list of program settings menu commands." + '\n'
 				+ "'1' to add a new expense category." + '\n'
+				+ "'2' to generate test users and transactions in a separate database." + '\n'
+				+ "'3' to recompute the monthly totals from the transactions." + '\n'
+				+ "'4' to check the monthly totals against the transactions." + '\n'
+				+ "'5' to report every user's spending by category and year." + '\n'
 				+ "'back' to return to the settings menu.");
 	}
 
@@ -163,13 +212,150 @@ class Settings {
 		}
 	}
 	
+	/**
+	 * Fills a separate database file with generated users and transactions for testing. Every 
+	 * generated user has the same known password, so they are never added to the database in 
+	 * use.
+	 * @param db the database in use, which is not changed.
+	 * @param input the scanner to read user input.
+	 */
+	private static void generateLedger(TransactionsDB db, Scanner input) {
+		File live = db.getDatabase();
+		File database = new File(live.getAbsoluteFile().getParentFile(), GENERATED_DATABASE);
+		System.out.print('\n' + "Which file should the test database be written to? Press enter "
+				+ "for " + database + '\n' + "> ");
+		String path = input.nextLine().trim();
+		if (!path.isEmpty()) {
+			database = new File(path);
+		}
+		try {
+			if (database.getCanonicalFile().equals(live.getCanonicalFile())) {
+				System.out.println("Test users cannot be generated into the database in use.");
+				return;
+			}
+		} catch (IOException e) {
+			TransactionHelper.printErrorToLog(e);
+			System.out.println("Unable to find " + database + ", please try another file.");
+			return;
+		}
+		
+		LedgerGeneratorBuilder builder = new LedgerGeneratorBuilder();
+		builder.setUsers(TransactionHelper.numberResponse(input, "How many users would you like "
+				+ "to generate?", 1, MAX_GENERATED_USERS));
+		builder.setTransactions(TransactionHelper.numberResponse(input, "About how many "
+				+ "transactions would you like to generate across all users?", 0, 
+				Integer.MAX_VALUE));
+		builder.setSeed(TransactionHelper.numberResponse(input, "What seed would you like to use? "
+				+ "The same seed always generates the same transactions.", 0, Integer.MAX_VALUE));
+		
+		System.out.println("Warning: every generated user has the password '" 
+				+ LedgerGenerator.PASSWORD + "', anyone can log in as them.");
+		if (!TransactionHelper.yesNoQuestion(input, "Generated users are added to " + database 
+				+ ", continue?")) {
+			return;
+		}
+		
+		TransactionsDB generated = new TransactionsDB();
+		try {
+			generated.open(database);
+			try {
+				long start = System.nanoTime();
+				long written = builder.build().generate(generated, 
+						rows -> System.out.print("\r" + rows + " transactions written"));
+				double seconds = (System.nanoTime() - start) / NANOS_IN_A_SECOND;
+				System.out.printf("%n%d transactions written to %s in %.1f seconds.%n", written, 
+						database, seconds);
+			} finally {
+				generated.close();
+			}
+			
+		} catch (SQLException e) {
+			System.out.println();
+			TransactionHelper.printErrorToLog(e);
+			System.out.println("Generating stopped early, users completed before the error "
+					+ "were kept.");
+		}
+	}
+	
+	/**
+	 * Recomputes the monthly totals of every user from their transactions.
+	 * @param db the database whose monthly totals will be rebuilt.
+	 */
+	private static void rebuildMonthlyTotals(TransactionsDB db) {
+		long start = System.nanoTime();
+		long rows = db.rebuildMonthlyTotals();
+		if (rows >= 0) {
+			double seconds = (System.nanoTime() - start) / NANOS_IN_A_SECOND;
+			System.out.printf("%d monthly totals rebuilt in %.1f seconds.%n", rows, seconds);
+		} else {
+			System.out.println("Unable to rebuild the monthly totals, please try again later.");
+		}
+	}
+	
+	/**
+	 * Checks the monthly totals of every user against their transactions and prints any which 
+	 * differ.
+	 * @param db the database whose monthly totals will be checked.
+	 */
+	private static void checkMonthlyTotals(TransactionsDB db) {
+		List<String> differences = db.checkMonthlyTotals();
+		if (differences == null) {
+			System.out.println("Unable to check the monthly totals, please try again later.");
+		} else if (differences.isEmpty()) {
+			System.out.println("The monthly totals match the transactions.");
+		} else {
+			for (String difference : differences) {
+				System.out.println(difference);
+			}
+			System.out.println(differences.size() + " monthly totals differ from the "
+					+ "transactions, use '3' to recompute them.");
+		}
+	}
+	
+	/**
+	 * Reports the spending of every user by category and year over a range of years. The 
+	 * transactions are read in parallel through a pool of connections opened for the report.
+	 * @param db the database whose users are reported.
+	 * @param input the scanner to read user input.
+	 */
+	private static void annualSpendReport(TransactionsDB db, Scanner input) {
+		int thisYear = LocalDate.now().getYear();
+		int firstYear = TransactionHelper.numberResponse(input, "What is the first year of the "
+				+ "report?", MIN_REPORT_YEAR, thisYear);
+		int lastYear = TransactionHelper.numberResponse(input, "What is the last year of the "
+				+ "report?", firstYear, thisYear);
+		
+		long start = System.nanoTime();
+		AggregationEngine engine = new AggregationEngine();
+		try (TransactionsDBPool pool = new TransactionsDBPool(db.getDatabase(), 
+				TransactionsDBPool.DEFAULT_READERS, TransactionsDBPool.DEFAULT_WAIT_MILLIS)) {
+			AnnualSpendReport report = AnnualSpendReport.compute(engine, 
+					new SqliteLedgerSource(pool), null, firstYear, lastYear);
+			double seconds = (System.nanoTime() - start) / NANOS_IN_A_SECOND;
+			
+			if (report.getRows().isEmpty()) {
+				System.out.println("No spending found.");
+			} else {
+				System.out.print("\n" + report);
+			}
+			System.out.printf("Reported in %.1f seconds with %d threads.%n", seconds, 
+					Math.min(engine.getParallelism(), pool.getReaderCount()));
+			
+		} catch (SQLException e) {
+			TransactionHelper.printErrorToLog(e);
+			System.out.println("Unable to report the spending, please try again later.");
+		}
+	}
+	
 	/**
 	 * Allows user to access user specific settings.
 	 * @param db is the database whose user information will be edited.
 	 * @param input the scanner to read user input.
 	 * @param user is the user whose settings will be accessed.
+	 * @param hasher checks and hashes the user's passwords.
 	 */
-	private static void userSettings(TransactionsDB db, Scanner input, User user) {
+	private static void userSettings(TransactionsDB db, Scanner input, User user, 
+			PasswordHasher hasher) {
 		printUserSettingsCommands();
 		
 		// Initializing user response.
@@ -191,12 +377,12 @@ class Settings {
 					
 				case "1":
 					// Change full name
-					editUserFullName(db, input, user);
+					editUserFullName(db, input, user, hasher);
 					break;
 				
 				case "2":
 					// Change password
-					editUserPassword(db, input, user);
+					editUserPassword(db, input, user, hasher);
 					break;
 					
 				case "back":
@@ -225,16 +411,18 @@ class Settings {
 	 * Allows logged in user to edit their full name.
 	 * @param input the scanner used to read user input.
 	 * @param user is the logged in user whose information will be edited.
+	 * @param hasher checks the user's password.
 	 * @modifies The logged in user's full name.
 	 */
-	private static void editUserFullName(TransactionsDB db, Scanner input, User user) {
+	private static void editUserFullName(TransactionsDB db, Scanner input, User user, 
+			PasswordHasher hasher) {
 		
 		while (true) {
 			System.out.print('\n' + "Please enter your current password" + '\n' + "> ");
 			String password = input.nextLine();
 			
 			// Check if user typed old password matches the old password.
-			if (!BCrypt.checkpw(password, user.getPassword())) {
+			if (!hasher.checkNow(password, user.getPassword())) {
 				System.out.println("Incorrect password.");
 						
 			} else {
@@ -266,21 +454,23 @@ class Settings {
 	 * Allows logged in user to edit their password.
 	 * @param input the scanner used to read user input.
 	 * @param user is the logged in user whose information will be edited.
+	 * @param hasher checks and hashes the user's passwords.
 	 * @modifies The logged in user's password.
 	 */
-	private static void editUserPassword(TransactionsDB db, Scanner input, User user) {
+	private static void editUserPassword(TransactionsDB db, Scanner input, User user, 
+			PasswordHasher hasher) {
 		
 		while (true) {
 			System.out.print('\n' + "Please enter your current password" + '\n' + "> ");
 			String password = input.nextLine();
 			
 			// Check if user typed old password matches the old password.
-			if (!BCrypt.checkpw(password, user.getPassword())) {
+			if (!hasher.checkNow(password, user.getPassword())) {
 				System.out.println("Incorrect password.");
 				
 			} else {
 				// Get new password
-				String newPassword = CreateNewUser.setPassword(input);
+				String newPassword = CreateNewUser.setPassword(input, hasher);
 				
 				// Have DB change the user password		
 				boolean executed = db.changePassword(user, newPassword);
@@ -0,0 +1,55 @@
+package view;
+
+import java.text.DecimalFormat;
+import java.time.LocalDate;
+import java.util.Scanner;
+
+import controller.TransactionHelper;
+import controller.TransactionsDB;
+import model.User;
+
+/**
+ * Shows a user what their balance was on a date, or how much it changed between two dates.
+ * @author L. James Davidson
+ */
+public class ShowBalance {
+
+	private static final int CENTS_IN_A_DOLLAR = 100;
+	
+	/**
+	 * Main function of ShowBalance. Asks the user whether they want their balance on a date or 
+	 * its change between two dates, then outputs it.
+	 * @param input the scanner to read user input.
+	 * @param db The database which holds the user's transaction history.
+	 * @param user The user whose balance this will display.
+	 */
+	public static void run(Scanner input, TransactionsDB db, User user) {
+		DecimalFormat df = new DecimalFormat("0.00");
+		if (TransactionHelper.yesNoQuestion(input, "Would you like to see how your balance "
+				+ "changed between two dates instead of your balance on a date?")) {
+			LocalDate[] range = ShowHistory.askDateRange(input);
+			Long change = db.getBalanceChange(user.getUsername(), range[0].toEpochDay(), 
+					range[1].toEpochDay());
+			if (change == null) {
+				return;
+			}
+			System.out.println("Your balance changed by $" 
+					+ df.format((double) change / CENTS_IN_A_DOLLAR) + " from " + range[0] 
+					+ " till " + range[1] + ".");
+			return;
+		}
+		
+		int[] dateInfo = new int[3];
+		TransactionHelper.setYear(input, dateInfo, "What is the year of the date?");
+		TransactionHelper.setMonth(input, dateInfo, "What is the month of the date?");
+		TransactionHelper.setDay(input, dateInfo, "What is the day of the date?");
+		LocalDate date = LocalDate.of(dateInfo[0], dateInfo[1], dateInfo[2]);
+		
+		Long balance = db.getBalanceOn(user.getUsername(), date.toEpochDay());
+		if (balance == null) {
+			return;
+		}
+		System.out.println("Your balance at the end of " + date + " was $" 
+				+ df.format((double) balance / CENTS_IN_A_DOLLAR) + ".");
+	}
+}
@@ -1,17 +1,19 @@
 package view;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
+import controller.BreakdownReport;
+import controller.BreakdownReport.Grouping;
+import controller.HistoryCursor;
+import controller.HistoryQuery;
+import controller.HistoryQuery.Attribute;
+import controller.HistoryQuery.HistoryQueryBuilder;
 import controller.TransactionHelper;
 import controller.TransactionsDB;
 import model.Transaction;
-import model.Transaction.TransactionBuilder;
 import model.User;
 
 public class ShowHistory {
@@ -21,9 +23,11 @@ public class ShowHistory {
 		+ "3. Price\n4. Category\n5. Memo";
 	private final static int NUM_OF_ATTRIBUTES = 5;
 	
-	/** Attributes of transactions that will be shown to user which match db attribute names. */
-	private static final String[] DB_ATTRIBUTES = {"description", "price_in_cents", 
-			"day", "category", "memo"};
+	/** Ways transactions can be grouped in a breakdown. */
+	private static final String GROUPING_OPTIONS = "Avaliable options are \n1. Category\n"
+		+ "2. Month\n3. Week\n4. Location";
+	private static final Grouping[] GROUPINGS = {Grouping.CATEGORY, Grouping.MONTH, 
+			Grouping.WEEK, Grouping.DESCRIPTION};
 	
 	/** Attributes of transactions will be shown to the user. */
 	private static final String[] PRINTED_ATTRIBUTES = {"Description", "Amount", 
@@ -43,124 +47,96 @@ public class ShowHistory {
 	 */
 	public static void run(Scanner input, TransactionsDB db, User user) {
 		
+		if (TransactionHelper.yesNoQuestion(input, "Would you like a breakdown of your "
+				+ "transactions' totals instead of a list of them?")) {
+			outputBreakdown(input, db, user);
+			return;
+		}
+		
+		HistoryQueryBuilder query = new HistoryQueryBuilder(user.getUsername());
+		
 		// Ask user regarding ordering of output transactions.
-		String[] orderByClause = new String[NUM_OF_ATTRIBUTES];
-		int numOfOrderingAttributes = 0;
 		boolean addAnother;
 		do {
-			addToOrderBy(input, orderByClause, numOfOrderingAttributes++);
+			addToOrderBy(input, query);
 			addAnother = TransactionHelper.yesNoQuestion(input, "Would you like to order your history by "
 					+ "another transactions' attribute?");
 			
-		} while (addAnother && numOfOrderingAttributes < NUM_OF_ATTRIBUTES);
+		} while (addAnother && query.getOrderByCount() < NUM_OF_ATTRIBUTES);
 		
 		// Ask user regarding filtering of transactions which will be output.	
-		List<String> whereClauses = new ArrayList<String>();
-		
 		boolean filterTrans = TransactionHelper.yesNoQuestion(input, "Would you like to filter your "
 				+ "transactions? \nNote: Any filters applied to the same attributes will "
 				+ "allow transactions which fit any of the criteria for that attribute.");
 		if (filterTrans) {
 			do {
-				addToWhere(input, db, whereClauses);
+				addToWhere(input, db, query);
 				filterTrans = TransactionHelper.yesNoQuestion(input, "Would you like to further filter "
 						+ "your transactions?");
 			} while (filterTrans);
 		}
 
-		String stmt = prepareQuery(user, orderByClause, whereClauses);
-		outputResults(db, stmt);
+		outputResults(input, db, query.build());
 	}
 	
 	/**
-	 * Prepares a SQL statement which can be used to queried a user's transaction history.
-	 * @param user THe user whose transaction's will be queried.
-	 * @param orderByClauses The order in which the output should be ordered.
-	 * @param whereClauses Filters which will be applied to the user's transaction history.
-	 * @return A SQL statement to be executed and get the user's requested transaction history.
+	 * Asks the user how to group their transactions and over which dates, then outputs the 
+	 * total, count, and average of each group.
+	 * @param input The scanner used to read user input.
+	 * @param db The database which holds the user's transaction history.
+	 * @param user The user whose transactions are grouped.
 	 */
-	private static String prepareQuery(User user, String[] orderByClauses, List<String> whereClauses) {
-		// Construct query using given user specifications.
-		String stmt = "SELECT ";
-		for (int i = 0; i < DB_ATTRIBUTES.length - 1; i++) {
-			stmt += DB_ATTRIBUTES[i] + ", ";
-		}
-		stmt += DB_ATTRIBUTES[DB_ATTRIBUTES.length - 1] + " FROM Transactions WHERE ";
+	private static void outputBreakdown(Scanner input, TransactionsDB db, User user) {
+		int answer = TransactionHelper.numberResponse(input, "What would you like to group "
+				+ "your transactions by?\n" + GROUPING_OPTIONS, 1, GROUPINGS.length);
 		
-		List<String> attributeSpecificClauses;
-		for (int i = 0; i < DB_ATTRIBUTES.length; i++) {
-			attributeSpecificClauses = new ArrayList<String>();
-			String attribute = DB_ATTRIBUTES[i];
-			for (int j = 0; j < whereClauses.size(); j++) {
-				// If the where clause matches the attribute add to attributeSpecificClauses
-				String clause = whereClauses.get(j);
-				if (clause.substring(0, attribute.length()).equals(attribute))
-					attributeSpecificClauses.add(clause);
-			}
-			
-			if (attributeSpecificClauses.size() == 0)
-				continue;
-			// 'or' the clauses which have the same attribute together.
-			stmt += "(";
-			for (int k = 0; k < attributeSpecificClauses.size() - 1; k++) {
-				whereClauses.remove(attributeSpecificClauses.get(k));
-				stmt += attributeSpecificClauses.get(k) + " OR ";
-			}
-			stmt += attributeSpecificClauses.get(attributeSpecificClauses.size() - 1) + ") AND ";
+		long fromDay = Long.MIN_VALUE;
+		long toDay = Long.MAX_VALUE;
+		if (TransactionHelper.yesNoQuestion(input, "Would you like to only include "
+				+ "transactions between two dates?")) {
+			LocalDate[] range = askDateRange(input);
+			fromDay = range[0].toEpochDay();
+			toDay = range[1].toEpochDay();
 		}
 		
-		stmt += "belongsTo = '" + user.getUsername() + "' ORDER BY ";
-		
-		for (int i = 0; i < NUM_OF_ATTRIBUTES; i++) {
-			stmt += orderByClauses[i];
-			if (i == NUM_OF_ATTRIBUTES - 1 || orderByClauses[i + 1] == null) {
-				// Last ordering attribute
-				stmt += ";";
-				break;
-			} else {
-				stmt += ", ";
-			}
+		BreakdownReport report = db.getBreakdown(user.getUsername(), GROUPINGS[answer - 1], 
+				fromDay, toDay);
+		if (report == null) {
+			return;
+		} else if (report.getGroups().isEmpty()) {
+			System.out.println("No results found.");
+			return;
 		}
-		
-		return stmt;
+		System.out.print("\n" + report);
 	}
 	
 	/**
-	 * Outputs the user's transaction history.
+	 * Outputs the user's transaction history a page at a time, asking before each further page.
+	 * @param input The scanner used to read user input.
 	 * @param db THe database which holds the user's transaction history.
-	 * @param query The SQL statement to execute regarding the user's transaction history.
+	 * @param query The query of the user's transaction history.
 	 */
-	private static void outputResults(TransactionsDB db, String query) {
-		// Send query to db to be executed
-		ResultSet results = db.executeQuery(query);
+	private static void outputResults(Scanner input, TransactionsDB db, HistoryQuery query) {
+		HistoryCursor cursor = db.streamHistory(query, HistoryCursor.DEFAULT_PAGE_SIZE);
+		
+		List<Transaction> page = cursor.nextPage();
+		if (page == null) {
+			return;
+		} else if (page.isEmpty()) {
+			System.out.println("No results found.");
+			return;
+		}
 		
-		try {
-			if (!results.next()) {
-				System.out.println("No results found.");
+		printInfo(page);
+		while (cursor.hasNext() && TransactionHelper.yesNoQuestion(input, "Would you like to see "
+				+ "more transactions?")) {
+			page = cursor.nextPage();
+			if (page == null) {
 				return;
 			}
-			
-			List<Transaction> output = new ArrayList<Transaction>();
-			TransactionBuilder trans;
-			int price;
-			
-			do {
-				price = results.getInt("price_in_cents");
-				trans = new TransactionBuilder(price > 0);
-				
-				trans.setAmountInCents(price);
-				trans.setDescription(results.getString("description"));
-				trans.setDate(LocalDate.parse(results.getString("day")));
-				trans.setCategory(results.getString("category"));
-				trans.setMemo(results.getString("memo"));
-				output.add(trans.build());
-			} while (results.next());
-			
-			printInfo(output);
-			
-		} catch (SQLException e) {
-			TransactionHelper.printErrorToLog(e);
+			printInfo(page);
 		}
+		System.out.println(cursor.getRowsRead() + " transactions shown.");
 	}
 	
 	/**
@@ -227,57 +203,55 @@ public class ShowHistory {
 	/**
 	 * Adds an attribute to order the transactions from a SQL query.
 	 * @param input the scanner to read user input.
-	 * @param orderByClause the array of attributes the users transactions will be ordered by.
-	 * @param orderPriority The priority of the ordering of transactions by the attribute which the
-	 * user will choose.
+	 * @param query the query the ordering attribute will be added to, after any attributes 
+	 * already added.
 	 */
-	private static void addToOrderBy(Scanner input, String[] orderByClause, int orderPriority) {
+	private static void addToOrderBy(Scanner input, HistoryQueryBuilder query) {
 		int answer = TransactionHelper.numberResponse(input, "What would you like to order your transactions by?\n" 
 				+ ATTRIBUTE_OPTIONS, 1, NUM_OF_ATTRIBUTES);
 		switch (answer) {
 			case 1: // Description
-				orderByClause[orderPriority] = "description";
+				query.addOrderBy(Attribute.DESCRIPTION);
 				break;
 			case 2: // Date
-				orderByClause[orderPriority] = "day";
+				query.addOrderBy(Attribute.DATE);
 				break;
 			case 3: // Price
-				orderByClause[orderPriority] = "price_in_cents";
+				query.addOrderBy(Attribute.PRICE);
 				break;
 			case 4: // Category
-				orderByClause[orderPriority] = "category";
+				query.addOrderBy(Attribute.CATEGORY);
 				break;
 			case 5: // Memo
-				orderByClause[orderPriority] = "memo";
+				query.addOrderBy(Attribute.MEMO);
 				break;
 		}
 	}
 	
 	/**
-	 * Asks and records to the whereClause the filtering attributes which will be applied to the 
+	 * Asks and records to the query the filtering attributes which will be applied to the 
 	 * user's transactions history.
 	 * @param input The scanner used to read user input.
-	 * @param whereClause The list of filtering statements which will be applied to the user's 
-	 * transaction history.
+	 * @param query The query whose filters will be applied to the user's transaction history.
 	 */
-	private static void addToWhere(Scanner input, TransactionsDB db, List<String> whereClause) {
+	private static void addToWhere(Scanner input, TransactionsDB db, HistoryQueryBuilder query) {
 		System.out.println("Which attributes would you like to filter your transactions with?");
 		int answer = TransactionHelper.numberResponse(input, ATTRIBUTE_OPTIONS, 1, NUM_OF_ATTRIBUTES);
 		switch (answer) {
 			case 1: // Description
-				filterByDescription(input, whereClause);
+				filterByDescription(input, query);
 				break;
 			case 2: // Date
-				filterByDate(input, whereClause);
+				filterByDate(input, query);
 				break;
 			case 3: // Price
-				filterByAmount(input, whereClause);
+				filterByAmount(input, query);
 				break;
 			case 4: // Category
-				filterByCategory(input, db, whereClause);
+				filterByCategory(input, db, query);
 				break;
 			case 5: // Memo
-				filterByMemo(input, whereClause);
+				filterByMemo(input, query);
 				break;
 		}
 	}
@@ -285,19 +259,31 @@ public class ShowHistory {
 	/**
 	 * Determines how the user would like to filter by transaction's description.
 	 * @param input The scanner used to read user input.
-	 * @param whereClause The list of where clauses to filter the user's transactions.
+	 * @param query The query whose filters will be applied to the user's transactions.
 	 */
-	private static void filterByDescription(Scanner input, List<String> whereClause) {
+	private static void filterByDescription(Scanner input, HistoryQueryBuilder query) {
 		System.out.print("Which description would you like to include in your filter?\n> ");
-		whereClause.add("description = '" + input.nextLine() + "'");
+		query.addEquals(Attribute.DESCRIPTION, input.nextLine());
 	}
 	
 	/**
 	 * Determines how the user would like to filter by transaction's date.
 	 * @param input The scanner used to read user input.
-	 * @param whereClause The list of where clauses to filter the user's transactions.
+	 * @param query The query whose filters will be applied to the user's transactions.
+	 */
+	private static void filterByDate(Scanner input, HistoryQueryBuilder query) {
+		LocalDate[] range = askDateRange(input);
+		
+		// Days are stored as the number of days since 1970-01-01.
+		query.addRange(Attribute.DATE, range[0].toEpochDay(), range[1].toEpochDay());
+	}
+	
+	/**
+	 * Asks the user for the first and last dates of a range until they confirm it.
+	 * @param input The scanner used to read user input.
+	 * @return The first and last dates of the range, in that order.
 	 */
-	private static void filterByDate(Scanner input, List<String> whereClause) {
+	static LocalDate[] askDateRange(Scanner input) {
 		LocalDate from, to;
 		int[] fromDateInfo = new int[3];
 		int[] toDateInfo = new int[3];
@@ -324,15 +310,15 @@ public class ShowHistory {
 				break;
 		}
 		
-		whereClause.add("day >='" + from.toString() + "' AND day <='" + to.toString() + "'");
+		return new LocalDate[] {from, to};
 	}
 	
 	/**
 	 * Determines how the user would like to filter by transaction's amount.
 	 * @param input The scanner used to read user input.
-	 * @param whereClause The list of where clauses to filter the user's transactions.
+	 * @param query The query whose filters will be applied to the user's transactions.
 	 */
-	private static void filterByAmount(Scanner input, List<String> whereClause) {
+	private static void filterByAmount(Scanner input, HistoryQueryBuilder query) {
 		int upper = -1;
 		int lower = 0;
 		
@@ -349,17 +335,17 @@ public class ShowHistory {
 				System.out.println("Your upper bound is below your lower bound.");
 		} while (upper < lower);
 		
-		whereClause.add("price_in_cents >= '" + lower * CENTS_IN_A_DOLLAR 
-				+ "' AND price_in_cents <= '" + upper * CENTS_IN_A_DOLLAR + "'");
+		query.addRange(Attribute.PRICE, (long) lower * CENTS_IN_A_DOLLAR, 
+				(long) upper * CENTS_IN_A_DOLLAR);
 	}
 	
 	/**
 	 * Determines how the user would like to filter by transaction's category.
 	 * @param input The scanner used to read user input.
 	 * @param db The TransactionsDB which holds this user's transactions.
-	 * @param whereClause The list of where clauses to filter the user's transactions.
+	 * @param query The query whose filters will be applied to the user's transactions.
 	 */
-	private static void filterByCategory(Scanner input, TransactionsDB db, List<String> whereClause) {
+	private static void filterByCategory(Scanner input, TransactionsDB db, HistoryQueryBuilder query) {
 		System.out.println("\nWhich category would you like to include in your filter?");
 		String category;
 		do {
@@ -372,16 +358,16 @@ public class ShowHistory {
 				System.out.println("Invalid cateogry choice.");
 		} while (category == null);
 
-		whereClause.add("category = '" + category + "'");
+		query.addEquals(Attribute.CATEGORY, category);
 	}
 	
 	/**
 	 * Determines how the user would like to filter by transaction's memo.
 	 * @param input The scanner used to read user input.
-	 * @param whereClause The list of where clauses to filter the user's transactions.
+	 * @param query The query whose filters will be applied to the user's transactions.
 	 */
-	private static void filterByMemo(Scanner input, List<String> whereClause) {
+	private static void filterByMemo(Scanner input, HistoryQueryBuilder query) {
 		System.out.print("Which memo would you like to include in your filter?\n> ");
-		whereClause.add("memo = '" + input.nextLine() + "'");
+		query.addEquals(Attribute.MEMO, input.nextLine());
 	}
 }
\ No newline at end of file
@@ -1,13 +1,20 @@
 package view;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Scanner;
+import java.util.concurrent.RejectedExecutionException;
 
+import controller.MetricsRegistry;
+import controller.PasswordHasher;
+import controller.SlowQueryLog;
 import controller.TransactionHelper;
 import controller.TransactionsDB;
 import model.Transaction;
 import model.User;
-import model.BCrypt;
 
 /**
  * Text based interface for clients to query and update the database in order to log in, add 
@@ -16,31 +23,42 @@ import model.BCrypt;
  */
 public class TransactionsTrackerApp {
 	
+	// Names the files metrics are saved to by when they were saved.
+	private static final DateTimeFormatter METRICS_FILE_TIME = 
+			DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+	
 	// Max number of incorrect password attempts.
 	private final int MIN_INCORRECT_LOGIN_ATTEMPTS = 3;
 	
 	// The Transaction Tracker database.
 	private final TransactionsDB db;
 	
+	// Hashes and checks passwords off the main thread.
+	private final PasswordHasher hasher;
+	
 	// The current signed in user to this database.
 	private User currentUser;
 	
 	/** Initializes this application */
-	private TransactionsTrackerApp(TransactionsDB db) {
+	private TransactionsTrackerApp(TransactionsDB db, PasswordHasher hasher) {
 		this.db = db;
+		this.hasher = hasher;
 	}
 	
 	/** Entry point for the text user interface */
 	public static void main(String[] args) throws SQLException {
+		// The log is prepared first, so that an error opening the database is written to it.
+		TransactionHelper.prepare();
 		TransactionsDB db = new TransactionsDB();
 	    db.open();
 	      
+	    PasswordHasher hasher = PasswordHasher.calibrated();
 	    try {
 	    	//db.prepare();
-	    	TransactionHelper.prepare();
-	    	TransactionsTrackerApp app = new TransactionsTrackerApp(db);
+	    	TransactionsTrackerApp app = new TransactionsTrackerApp(db, hasher);
 	    	app.run();
 	    } finally {
+	    	hasher.close();
 	    	db.close();
 	    }
 	 }
@@ -95,6 +113,21 @@ public class TransactionsTrackerApp {
 		    		this.showTransactionHistory(input);
 		    		break;
 		    		
+		    	case "6":
+		    		// Import a bank statement
+		    		this.importStatement(input);
+		    		break;
+		    		
+		    	case "7":
+		    		// Show performance metrics
+		    		this.showMetrics(input);
+		    		break;
+		    		
+		    	case "8":
+		    		// Show the balance on a date
+		    		this.showBalance(input);
+		    		break;
+		    		
 		    	case "exit":
 	    	   		// Exit the application
 		    		this.exit();
@@ -135,6 +168,9 @@ public class TransactionsTrackerApp {
 		System.out.println("'3' for settings.");
 		System.out.println("'4' to enter a new expense.");
 		System.out.println("'5' to display your transaction history.");
+		System.out.println("'6' to import transactions from a bank statement.");
+		System.out.println("'7' to see how long operations have taken.");
+		System.out.println("'8' to see your balance on a date or how it changed between dates.");
 		System.out.println("'exit' to leave.");
 	}
 
@@ -162,7 +198,7 @@ public class TransactionsTrackerApp {
 			
 			// Check if user name is valid (non-null dbUser) and if password is correct for 
 			// user name.
-			if (dbUser != null && BCrypt.checkpw(password, dbUser.getPassword())) {
+			if (dbUser != null && this.hasher.checkNow(password, dbUser.getPassword())) {
 				break;
 			}
 			
@@ -177,7 +213,7 @@ public class TransactionsTrackerApp {
 				} catch (SQLException e) {
 					TransactionHelper.printErrorToLog(e);
 				}
-				System.exit(1);
+				TransactionHelper.exit(1);
 			}
 			
 			// Alert user of invalid log in information
@@ -186,14 +222,35 @@ public class TransactionsTrackerApp {
 		} while(true);
 		
 		this.currentUser = dbUser;
+		this.upgradePassword(dbUser, password);
 		System.out.println("Hello " + this.currentUser.getFullName());
 	}
 	
+	/**
+	 * Replaces a user's password hash if it was made with a lower cost than new hashes. The
+	 * password has just been checked, so this is the only time it can be hashed again.
+	 * @param user is the user who just logged in.
+	 * @param password is the password they logged in with.
+	 */
+	private void upgradePassword(User user, String password) {
+		String oldHash = user.getPassword();
+		if (!this.hasher.needsRehash(oldHash)) {
+			return;
+		}
+		
+		try {
+			this.db.rehashPassword(user, oldHash, this.hasher.hashNow(password));
+		} catch (RejectedExecutionException e) {
+			// The hasher is busy, the hash is replaced at a later log in.
+		}
+	}
+	
 	/** Attempts to logout the currently logged in user. */
 	private void logout() {
 		System.out.println("Logging out...");
 		User oldUser = this.currentUser;
 		this.currentUser = null;
+		this.db.dropSnapshot(oldUser.getUsername());
 		System.out.println(oldUser.getUsername() + " logged out.");
 	}
 	
@@ -203,7 +260,7 @@ public class TransactionsTrackerApp {
 	 */
 	private void createUser(Scanner input) {
 		System.out.println("Creating new user...");
-		User newUser = CreateNewUser.run(input, this.db);
+		User newUser = CreateNewUser.run(input, this.db, this.hasher);
 		boolean addedCorrectly = this.db.addNewUser(newUser);
 		
 		if (addedCorrectly) {
@@ -223,7 +280,7 @@ public class TransactionsTrackerApp {
 			System.out.println("Please log in before editing settings.");
 		} else {
 			// Go to settings.
-			Settings.run(this.db, input, this.currentUser);
+			Settings.run(this.db, input, this.currentUser, this.hasher);
 		}
 	}
 	
@@ -252,18 +309,8 @@ public class TransactionsTrackerApp {
 		
 
 		try {
-			// Begin the transaction
-			this.db.beginTransaction();
-			
-			// Add transaction to database
-			this.db.addExpense(trans, this.currentUser.getUsername());
-			
-			// Change the user's balance by the amount of the transaction. 
-			double newBal = this.db.updateBalance(this.currentUser.getUsername(), 
-					trans.getAmountInCents());
-			
-			// Commit the transaction
-			this.db.commitTransaction();
+			// Add the transaction and change the user's balance by its amount together.
+			double newBal = this.db.recordTransaction(trans, this.currentUser.getUsername());
 			
 			// Set the logged in user objects' new balance.
 			this.currentUser.setUserBalance(newBal / 100.0);
@@ -273,15 +320,7 @@ public class TransactionsTrackerApp {
 			System.out.println("Your current balance is $" + this.currentUser.getUserBalance());
 			
 		} catch (SQLException e) {
-			
-			// Roll back the transaction
-			try {
-				this.db.rollbackTransaction();
-				
-			} catch (SQLException e1) {
-				TransactionHelper.printErrorToLog(e1);
-			}
-			
+			// The DB transaction was already rolled back.
 			TransactionHelper.printErrorToLog(e);
 			System.out.println("Error adding transaction. Please see the log file.");
 			return;
@@ -300,6 +339,55 @@ public class TransactionsTrackerApp {
 		ShowHistory.run(input, db, this.currentUser);
 	}
 	
+	/** 
+	 * Allows the user to import the transactions of a bank statement.
+	 * @param input is the scanner used to read user input.
+	 */
+	private void importStatement(Scanner input) {
+		if (this.currentUser == null) {
+			System.out.println("You must be logged in for this feature.");
+			return;
+		}
+		ImportStatement.run(input, db, this.currentUser);
+	}
+	
+	/** 
+	 * Allows the user to see their balance on a date or how it changed between two dates.
+	 * @param input is the scanner used to read user input.
+	 */
+	private void showBalance(Scanner input) {
+		if (this.currentUser == null) {
+			System.out.println("You must be logged in for this feature.");
+			return;
+		}
+		ShowBalance.run(input, db, this.currentUser);
+	}
+	
+	/** 
+	 * Shows the latency of the database and password operations so far and offers to save 
+	 * them to a file.
+	 * @param input is the scanner used to read user input.
+	 */
+	private void showMetrics(Scanner input) {
+		MetricsRegistry metrics = MetricsRegistry.getDefault();
+		System.out.println();
+		System.out.print(metrics.report());
+		System.out.println("Password hasher: " + this.hasher);
+		System.out.println("Slow query log: " + SlowQueryLog.getDefault());
+		
+		if (TransactionHelper.yesNoQuestion(input, "Would you like to save these metrics to a "
+				+ "file?")) {
+			File file = new File("metrics-" + LocalDateTime.now().format(METRICS_FILE_TIME) 
+					+ ".txt").getAbsoluteFile();
+			try {
+				metrics.dump(file);
+				System.out.println("Saved metrics to " + file);
+			} catch (IOException e) {
+				TransactionHelper.printErrorToLog(e);
+			}
+		}
+	}
+	
 	/** Exits the application */
 	private void exit() {
 		System.out.println('\n' + "Thank you for monitoring your expenses "
@@ -0,0 +1,682 @@
+package view;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import controller.BulkInsertResult;
+import controller.CategoryRegistry;
+import controller.CsvStatementParser;
+import controller.HistoryCursor;
+import controller.HistoryQuery.Attribute;
+import controller.HistoryQuery.HistoryQueryBuilder;
+import controller.ImportProgress;
+import controller.PasswordHasher;
+import controller.StatementImporter;
+import controller.StatementParser;
+import controller.TransactionHelper;
+import controller.TransactionService;
+import controller.TransactionsDB;
+import controller.TransactionsDBPool;
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+import model.User;
+
+/**
+ * HTTP interface for other tools to log in, add transactions, and read the history, categories
+ * and balance of a user. Requests take their parameters from the query string or a form encoded
+ * body and answer with JSON. Every endpoint but /login needs the header
+ * 'Authorization: Bearer token' with the token given by /login.
+ *
+ * Each request runs on its own virtual thread when the JVM has them (Java 21 and newer) and on
+ * a cached thread pool otherwise. Idle keep-alive connections are held by the HTTP server's
+ * selector and do not use a thread at all.
+ * @author L. James Davidson
+ */
+public class TransactionsTrackerServer {
+
+	/** The default port the server listens on. */
+	public static final int DEFAULT_PORT = 8080;
+
+	// Connections the OS queues before the server accepts them.
+	private static final int BACKLOG = 4096;
+
+	// Sessions which have not been used for this long are logged out.
+	private static final long SESSION_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+	// Limits on requests.
+	private static final int MAX_BODY_BYTES = 32 * 1024 * 1024;
+	private static final int DEFAULT_HISTORY_LIMIT = 100;
+	private static final int MAX_HISTORY_LIMIT = 1000;
+	private static final int MAX_DESCR_CHARS = 30;
+	private static final int MAX_MEMO_CHARS = 20;
+
+	private static final int TOKEN_BYTES = 32;
+
+	private final TransactionsDBPool pool;
+	private final TransactionService service;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final PasswordHasher hasher = PasswordHasher.calibrated();
+	private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * Creates a server which is not started yet.
+	 * @param pool is the pool of connections to the database the server uses.
+	 * @param port is the port to listen on, 0 picks a free port.
+	 * @throws IOException if the port could not be bound.
+	 */
+	public TransactionsTrackerServer(TransactionsDBPool pool, int port) throws IOException {
+		this.pool = pool;
+		this.service = new TransactionService(pool, TransactionService.DEFAULT_STRIPES);
+		this.executor = newRequestExecutor();
+
+		this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/login", exchange -> this.handle(exchange, "POST", false,
+				this::login));
+		this.server.createContext("/transactions", exchange -> this.handle(exchange, "POST",
+				true, this::addTransaction));
+		this.server.createContext("/transactions/bulk", exchange -> this.handle(exchange, "POST",
+				true, this::addTransactions));
+		this.server.createContext("/history", exchange -> this.handle(exchange, "GET", true,
+				this::history));
+		this.server.createContext("/categories", exchange -> this.handle(exchange, "GET", true,
+				this::categories));
+		this.server.createContext("/balance", exchange -> this.handle(exchange, "GET", true,
+				this::balance));
+	}
+
+	/**
+	 * Creates the executor requests run on, with a virtual thread per request if the JVM has
+	 * them. The method is looked up at run time so the program still builds for Java 8.
+	 * @return The executor.
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/** Starts accepting requests. */
+	public void start() {
+		this.server.start();
+	}
+
+	/** @return The port the server listens on. */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to a given time for the running ones to finish.
+	 * @param delaySeconds is the most seconds to wait.
+	 */
+	public void stop(int delaySeconds) {
+		this.server.stop(delaySeconds);
+		this.executor.shutdown();
+		this.hasher.close();
+	}
+
+	/** Work done to answer a request. */
+	@FunctionalInterface
+	private interface Endpoint {
+
+		/**
+		 * Answers a request.
+		 * @param params are the parameters of the request.
+		 * @param exchange is the request, its body has already been read into params unless
+		 * 		the endpoint reads it itself.
+		 * @param username is the logged in user or null if the endpoint is public.
+		 * @return The JSON body of the response.
+		 * @throws Exception if the request failed, IllegalArgumentExceptions are the client's
+		 * 		fault.
+		 */
+		String handle(HttpExchange exchange, Map<String, String> params, String username)
+				throws Exception;
+	}
+
+	/**
+	 * Checks the method and session of a request, runs its endpoint and sends the response.
+	 * @param exchange is the request.
+	 * @param method is the HTTP method the endpoint accepts.
+	 * @param needsSession is true if the request must be logged in.
+	 * @param endpoint answers the request.
+	 */
+	private void handle(HttpExchange exchange, String method, boolean needsSession,
+			Endpoint endpoint) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals(method)) {
+				this.send(exchange, 405, error("Use " + method + "."));
+				return;
+			}
+
+			String username = null;
+			if (needsSession) {
+				username = this.authenticate(exchange);
+				if (username == null) {
+					this.send(exchange, 401, error("Log in first and send the token as "
+							+ "'Authorization: Bearer token'."));
+					return;
+				}
+			}
+
+			Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+			this.send(exchange, 200, endpoint.handle(exchange, params, username));
+
+		} catch (IllegalArgumentException | DateTimeParseException | ParseException e) {
+			this.send(exchange, 400, error(e.getMessage()));
+		} catch (RejectedExecutionException e) {
+			// Too many passwords are being checked, the client should try again shortly.
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			this.send(exchange, 503, error("The server is busy, please try again."));
+		} catch (Exception e) {
+			TransactionHelper.printErrorToLog(e);
+			this.send(exchange, 500, error("The request failed, please see the server log."));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/** Logs in a user from the username and password parameters and gives them a token. */
+	private String login(HttpExchange exchange, Map<String, String> params, String ignored)
+			throws IOException, SQLException {
+		params.putAll(parseParams(readBody(exchange)));
+		String username = required(params, "username");
+		String password = required(params, "password");
+
+		User user = this.service.getUser(username);
+		if (user == null || !this.hasher.checkNow(password, user.getPassword())) {
+			throw new IllegalArgumentException("Incorrect username or password.");
+		}
+		this.upgradePassword(user, password);
+
+		this.expireSessions();
+		byte[] bytes = new byte[TOKEN_BYTES];
+		this.random.nextBytes(bytes);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+		this.sessions.put(token, new Session(user.getUsername()));
+
+		return "{\"token\":" + quote(token) + ",\"username\":" + quote(user.getUsername())
+				+ ",\"name\":" + quote(user.getFullName()) + "}";
+	}
+
+	/**
+	 * Replaces a user's password hash in the background if it was made with a lower cost than
+	 * new hashes, so the log in does not wait for a second hash. If the hasher is busy the hash
+	 * is replaced at a later log in.
+	 * @param user is the user who just logged in.
+	 * @param password is the password they logged in with.
+	 */
+	private void upgradePassword(User user, String password) {
+		String oldHash = user.getPassword();
+		if (!this.hasher.needsRehash(oldHash)) {
+			return;
+		}
+
+		this.hasher.hash(password).thenAcceptAsync(newHash -> {
+			try {
+				this.service.runAsUser(user.getUsername(), db -> db.rehashPassword(user, oldHash,
+						newHash));
+			} catch (SQLException e) {
+				TransactionHelper.printErrorToLog(e);
+			}
+		}, this.executor);
+	}
+
+	/** Adds a transaction from the description, amount, date, category and memo parameters. */
+	private String addTransaction(HttpExchange exchange, Map<String, String> params,
+			String username) throws IOException, SQLException {
+		params.putAll(parseParams(readBody(exchange)));
+
+		String category = this.lookupCategory(params.getOrDefault("category",
+				StatementParser.DEFAULT_CATEGORY));
+		boolean isDeposit = category.equals(StatementParser.DEPOSIT_CATEGORY);
+
+		TransactionBuilder trans = new TransactionBuilder(isDeposit);
+		trans.setAmountInCents(StatementParser.parseCents(required(params, "amount")));
+		trans.setDescription(limit(required(params, "description"), "description",
+				MAX_DESCR_CHARS));
+		trans.setDate(params.containsKey("date") ? LocalDate.parse(params.get("date"))
+				: LocalDate.now());
+		trans.setCategory(category);
+		trans.setMemo(limit(params.getOrDefault("memo", ""), "memo", MAX_MEMO_CHARS));
+
+		Transaction added = trans.build();
+		long balance = this.service.addTransaction(added, username);
+		return "{\"transaction\":" + toJson(added) + ",\"balanceInCents\":" + balance + "}";
+	}
+
+	/** Adds every transaction of a CSV statement sent as the body. */
+	private String addTransactions(HttpExchange exchange, Map<String, String> params,
+			String username) throws IOException, ParseException, SQLException {
+		// The whole body is read first so that the writer never waits on the network.
+		String csv = readBody(exchange);
+		CsvStatementParser parser = new CsvStatementParser(new StringReader(csv));
+
+		// Parsing runs on this request's thread and each batch is its own write, so writes of 
+		// other users run between the batches of a large statement. The user's lock is held 
+		// throughout, so the user's own operations wait for the whole import.
+		StatementImporter importer = new StatementImporter(new StatementImporter.Writer() {
+			@Override
+			public CategoryRegistry loadCategories() throws SQLException {
+				if (TransactionsTrackerServer.this.pool.read(db -> db.getCategories()) == null) {
+					throw new SQLException("Could not load the categories.");
+				}
+				return TransactionsTrackerServer.this.pool.getCategoryRegistry();
+			}
+
+			@Override
+			public BulkInsertResult write(List<Transaction> batch, String username, 
+					int batchSize) throws SQLException {
+				return TransactionsTrackerServer.this.service.runAsUser(username, 
+						db -> db.addExpenses(batch, username, batchSize, true));
+			}
+		});
+		ImportProgress result = this.service.runLocked(username,
+				() -> importer.importStatement(parser, username, null));
+
+		StringBuilder json = new StringBuilder("{\"parsed\":").append(result.getParsed())
+				.append(",\"written\":").append(result.getWritten())
+				.append(",\"duplicates\":").append(result.getDuplicates())
+				.append(",\"rejected\":").append(result.getRejected())
+				.append(",\"rejections\":[");
+		List<String> rejections = result.getRejections();
+		for (int i = 0; i < rejections.size(); i++) {
+			json.append(i > 0 ? "," : "").append(quote(rejections.get(i)));
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * Reads the history of the user. Filters are the description, memo and category
+	 * parameters, the from and to dates and the min and max amounts. orderBy is a comma
+	 * separated list of description, date, price, category and memo. At most limit
+	 * transactions are returned.
+	 */
+	private String history(HttpExchange exchange, Map<String, String> params, String username)
+			throws SQLException {
+		HistoryQueryBuilder query = new HistoryQueryBuilder(username);
+
+		if (params.containsKey("orderBy")) {
+			for (String name : params.get("orderBy").split(",")) {
+				query.addOrderBy(attribute(name.trim()));
+			}
+		}
+		if (params.containsKey("description")) {
+			query.addEquals(Attribute.DESCRIPTION, params.get("description"));
+		}
+		if (params.containsKey("memo")) {
+			query.addEquals(Attribute.MEMO, params.get("memo"));
+		}
+		if (params.containsKey("category")) {
+			query.addEquals(Attribute.CATEGORY, this.lookupCategory(params.get("category")));
+		}
+		if (params.containsKey("from") || params.containsKey("to")) {
+			long from = params.containsKey("from") ? LocalDate.parse(params.get("from"))
+					.toEpochDay() : Long.MIN_VALUE;
+			long to = params.containsKey("to") ? LocalDate.parse(params.get("to")).toEpochDay()
+					: Long.MAX_VALUE;
+			query.addRange(Attribute.DATE, from, to);
+		}
+		if (params.containsKey("min") || params.containsKey("max")) {
+			long min = params.containsKey("min") ? StatementParser.parseCents(params.get("min"))
+					: Long.MIN_VALUE;
+			long max = params.containsKey("max") ? StatementParser.parseCents(params.get("max"))
+					: Long.MAX_VALUE;
+			query.addRange(Attribute.PRICE, min, max);
+		}
+
+		int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit"))
+				: DEFAULT_HISTORY_LIMIT;
+		if (limit <= 0 || limit > MAX_HISTORY_LIMIT) {
+			throw new IllegalArgumentException("The limit must be between 1 and "
+					+ MAX_HISTORY_LIMIT + ".");
+		}
+
+		return this.pool.read(db -> {
+			HistoryCursor cursor = db.streamHistory(query.build(), limit);
+			List<Transaction> page = cursor.nextPage();
+			if (page == null) {
+				throw new SQLException("The history could not be read.");
+			}
+
+			StringBuilder json = new StringBuilder("{\"transactions\":[");
+			for (int i = 0; i < page.size(); i++) {
+				json.append(i > 0 ? "," : "").append(toJson(page.get(i)));
+			}
+			return json.append("],\"more\":").append(cursor.hasNext()).append("}").toString();
+		});
+	}
+
+	/** Lists the categories. */
+	private String categories(HttpExchange exchange, Map<String, String> params,
+			String username) throws SQLException {
+		String[] categories = this.pool.read(TransactionsDB::getCategories);
+		if (categories == null) {
+			throw new SQLException("The categories could not be read.");
+		}
+
+		StringBuilder json = new StringBuilder("{\"categories\":[");
+		for (int i = 0; i < categories.length; i++) {
+			json.append(i > 0 ? "," : "").append(quote(categories[i]));
+		}
+		return json.append("]}").toString();
+	}
+
+	/** Reads the balance of the user. */
+	private String balance(HttpExchange exchange, Map<String, String> params, String username)
+			throws SQLException {
+		User user = this.service.getUser(username);
+		if (user == null) {
+			throw new SQLException("The logged in user " + username + " no longer exists.");
+		}
+		return "{\"balanceInCents\":" + Math.round(user.getUserBalance() * 100) + "}";
+	}
+
+	/**
+	 * @param exchange is a request.
+	 * @return The user of the request's session or null if it has no valid session.
+	 */
+	private String authenticate(HttpExchange exchange) {
+		String header = exchange.getRequestHeaders().getFirst("Authorization");
+		if (header == null || !header.startsWith("Bearer ")) {
+			return null;
+		}
+
+		Session session = this.sessions.get(header.substring("Bearer ".length()).trim());
+		if (session == null || session.isExpired(System.nanoTime())) {
+			return null;
+		}
+		session.lastUsed = System.nanoTime();
+		return session.username;
+	}
+
+	/** Removes the sessions which have timed out. */
+	private void expireSessions() {
+		long now = System.nanoTime();
+		this.sessions.values().removeIf(session -> session.isExpired(now));
+	}
+
+	/**
+	 * @param name is a category given by the client.
+	 * @return The category as stored in the database.
+	 * @throws IllegalArgumentException if there is no such category.
+	 * @throws SQLException if the categories could not be read.
+	 */
+	private String lookupCategory(String name) throws SQLException {
+		// Make sure the shared registry is loaded.
+		this.pool.read(TransactionsDB::getCategories);
+		String category = this.pool.getCategoryRegistry().lookup(name);
+		if (category == null) {
+			throw new IllegalArgumentException("Unknown category " + name);
+		}
+		return category;
+	}
+
+	/**
+	 * Sends a JSON response.
+	 * @param exchange is the request being answered.
+	 * @param status is the HTTP status code.
+	 * @param json is the body of the response.
+	 */
+	private void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * @param exchange is a request.
+	 * @return The body of the request as UTF-8 text.
+	 * @throws IllegalArgumentException if the body is too large.
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		try (InputStream in = exchange.getRequestBody()) {
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				if (body.size() + n > MAX_BODY_BYTES) {
+					throw new IllegalArgumentException("The body is larger than "
+							+ MAX_BODY_BYTES + " bytes.");
+				}
+				body.write(buf, 0, n);
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param encoded is a URL encoded query string or form body, may be null.
+	 * @return The parameters, the last value wins when a name is repeated.
+	 */
+	private static Map<String, String> parseParams(String encoded) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (encoded == null || encoded.isEmpty()) {
+			return params;
+		}
+
+		try {
+			for (String pair : encoded.split("&")) {
+				int split = pair.indexOf('=');
+				String name = split < 0 ? pair : pair.substring(0, split);
+				String value = split < 0 ? "" : pair.substring(split + 1);
+				params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError("UTF-8 is always supported.", e);
+		}
+		return params;
+	}
+
+	/**
+	 * @param params are the parameters of a request.
+	 * @param name is the name of a parameter the request must have.
+	 * @return The value of the parameter.
+	 * @throws IllegalArgumentException if the parameter is missing.
+	 */
+	private static String required(Map<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing parameter " + name);
+		}
+		return value;
+	}
+
+	/**
+	 * @param value is a value given by the client.
+	 * @param name is the name of the value.
+	 * @param max is the most characters the value may have.
+	 * @return The value.
+	 * @throws IllegalArgumentException if the value is too long.
+	 */
+	private static String limit(String value, String name, int max) {
+		if (value.length() > max) {
+			throw new IllegalArgumentException("The " + name + " must be at most " + max
+					+ " characters.");
+		}
+		return value;
+	}
+
+	/**
+	 * @param name is the name of an attribute given by the client.
+	 * @return The attribute.
+	 * @throws IllegalArgumentException if there is no such attribute.
+	 */
+	private static Attribute attribute(String name) {
+		switch (name.toLowerCase()) {
+			case "description":
+				return Attribute.DESCRIPTION;
+			case "date":
+				return Attribute.DATE;
+			case "price":
+			case "amount":
+				return Attribute.PRICE;
+			case "category":
+				return Attribute.CATEGORY;
+			case "memo":
+				return Attribute.MEMO;
+			default:
+				throw new IllegalArgumentException("Cannot order by " + name);
+		}
+	}
+
+	/**
+	 * @param trans is a transaction.
+	 * @return The JSON object of the transaction.
+	 */
+	private static String toJson(Transaction trans) {
+		return "{\"description\":" + quote(trans.getDescription())
+				+ ",\"amountInCents\":" + trans.getAmountInCents()
+				+ ",\"date\":" + quote(trans.getDate().toString())
+				+ ",\"category\":" + quote(trans.getCategory())
+				+ ",\"memo\":" + quote(trans.getMemo()) + "}";
+	}
+
+	/**
+	 * @param message is the description of an error.
+	 * @return The JSON object of the error.
+	 */
+	private static String error(String message) {
+		return "{\"error\":" + quote(message == null ? "Bad request." : message) + "}";
+	}
+
+	/**
+	 * @param text is a string.
+	 * @return The string as a quoted JSON string.
+	 */
+	static String quote(String text) {
+		StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						json.append(String.format("\\u%04x", (int) c));
+					} else {
+						json.append(c);
+					}
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/** The logged in user of a token. */
+	private static final class Session {
+
+		private final String username;
+		private volatile long lastUsed = System.nanoTime();
+
+		/** @param username is the logged in user. */
+		Session(String username) {
+			this.username = username;
+		}
+
+		/**
+		 * @param now is the current System.nanoTime().
+		 * @return True if the session has not been used for too long.
+		 */
+		boolean isExpired(long now) {
+			return now - this.lastUsed > SESSION_TIMEOUT_NANOS;
+		}
+	}
+
+	/**
+	 * Runs the server until the process is stopped. Settings are given as name=value
+	 * arguments: port, db and readers.
+	 * @param args are the settings of the server.
+	 * @throws IOException if the port could not be bound.
+	 * @throws SQLException if the database could not be opened.
+	 */
+	public static void main(String[] args) throws IOException, SQLException {
+		int port = DEFAULT_PORT;
+		File database = TransactionsDB.getDefaultDatabase();
+		int readers = TransactionsDBPool.DEFAULT_READERS;
+
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			String name = split < 0 ? arg : arg.substring(0, split);
+			String value = split < 0 ? "" : arg.substring(split + 1);
+
+			switch (name) {
+				case "port":
+					port = Integer.parseInt(value);
+					break;
+				case "db":
+					database = new File(value);
+					break;
+				case "readers":
+					readers = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown setting " + name);
+			}
+		}
+
+		TransactionHelper.prepare();
+		TransactionsDBPool pool = new TransactionsDBPool(database, readers,
+				TransactionsDBPool.DEFAULT_WAIT_MILLIS);
+		TransactionsTrackerServer server = new TransactionsTrackerServer(pool, port);
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(1);
+			try {
+				pool.close();
+			} catch (SQLException e) {
+				TransactionHelper.printErrorToLog(e);
+			}
+		}));
+
+		server.start();
+		System.out.println("Transactions Tracker server listening on port " + server.getPort());
+		System.out.println("Passwords are hashed with cost " + server.hasher.getLogRounds());
+	}
+}
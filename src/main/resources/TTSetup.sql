@@ -1,5 +1,9 @@
 /*  Setup file which creates the tables required for Transaction Tracker to 
     run on SQLite.
+    
+    Note: This drops every table. TransactionsDB.open() creates and upgrades the schema with the 
+    scripts in the migrations folder, so this is only needed to reset a database. schema_version 
+    is dropped as well so that the migrations are applied again on the next open.
 */
 -- Turning on foreign keys.
 PRAGMA foreign_keys = ON;
@@ -8,6 +12,7 @@ PRAGMA foreign_keys = ON;
 DROP TABLE IF EXISTS Transactions;
 DROP TABLE IF EXISTS Categories;
 DROP TABLE IF EXISTS Users;
+DROP TABLE IF EXISTS schema_version;
 
 -- Holds all the user information
 CREATE TABLE Users (
@@ -0,0 +1,32 @@
+/*  Baseline schema of Transaction Tracker. Unlike TTSetup.sql this never drops anything, so it
+    can be applied to a database which was created before migrations existed.
+*/
+-- Holds all the user information
+CREATE TABLE IF NOT EXISTS Users (
+username            VARCHAR(30) PRIMARY KEY,
+name                VARCHAR(50) NOT NULL,
+balance_in_cents    INT,
+password            VARCHAR(60) NOT NULL
+);
+
+-- Contains valid category names in this program
+CREATE TABLE IF NOT EXISTS Categories (
+catName VARCHAR(30) PRIMARY KEY
+);
+
+-- Holds all of the transactions for all users
+CREATE TABLE IF NOT EXISTS Transactions (
+description     VARCHAR(30)     NOT NULL,
+price_in_cents  INT,
+day             DATE,
+memo            VARCHAR(20),
+category        VARCHAR(30)     REFERENCES Categories(catName),
+belongsTo       VARCHAR(30)     REFERENCES Users(username)
+                                ON UPDATE CASCADE 
+                                ON DELETE CASCADE,
+PRIMARY KEY (description, price_in_cents, day, belongsTo)
+);
+
+-- Add basic categories.
+INSERT OR IGNORE INTO Categories VALUES ('N/A');
+INSERT OR IGNORE INTO Categories VALUES ('Deposit');
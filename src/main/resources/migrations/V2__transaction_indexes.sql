@@ -0,0 +1,9 @@
+/*  Indexes for reading a user's transactions. Every history query filters on belongsTo and most
+    range over the day, so both indexes lead with belongsTo. price_in_cents is included so that
+    totals over a user, day range, or category are answered from the index alone.
+*/
+CREATE INDEX IF NOT EXISTS Transactions_belongsTo_day
+    ON Transactions (belongsTo, day, price_in_cents);
+
+CREATE INDEX IF NOT EXISTS Transactions_belongsTo_category_day
+    ON Transactions (belongsTo, category, day, price_in_cents);
@@ -0,0 +1,8 @@
+/*  Stores the day of each transaction as the number of days since 1970-01-01 instead of 
+    'YYYY-MM-DD' text. Range filters become integer comparisons and reading a date back no longer
+    needs to parse a string. The column's DATE type has numeric affinity so the integers are 
+    stored as integers.
+*/
+UPDATE Transactions
+SET day = CAST(julianday(day) - julianday('1970-01-01') AS INTEGER)
+WHERE typeof(day) = 'text';
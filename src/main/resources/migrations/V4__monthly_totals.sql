@@ -0,0 +1,22 @@
+/*  Totals of each user's transactions by month and category, so monthly and category totals
+    read a few rows instead of every transaction. month is the year * 100 + the month, such as
+    202401. TransactionsDB keeps the totals up to date in the same DB transaction as each
+    insert. Rows are stored in primary key order, since the table is only read by user and month.
+*/
+CREATE TABLE IF NOT EXISTS MonthlyTotals (
+belongsTo       VARCHAR(30)     NOT NULL,
+month           INTEGER         NOT NULL,
+category        VARCHAR(30)     NOT NULL,
+sum_cents       INTEGER         NOT NULL,
+count           INTEGER         NOT NULL,
+PRIMARY KEY (belongsTo, month, category)
+) WITHOUT ROWID;
+
+-- Backfill the totals of the transactions already in the database.
+DELETE FROM MonthlyTotals;
+INSERT INTO MonthlyTotals
+SELECT belongsTo, CAST(strftime('%Y%m', day + 2440587.5) AS INTEGER), 
+       COALESCE(category, 'N/A'), SUM(price_in_cents), COUNT(*)
+FROM Transactions
+WHERE belongsTo IS NOT NULL
+GROUP BY 1, 2, 3;
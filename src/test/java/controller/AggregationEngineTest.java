@@ -0,0 +1,183 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+import model.User;
+
+public class AggregationEngineTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Transaction transaction(long day, int cents, String category) {
+		TransactionBuilder trans = new TransactionBuilder(cents >= 0);
+		trans.setAmountInCents(Math.abs(cents));
+		trans.setDescription("Store");
+		trans.setEpochDay(day);
+		trans.setCategory(category);
+		trans.setMemo("");
+		return trans.build();
+	}
+
+	@Test public void testAnnualSpendMatchesAcrossThreads() throws Exception {
+		LedgerSnapshot snapshot = new LedgerSnapshot("user");
+		long start = LocalDate.of(2023, 1, 1).toEpochDay();
+		long expectedFood2024 = 0;
+		int food2024 = 0;
+		for (long day = start; day < start + 3 * 365 + 1; day++) {
+			String category = day % 3 == 0 ? "Food" : "Rent";
+			snapshot.append(transaction(day, -(int) (day % 1000), category));
+			snapshot.append(transaction(day, 5000, "Pay"));
+			if (category.equals("Food") && LocalDate.ofEpochDay(day).getYear() == 2024) {
+				expectedFood2024 += day % 1000;
+				food2024++;
+			}
+		}
+		LedgerSource source = new SnapshotLedgerSource(snapshot);
+
+		AnnualSpendReport one = AnnualSpendReport.compute(new AggregationEngine(1), source, null,
+				2023, 2025);
+		AnnualSpendReport many = AnnualSpendReport.compute(new AggregationEngine(4), source,
+				"user", 2023, 2025);
+		assertEquals(one.toString(), many.toString());
+		// Deposits are not spending.
+		assertEquals(6, many.getRows().size());
+
+		AnnualSpendReport.Row row = many.getRows().get(1);
+		assertEquals("Food", row.getCategory());
+		assertEquals(2024, row.getYear());
+		assertEquals(expectedFood2024, row.getSpendCents());
+		assertEquals(food2024, row.getCount());
+	}
+
+	@Test public void testEmptyRangeAndOtherUser() throws Exception {
+		LedgerSnapshot snapshot = new LedgerSnapshot("user");
+		snapshot.append(transaction(LocalDate.of(2020, 6, 1).toEpochDay(), -100, "Food"));
+		LedgerSource source = new SnapshotLedgerSource(snapshot);
+
+		assertTrue(AnnualSpendReport.compute(new AggregationEngine(2), source, null, 2021, 2022)
+				.getRows().isEmpty());
+		assertTrue(AnnualSpendReport.compute(new AggregationEngine(2), source, "other", 2020,
+				2020).getRows().isEmpty());
+		assertEquals(100, AnnualSpendReport.compute(new AggregationEngine(2), source, null, 2020,
+				2020).getTotalSpendCents());
+	}
+
+	/**
+	 * Adds a user with an expense of i + 1 cents on each of a number of days of 2024.
+	 * @param pool is the pool of the database.
+	 * @param count is the number of expenses.
+	 */
+	private static void seed(TransactionsDBPool pool, int count) throws Exception {
+		long start = LocalDate.of(2024, 1, 1).toEpochDay();
+		pool.write(db -> {
+			assertTrue(db.addNewUser(new User("user", "A User", 0, "hash")));
+			List<Transaction> expenses = new ArrayList<Transaction>();
+			for (int i = 0; i < count; i++) {
+				expenses.add(transaction(start + i % 366, -(i + 1), i % 2 == 0 ? "Food" : "Rent"));
+			}
+			return db.addExpenses(expenses, "user", 500, true);
+		});
+	}
+
+	@Test public void testSparseRowidsAreSplitByRows() throws Exception {
+		File database = new File(this.folder.getRoot(), "TT.db");
+		try (TransactionsDBPool pool = new TransactionsDBPool(database, 4, 1000)) {
+			seed(pool, 4000);
+			// Deleting most of the rows leaves a wide gap in the rowids.
+			try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database);
+					Statement stmt = conn.createStatement()) {
+				stmt.executeUpdate("DELETE FROM Transactions WHERE rowid BETWEEN 801 AND 3600");
+			}
+
+			SqliteLedgerSource source = new SqliteLedgerSource(pool);
+			long[] bounds = source.getChunkBounds(null, Long.MIN_VALUE, Long.MAX_VALUE, 8);
+			assertEquals(9, bounds.length);
+			for (int i = 0; i < bounds.length - 1; i++) {
+				AtomicLong rows = new AtomicLong();
+				source.scan(null, Long.MIN_VALUE, Long.MAX_VALUE, bounds[i], bounds[i + 1] - 1,
+						(belongsTo, category, epochDay, cents) -> rows.incrementAndGet());
+				assertEquals(150, rows.get());
+			}
+
+			AnnualSpendReport one = AnnualSpendReport.compute(new AggregationEngine(1), source,
+					null, 2024, 2024);
+			AnnualSpendReport many = AnnualSpendReport.compute(new AggregationEngine(4), source,
+					null, 2024, 2024);
+			assertEquals(one.toString(), many.toString());
+			long expected = 0;
+			for (int i = 0; i < 4000; i++) {
+				if (i < 800 || i >= 3600) {
+					expected += i + 1;
+				}
+			}
+			assertEquals(expected, many.getTotalSpendCents());
+		}
+	}
+
+	@Test public void testChunksQueueForFewerReaders() throws Exception {
+		File database = new File(this.folder.getRoot(), "TT.db");
+		// A single reader, which a chunk holds for longer than a read may wait for it.
+		try (TransactionsDBPool pool = new TransactionsDBPool(database, 1, 5)) {
+			seed(pool, 2000);
+			SqliteLedgerSource source = new SqliteLedgerSource(pool);
+			AggregationEngine.Aggregation<long[]> slowCount =
+					new AggregationEngine.Aggregation<long[]>() {
+				@Override
+				public long[] newAccumulator() {
+					return new long[1];
+				}
+
+				@Override
+				public void accumulate(long[] acc, String belongsTo, String category,
+						long epochDay, long cents) {
+					if (acc[0]++ == 0) {
+						try {
+							Thread.sleep(20);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				}
+
+				@Override
+				public long[] merge(long[] left, long[] right) {
+					left[0] += right[0];
+					return left;
+				}
+			};
+
+			// Two aggregations at once have many more chunks than the pool has readers.
+			AggregationEngine engine = new AggregationEngine(4);
+			CompletableFuture<long[]> other = CompletableFuture.supplyAsync(() -> {
+				try {
+					return engine.aggregate(source, null, Long.MIN_VALUE, Long.MAX_VALUE,
+							slowCount);
+				} catch (SQLException e) {
+					throw new CompletionException(e);
+				}
+			});
+			assertEquals(2000, engine.aggregate(source, null, Long.MIN_VALUE, Long.MAX_VALUE,
+					slowCount)[0]);
+			assertEquals(2000, other.get()[0]);
+			assertEquals(0, pool.getReaderTimeouts());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import controller.AsyncLogger.Level;
+
+public class AsyncLoggerTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test public void testEveryEntryIsWritten() throws Exception {
+		File log = new File(this.folder.getRoot(), ".log");
+		AsyncLogger logger = new AsyncLogger(log, 4096, AsyncLogger.DEFAULT_MAX_BYTES, 0,
+				Level.INFO);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 500; i++) {
+					logger.info("entry " + i);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		logger.debug("below the threshold");
+
+		assertTrue(logger.flush(5000));
+		assertEquals(2000, count(log, "!ENTRY INFO"));
+		assertEquals(0, count(log, "below the threshold"));
+		assertEquals(0, logger.getDropped());
+		logger.close();
+	}
+
+	@Test public void testFullFileIsRotated() throws Exception {
+		File log = new File(this.folder.getRoot(), ".log");
+		AsyncLogger logger = new AsyncLogger(log, 16, 512, 2, Level.INFO);
+
+		for (int i = 0; i < 40; i++) {
+			logger.error("failure " + i, null);
+			assertTrue(logger.flush(5000));
+		}
+		logger.close();
+
+		assertTrue(new File(log.getPath() + ".1").exists());
+		assertTrue(new File(log.getPath() + ".2").exists());
+		assertFalse(new File(log.getPath() + ".3").exists());
+		assertTrue(log.length() <= 512);
+		assertEquals(1, count(log, "failure 39"));
+	}
+
+	/**
+	 * @param file is a log file.
+	 * @param text is the text to look for.
+	 * @return The number of lines of the file which contain the text.
+	 */
+	private static long count(File file, String text) throws IOException {
+		return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).stream()
+				.filter(line -> line.contains(text)).count();
+	}
+}
@@ -0,0 +1,52 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BalanceHistoryTest {
+
+	@Test public void testBalanceOnAndChange() {
+		BalanceHistory history = new BalanceHistory("user", 1000, 100);
+		history.add(100, -200);
+		history.add(105, 500);
+		history.add(105, -50);
+
+		assertEquals(1000, history.getBalanceOn(99));
+		assertEquals(800, history.getBalanceOn(100));
+		assertEquals(800, history.getBalanceOn(104));
+		assertEquals(1250, history.getBalanceOn(105));
+		assertEquals(1250, history.getBalanceOn(Long.MAX_VALUE));
+		assertEquals(450, history.getBalanceChange(101, 105));
+		assertEquals(250, history.getBalanceChange(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(0, history.getBalanceChange(105, 101));
+	}
+
+	@Test public void testGrowsToCoverEarlierAndLaterDays() {
+		BalanceHistory history = new BalanceHistory("user", 0, 1000);
+		history.add(1000, 10);
+		history.add(10, 1);
+		history.add(5000, 100);
+
+		assertEquals(0, history.getBalanceOn(9));
+		assertEquals(1, history.getBalanceOn(10));
+		assertEquals(11, history.getBalanceOn(4999));
+		assertEquals(111, history.getBalanceOn(5000));
+		assertEquals(110, history.getBalanceChange(11, 5000));
+	}
+
+	@Test public void testFarDaysBeforeTheEpoch() {
+		BalanceHistory history = new BalanceHistory("user", 100, -1000);
+		history.add(-1000, -30);
+		history.add(-1, 20);
+		// The last day the history covers.
+		history.add(0, 5);
+
+		assertEquals(100, history.getBalanceOn(Long.MIN_VALUE));
+		assertEquals(70, history.getBalanceOn(-1000));
+		assertEquals(95, history.getBalanceOn(0));
+		assertEquals(95, history.getBalanceOn(Long.MAX_VALUE));
+		assertEquals(-5, history.getBalanceChange(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(25, history.getBalanceChange(-999, Long.MAX_VALUE));
+	}
+}
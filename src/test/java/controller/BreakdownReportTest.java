@@ -0,0 +1,59 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import controller.BreakdownReport.Group;
+import controller.BreakdownReport.Grouping;
+import model.Transaction.TransactionBuilder;
+
+public class BreakdownReportTest {
+
+	// 2022-01-27 to 2022-02-03, a Thursday to a Thursday.
+	private static LedgerSnapshot ledger() {
+		LedgerSnapshot snapshot = new LedgerSnapshot("user");
+		for (long day = 19019; day <= 19026; day++) {
+			TransactionBuilder trans = new TransactionBuilder(false);
+			trans.setAmountInCents(100);
+			trans.setDescription("Store");
+			trans.setEpochDay(day);
+			trans.setCategory(day % 2 == 0 ? "Rent" : "Food");
+			trans.setMemo("");
+			snapshot.append(trans.build());
+		}
+		return snapshot;
+	}
+
+	private static void assertGroup(Group group, String label, long total, long count) {
+		assertEquals(label, group.getLabel());
+		assertEquals(total, group.getTotalCents());
+		assertEquals(count, group.getCount());
+	}
+
+	@Test public void testPeriodsSplitAtTheirBoundaries() {
+		List<Group> months = BreakdownReport.fromSnapshot(ledger(), Grouping.MONTH, 19020, 19026)
+				.getGroups();
+		assertEquals(2, months.size());
+		assertGroup(months.get(0), "2022-01", -400, 4);
+		assertGroup(months.get(1), "2022-02", -300, 3);
+
+		List<Group> weeks = BreakdownReport.fromSnapshot(ledger(), Grouping.WEEK, 19020, 19026)
+				.getGroups();
+		assertEquals(2, weeks.size());
+		assertGroup(weeks.get(0), "2022-01-24", -300, 3);
+		assertGroup(weeks.get(1), "2022-01-31", -400, 4);
+	}
+
+	@Test public void testCategoriesAreInOrderOfName() {
+		BreakdownReport report = BreakdownReport.fromSnapshot(ledger(), Grouping.CATEGORY,
+				19020, 19022);
+		assertEquals(2, report.getGroups().size());
+		assertGroup(report.getGroups().get(0), "Food", -100, 1);
+		assertGroup(report.getGroups().get(1), "Rent", -200, 2);
+		assertEquals(-300, report.getTotalCents());
+		assertEquals(-100, report.getGroups().get(1).getAverageCents(), 0);
+	}
+}
@@ -0,0 +1,67 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CategoryRegistryTest {
+
+	@Test public void testLookupIgnoresCase() {
+		CategoryRegistry registry = new CategoryRegistry();
+		assertTrue(registry.load(new String[] {"Food", "N/A"}, registry.getGeneration()));
+
+		assertEquals("Food", registry.lookup("food"));
+		assertEquals("Food", registry.lookup("FOOD"));
+		assertEquals("N/A", registry.lookup("n/a"));
+		assertNull(registry.lookup("Rent"));
+		assertNull(registry.lookup(null));
+
+		registry.add("Rent");
+		registry.add("rent");
+		assertEquals("Rent", registry.lookup("RENT"));
+		assertArrayEquals(new String[] {"Food", "N/A", "Rent"}, registry.getCategories());
+	}
+
+	@Test public void testAddBeforeLoadWaitsForTheDatabase() {
+		CategoryRegistry registry = new CategoryRegistry();
+		registry.add("Rent");
+		assertFalse(registry.isLoaded());
+		assertNull(registry.lookup("Rent"));
+		assertNull(registry.getCategories());
+
+		assertTrue(registry.load(new String[] {"Rent"}, registry.getGeneration()));
+		assertEquals("Rent", registry.lookup("rent"));
+	}
+
+	@Test public void testLoadReadBeforeAnAddIsDropped() {
+		CategoryRegistry registry = new CategoryRegistry();
+
+		// A reader starts reading the categories, then a writer adds one it may not see.
+		long generation = registry.getGeneration();
+		registry.add("Rent");
+		assertFalse(registry.load(new String[] {"Food"}, generation));
+		assertFalse(registry.isLoaded());
+
+		// The same happens once the registry is loaded.
+		assertTrue(registry.load(new String[] {"Food", "Rent"}, registry.getGeneration()));
+		generation = registry.getGeneration();
+		registry.add("Travel");
+		assertFalse(registry.load(new String[] {"Food", "Rent"}, generation));
+		assertEquals("Travel", registry.lookup("travel"));
+	}
+
+	@Test public void testInvalidateForgetsAndDropsEarlierReads() {
+		CategoryRegistry registry = new CategoryRegistry();
+		long generation = registry.getGeneration();
+		assertTrue(registry.load(new String[] {"Food"}, generation));
+
+		registry.invalidate();
+		assertFalse(registry.isLoaded());
+		assertNull(registry.lookup("Food"));
+		assertFalse(registry.load(new String[] {"Food"}, generation));
+		assertFalse(registry.isLoaded());
+
+		assertTrue(registry.load(new String[] {"Food"}, registry.getGeneration()));
+		assertEquals("Food", registry.lookup("food"));
+	}
+}
@@ -0,0 +1,108 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import controller.HistoryQuery.Attribute;
+import controller.HistoryQuery.HistoryQueryBuilder;
+import model.Transaction;
+import model.User;
+
+public class HistoryCursorTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionsDB db;
+
+	@Before public void setUp() throws Exception {
+		File database = new File(this.folder.getRoot(), "TT.db");
+		this.db = new TransactionsDB();
+		this.db.open(database);
+		assertTrue(this.db.addNewUser(new User("user", "A User", 0, "hash")));
+
+		// Rows from older ledgers may have no category or memo, which the builder cannot make.
+		try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database);
+				PreparedStatement insert = conn.prepareStatement("INSERT INTO Transactions "
+						+ "(description, price_in_cents, day, memo, category, belongsTo) "
+						+ "VALUES (?, ?, ?, ?, ?, 'user')")) {
+			for (int i = 0; i < 12; i++) {
+				insert.setString(1, "Store " + i);
+				insert.setInt(2, -100);
+				// Only three days, so most rows tie on every ordering value.
+				insert.setLong(3, 18000 + i % 3);
+				insert.setString(4, i % 2 == 0 ? null : "memo");
+				insert.setString(5, i % 4 == 0 ? null : (i % 4 == 1 ? "N/A" : "Food"));
+				insert.executeUpdate();
+			}
+		}
+	}
+
+	@After public void tearDown() throws Exception {
+		this.db.close();
+	}
+
+	@Test public void testPagesReadTiedAndMissingValuesOnce() throws Exception {
+		HistoryQueryBuilder builder = new HistoryQueryBuilder("user");
+		builder.addOrderBy(Attribute.CATEGORY);
+		builder.addOrderBy(Attribute.MEMO);
+		builder.addOrderBy(Attribute.DATE);
+		HistoryQuery query = builder.build();
+
+		List<String> expected = new ArrayList<String>();
+		try (ResultSet results = this.db.executeHistoryQuery(query)) {
+			while (results.next()) {
+				expected.add(TransactionsDB.readTransaction(results).getDescription());
+			}
+		}
+		assertEquals(12, expected.size());
+
+		HistoryCursor cursor = this.db.streamHistory(query, 5);
+		List<String> paged = new ArrayList<String>();
+		while (cursor.hasNext()) {
+			List<Transaction> page = cursor.nextPage();
+			assertNotNull(page);
+			for (Transaction trans : page) {
+				paged.add(trans.getDescription());
+			}
+		}
+		assertEquals(expected, paged);
+		assertEquals(12, cursor.getRowsRead());
+	}
+
+	@Test public void testMissingValuesAreReadAsDefaults() throws Exception {
+		HistoryQueryBuilder builder = new HistoryQueryBuilder("user");
+		builder.addOrderBy(Attribute.DESCRIPTION);
+		List<Transaction> page = this.db.streamHistory(builder.build(), 12).nextPage();
+
+		assertEquals("Store 0", page.get(0).getDescription());
+		assertEquals(StatementParser.DEFAULT_CATEGORY, page.get(0).getCategory());
+		assertEquals("", page.get(0).getMemo());
+	}
+
+	@Test public void testFiltersMatchMissingValues() throws Exception {
+		HistoryQueryBuilder category = new HistoryQueryBuilder("user");
+		category.addEquals(Attribute.CATEGORY, StatementParser.DEFAULT_CATEGORY);
+		assertEquals(6, this.db.streamHistory(category.build(), 12).nextPage().size());
+
+		HistoryQueryBuilder memo = new HistoryQueryBuilder("user");
+		memo.addEquals(Attribute.MEMO, "");
+		assertEquals(6, this.db.streamHistory(memo.build(), 12).nextPage().size());
+
+		HistoryQueryBuilder food = new HistoryQueryBuilder("user");
+		food.addEquals(Attribute.CATEGORY, "Food");
+		assertEquals(6, this.db.streamHistory(food.build(), 12).nextPage().size());
+	}
+}
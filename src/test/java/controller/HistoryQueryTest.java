@@ -0,0 +1,68 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import controller.HistoryQuery.Attribute;
+import controller.HistoryQuery.HistoryQueryBuilder;
+
+public class HistoryQueryTest {
+
+	@Test public void testSameShapeSharesSql() {
+		HistoryQueryBuilder first = new HistoryQueryBuilder("alice");
+		first.addOrderBy(Attribute.PRICE);
+		first.addEquals(Attribute.CATEGORY, "Food");
+		first.addRange(Attribute.DATE, 17000, 17030);
+
+		// Filters added in another order with other values.
+		HistoryQueryBuilder second = new HistoryQueryBuilder("bob");
+		second.addOrderBy(Attribute.PRICE);
+		second.addRange(Attribute.DATE, 1, 2);
+		second.addEquals(Attribute.CATEGORY, "Rent");
+
+		assertEquals(first.build().getSql(), second.build().getSql());
+	}
+
+	@Test public void testParametersAreNotInlined() {
+		HistoryQueryBuilder builder = new HistoryQueryBuilder("alice");
+		builder.addEquals(Attribute.DESCRIPTION, "x' OR '1'='1");
+		builder.addEquals(Attribute.DESCRIPTION, "Cafe");
+		builder.addRange(Attribute.PRICE, -500, 500);
+		HistoryQuery query = builder.build();
+
+		assertFalse(query.getSql().contains("'"));
+		assertEquals(5, query.getParameterCount());
+		assertEquals("SELECT " + HistoryQuery.SELECTED_COLUMNS + " FROM Transactions "
+				+ "WHERE belongsTo = ? AND (description = ? OR description = ?) "
+				+ "AND (price_in_cents BETWEEN ? AND ?) ORDER BY day", query.getSql());
+	}
+
+	@Test public void testNextPageContinuesAfterLastKey() {
+		HistoryQueryBuilder builder = new HistoryQueryBuilder("alice");
+		builder.addOrderBy(Attribute.CATEGORY);
+		builder.addOrderBy(Attribute.DATE);
+		HistoryQuery query = builder.build();
+
+		assertTrue(query.getPageSql(true).endsWith(
+				"ORDER BY IFNULL(category, 'N/A'), day, rowid LIMIT ?"));
+		assertTrue(query.getPageSql(false).contains("AND (IFNULL(category, 'N/A'), day, rowid) > "
+				+ "(?, ?, ?) ORDER BY IFNULL(category, 'N/A'), day, rowid LIMIT ?"));
+		assertTrue(query.getPageSql(false).startsWith("SELECT " + HistoryQuery.SELECTED_COLUMNS
+				+ ", rowid, IFNULL(category, 'N/A') AS sort_key_0, day AS sort_key_1 FROM"));
+	}
+
+	@Test public void testEqualsMatchesMissingValues() {
+		HistoryQueryBuilder builder = new HistoryQueryBuilder("alice");
+		builder.addEquals(Attribute.CATEGORY, StatementParser.DEFAULT_CATEGORY);
+		builder.addEquals(Attribute.MEMO, "");
+		builder.addEquals(Attribute.MEMO, "rent");
+		HistoryQuery query = builder.build();
+
+		assertEquals(7, query.getParameterCount());
+		assertEquals("SELECT " + HistoryQuery.SELECTED_COLUMNS + " FROM Transactions "
+				+ "WHERE belongsTo = ? AND ((category = ? OR (? = 'N/A' AND category IS NULL))) "
+				+ "AND ((memo = ? OR (? = '' AND memo IS NULL)) "
+				+ "OR (memo = ? OR (? = '' AND memo IS NULL))) ORDER BY day", query.getSql());
+	}
+}
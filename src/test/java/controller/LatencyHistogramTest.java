@@ -0,0 +1,35 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test public void testBucketsCoverEveryValue() {
+		// Each bucket starts right after the one before it ends.
+		long next = 0;
+		for (int bucket = 0; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+			assertEquals(bucket, LatencyHistogram.bucketOf(next));
+			long highest = LatencyHistogram.highestValueOf(bucket);
+			assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+			next = highest + 1;
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(
+				LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+
+	@Test public void testPercentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		for (long i = 1; i <= 100_000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		assertEquals(100_000, histogram.getCount());
+		assertEquals(100_000_000, histogram.getMax());
+		assertEquals(50_000_000, histogram.getPercentile(50), 50_000_000 * 0.07);
+		assertEquals(99_000_000, histogram.getPercentile(99), 99_000_000 * 0.07);
+		assertEquals(100_000_000, histogram.getPercentile(100));
+		assertEquals(50_000_500, histogram.getMean());
+	}
+}
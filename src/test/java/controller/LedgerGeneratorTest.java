@@ -0,0 +1,74 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import controller.LedgerGenerator.LedgerGeneratorBuilder;
+import model.BCrypt;
+
+public class LedgerGeneratorTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	// The count, total and day range of the transactions and the total of the balances.
+	private static final String SUMMARY = "SELECT COUNT(*), SUM(price_in_cents), MIN(day), "
+			+ "MAX(day), (SELECT SUM(balance_in_cents) FROM Users) FROM Transactions";
+
+	private static LedgerGenerator generator() {
+		LedgerGeneratorBuilder builder = new LedgerGeneratorBuilder();
+		builder.setSeed(7);
+		builder.setUsers(3);
+		builder.setTransactions(2000);
+		builder.setFirstDay(LocalDate.of(2020, 1, 1));
+		builder.setDays(365);
+		return builder.build();
+	}
+
+	/**
+	 * Generates a ledger into a new database.
+	 * @param name is the name of the database file.
+	 * @return The SUMMARY of the database, after generating into it a second time.
+	 */
+	private long[] generate(String name) throws Exception {
+		TransactionsDB db = new TransactionsDB();
+		db.open(new File(this.folder.getRoot(), name));
+		try {
+			LedgerGenerator generator = generator();
+			assertTrue(generator.generate(db, null) > 0);
+			// Users which already exist are skipped.
+			assertEquals(0, generator.generate(db, null));
+			assertTrue(db.checkMonthlyTotals().isEmpty());
+			assertTrue(BCrypt.checkpw(LedgerGenerator.PASSWORD, 
+					db.logIn(generator.getUsername(0)).getPassword()));
+
+			long[] summary = new long[5];
+			try (ResultSet result = db.executeQuery(SUMMARY)) {
+				assertTrue(result.next());
+				for (int i = 0; i < summary.length; i++) {
+					summary[i] = result.getLong(i + 1);
+				}
+			}
+			return summary;
+		} finally {
+			db.close();
+		}
+	}
+
+	@Test public void testSameSeedGeneratesSameLedger() throws Exception {
+		long[] first = this.generate("first.db");
+		long[] second = this.generate("second.db");
+		assertArrayEquals(first, second);
+
+		// The balances are the sum of the transactions, all of which are in range.
+		assertEquals(first[1], first[4]);
+		assertTrue(first[2] >= LocalDate.of(2020, 1, 1).toEpochDay());
+		assertTrue(first[3] < LocalDate.of(2021, 1, 1).toEpochDay());
+	}
+}
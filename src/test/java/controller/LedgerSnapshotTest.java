@@ -0,0 +1,59 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+
+public class LedgerSnapshotTest {
+
+	private static Transaction expense(long day, int cents, String category, String memo) {
+		TransactionBuilder trans = new TransactionBuilder(false);
+		trans.setAmountInCents(cents);
+		trans.setDescription("Store " + day);
+		trans.setEpochDay(day);
+		trans.setCategory(category);
+		trans.setMemo(memo);
+		return trans.build();
+	}
+
+	@Test public void testRowsStayInOrderOfDay() {
+		LedgerSnapshot snapshot = new LedgerSnapshot("user");
+		snapshot.append(expense(10, 100, "Food", "caf\u00e9"));
+		snapshot.append(expense(30, 300, "Rent", ""));
+		snapshot.append(expense(20, 200, "Food", "lunch"));
+
+		assertEquals(3, snapshot.size());
+		assertEquals(10, snapshot.getEpochDay(0));
+		assertEquals(20, snapshot.getEpochDay(1));
+		assertEquals(30, snapshot.getEpochDay(2));
+		assertEquals("caf\u00e9", snapshot.getMemo(0));
+		assertEquals("lunch", snapshot.getMemo(1));
+		assertEquals("", snapshot.getMemo(2));
+		assertEquals("Store 20", snapshot.getTransaction(1).getDescription());
+		assertEquals(-200, snapshot.getTransaction(1).getAmountInCents());
+	}
+
+	@Test public void testRangeSumsAndFilters() {
+		LedgerSnapshot snapshot = new LedgerSnapshot("user");
+		for (int day = 0; day < 100; day++) {
+			snapshot.append(expense(day, day, day % 2 == 0 ? "Food" : "Rent", ""));
+		}
+
+		assertEquals(-(10 + 11 + 12), snapshot.sumCents(10, 12));
+		assertEquals(3, snapshot.count(10, 12));
+		assertEquals(0, snapshot.count(12, 10));
+		assertEquals(100, snapshot.count(Long.MIN_VALUE, Long.MAX_VALUE));
+
+		long[] sums = snapshot.sumByCategory(10, 12);
+		int[] counts = snapshot.countByCategory(10, 12);
+		int food = snapshot.getCategoryId(0);
+		assertEquals("Food", snapshot.getCategory(food));
+		assertEquals(-(10 + 12), sums[food]);
+		assertEquals(2, counts[food]);
+		assertArrayEquals(new int[] {11, 13}, snapshot.rowsOf(10, 14, "Rent"));
+		assertEquals(0, snapshot.rowsOf(10, 14, "Travel").length);
+	}
+}
@@ -0,0 +1,91 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.Transaction;
+import model.User;
+
+public class MonthlyTotalsTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static long day(String date) {
+		return LocalDate.parse(date).toEpochDay();
+	}
+
+	@Test public void testOnlyWholeMonthsAreReadFromTotals() {
+		assertEquals(202402, MonthlyTotals.monthOf(day("2024-02-29")));
+		assertArrayEquals(new int[] {202401, 202402},
+				MonthlyTotals.monthsOf(day("2024-01-01"), day("2024-02-29")));
+		assertArrayEquals(new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE},
+				MonthlyTotals.monthsOf(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertNull(MonthlyTotals.monthsOf(day("2024-01-02"), day("2024-02-29")));
+		assertNull(MonthlyTotals.monthsOf(day("2024-01-01"), day("2024-02-28")));
+	}
+
+	@Test public void testTotalsAgreeWithTransactions() throws Exception {
+		File database = new File(this.folder.getRoot(), "TT.db");
+		TransactionsDB db = new TransactionsDB();
+		db.open(database);
+		try {
+			assertTrue(db.addNewUser(new User("user", "A User", 0, "hash")));
+			List<Transaction> expenses = new ArrayList<Transaction>();
+			for (int i = 0; i < 6; i++) {
+				expenses.add(TransactionsDBTest.transaction("Store " + i,
+						day("2024-01-10") + 10 * i, -100 * (i + 1), i % 2 == 0 ? "N/A" : "Food"));
+			}
+			db.addExpenses(expenses, "user", 4, true);
+			db.addExpense(TransactionsDBTest.transaction("Cafe", day("2024-02-20"), -50, "Food"),
+					"user");
+			// Each insert adds to the totals of its month and category.
+			assertEquals(new ArrayList<String>(), db.checkMonthlyTotals());
+
+			// A transaction without a category, written without updating the totals.
+			try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database);
+					Statement stmt = conn.createStatement()) {
+				stmt.executeUpdate("INSERT INTO Transactions VALUES ('Old', -25, "
+						+ day("2024-01-31") + ", NULL, NULL, 'user')");
+			}
+			assertEquals(1, db.checkMonthlyTotals().size());
+			assertTrue(db.rebuildMonthlyTotals() > 0);
+			assertEquals(new ArrayList<String>(), db.checkMonthlyTotals());
+
+			// The totals, the GROUP BY query and the snapshot label it the same way.
+			BreakdownReport fromTotals = db.getBreakdown("user", BreakdownReport.Grouping.CATEGORY,
+					day("2024-01-01"), day("2024-03-31"));
+			BreakdownReport grouped = db.getBreakdown("user", BreakdownReport.Grouping.CATEGORY,
+					day("2024-01-02"), day("2024-03-31"));
+			assertNotNull(db.getSnapshot("user"));
+			BreakdownReport fromSnapshot = db.getBreakdown("user",
+					BreakdownReport.Grouping.CATEGORY, day("2024-01-01"), day("2024-03-31"));
+			assertTrue(fromSnapshot.isFromSnapshot());
+
+			for (BreakdownReport report : new BreakdownReport[] {fromTotals, grouped,
+					fromSnapshot}) {
+				assertEquals(2, report.getGroups().size());
+				long unlabelled = 0;
+				for (BreakdownReport.Group group : report.getGroups()) {
+					if (StatementParser.DEFAULT_CATEGORY.equals(group.getLabel())) {
+						unlabelled = group.getTotalCents();
+					}
+				}
+				assertEquals(-100 - 300 - 500 - 25, unlabelled);
+				assertEquals(-2175, report.getTotalCents());
+			}
+		} finally {
+			db.close();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import model.BCrypt;
+
+public class PasswordHasherTest {
+
+	// Checks run at the cost of the stored hash, so a salt of a high cost keeps a thread busy.
+	private static final String SLOW_HASH = BCrypt.gensalt(12);
+
+	private PasswordHasher hasher;
+
+	@Before public void setUp() {
+		this.hasher = new PasswordHasher(1, 1, PasswordHasher.DEFAULT_LOG_ROUNDS);
+	}
+
+	@After public void tearDown() {
+		this.hasher.close();
+	}
+
+	@Test public void testSaturatedHasherRejectsAtOnce() throws Exception {
+		CompletableFuture<Boolean> running = this.hasher.check("password", SLOW_HASH);
+		CompletableFuture<Boolean> queued = this.hasher.check("password", SLOW_HASH);
+		assertEquals(1, this.hasher.getQueueDepth());
+
+		// The queue is full, so the next check fails without waiting for a thread.
+		long start = System.nanoTime();
+		CompletableFuture<Boolean> rejected = this.hasher.check("password", SLOW_HASH);
+		assertTrue(rejected.isCompletedExceptionally());
+		try {
+			this.hasher.checkNow("password", SLOW_HASH);
+			fail("The hasher should have been saturated.");
+		} catch (RejectedExecutionException e) {
+			// Expected.
+		}
+		assertFalse(running.isDone());
+		assertTrue(System.nanoTime() - start < 1_000_000_000L);
+		try {
+			rejected.join();
+			fail("The check should have been rejected.");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+
+		assertFalse(running.join());
+		assertFalse(queued.join());
+		assertEquals(2, this.hasher.getRejected());
+	}
+
+	@Test public void testMetricsCountQueueingAndHashing() throws Exception {
+		long checks = MetricsRegistry.getDefault().timer("bcrypt.check").getCount();
+
+		CompletableFuture<Boolean> running = this.hasher.check("password", SLOW_HASH);
+		CompletableFuture<Boolean> queued = this.hasher.check("password", SLOW_HASH);
+		assertEquals(1, this.hasher.getQueueDepth());
+		running.join();
+		queued.join();
+
+		assertEquals(0, this.hasher.getQueueDepth());
+		assertEquals(2, this.hasher.getHashes());
+		assertEquals(0, this.hasher.getRejected());
+		// The second check waited for the whole of the first.
+		assertTrue(this.hasher.getAverageQueueNanos() > 0);
+		assertTrue(this.hasher.getAverageQueueNanos() * 2 >= this.hasher.getMaxHashNanos() / 2);
+		assertTrue(this.hasher.getAverageHashNanos() > 0);
+		assertTrue(this.hasher.getMaxHashNanos() >= this.hasher.getAverageHashNanos());
+		assertEquals(checks + 2, MetricsRegistry.getDefault().timer("bcrypt.check").getCount());
+	}
+
+	@Test public void testNeedsRehashBelowTheHashersCost() {
+		assertTrue(this.hasher.needsRehash(BCrypt.gensalt(4)));
+		assertTrue(this.hasher.needsRehash(BCrypt.gensalt(PasswordHasher.DEFAULT_LOG_ROUNDS - 1)));
+		assertFalse(this.hasher.needsRehash(BCrypt.gensalt(PasswordHasher.DEFAULT_LOG_ROUNDS)));
+		assertFalse(this.hasher.needsRehash(SLOW_HASH));
+		assertFalse(this.hasher.needsRehash("not a hash"));
+	}
+
+	@Test public void testCalibrationNeverWeakensHashes() {
+		assertEquals(PasswordHasher.DEFAULT_LOG_ROUNDS, PasswordHasher.calibrate(0));
+		assertEquals(PasswordHasher.DEFAULT_LOG_ROUNDS, PasswordHasher.calibrate(1));
+		assertEquals(PasswordHasher.MAX_LOG_ROUNDS, PasswordHasher.calibrate(Long.MAX_VALUE / 4));
+	}
+}
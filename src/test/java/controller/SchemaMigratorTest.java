@@ -0,0 +1,70 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchemaMigratorTest {
+
+	private Connection conn;
+
+	@Before public void setUp() throws Exception {
+		this.conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+	}
+
+	@After public void tearDown() throws Exception {
+		this.conn.close();
+	}
+
+	@Test public void testMigratesOnceAndRecordsVersion() throws Exception {
+		SchemaMigrator migrator = new SchemaMigrator(this.conn);
+		assertEquals(0, migrator.getCurrentVersion());
+		int applied = migrator.migrate();
+		assertTrue(applied > 0);
+		assertEquals(applied, migrator.getCurrentVersion());
+		assertEquals(0, migrator.migrate());
+	}
+
+	@Test(expected = SQLException.class)
+	public void testChangedMigrationIsRejected() throws Exception {
+		new SchemaMigrator(this.conn).migrate();
+		try (Statement stmt = this.conn.createStatement()) {
+			stmt.execute("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 1");
+		}
+		new SchemaMigrator(this.conn).migrate();
+	}
+
+	@Test public void testTextDatesBecomeEpochDays() throws Exception {
+		// A database made before migrations existed, which stored dates as text.
+		try (Statement stmt = this.conn.createStatement()) {
+			stmt.execute("CREATE TABLE Users (username VARCHAR(30) PRIMARY KEY, "
+					+ "name VARCHAR(50) NOT NULL, balance_in_cents INT, "
+					+ "password VARCHAR(60) NOT NULL)");
+			stmt.execute("CREATE TABLE Transactions (description VARCHAR(30) NOT NULL, "
+					+ "price_in_cents INT, day DATE, memo VARCHAR(20), category VARCHAR(30), "
+					+ "belongsTo VARCHAR(30), "
+					+ "PRIMARY KEY (description, price_in_cents, day, belongsTo))");
+			stmt.execute("INSERT INTO Users VALUES ('user', 'A User', -450, 'hash')");
+			stmt.execute("INSERT INTO Transactions VALUES "
+					+ "('Coffee', -450, '2019-01-02', '', 'N/A', 'user')");
+		}
+
+		new SchemaMigrator(this.conn).migrate();
+		try (Statement stmt = this.conn.createStatement();
+				ResultSet result = stmt.executeQuery(
+						"SELECT day, typeof(day) FROM Transactions")) {
+			assertTrue(result.next());
+			assertEquals(LocalDate.of(2019, 1, 2).toEpochDay(), result.getLong(1));
+			assertEquals("integer", result.getString(2));
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SlowQueryLogTest {
+
+	@Test public void testShapeReplacesLiterals() {
+		String first = "SELECT * FROM Transactions\n WHERE belongsTo = 'alice' AND day >= 17000 "
+				+ "AND memo = 'it''s' LIMIT 25";
+		String second = "SELECT * FROM Transactions WHERE belongsTo = 'bob' AND day >= 3 "
+				+ "AND memo = '' LIMIT 1000";
+
+		assertEquals("SELECT * FROM Transactions WHERE belongsTo = ? AND day >= ? AND memo = ? "
+				+ "LIMIT ?", SlowQueryLog.shapeOf(first));
+		assertEquals(SlowQueryLog.shapeOf(first), SlowQueryLog.shapeOf(second));
+	}
+
+	@Test public void testShapeKeepsIdentifiersAndParameters() {
+		String sql = "SELECT t1.price_in_cents FROM Transactions t1 WHERE t1.day > ?";
+		assertEquals(sql, SlowQueryLog.shapeOf(sql));
+	}
+
+	@Test public void testFullScanMarksIndexScansButNotSearches() {
+		assertTrue(SlowQueryLog.isFullScan("SCAN Transactions"));
+		assertTrue(SlowQueryLog.isFullScan("SCAN TABLE Transactions"));
+		assertTrue(SlowQueryLog.isFullScan(
+				"SCAN Transactions USING INDEX Transactions_belongsTo_day"));
+		assertTrue(SlowQueryLog.isFullScan(
+				"SCAN TABLE Transactions USING COVERING INDEX Transactions_belongsTo_category_day"));
+		assertFalse(SlowQueryLog.isFullScan(
+				"SEARCH Transactions USING INDEX Transactions_belongsTo_day (belongsTo=? AND day>?)"));
+		assertFalse(SlowQueryLog.isFullScan("SCAN TransactionsArchive"));
+	}
+}
@@ -0,0 +1,84 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StatementCacheTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private Connection conn;
+
+	@Before public void setUp() throws Exception {
+		this.conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+	}
+
+	@After public void tearDown() throws Exception {
+		this.conn.close();
+	}
+
+	@Test public void testHitsMissesAndEvictions() throws Exception {
+		StatementCache cache = new StatementCache(this.conn, 2);
+		PreparedStatement one = cache.prepare("SELECT 1");
+		assertSame(one, cache.prepare("SELECT 1"));
+		cache.prepare("SELECT 2");
+		cache.prepare("SELECT 3");
+
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, cache.size());
+		assertTrue(one.isClosed());
+		cache.close();
+	}
+
+	@Test public void testCheckedOutStatementOutlivesEviction() throws Exception {
+		StatementCache cache = new StatementCache(this.conn, 2);
+		PreparedStatement stmt = cache.checkOut("SELECT 1 UNION ALL SELECT 2");
+		ResultSet results = stmt.executeQuery();
+		assertTrue(results.next());
+
+		// Filling the cache past its capacity evicts the statement but must not close it.
+		for (int i = 0; i < 5; i++) {
+			cache.prepare("SELECT " + i).executeQuery().close();
+		}
+		assertFalse(stmt.isClosed());
+		assertTrue(results.next());
+		assertEquals(2, results.getInt(1));
+
+		results.close();
+		cache.release(stmt);
+		assertTrue(stmt.isClosed());
+		assertEquals(0, cache.getCheckedOut());
+		cache.close();
+	}
+
+	@Test public void testExecuteQueryResultSurvivesOtherQueries() throws Exception {
+		TransactionsDB db = new TransactionsDB(2);
+		db.open(new File(this.folder.getRoot(), "TT.db"));
+		try {
+			ResultSet results = db.executeQuery("SELECT 1 UNION ALL SELECT 2");
+			assertTrue(results.next());
+			for (int i = 0; i < 5; i++) {
+				db.executeQuery("SELECT " + i).close();
+			}
+			assertTrue(results.next());
+			assertEquals(2, results.getInt(1));
+			assertFalse(results.next());
+			assertEquals(0, db.getStatementCache().getCheckedOut());
+		} finally {
+			db.close();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.User;
+
+public class StatementImporterTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionsDB db;
+
+	@Before public void setUp() throws Exception {
+		this.db = new TransactionsDB();
+		this.db.open(new File(this.folder.getRoot(), "TT.db"));
+		assertTrue(this.db.addNewUser(new User("user", "A User", 0, "hash")));
+	}
+
+	@After public void tearDown() throws Exception {
+		this.db.close();
+	}
+
+	@Test public void testImportRejectsInvalidRowsAndSkipsDuplicates() throws Exception {
+		StringBuilder csv = new StringBuilder("Date,Description,Amount,Category\n");
+		for (int i = 1; i <= 600; i++) {
+			csv.append("2019-01-01,Store ").append(i).append(",-1.00,N/A\n");
+		}
+		csv.append("2019-01-02,Pay,700.00,Deposit\n");
+		csv.append("2019-01-03,Casino,-5.00,Gambling\n");
+		csv.append("2019-01-04,,-5.00,N/A\n");
+		csv.append("2019-01-05,Store,lots,N/A\n");
+		File statement = this.folder.newFile("statement.csv");
+		Files.write(statement.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+
+		// Batches smaller than the parser's chunks, so each chunk is written in several.
+		StatementImporter importer = new StatementImporter(this.db, 100, 2);
+		ImportProgress first = importer.importFile(statement, "user", null);
+		assertTrue(first.isDone());
+		assertEquals(601, first.getParsed());
+		assertEquals(3, first.getRejected());
+		assertEquals(3, first.getRejections().size());
+		assertEquals(601, first.getWritten());
+		assertEquals(0, first.getDuplicates());
+		assertEquals(10000, this.db.updateBalance("user", 0));
+
+		ImportProgress again = importer.importFile(statement, "user", null);
+		assertEquals(0, again.getWritten());
+		assertEquals(601, again.getDuplicates());
+		assertEquals(10000, this.db.updateBalance("user", 0));
+	}
+}
@@ -0,0 +1,130 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.text.ParseException;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import model.Transaction.TransactionBuilder;
+
+public class StatementParserTest {
+
+	@Test public void testParseCents() {
+		assertEquals(1234, StatementParser.parseCents("12.34"));
+		assertEquals(-123450, StatementParser.parseCents("-1,234.5"));
+		assertEquals(-1234, StatementParser.parseCents("($12.34)"));
+		assertEquals(1200, StatementParser.parseCents("+12"));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseCentsRejectsFractionsOfACent() {
+		StatementParser.parseCents("1.234");
+	}
+
+	@Test public void testCsvQuotedFieldsAndDefaults() throws Exception {
+		String csv = "Date,Description,Amount,Memo\r\n"
+				+ "01/05/2018,\"Coffee, \"\"Large\"\"\",-4.50,\"two\nlines\"\r\n"
+				+ "\r\n"
+				+ "2018-01-06,Paycheck,1000.00,\n";
+		CsvStatementParser parser = new CsvStatementParser(new StringReader(csv));
+
+		TransactionBuilder coffee = parser.next();
+		assertEquals("Coffee, \"Large\"", coffee.getDescription());
+		assertEquals(-450, coffee.getAmountInCents());
+		assertEquals(LocalDate.of(2018, 1, 5), coffee.getDate());
+		assertEquals("two\nlines", coffee.getMemo());
+		assertEquals(StatementParser.DEFAULT_CATEGORY, coffee.getCategory());
+		assertFalse(coffee.isADeposit());
+
+		TransactionBuilder pay = parser.next();
+		assertEquals(100000, pay.getAmountInCents());
+		assertEquals(StatementParser.DEPOSIT_CATEGORY, pay.getCategory());
+		assertTrue(pay.isADeposit());
+
+		assertNull(parser.next());
+		parser.close();
+	}
+
+	@Test public void testCsvSkipsMalformedRows() throws Exception {
+		String csv = "date,payee,debit,credit\n"
+				+ "2018-01-05,Bad,abc,\n"
+				+ "2018-01-06,Rent,800,\n";
+		CsvStatementParser parser = new CsvStatementParser(new StringReader(csv));
+
+		try {
+			parser.next();
+			fail("A malformed amount should not parse.");
+		} catch (ParseException e) {
+			assertEquals(2, parser.getLine());
+		}
+
+		assertEquals(-80000, parser.next().getAmountInCents());
+		assertNull(parser.next());
+		parser.close();
+	}
+
+	@Test public void testCsvRejectsOverlongAndUnclosedFields() throws Exception {
+		StringBuilder csv = new StringBuilder("Date,Description,Amount\n2018-01-05,\"");
+		for (int i = 0; i <= CsvStatementParser.MAX_FIELD_CHARS; i++) {
+			csv.append(i % 50 == 0 ? "\n" : "x");
+		}
+		csv.append("\",-1.00\n2018-01-06,Rent,-800\n2018-01-07,\"Unclosed,-1.00\n");
+		for (int i = 0; i < 1000; i++) {
+			csv.append("2018-01-08,Lost,-1.00\n");
+		}
+		CsvStatementParser parser = new CsvStatementParser(new StringReader(csv.toString()));
+
+		try {
+			parser.next();
+			fail("A field longer than the limit should not parse.");
+		} catch (ParseException e) {
+			assertEquals(2, parser.getLine());
+		}
+
+		// The long field was closed, so the next row is read as usual.
+		TransactionBuilder rent = parser.next();
+		assertEquals("Rent", rent.getDescription());
+		assertEquals(9, parser.getLine());
+
+		// An unclosed quote runs to the end of the statement, which is one rejected row.
+		try {
+			parser.next();
+			fail("A quote which is never closed should not parse.");
+		} catch (ParseException e) {
+			assertEquals(10, parser.getLine());
+		}
+		assertNull(parser.next());
+		parser.close();
+	}
+
+	@Test(expected = ParseException.class)
+	public void testCsvRequiresAmountColumns() throws Exception {
+		new CsvStatementParser(new StringReader("date,description,memo\n")).close();
+	}
+
+	@Test public void testOfxSgml() throws Exception {
+		String ofx = "OFXHEADER:100\nDATA:OFXSGML\n\n<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS>"
+				+ "<BANKTRANLIST>\n<STMTTRN>\n<TRNTYPE>DEBIT\n<DTPOSTED>20180105120000[-8:PST]\n"
+				+ "<TRNAMT>-12.34\n<NAME>Books &amp; More\n<MEMO>gift\n</STMTTRN>\n"
+				+ "<STMTTRN><TRNTYPE>CREDIT<DTPOSTED>20180106<TRNAMT>50.00<NAME>Refund</STMTTRN>"
+				+ "</BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>";
+		OfxStatementParser parser = new OfxStatementParser(new StringReader(ofx));
+
+		TransactionBuilder books = parser.next();
+		assertEquals("Books & More", books.getDescription());
+		assertEquals(-1234, books.getAmountInCents());
+		assertEquals(LocalDate.of(2018, 1, 5), books.getDate());
+		assertEquals("gift", books.getMemo());
+
+		TransactionBuilder refund = parser.next();
+		assertEquals(5000, refund.getAmountInCents());
+		assertEquals("", refund.getMemo());
+		assertEquals(StatementParser.DEPOSIT_CATEGORY, refund.getCategory());
+
+		assertNull(parser.next());
+		parser.close();
+	}
+}
@@ -0,0 +1,67 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.User;
+
+public class TransactionServiceTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionsDBPool pool;
+
+	@Before public void setUp() throws Exception {
+		this.pool = new TransactionsDBPool(new File(this.folder.getRoot(), "TT.db"), 2, 1000);
+		this.pool.write(db -> db.addNewUser(new User("a", "User A", 0, "hash"))
+				&& db.addNewUser(new User("b", "User B", 0, "hash")));
+	}
+
+	@After public void tearDown() throws Exception {
+		this.pool.close();
+	}
+
+	@Test public void testConcurrentTransactionsAreNotLost() throws Exception {
+		// One lock, so users share it and the lock is contended.
+		TransactionService service = new TransactionService(this.pool, 1);
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			String username = t % 2 == 0 ? "a" : "b";
+			int thread = t;
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < 25; i++) {
+						service.addTransaction(TransactionsDBTest.transaction("Store " + thread
+								+ "-" + i, 18000, -100, "N/A"), username);
+					}
+				} catch (Exception e) {
+					failure.set(e);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get());
+		assertEquals(-5000, (long) this.pool.write(db -> db.updateBalance("a", 0)));
+		assertEquals(-5000, (long) this.pool.write(db -> db.updateBalance("b", 0)));
+		assertEquals(100, service.getAcquisitions());
+		assertEquals(100, service.getWrites());
+		assertTrue(service.getWriterWaitNanos() > 0);
+	}
+}
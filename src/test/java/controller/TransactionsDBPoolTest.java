@@ -0,0 +1,133 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.User;
+
+public class TransactionsDBPoolTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionsDBPool pool;
+
+	@Before public void setUp() throws Exception {
+		this.pool = new TransactionsDBPool(new File(this.folder.getRoot(), "TT.db"), 2, 1000);
+	}
+
+	@After public void tearDown() throws Exception {
+		this.pool.close();
+	}
+
+	@Test public void testWritesRunOnWriterAndReadersSeeThem() throws Exception {
+		String writerThread = this.pool.write(db -> {
+			assertTrue(db.addNewUser(new User("user", "A User", 0, "hash")));
+			db.updateBalance("user", 1234);
+			return Thread.currentThread().getName();
+		});
+		assertEquals("TransactionsDB writer", writerThread);
+
+		// Reads run on the calling thread and see what the writer committed.
+		Thread caller = Thread.currentThread();
+		long balance = this.pool.read(db -> {
+			assertSame(caller, Thread.currentThread());
+			try (ResultSet result = db.executeQuery("SELECT balance_in_cents FROM Users")) {
+				assertTrue(result.next());
+				return result.getLong(1);
+			}
+		});
+		assertEquals(1234, balance);
+		assertEquals(1, this.pool.getWrites());
+		assertEquals(1, this.pool.getReads());
+		assertEquals(0, this.pool.getActiveReaders());
+	}
+
+	@Test(expected = SQLException.class)
+	public void testReadersCannotWrite() throws Exception {
+		this.pool.write(db -> db.addNewUser(new User("user", "A User", 0, "hash")));
+		this.pool.read(db -> db.updateBalance("user", 1));
+	}
+
+	@Test public void testReadersAreLentOneAtATime() throws Exception {
+		TransactionsDB first = this.pool.read(outer -> {
+			// A nested read gets the other reader.
+			TransactionsDB second = this.pool.read(inner -> inner);
+			assertNotSame(outer, second);
+			return outer;
+		});
+		assertNotNull(first);
+		assertEquals(2, this.pool.getReaderCount());
+	}
+
+	@Test public void testReadersReloadCachesTheWriterChanged() throws Exception {
+		this.pool.write(db -> db.addNewUser(new User("user", "A User", 0, "hash")));
+		// Each reader caches the empty ledger.
+		this.pool.read(outer -> this.pool.read(inner -> {
+			assertEquals(0, outer.getSnapshot("user").size());
+			assertEquals(0, inner.getSnapshot("user").size());
+			assertEquals(Long.valueOf(0), inner.getBalanceOn("user", 18000));
+			return null;
+		}));
+
+		this.pool.write(db -> db.recordTransaction(
+				TransactionsDBTest.transaction("Store", 18000, -250, "N/A"), "user"));
+
+		this.pool.read(outer -> this.pool.read(inner -> {
+			assertEquals(1, outer.getSnapshot("user").size());
+			assertEquals(1, inner.getSnapshot("user").size());
+			assertEquals(Long.valueOf(-250), inner.getBalanceOn("user", 18000));
+			assertEquals(-250, outer.getBreakdown("user", BreakdownReport.Grouping.CATEGORY,
+					Long.MIN_VALUE, Long.MAX_VALUE).getTotalCents());
+			return null;
+		}));
+	}
+
+	@Test public void testFullWriterQueueTimesOut() throws Exception {
+		TransactionsDBPool bounded = new TransactionsDBPool(new File(this.folder.getRoot(),
+				"Bounded.db"), 1, 1, 50);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			// One write holds the writer and another fills its queue.
+			CompletableFuture<Boolean> running = bounded.submitWrite(db -> {
+				started.countDown();
+				try {
+					return release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+			});
+			started.await();
+			CompletableFuture<Integer> queued = bounded.submitWrite(db -> 1);
+			assertEquals(1, bounded.getWriterQueueDepth());
+
+			try {
+				bounded.write(db -> 2);
+				fail("The writer's queue should have been full.");
+			} catch (SQLException e) {
+				assertEquals(1, bounded.getWriterTimeouts());
+			}
+
+			release.countDown();
+			assertTrue(running.get());
+			assertEquals(Integer.valueOf(1), queued.get());
+			// Once there is room writes are queued again.
+			assertEquals(Integer.valueOf(3), bounded.write(db -> 3));
+		} finally {
+			release.countDown();
+			bounded.close();
+		}
+	}
+}
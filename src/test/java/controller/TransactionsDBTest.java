@@ -0,0 +1,124 @@
+package controller;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import model.Transaction;
+import model.Transaction.TransactionBuilder;
+import model.User;
+
+public class TransactionsDBTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionsDB db;
+
+	@Before public void setUp() throws Exception {
+		this.db = new TransactionsDB();
+		this.db.open(new File(this.folder.getRoot(), "TT.db"));
+		assertTrue(this.db.addNewUser(new User("user", "A User", 0, "hash")));
+	}
+
+	@After public void tearDown() throws Exception {
+		this.db.close();
+	}
+
+	static Transaction transaction(String description, long day, int cents, String category) {
+		TransactionBuilder trans = new TransactionBuilder(cents >= 0);
+		trans.setAmountInCents(Math.abs(cents));
+		trans.setDescription(description);
+		trans.setEpochDay(day);
+		trans.setCategory(category);
+		trans.setMemo("");
+		return trans.build();
+	}
+
+	@Test public void testAddExpensesCountsDuplicatesAndReturnsBalance() throws Exception {
+		List<Transaction> expenses = new ArrayList<Transaction>();
+		for (int i = 0; i < 10; i++) {
+			expenses.add(transaction("Store " + i, 18000 + i, -100 * (i + 1), "N/A"));
+		}
+		BulkInsertResult first = this.db.addExpenses(expenses, "user", 3, true);
+		assertEquals(10, first.getRows());
+		assertEquals(0, first.getDuplicates());
+		assertEquals(4, first.getBatches());
+		assertEquals(-5500, first.getBalanceInCents());
+
+		// Importing an overlapping statement again only adds the new rows.
+		expenses.add(transaction("Pay", 18010, 10000, "Deposit"));
+		BulkInsertResult second = this.db.addExpenses(expenses, "user", 4, true);
+		assertEquals(1, second.getRows());
+		assertEquals(10, second.getDuplicates());
+		assertEquals(4500, second.getBalanceInCents());
+
+		// Nothing new to insert, so the balance is read instead of updated.
+		BulkInsertResult third = this.db.addExpenses(expenses, "user", 100, true);
+		assertEquals(0, third.getRows());
+		assertEquals(11, third.getDuplicates());
+		assertEquals(4500, third.getBalanceInCents());
+		assertEquals(4500, this.db.updateBalance("user", 0));
+	}
+
+	@Test public void testQueryIsTimedWhenResultsAreFinished() throws Exception {
+		LatencyHistogram timer = MetricsRegistry.getDefault().timer("db.executeQuery");
+		long before = timer.getCount();
+
+		try (ResultSet results = this.db.executeQuery("SELECT username FROM Users")) {
+			assertEquals(before, timer.getCount());
+			assertTrue(results.next());
+			assertEquals(before, timer.getCount());
+
+			// Reading past the last row finishes the query.
+			assertFalse(results.next());
+			assertEquals(before + 1, timer.getCount());
+		}
+		// Closing it afterwards does not time it again.
+		assertEquals(before + 1, timer.getCount());
+	}
+
+	@Test public void testExecutingAgainFinishesTheLastResults() throws Exception {
+		LatencyHistogram timer = MetricsRegistry.getDefault().timer("db.executeQuery");
+		long before = timer.getCount();
+
+		ResultSet first = this.db.executeQuery("SELECT username FROM Users");
+		assertTrue(first.next());
+		assertEquals(1, this.db.getStatementCache().getCheckedOut());
+
+		// The first result set is left open, and is finished when the query runs again.
+		try (ResultSet second = this.db.executeQuery("SELECT username FROM Users")) {
+			assertEquals(before + 1, timer.getCount());
+			assertTrue(first.isClosed());
+			// Closing it again does not close the rows of the second, which the driver shares.
+			first.close();
+			assertTrue(second.next());
+			assertFalse(second.next());
+		}
+		assertEquals(before + 2, timer.getCount());
+		assertEquals(0, this.db.getStatementCache().getCheckedOut());
+	}
+
+	@Test public void testRehashOnlyReplacesTheCheckedHash() throws Exception {
+		assertTrue(this.db.addNewUser(new User("other", "Another User", 0, "hash")));
+		User user = this.db.logIn("user");
+		assertTrue(this.db.rehashPassword(user, "hash", "stronger"));
+		assertEquals("stronger", user.getPassword());
+		assertEquals("stronger", this.db.logIn("user").getPassword());
+		assertEquals("hash", this.db.logIn("other").getPassword());
+
+		// The password changed after the old hash was read, so the new one is kept.
+		User stale = this.db.logIn("other");
+		assertTrue(this.db.changePassword(stale, "changed"));
+		assertFalse(this.db.rehashPassword(stale, "hash", "rehashed"));
+		assertEquals("changed", this.db.logIn("other").getPassword());
+	}
+}
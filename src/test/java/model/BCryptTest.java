@@ -0,0 +1,50 @@
+package model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BCryptTest {
+
+	// Password, salt and the hash the original jBCrypt 0.2 gives for them.
+	private static final String[][] VECTORS = {
+		{"", "$2a$06$DCq7YPn5Rq63x1Lad4cll.",
+				"$2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s."},
+		{"a", "$2a$06$m0CrhHm10qJ3lXRY.5zDGO",
+				"$2a$06$m0CrhHm10qJ3lXRY.5zDGO3rS2KdeeWLuGmsfGlMfOxih58VYVfxe"},
+		{"abcdefghijklmnopqrstuvwxyz", "$2a$06$.rCVZVOThsIa97pEDOxvGu",
+				"$2a$06$.rCVZVOThsIa97pEDOxvGuRRgzG64bvtJ0938xuqzv18d3ZpQhstC"},
+		{"~!@#$%^&*()      ~!@#$%^&*()PNBFRD", "$2a$06$fPIsBO8qRqkjj273rfaOI.",
+				"$2a$06$fPIsBO8qRqkjj273rfaOI.HtSV9jLDpTbZn782DC6/t7qT67P6FfO"},
+		{"p\u00e4ssw\u00f6rd \u20ac", "$2a$05$abcdefghijklmnopqrstuu",
+				"$2a$05$abcdefghijklmnopqrstuuY8YJcx7OeCJ9JYO3w834ps8x/8H3Gfy"},
+		{"0123456789012345678901234567890123456789012345678901234567890123456789012345",
+				"$2a$04$......................",
+				"$2a$04$......................y.Z8zipbVBlY/yFH78m3OxT0wYWsRxC"},
+		{"legacy", "$2$05$XXXXXXXXXXXXXXXXXXXXXO",
+				"$2$05$XXXXXXXXXXXXXXXXXXXXXOJMCFF4R1Yj65.VLW3EX0gnuduQab90W"},
+	};
+
+	@Test public void testHashesMatchKnownVectors() {
+		// Twice, so the second round reuses the thread's key schedule.
+		for (int round = 0; round < 2; round++) {
+			for (String[] vector : VECTORS) {
+				assertEquals(vector[2], BCrypt.hashpw(vector[0], vector[1]));
+			}
+		}
+	}
+
+	@Test public void testCheckpw() {
+		for (String[] vector : VECTORS) {
+			assertTrue(BCrypt.checkpw(vector[0], vector[2]));
+			// BCrypt ignores bytes past the 72nd, so change the start of the password.
+			assertFalse(BCrypt.checkpw("x" + vector[0], vector[2]));
+		}
+	}
+
+	@Test public void testGetLogRounds() {
+		assertEquals(6, BCrypt.getLogRounds(VECTORS[0][2]));
+		assertEquals(5, BCrypt.getLogRounds(VECTORS[6][1]));
+		assertEquals(12, BCrypt.getLogRounds(BCrypt.gensalt(12)));
+	}
+}
@@ -0,0 +1,161 @@
+package view;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import controller.PasswordHasher;
+import controller.TransactionsDBPool;
+import model.BCrypt;
+import model.User;
+
+public class TransactionsTrackerServerTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionsDBPool pool;
+	private TransactionsTrackerServer server;
+
+	@BeforeClass public static void setUpClass() {
+		// Calibrate to the lowest cost, which the stored hash below is made with.
+		System.setProperty(PasswordHasher.TARGET_MILLIS_PROPERTY, "1");
+	}
+
+	@Before public void setUp() throws Exception {
+		this.pool = new TransactionsDBPool(new File(this.folder.getRoot(), "TT.db"), 2, 1000);
+		String hash = BCrypt.hashpw("secret", BCrypt.gensalt(PasswordHasher.DEFAULT_LOG_ROUNDS));
+		assertTrue(this.pool.write(db -> db.addNewUser(new User("user", "A User", 0, hash))));
+
+		this.server = new TransactionsTrackerServer(this.pool, 0);
+		this.server.start();
+	}
+
+	@After public void tearDown() throws Exception {
+		this.server.stop(0);
+		this.pool.close();
+	}
+
+	/** The status and body of a response. */
+	private static final class Response {
+		final int status;
+		final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	private Response request(String method, String path, String token, String body)
+			throws IOException {
+		URL url = new URL("http://localhost:" + this.server.getPort() + path);
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestMethod(method);
+		if (token != null) {
+			conn.setRequestProperty("Authorization", "Bearer " + token);
+		}
+		if (body != null) {
+			conn.setDoOutput(true);
+			try (OutputStream out = conn.getOutputStream()) {
+				out.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		int status = conn.getResponseCode();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				bytes.write(buf, 0, n);
+			}
+		}
+		return new Response(status, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private String login() throws IOException {
+		Response response = this.request("POST", "/login", null, "username=user&password=secret");
+		assertEquals(response.body, 200, response.status);
+		int start = response.body.indexOf("\"token\":\"") + "\"token\":\"".length();
+		return response.body.substring(start, response.body.indexOf('"', start));
+	}
+
+	@Test public void testQuoteEscapes() {
+		assertEquals("\"plain\"", TransactionsTrackerServer.quote("plain"));
+		assertEquals("\"a \\\"b\\\" \\\\ c\"", TransactionsTrackerServer.quote("a \"b\" \\ c"));
+		assertEquals("\"\\n\\r\\t\"", TransactionsTrackerServer.quote("\n\r\t"));
+		assertEquals("\"\\u0000\\u001f\"", TransactionsTrackerServer.quote("\u0000\u001f"));
+		assertEquals("\"caf\u00e9\"", TransactionsTrackerServer.quote("caf\u00e9"));
+	}
+
+	@Test public void testSessionAndMethodAreChecked() throws Exception {
+		assertEquals(401, this.request("GET", "/balance", null, null).status);
+		assertEquals(401, this.request("GET", "/balance", "not-a-token", null).status);
+		assertEquals(401, this.request("POST", "/transactions/bulk", null, "Date").status);
+		assertEquals(400, this.request("POST", "/login", null,
+				"username=user&password=wrong").status);
+
+		String token = this.login();
+		assertEquals(405, this.request("POST", "/balance", token, "").status);
+		assertEquals(405, this.request("GET", "/transactions", token, null).status);
+		assertEquals(405, this.request("GET", "/login", null, null).status);
+	}
+
+	@Test public void testBadValuesAreRejected() throws Exception {
+		String token = this.login();
+		Response date = this.request("POST", "/transactions", token,
+				"description=Store&amount=-1.00&date=2020-13-45");
+		assertEquals(date.body, 400, date.status);
+		Response amount = this.request("POST", "/transactions", token,
+				"description=Store&amount=lots");
+		assertEquals(amount.body, 400, amount.status);
+		assertEquals(400, this.request("GET", "/history?from=yesterday", token, null).status);
+		assertEquals(400, this.request("GET", "/history?min=1.2.3", token, null).status);
+
+		// Nothing was written.
+		assertEquals("{\"balanceInCents\":0}", this.request("GET", "/balance", token, null).body);
+	}
+
+	@Test public void testBulkIsRoutedToItsOwnEndpoint() throws Exception {
+		String token = this.login();
+		Response response = this.request("POST", "/transactions/bulk", token,
+				"Date,Description,Amount\n2020-01-02,Store,-2.50\n2020-01-03,Cafe,-1.25\n");
+		assertEquals(response.body, 200, response.status);
+		// The single transaction endpoint would have answered with the added transaction.
+		assertTrue(response.body, response.body.startsWith("{\"parsed\":2,\"written\":2,"));
+		assertEquals("{\"balanceInCents\":-375}",
+				this.request("GET", "/balance", token, null).body);
+	}
+
+	@Test public void testAddedTransactionIsInBalanceAndHistory() throws Exception {
+		String token = this.login();
+		Response added = this.request("POST", "/transactions", token,
+				"description=Corner+Store&amount=-12.50&date=2020-01-02&memo=milk");
+		assertEquals(added.body, 200, added.status);
+		assertTrue(added.body, added.body.endsWith(",\"balanceInCents\":-1250}"));
+
+		assertEquals("{\"balanceInCents\":-1250}",
+				this.request("GET", "/balance", token, null).body);
+
+		Response history = this.request("GET", "/history?from=2020-01-01&to=2020-01-31", token,
+				null);
+		assertEquals(history.body, 200, history.status);
+		assertEquals("{\"transactions\":[{\"description\":\"Corner Store\","
+				+ "\"amountInCents\":-1250,\"date\":\"2020-01-02\",\"category\":\"N/A\","
+				+ "\"memo\":\"milk\"}],\"more\":false}", history.body);
+	}
+}